@@ -0,0 +1,75 @@
+package movielibrary.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import movielibrary.core.Movie;
+import movielibrary.json.internal.MovieCodec;
+
+/**
+ * The {@code BenchmarkLibrary} class creates the movie libraries the benchmarks run against,
+ * in a temporary directory that is deleted again when the benchmark is done.
+ */
+final class BenchmarkLibrary {
+
+  private BenchmarkLibrary() {
+  }
+
+  /**
+   * Returns the title of the movie at the given position in a generated library.
+   *
+   * @param index the position of the movie
+   * @return the title
+   */
+  static String title(int index) {
+    return "Movie_" + index;
+  }
+
+  /**
+   * Creates a list of movies with distinct titles and short descriptions.
+   *
+   * @param size the number of movies
+   * @return the movies, none of them lent
+   */
+  static List<Movie> movies(int size) {
+    List<Movie> movies = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      movies.add(new Movie(title(i), 90 + i % 60,
+          "Generated movie number " + i + " of the benchmark library."));
+    }
+    return movies;
+  }
+
+  /**
+   * Writes a library of generated movies to {@code movies.json} in a new temporary directory.
+   *
+   * @param size the number of movies
+   * @return the library file
+   * @throws IOException if an I/O error occurs while writing the file
+   */
+  static File write(int size) throws IOException {
+    File file = Files.createTempDirectory("movielibrary-bench").resolve("movies.json").toFile();
+    MovieCodec.getInstance().getPrettyMovieListWriter().writeValue(file, movies(size));
+    return file;
+  }
+
+  /**
+   * Deletes the temporary directory of a library file, with everything written next to it.
+   *
+   * @param file the library file
+   * @throws IOException if an I/O error occurs while deleting the files
+   */
+  static void delete(File file) throws IOException {
+    Path directory = file.toPath().getParent();
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.deleteIfExists(path);
+      }
+    }
+  }
+}
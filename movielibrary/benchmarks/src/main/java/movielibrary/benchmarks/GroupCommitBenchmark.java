@@ -0,0 +1,122 @@
+package movielibrary.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import movielibrary.json.internal.MovieManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how many durable lends and returns eight threads get through per second when every
+ * change is flushed to disk on its own, and when changes arriving close together share a flush
+ * through group commit. Each thread lends and returns a movie of its own, so no change fails.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class GroupCommitBenchmark {
+
+  private static final int MOVIES = 1000;
+
+  /**
+   * The library shared by the threads.
+   */
+  @State(Scope.Benchmark)
+  public static class Library {
+
+    @Param({"snapshot", "journal"})
+    private String persistence;
+
+    /**
+     * The commit window of group commit in milliseconds, or -1 to flush every change on its own.
+     */
+    @Param({"-1", "0", "2"})
+    private int commitWindow;
+
+    private File file;
+    private MovieManager manager;
+    private final AtomicInteger nextMovie = new AtomicInteger();
+
+    /**
+     * Writes a library and sets up the persistence that is benchmarked.
+     *
+     * @throws IOException if an I/O error occurs while writing or reading the library
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+      file = BenchmarkLibrary.write(MOVIES);
+      manager = new MovieManager(file);
+      manager.enableExclusiveAccess();
+      if ("journal".equals(persistence)) {
+        manager.enableJournal(Integer.MAX_VALUE);
+      }
+      if (commitWindow >= 0) {
+        manager.enableGroupCommit(commitWindow, 64);
+      }
+    }
+
+    /**
+     * Deletes the library.
+     *
+     * @throws IOException if an I/O error occurs while deleting the library
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      BenchmarkLibrary.delete(file);
+    }
+  }
+
+  /**
+   * The movie a thread lends and returns.
+   */
+  @State(Scope.Thread)
+  public static class Borrower {
+
+    private String title;
+    private boolean lent;
+
+    /**
+     * Picks a movie no other thread uses.
+     *
+     * @param library the library
+     */
+    @Setup(Level.Trial)
+    public void setUp(Library library) {
+      title = BenchmarkLibrary.title(library.nextMovie.getAndIncrement());
+    }
+  }
+
+  /**
+   * Lends the movie of the thread, or returns it if it is lent, and waits until it is on disk.
+   *
+   * @param library the library
+   * @param borrower the movie of the thread
+   * @throws IOException if an I/O error occurs while persisting the change
+   */
+  @Benchmark
+  public void lendOrReturn(Library library, Borrower borrower) throws IOException {
+    if (borrower.lent) {
+      library.manager.returnBack(borrower.title);
+    } else {
+      library.manager.lend(borrower.title);
+    }
+    borrower.lent = !borrower.lent;
+  }
+}
@@ -0,0 +1,163 @@
+package movielibrary.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import movielibrary.json.internal.MovieManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how many lends and returns of different titles the {@link MovieManager} gets through
+ * per second as the number of threads rises, with the journal, with and without the group commit
+ * the REST server uses. Each thread lends and returns a movie of its own, so no change fails.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LendBenchmark {
+
+  private static final int MOVIES = 1000;
+
+  /**
+   * The library shared by the threads.
+   */
+  @State(Scope.Benchmark)
+  public static class Library {
+
+    @Param({"true", "false"})
+    private boolean groupCommit;
+
+    private File file;
+    private MovieManager manager;
+    private final AtomicInteger nextMovie = new AtomicInteger();
+
+    /**
+     * Writes a library and turns on the journal, and group commit if the parameter says so.
+     *
+     * @throws IOException if an I/O error occurs while writing or reading the library
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+      file = BenchmarkLibrary.write(MOVIES);
+      manager = new MovieManager(file);
+      manager.enableExclusiveAccess();
+      manager.enableJournal(Integer.MAX_VALUE);
+      if (groupCommit) {
+        manager.enableGroupCommit(0, 64);
+      }
+    }
+
+    /**
+     * Deletes the library.
+     *
+     * @throws IOException if an I/O error occurs while deleting the library
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      BenchmarkLibrary.delete(file);
+    }
+  }
+
+  /**
+   * The movie a thread lends and returns.
+   */
+  @State(Scope.Thread)
+  public static class Borrower {
+
+    private String title;
+    private boolean lent;
+
+    /**
+     * Picks a movie no other thread uses.
+     *
+     * @param library the library
+     */
+    @Setup(Level.Trial)
+    public void setUp(Library library) {
+      title = BenchmarkLibrary.title(library.nextMovie.getAndIncrement());
+    }
+
+    /**
+     * Lends the movie, or returns it if it is lent.
+     *
+     * @param manager the manager of the library
+     * @throws IOException if an I/O error occurs while persisting the change
+     */
+    void lendOrReturn(MovieManager manager) throws IOException {
+      if (lent) {
+        manager.returnBack(title);
+      } else {
+        manager.lend(title);
+      }
+      lent = !lent;
+    }
+  }
+
+  /**
+   * Lends or returns from one thread.
+   *
+   * @param library the library
+   * @param borrower the movie of the thread
+   * @throws IOException if an I/O error occurs while persisting the change
+   */
+  @Benchmark
+  @Threads(1)
+  public void oneThread(Library library, Borrower borrower) throws IOException {
+    borrower.lendOrReturn(library.manager);
+  }
+
+  /**
+   * Lends or returns from two threads.
+   *
+   * @param library the library
+   * @param borrower the movie of the thread
+   * @throws IOException if an I/O error occurs while persisting the change
+   */
+  @Benchmark
+  @Threads(2)
+  public void twoThreads(Library library, Borrower borrower) throws IOException {
+    borrower.lendOrReturn(library.manager);
+  }
+
+  /**
+   * Lends or returns from four threads.
+   *
+   * @param library the library
+   * @param borrower the movie of the thread
+   * @throws IOException if an I/O error occurs while persisting the change
+   */
+  @Benchmark
+  @Threads(4)
+  public void fourThreads(Library library, Borrower borrower) throws IOException {
+    borrower.lendOrReturn(library.manager);
+  }
+
+  /**
+   * Lends or returns from eight threads.
+   *
+   * @param library the library
+   * @param borrower the movie of the thread
+   * @throws IOException if an I/O error occurs while persisting the change
+   */
+  @Benchmark
+  @Threads(8)
+  public void eightThreads(Library library, Borrower borrower) throws IOException {
+    borrower.lendOrReturn(library.manager);
+  }
+}
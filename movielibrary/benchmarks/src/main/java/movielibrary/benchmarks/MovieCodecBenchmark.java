@@ -0,0 +1,149 @@
+package movielibrary.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import movielibrary.core.Movie;
+import movielibrary.json.internal.MovieCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long it takes to write and read a list of 1 000 movies as JSON: with a new
+ * {@code ObjectMapper} every time, as each reader and writer of the library used to build its
+ * own; with a long-lived mapper and a new {@code TypeReference} on every read, as the
+ * deserializer used to; with the shared {@link MovieCodec}; and with the codec accelerated by
+ * the Blackbird module.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MovieCodecBenchmark {
+
+  private static final int MOVIES = 1000;
+
+  private List<Movie> movies;
+  private byte[] json;
+  private ObjectMapper ownMapper;
+  private MovieCodec sharedCodec;
+  private MovieCodec acceleratedCodec;
+
+  /**
+   * Creates the movies, their JSON and the mappers and codecs.
+   *
+   * @throws IOException if the movies cannot be written
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    movies = BenchmarkLibrary.movies(MOVIES);
+    ownMapper = new ObjectMapper();
+    sharedCodec = MovieCodec.getInstance();
+    acceleratedCodec = MovieCodec.createMovieCodec(true);
+    if (!acceleratedCodec.isAccelerated()) {
+      throw new IllegalStateException("The Blackbird module is not available.");
+    }
+    json = sharedCodec.getMovieListWriter().writeValueAsBytes(movies);
+  }
+
+  /**
+   * Writes the movies with a new mapper.
+   *
+   * @return the JSON
+   * @throws IOException if the movies cannot be written
+   */
+  @Benchmark
+  public byte[] writeNewMapper() throws IOException {
+    return new ObjectMapper().writeValueAsBytes(movies);
+  }
+
+  /**
+   * Writes the movies with a long-lived mapper.
+   *
+   * @return the JSON
+   * @throws IOException if the movies cannot be written
+   */
+  @Benchmark
+  public byte[] writeOwnMapper() throws IOException {
+    return ownMapper.writeValueAsBytes(movies);
+  }
+
+  /**
+   * Writes the movies with the shared codec.
+   *
+   * @return the JSON
+   * @throws IOException if the movies cannot be written
+   */
+  @Benchmark
+  public byte[] writeSharedCodec() throws IOException {
+    return sharedCodec.getMovieListWriter().writeValueAsBytes(movies);
+  }
+
+  /**
+   * Writes the movies with the accelerated codec.
+   *
+   * @return the JSON
+   * @throws IOException if the movies cannot be written
+   */
+  @Benchmark
+  public byte[] writeAcceleratedCodec() throws IOException {
+    return acceleratedCodec.getMovieListWriter().writeValueAsBytes(movies);
+  }
+
+  /**
+   * Reads the movies with a new mapper.
+   *
+   * @return the movies
+   * @throws IOException if the JSON cannot be read
+   */
+  @Benchmark
+  public List<Movie> readNewMapper() throws IOException {
+    return new ObjectMapper().readValue(json, new TypeReference<List<Movie>>(){});
+  }
+
+  /**
+   * Reads the movies with a long-lived mapper and a new type reference.
+   *
+   * @return the movies
+   * @throws IOException if the JSON cannot be read
+   */
+  @Benchmark
+  public List<Movie> readOwnMapper() throws IOException {
+    return ownMapper.readValue(json, new TypeReference<List<Movie>>(){});
+  }
+
+  /**
+   * Reads the movies with the shared codec.
+   *
+   * @return the movies
+   * @throws IOException if the JSON cannot be read
+   */
+  @Benchmark
+  public List<Movie> readSharedCodec() throws IOException {
+    return sharedCodec.getMovieListReader().readValue(json);
+  }
+
+  /**
+   * Reads the movies with the accelerated codec.
+   *
+   * @return the movies
+   * @throws IOException if the JSON cannot be read
+   */
+  @Benchmark
+  public List<Movie> readAcceleratedCodec() throws IOException {
+    return acceleratedCodec.getMovieListReader().readValue(json);
+  }
+}
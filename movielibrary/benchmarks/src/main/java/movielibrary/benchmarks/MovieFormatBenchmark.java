@@ -0,0 +1,99 @@
+package movielibrary.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import movielibrary.core.Movie;
+import movielibrary.json.internal.MovieCodec;
+import movielibrary.json.internal.MovieFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long it takes to encode and decode a list of 10 000 movies in every
+ * {@link MovieFormat} the REST server speaks, and to encode and gzip it, as the server does for
+ * clients that accept gzip. Every third movie is lent, so the lent status is not always the same.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MovieFormatBenchmark {
+
+  private static final int MOVIES = 10_000;
+
+  @Param({"JSON", "CBOR", "SMILE"})
+  private MovieFormat format;
+
+  private List<Movie> movies;
+  private MovieCodec codec;
+  private byte[] encoded;
+
+  /**
+   * Creates the movies, and encodes them once in the format to decode.
+   *
+   * @throws IOException if the movies cannot be encoded
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    movies = new ArrayList<>(MOVIES);
+    for (Movie movie : BenchmarkLibrary.movies(MOVIES)) {
+      movie.setLent(movies.size() % 3 == 0);
+      movies.add(movie);
+    }
+    codec = MovieCodec.getInstance(format);
+    encoded = codec.getMovieListWriter().writeValueAsBytes(movies);
+  }
+
+  /**
+   * Encodes the movies.
+   *
+   * @return the encoded movies
+   * @throws IOException if the movies cannot be encoded
+   */
+  @Benchmark
+  public byte[] encode() throws IOException {
+    return codec.getMovieListWriter().writeValueAsBytes(movies);
+  }
+
+  /**
+   * Encodes the movies and compresses them with gzip.
+   *
+   * @return the compressed movies
+   * @throws IOException if the movies cannot be encoded
+   */
+  @Benchmark
+  public byte[] encodeGzipped() throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+      codec.getMovieListWriter().writeValue(gzip, movies);
+    }
+    return compressed.toByteArray();
+  }
+
+  /**
+   * Decodes the movies.
+   *
+   * @return the decoded movies
+   * @throws IOException if the movies cannot be decoded
+   */
+  @Benchmark
+  public List<Movie> decode() throws IOException {
+    return codec.getMovieListReader().readValue(encoded);
+  }
+}
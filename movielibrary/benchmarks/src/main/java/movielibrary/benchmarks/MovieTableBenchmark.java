@@ -0,0 +1,232 @@
+package movielibrary.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import movielibrary.core.Movie;
+import movielibrary.core.MovieTable;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares a {@link MovieTable} with the {@code List<Movie>} the library keeps its movies in:
+ * scanning every movie for the lent ones and the total length, looking up a title, and the heap
+ * both take up. The list is looked up through a map keyed by the normalized title, like the
+ * title index of the library.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class MovieTableBenchmark {
+
+  private static final int PROBES = 1024;
+
+  @Param({"100000", "1000000"})
+  private int size;
+
+  private List<Movie> movies;
+  private Map<String, Movie> titleIndex;
+  private MovieTable table;
+  private String[] probes;
+  private int nextProbe;
+
+  /**
+   * The heap a list or a table took up, measured once per iteration of the footprint benchmarks.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Footprint {
+
+    /**
+     * The bytes still in use after building the movies and collecting garbage.
+     */
+    public long retainedBytes;
+  }
+
+  /**
+   * Builds the list, its title index and the table, with every third movie lent, and picks
+   * the titles to look up, in another case than they are stored in.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    movies = movies(size);
+    titleIndex = new HashMap<>();
+    for (Movie movie : movies) {
+      titleIndex.put(movie.getTitle().toLowerCase().trim(), movie);
+    }
+    table = MovieTable.fromMovies(movies);
+    probes = new String[PROBES];
+    for (int i = 0; i < PROBES; i++) {
+      probes[i] = BenchmarkLibrary.title((int) ((long) i * size / PROBES)).toUpperCase();
+    }
+  }
+
+  /**
+   * Creates the movies of the benchmark library, with every third of them lent.
+   *
+   * @param size the number of movies
+   * @return the movies
+   */
+  private static List<Movie> movies(int size) {
+    List<Movie> movies = BenchmarkLibrary.movies(size);
+    for (int i = 0; i < size; i += 3) {
+      movies.get(i).setLent(true);
+    }
+    return movies;
+  }
+
+  /**
+   * Picks the next title to look up, going round the titles picked in the set-up.
+   *
+   * @return the title to look up
+   */
+  private String nextProbe() {
+    nextProbe = (nextProbe + 1) & (PROBES - 1);
+    return probes[nextProbe];
+  }
+
+  /**
+   * Counts the lent movies in the list.
+   *
+   * @return the number of lent movies
+   */
+  @Benchmark
+  public int countLentList() {
+    int count = 0;
+    for (Movie movie : movies) {
+      if (movie.getIsLent()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Counts the lent movies in the table.
+   *
+   * @return the number of lent movies
+   */
+  @Benchmark
+  public int countLentTable() {
+    return table.countLent();
+  }
+
+  /**
+   * Adds up the lengths of the movies in the list.
+   *
+   * @return the total length
+   */
+  @Benchmark
+  public double totalLengthList() {
+    double total = 0;
+    for (Movie movie : movies) {
+      total += movie.getMovieLength();
+    }
+    return total;
+  }
+
+  /**
+   * Adds up the lengths of the movies in the table.
+   *
+   * @return the total length
+   */
+  @Benchmark
+  public double totalLengthTable() {
+    return table.totalMovieLength();
+  }
+
+  /**
+   * Looks up a title in the map, normalizing it first like the library does.
+   *
+   * @return the movie found
+   */
+  @Benchmark
+  public Movie lookupList() {
+    return titleIndex.get(nextProbe().toLowerCase().trim());
+  }
+
+  /**
+   * Looks up a title in the table.
+   *
+   * @return the row found
+   */
+  @Benchmark
+  public int lookupTable() {
+    return table.indexOf(nextProbe());
+  }
+
+  /**
+   * Builds a list of movies with its title index and measures the heap it keeps.
+   *
+   * @param footprint where to report the heap
+   * @param blackhole keeps the list alive until it is measured
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 1)
+  @Measurement(iterations = 1)
+  public void footprintList(Footprint footprint, Blackhole blackhole) {
+    long before = usedHeap();
+    List<Movie> list = movies(size);
+    Map<String, Movie> index = new HashMap<>();
+    for (Movie movie : list) {
+      index.put(movie.getTitle().toLowerCase().trim(), movie);
+    }
+    footprint.retainedBytes = usedHeap() - before;
+    blackhole.consume(index);
+  }
+
+  /**
+   * Builds a table of movies one at a time, trims it and measures the heap it keeps. The movies
+   * are added as plain values, so there is nothing else left to collect.
+   *
+   * @param footprint where to report the heap
+   * @param blackhole keeps the table alive until it is measured
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 1)
+  @Measurement(iterations = 1)
+  public void footprintTable(Footprint footprint, Blackhole blackhole) {
+    long before = usedHeap();
+    MovieTable built = new MovieTable(size);
+    for (int i = 0; i < size; i++) {
+      built.add(BenchmarkLibrary.title(i), 90 + i % 60,
+          "Generated movie number " + i + " of the benchmark library.", i % 3 == 0);
+    }
+    built.trimToSize();
+    footprint.retainedBytes = usedHeap() - before;
+    blackhole.consume(built);
+  }
+
+  /**
+   * Collects garbage and returns the heap still in use.
+   *
+   * @return the used heap in bytes
+   */
+  private static long usedHeap() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+}
@@ -0,0 +1,99 @@
+package movielibrary.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import movielibrary.core.Movie;
+import movielibrary.json.internal.MovieDeserializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long it takes to find a movie by title in libraries of different sizes, through
+ * the title index of {@link MovieDeserializer#findMovie(String)} and through the linear scan it
+ * replaced, which normalized every title in the library on every lookup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class TitleLookupBenchmark {
+
+  @Param({"1000", "100000", "1000000"})
+  private int size;
+
+  private File file;
+  private MovieDeserializer deserializer;
+  private List<Movie> movies;
+
+  /**
+   * Writes a library of the benchmarked size and loads it.
+   *
+   * @throws IOException if an I/O error occurs while writing or reading the library
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    file = BenchmarkLibrary.write(size);
+    deserializer = new MovieDeserializer(file);
+    movies = deserializer.getMoviesInLibrary();
+  }
+
+  /**
+   * Deletes the library.
+   *
+   * @throws IOException if an I/O error occurs while deleting the library
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    BenchmarkLibrary.delete(file);
+  }
+
+  /**
+   * Picks a random title from the library, in another case than it is stored in.
+   *
+   * @return the title to look up
+   */
+  private String randomTitle() {
+    return BenchmarkLibrary.title(ThreadLocalRandom.current().nextInt(size)).toUpperCase();
+  }
+
+  /**
+   * Looks up a title through the title index.
+   *
+   * @return the movie found
+   * @throws IOException never, the library is in memory
+   */
+  @Benchmark
+  public Movie indexedLookup() throws IOException {
+    return deserializer.findMovie(randomTitle());
+  }
+
+  /**
+   * Looks up a title the way {@code findMovie} did before the title index.
+   *
+   * @return the movie found
+   */
+  @Benchmark
+  public Movie linearScan() {
+    String title = randomTitle();
+    return movies.stream()
+        .filter(movie -> movie.getTitle().toLowerCase().trim().equals(title.toLowerCase().trim()))
+        .findFirst()
+        .orElse(null);
+  }
+}
@@ -3,6 +3,9 @@ module movielibrary.core {
   requires com.fasterxml.jackson.core;
   requires com.fasterxml.jackson.databind;
   requires com.fasterxml.jackson.annotation;
+  requires static com.fasterxml.jackson.module.blackbird;
+  requires com.fasterxml.jackson.dataformat.cbor;
+  requires com.fasterxml.jackson.dataformat.smile;
 
   exports movielibrary.core;
   exports movielibrary.json.internal;
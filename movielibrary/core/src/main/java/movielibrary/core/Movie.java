@@ -9,7 +9,7 @@ public class Movie {
   private String title; 
   private double movieLength; 
   private String description; 
-  private boolean isLent; //Default value is set to false. False - Available. 
+  private volatile boolean isLent; //Default value is set to false. False - Available. 
   
   /**
    * Constructs a Movie object with the specified title, movie length, and description. 
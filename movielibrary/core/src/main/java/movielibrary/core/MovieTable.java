@@ -0,0 +1,535 @@
+package movielibrary.core;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * MovieTable stores a catalog of movies column by column instead of as one object per movie.
+ * Movie lengths are kept in a {@code double[]}, lent statuses as bits in a {@code long[]}, and
+ * titles and descriptions in one shared byte array: one byte per character for text that only
+ * uses Latin-1, like the JDK's compact strings, and two for anything else. Titles are found
+ * through an open-addressing hash table of row numbers, compared case-insensitively and without
+ * surrounding whitespace, like the rest of the library does.
+ *
+ * <p>Large catalogs therefore cost a handful of arrays rather than millions of small objects,
+ * and scans such as counting lent movies run over primitive arrays. {@link Movie} objects are
+ * only created on demand, by {@link #getMovie(int)} or through the view of {@link #asList()}.
+ * Looking up a title reads the characters of the probe in place, so it creates no objects.</p>
+ *
+ * <p>Titles are compared one character at a time with {@link Character#toLowerCase(char)},
+ * which only differs from {@link String#toLowerCase()} for the few characters that turn into
+ * more than one when lowercased.</p>
+ *
+ * <p>Rows are only ever appended. A table is meant to be built from a snapshot of the library,
+ * so removing movies means building a new table. A table is not safe for use by several
+ * threads at once while it is changed.</p>
+ */
+public final class MovieTable {
+
+  /**
+   * The largest array the table allocates, a little below {@link Integer#MAX_VALUE} since some
+   * virtual machines reserve header words in arrays.
+   */
+  static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+  /**
+   * The largest number of rows, so that the title slots, a power of two at least twice as many,
+   * stay an array.
+   */
+  static final int MAX_ROWS = 1 << 29;
+
+  private static final int MIN_CAPACITY = 16;
+  private static final int BYTES_PER_MOVIE = 64;
+  private static final long NO_STRING = -1;
+  private static final int LATIN1_MAX = 0xFF;
+
+  private int size;
+  private double[] movieLengths;
+  private long[] lentBits;
+  private long[] titleSpans;
+  private long[] descriptionSpans;
+  private int[] titleHashes;
+  private byte[] strings;
+  private int stringsSize;
+  private int[] titleSlots;
+
+  /**
+   * Constructs an empty MovieTable with room for the given number of movies.
+   * The table grows as needed.
+   *
+   * @param initialCapacity the number of movies to make room for
+   * @throws IllegalArgumentException if the capacity is negative or more than the table can hold
+   */
+  public MovieTable(int initialCapacity) {
+    this(initialCapacity, (long) initialCapacity * BYTES_PER_MOVIE);
+  }
+
+  private MovieTable(int initialCapacity, long stringBytes) {
+    if (initialCapacity < 0 || initialCapacity > MAX_ROWS) {
+      throw new IllegalArgumentException("The capacity must be between 0 and " + MAX_ROWS + ".");
+    }
+    int capacity = Math.max(initialCapacity, MIN_CAPACITY);
+    movieLengths = new double[capacity];
+    lentBits = new long[wordsFor(capacity)];
+    titleSpans = new long[capacity];
+    descriptionSpans = new long[capacity];
+    titleHashes = new int[capacity];
+    strings = new byte[(int) Math.min(stringBytes, MAX_ARRAY_LENGTH)];
+    titleSlots = new int[slotsFor(capacity)];
+  }
+
+  /**
+   * Creates a MovieTable holding the given movies, in the same order.
+   * The table is made exactly large enough for them.
+   *
+   * @param movies the movies to put in the table
+   * @return a new MovieTable
+   */
+  public static MovieTable fromMovies(List<Movie> movies) {
+    long stringBytes = 0;
+    for (Movie movie : movies) {
+      stringBytes += byteCount(movie.getTitle()) + byteCount(movie.getDescription());
+    }
+    MovieTable table = new MovieTable(movies.size(), stringBytes);
+    for (Movie movie : movies) {
+      table.add(movie);
+    }
+    return table;
+  }
+
+  /**
+   * Appends a movie to the table. The movie itself is not kept.
+   *
+   * @param movie the movie to add
+   * @return the row of the new movie
+   */
+  public int add(Movie movie) {
+    return add(movie.getTitle(), movie.getMovieLength(), movie.getDescription(),
+        movie.getIsLent());
+  }
+
+  /**
+   * Appends a movie to the table. If a movie with the same title is already in the table,
+   * title lookups keep finding the first one.
+   *
+   * @param title the title of the movie, cannot be null
+   * @param movieLength the length of the movie in minutes
+   * @param description the description of the movie, may be null
+   * @param isLent the lent status of the movie
+   * @return the row of the new movie
+   * @throws IllegalArgumentException if the title is null
+   * @throws IllegalStateException if the table cannot hold any more movies or text
+   */
+  public int add(String title, double movieLength, String description, boolean isLent) {
+    if (title == null) {
+      throw new IllegalArgumentException("Your argument can't be empty or null");
+    }
+    if (size == movieLengths.length) {
+      growRows();
+    }
+    int row = size;
+    titleSpans[row] = putString(title);
+    descriptionSpans[row] = description == null ? NO_STRING : putString(description);
+    titleHashes[row] = hash(title);
+    movieLengths[row] = movieLength;
+    writeLentBit(row, isLent);
+    size++;
+    if (indexOf(title) == -1) {
+      insertSlot(titleSlots, row);
+      if ((long) size * 2 > titleSlots.length) {
+        rehash();
+      }
+    }
+    return row;
+  }
+
+  /**
+   * Retrieves the number of movies in the table.
+   *
+   * @return the number of movies
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Finds the row of the movie with the given title.
+   * Titles are compared case-insensitively and without surrounding whitespace. The title is
+   * read in place, so no objects are created.
+   *
+   * @param title the title of the movie to find
+   * @return the row of the movie, or -1 if it is not in the table
+   */
+  public int indexOf(String title) {
+    int hash = hash(title);
+    int mask = titleSlots.length - 1;
+    for (int slot = hash & mask; titleSlots[slot] != 0; slot = (slot + 1) & mask) {
+      int row = titleSlots[slot] - 1;
+      if (titleHashes[row] == hash && titleEquals(row, title)) {
+        return row;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Retrieves the title of the movie in the given row.
+   *
+   * @param row the row of the movie
+   * @return the title of the movie
+   */
+  public String getTitle(int row) {
+    checkRow(row);
+    return readString(titleSpans[row]);
+  }
+
+  /**
+   * Retrieves the length of the movie in the given row.
+   *
+   * @param row the row of the movie
+   * @return the movie length in minutes
+   */
+  public double getMovieLength(int row) {
+    checkRow(row);
+    return movieLengths[row];
+  }
+
+  /**
+   * Retrieves the description of the movie in the given row.
+   *
+   * @param row the row of the movie
+   * @return the description of the movie, or null if it has none
+   */
+  public String getDescription(int row) {
+    checkRow(row);
+    long span = descriptionSpans[row];
+    return span == NO_STRING ? null : readString(span);
+  }
+
+  /**
+   * Retrieves the lending status of the movie in the given row.
+   *
+   * @param row the row of the movie
+   * @return true if the movie is lent, false if it is available
+   */
+  public boolean isLent(int row) {
+    checkRow(row);
+    return (lentBits[row >>> 6] & (1L << row)) != 0;
+  }
+
+  /**
+   * Sets the lending status of the movie in the given row.
+   *
+   * @param row the row of the movie
+   * @param isLent true if the movie is lent, false if it is available
+   */
+  public void setLent(int row, boolean isLent) {
+    checkRow(row);
+    writeLentBit(row, isLent);
+  }
+
+  /**
+   * Counts the movies that are lent, by scanning the lent bits a word at a time.
+   *
+   * @return the number of lent movies
+   */
+  public int countLent() {
+    int count = 0;
+    for (int word = 0; word < wordsFor(size); word++) {
+      count += Long.bitCount(lentBits[word]);
+    }
+    return count;
+  }
+
+  /**
+   * Adds up the lengths of all movies in the table.
+   *
+   * @return the total length of all movies in minutes
+   */
+  public double totalMovieLength() {
+    double total = 0;
+    for (int row = 0; row < size; row++) {
+      total += movieLengths[row];
+    }
+    return total;
+  }
+
+  /**
+   * Creates a Movie with the data in the given row. Changes to the returned movie are not
+   * written back to the table.
+   *
+   * @param row the row of the movie
+   * @return a new Movie object
+   */
+  public Movie getMovie(int row) {
+    Movie movie = new Movie(getTitle(row), getMovieLength(row), getDescription(row));
+    movie.setLent(isLent(row));
+    return movie;
+  }
+
+  /**
+   * Returns a read-only view of the table as a list of movies. Every {@code get} creates the
+   * movie of that row with {@link #getMovie(int)}, so the view costs nothing until it is read,
+   * and it sees movies added to the table later.
+   *
+   * @return the movies of the table, in the order of their rows
+   */
+  public List<Movie> asList() {
+    return new MovieView();
+  }
+
+  /**
+   * Shrinks the arrays of the table to what its movies take up, like
+   * {@link java.util.ArrayList#trimToSize()}. Worth calling once a table that was built one
+   * movie at a time is complete.
+   */
+  public void trimToSize() {
+    int capacity = Math.max(size, MIN_CAPACITY);
+    movieLengths = Arrays.copyOf(movieLengths, capacity);
+    lentBits = Arrays.copyOf(lentBits, wordsFor(capacity));
+    titleSpans = Arrays.copyOf(titleSpans, capacity);
+    descriptionSpans = Arrays.copyOf(descriptionSpans, capacity);
+    titleHashes = Arrays.copyOf(titleHashes, capacity);
+    strings = Arrays.copyOf(strings, stringsSize);
+  }
+
+  /**
+   * Estimates how many bytes the arrays of the table take up on the heap, including the unused
+   * capacity but not the array headers.
+   *
+   * @return the estimated size of the table in bytes
+   */
+  public long estimateHeapBytes() {
+    return (long) movieLengths.length * Double.BYTES
+        + (long) lentBits.length * Long.BYTES
+        + 2L * titleSpans.length * Long.BYTES
+        + (long) titleHashes.length * Integer.BYTES
+        + strings.length
+        + (long) titleSlots.length * Integer.BYTES;
+  }
+
+  private void checkRow(int row) {
+    if (row < 0 || row >= size) {
+      throw new IndexOutOfBoundsException("No movie in row " + row);
+    }
+  }
+
+  private void writeLentBit(int row, boolean isLent) {
+    if (isLent) {
+      lentBits[row >>> 6] |= 1L << row;
+    } else {
+      lentBits[row >>> 6] &= ~(1L << row);
+    }
+  }
+
+  /**
+   * Appends a string to the shared bytes, one byte per character if every character fits in
+   * Latin-1 and two otherwise.
+   *
+   * @param value the string
+   * @return the span of the string: its offset in the upper half, then its length in characters
+   *         and whether it takes two bytes per character in the lowest bit
+   */
+  private long putString(String value) {
+    long byteCount = byteCount(value);
+    boolean wide = byteCount > value.length();
+    ensureStringCapacity(stringsSize + byteCount);
+    int offset = stringsSize;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (wide) {
+        strings[offset + 2 * i] = (byte) (c >>> 8);
+        strings[offset + 2 * i + 1] = (byte) c;
+      } else {
+        strings[offset + i] = (byte) c;
+      }
+    }
+    stringsSize += (int) byteCount;
+    return (long) offset << 32 | (long) value.length() << 1 | (wide ? 1 : 0);
+  }
+
+  /**
+   * Works out how many bytes a string takes up in the table.
+   *
+   * @param value the string, may be null
+   * @return one byte per character if every character fits in Latin-1, otherwise two
+   */
+  private static long byteCount(String value) {
+    if (value == null) {
+      return 0;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      if (value.charAt(i) > LATIN1_MAX) {
+        return 2L * value.length();
+      }
+    }
+    return value.length();
+  }
+
+  private String readString(long span) {
+    char[] chars = new char[spanLength(span)];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = charAt(span, i);
+    }
+    return new String(chars);
+  }
+
+  private char charAt(long span, int index) {
+    int offset = (int) (span >>> 32);
+    if ((span & 1) == 0) {
+      return (char) (strings[offset + index] & LATIN1_MAX);
+    }
+    return (char) ((strings[offset + 2 * index] & LATIN1_MAX) << 8
+        | strings[offset + 2 * index + 1] & LATIN1_MAX);
+  }
+
+  private static int spanLength(long span) {
+    return (int) (span >>> 1) & Integer.MAX_VALUE;
+  }
+
+  /**
+   * Compares the title of a row with a probe, both without surrounding whitespace and ignoring
+   * case, without creating a string.
+   *
+   * @param row the row
+   * @param title the probe
+   * @return {@code true} if the titles are the same
+   */
+  private boolean titleEquals(int row, String title) {
+    long span = titleSpans[row];
+    int storedStart = 0;
+    int storedEnd = spanLength(span);
+    while (storedStart < storedEnd && charAt(span, storedStart) <= ' ') {
+      storedStart++;
+    }
+    while (storedEnd > storedStart && charAt(span, storedEnd - 1) <= ' ') {
+      storedEnd--;
+    }
+    int start = trimmedStart(title);
+    int end = trimmedEnd(title, start);
+    if (end - start != storedEnd - storedStart) {
+      return false;
+    }
+    for (int i = 0; i < end - start; i++) {
+      if (Character.toLowerCase(title.charAt(start + i))
+          != Character.toLowerCase(charAt(span, storedStart + i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Hashes a title without surrounding whitespace and ignoring case, like
+   * {@code title.toLowerCase().trim().hashCode()} but without creating a string.
+   *
+   * @param title the title
+   * @return the hash, with the high bits spread into the low ones the slots are picked by
+   */
+  private static int hash(String title) {
+    int start = trimmedStart(title);
+    int end = trimmedEnd(title, start);
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + Character.toLowerCase(title.charAt(i));
+    }
+    return hash ^ (hash >>> 16);
+  }
+
+  private static int trimmedStart(String title) {
+    int start = 0;
+    while (start < title.length() && title.charAt(start) <= ' ') {
+      start++;
+    }
+    return start;
+  }
+
+  private static int trimmedEnd(String title, int start) {
+    int end = title.length();
+    while (end > start && title.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    return end;
+  }
+
+  private void growRows() {
+    int capacity = grownLength(movieLengths.length, (long) size + 1, MAX_ROWS);
+    movieLengths = Arrays.copyOf(movieLengths, capacity);
+    lentBits = Arrays.copyOf(lentBits, wordsFor(capacity));
+    titleSpans = Arrays.copyOf(titleSpans, capacity);
+    descriptionSpans = Arrays.copyOf(descriptionSpans, capacity);
+    titleHashes = Arrays.copyOf(titleHashes, capacity);
+  }
+
+  private void ensureStringCapacity(long needed) {
+    if (needed > strings.length) {
+      strings = Arrays.copyOf(strings, grownLength(strings.length, needed, MAX_ARRAY_LENGTH));
+    }
+  }
+
+  /**
+   * Works out the new length of an array that has to grow, doubling it but never past the
+   * limit. Lengths are computed as {@code long}, so doubling a large array cannot overflow.
+   *
+   * @param length the current length
+   * @param needed the smallest length that is enough
+   * @param limit the largest length allowed
+   * @return the new length
+   * @throws IllegalStateException if even the largest length allowed is not enough
+   */
+  private static int grownLength(int length, long needed, int limit) {
+    if (needed > limit) {
+      throw new IllegalStateException("The movie table can't hold any more movies.");
+    }
+    return (int) Math.min(Math.max(2L * length, needed), limit);
+  }
+
+  /**
+   * Doubles the title slots. Only the rows that are in the slots are moved, so titles that
+   * were added more than once keep pointing at their first row.
+   */
+  private void rehash() {
+    int[] slots = new int[titleSlots.length * 2];
+    for (int entry : titleSlots) {
+      if (entry != 0) {
+        insertSlot(slots, entry - 1);
+      }
+    }
+    titleSlots = slots;
+  }
+
+  private void insertSlot(int[] slots, int row) {
+    int mask = slots.length - 1;
+    int slot = titleHashes[row] & mask;
+    while (slots[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    slots[slot] = row + 1;
+  }
+
+  private static int wordsFor(int rows) {
+    return (int) (((long) rows + 63) >>> 6);
+  }
+
+  private static int slotsFor(int rows) {
+    return Integer.highestOneBit(Math.max(rows, 1) * 2 - 1) << 1;
+  }
+
+  /**
+   * The read-only list view of {@link #asList()}.
+   */
+  private final class MovieView extends AbstractList<Movie> implements RandomAccess {
+
+    @Override
+    public Movie get(int index) {
+      return getMovie(index);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+}
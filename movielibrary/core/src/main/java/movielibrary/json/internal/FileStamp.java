@@ -0,0 +1,69 @@
+package movielibrary.json.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+
+/**
+ * The {@code FileStamp} class captures the last modification time and size of a file.
+ * Two stamps of the same file are equal as long as the file has not been changed in between,
+ * which lets the JSON layer skip reparsing files it has already read.
+ */
+final class FileStamp {
+
+  private final FileTime lastModified;
+  private final long size;
+
+  private FileStamp(FileTime lastModified, long size) {
+    this.lastModified = lastModified;
+    this.size = size;
+  }
+
+  /**
+   * Reads the current stamp of the given file.
+   * A file that does not exist gets a stamp of its own, so creating it counts as a change.
+   *
+   * @param file the file to stamp
+   * @return the current {@code FileStamp} of the file
+   * @throws IOException if an I/O error occurs while reading the file attributes
+   */
+  static FileStamp of(File file) throws IOException {
+    try {
+      BasicFileAttributes attributes =
+          Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+      return new FileStamp(attributes.lastModifiedTime(), attributes.size());
+    } catch (NoSuchFileException e) {
+      return new FileStamp(null, -1);
+    }
+  }
+
+  /**
+   * Returns the size of the file when it was stamped.
+   *
+   * @return the size in bytes, or 0 if the file did not exist
+   */
+  long getSize() {
+    return Math.max(0, size);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof FileStamp)) {
+      return false;
+    }
+    FileStamp stamp = (FileStamp) other;
+    return Objects.equals(lastModified, stamp.lastModified) && size == stamp.size;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(lastModified, size);
+  }
+}
@@ -0,0 +1,158 @@
+package movielibrary.json.internal;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The {@code GroupCommitter} class coalesces changes that arrive close together into a single
+ * flush to disk. Every change that needs to be durable is registered with {@link #register(int)}
+ * once it is waiting for a flush, and the caller then waits for its own commit with
+ * {@link #await(CompletableFuture)}. A background thread runs the flush once the commit window
+ * has passed since the first waiting change, or as soon as the maximum number of changes is
+ * waiting, whichever comes first.
+ *
+ * <p>The flush itself decides which changes it covers and completes their commits, so a change
+ * that another flush already covered only costs a flush that finds nothing to do. The committer
+ * holds no lock of the library; it only decides when to flush.</p>
+ *
+ * <p>{@link #stop()} flushes the changes that are still waiting and then stops the thread.</p>
+ */
+final class GroupCommitter {
+
+  /**
+   * The flush that makes every change applied so far durable.
+   */
+  interface Flush {
+
+    /**
+     * Runs the flush, completing the commit of every change it makes durable. If it fails, it
+     * must leave the library as it is on disk and fail those commits instead of throwing.
+     */
+    void run();
+  }
+
+  private final Flush flush;
+  private final long windowNanos;
+  private final int maxBatchSize;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition changesWaiting = lock.newCondition();
+  private final Thread flusher;
+  private int waitingChanges;
+  private boolean stopped;
+
+  /**
+   * Constructs a {@code GroupCommitter} and starts its flushing thread.
+   *
+   * @param flush the flush that makes the waiting changes durable
+   * @param windowMillis how long to wait for more changes after the first one, in milliseconds
+   * @param maxBatchSize the number of waiting changes that triggers a flush right away
+   * @throws IllegalArgumentException if the window is negative or the batch size less than 1
+   */
+  GroupCommitter(Flush flush, long windowMillis, int maxBatchSize) {
+    if (windowMillis < 0 || maxBatchSize < 1) {
+      throw new IllegalArgumentException(
+          "The commit window can't be negative and the batch size must be at least 1.");
+    }
+    this.flush = flush;
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    this.maxBatchSize = maxBatchSize;
+    this.flusher = new Thread(this::flushLoop, "movielibrary-group-commit");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  /**
+   * Registers changes that are waiting for a flush. Must be called after the changes were handed
+   * to the flush, so they cannot miss the flush this starts.
+   *
+   * @param changes the number of changes that are waiting
+   * @return {@code false} if the committer has been stopped, so the caller must flush the
+   *         changes itself
+   */
+  boolean register(int changes) {
+    lock.lock();
+    try {
+      if (stopped) {
+        return false;
+      }
+      waitingChanges += changes;
+      changesWaiting.signalAll();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until a commit has completed. Must be called without holding any lock of the library,
+   * so other changes can join the same flush.
+   *
+   * @param commit the commit of the change
+   * @throws IOException if the flush failed or the wait was interrupted
+   */
+  static void await(CompletableFuture<Void> commit) throws IOException {
+    try {
+      commit.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the change to be saved.");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Could not save the change.", e.getCause());
+    }
+  }
+
+  /**
+   * Flushes the changes that are still waiting, then stops the flushing thread and waits for it to
+   * finish. Must be called without holding any lock of the library, which the last flush needs.
+   * Changes registered afterwards are turned away.
+   */
+  void stop() {
+    lock.lock();
+    try {
+      stopped = true;
+      changesWaiting.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    if (Thread.currentThread() == flusher) {
+      return;
+    }
+    try {
+      flusher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void flushLoop() {
+    while (true) {
+      lock.lock();
+      try {
+        while (waitingChanges == 0 && !stopped) {
+          changesWaiting.awaitUninterruptibly();
+        }
+        if (waitingChanges == 0) {
+          return;
+        }
+        long remaining = windowNanos;
+        while (waitingChanges < maxBatchSize && remaining > 0 && !stopped) {
+          remaining = changesWaiting.awaitNanos(remaining);
+        }
+        waitingChanges = 0;
+      } catch (InterruptedException e) {
+        return;
+      } finally {
+        lock.unlock();
+      }
+      flush.run();
+    }
+  }
+}
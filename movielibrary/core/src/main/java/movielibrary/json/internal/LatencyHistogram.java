@@ -0,0 +1,120 @@
+package movielibrary.json.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The {@code LatencyHistogram} class counts durations in buckets that grow with the value,
+ * so percentiles can be read back at any time with a fixed amount of memory.
+ *
+ * <p>Every power of two is split into 16 buckets, so a percentile is at most
+ * about 6% above the true value, from nanoseconds up to hours. Recording only increments two
+ * counters and never locks, which keeps it cheap enough to leave on for every request.</p>
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  /**
+   * Records one duration.
+   *
+   * @param nanos the duration in nanoseconds, negative values are counted as 0
+   */
+  public void record(long nanos) {
+    long value = Math.max(0, nanos);
+    buckets.incrementAndGet(bucketOf(value));
+    count.incrementAndGet();
+    long max = maxNanos.get();
+    while (value > max && !maxNanos.compareAndSet(max, value)) {
+      max = maxNanos.get();
+    }
+  }
+
+  /**
+   * Returns the number of recorded durations.
+   *
+   * @return the count
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * Returns the longest recorded duration.
+   *
+   * @return the maximum in nanoseconds, or 0 if nothing has been recorded
+   */
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  /**
+   * Returns the duration that the given fraction of the recorded durations did not exceed,
+   * rounded up to the end of its bucket.
+   *
+   * @param fraction the percentile as a fraction, for example {@code 0.99} for p99
+   * @return the percentile in nanoseconds, or 0 if nothing has been recorded
+   * @throws IllegalArgumentException if the fraction is not between 0 and 1
+   */
+  public long getPercentileNanos(double fraction) {
+    if (!(fraction >= 0 && fraction <= 1)) {
+      throw new IllegalArgumentException("The percentile must be between 0 and 1.");
+    }
+    long[] snapshot = new long[BUCKET_COUNT];
+    long total = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = buckets.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(fraction * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(upperBoundOf(i), getMaxNanos());
+      }
+    }
+    return getMaxNanos();
+  }
+
+  /**
+   * Finds the bucket of a value. Values below 16 have a bucket each,
+   * larger values share a bucket with the values that have the same highest bits.
+   *
+   * @param value the value, not negative
+   * @return the index of the bucket
+   */
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+    return (shift + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * Returns the largest value that falls in a bucket.
+   *
+   * @param bucket the index of the bucket
+   * @return the upper bound of the bucket
+   */
+  static long upperBoundOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    return lowerBound + (1L << shift) - 1;
+  }
+}
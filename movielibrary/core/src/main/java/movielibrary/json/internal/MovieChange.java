@@ -0,0 +1,96 @@
+package movielibrary.json.internal;
+
+import movielibrary.json.internal.MovieJournal.Operation;
+
+/**
+ * The {@code MovieChange} class describes one change to the movie library after it has been
+ * applied: what happened, to which movie, and the catalog version it produced. Versions
+ * increase with every change, so listeners can tell the order of changes and whether they
+ * have missed any.
+ */
+public final class MovieChange {
+
+  /**
+   * The kinds of changes. {@code RESYNC} is not a change to one movie: the movies were read from
+   * disk again, which may undo changes that were seen but never written, so listeners should
+   * fetch the whole library again. It has no title.
+   */
+  public enum Type {
+    ADDED, DELETED, LENT, RETURNED, RESYNC
+  }
+
+  private final Type type;
+  private final String title;
+  private final long version;
+
+  /**
+   * Creates a {@code MovieChange}.
+   *
+   * @param type the kind of change
+   * @param title the title of the movie that changed
+   * @param version the catalog version after the change
+   */
+  public MovieChange(Type type, String title, long version) {
+    this.type = type;
+    this.title = title;
+    this.version = version;
+  }
+
+  /**
+   * Creates the {@code MovieChange} for a journal operation.
+   *
+   * @param operation the operation that was applied
+   * @param title the title of the movie that changed
+   * @param version the catalog version after the change
+   * @return the change
+   */
+  static MovieChange of(Operation operation, String title, long version) {
+    switch (operation) {
+      case ADD:
+        return new MovieChange(Type.ADDED, title, version);
+      case DELETE:
+        return new MovieChange(Type.DELETED, title, version);
+      case LEND:
+        return new MovieChange(Type.LENT, title, version);
+      default:
+        return new MovieChange(Type.RETURNED, title, version);
+    }
+  }
+
+  /**
+   * Creates the {@code MovieChange} telling listeners that the movies were read from disk again.
+   *
+   * @param version the catalog version after reading the movies
+   * @return the change
+   */
+  static MovieChange resync(long version) {
+    return new MovieChange(Type.RESYNC, null, version);
+  }
+
+  /**
+   * Returns the kind of change.
+   *
+   * @return the type of the change
+   */
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * Returns the title of the movie that changed.
+   *
+   * @return the title, or {@code null} for {@link Type#RESYNC}
+   */
+  public String getTitle() {
+    return title;
+  }
+
+  /**
+   * Returns the catalog version after the change.
+   *
+   * @return the version
+   */
+  public long getVersion() {
+    return version;
+  }
+}
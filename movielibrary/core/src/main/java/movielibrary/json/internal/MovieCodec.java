@@ -0,0 +1,252 @@
+package movielibrary.json.internal;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import movielibrary.core.Movie;
+
+/**
+ * The {@code MovieCodec} class holds the pre-configured Jackson readers and writers used to
+ * convert {@link Movie} objects and lists of movies to and from JSON.
+ *
+ * <p>Building an {@code ObjectMapper} and resolving {@code List<Movie>} is expensive, so it is
+ * done once here and the resulting immutable, thread-safe readers and writers are shared by
+ * everyone through {@link #getInstance()}.</p>
+ *
+ * <p>Setting the system property {@code movielibrary.json.accelerated} to {@code true} makes the
+ * shared codec use the Jackson Blackbird module, which replaces reflection with generated
+ * accessors for faster serialization. Blackbird is an optional dependency, only used on the class
+ * path and only if its jar is there. In a named module it cannot work: its accessors are defined
+ * in the package of the movie classes and implement interfaces the Blackbird module does not
+ * export. Without Blackbird the codec falls back to reflection, which {@link #isAccelerated()}
+ * tells.</p>
+ *
+ * <p>Besides JSON, there is a shared codec for each of the binary {@link MovieFormat formats},
+ * available through {@link #getInstance(MovieFormat)}. They read and write the same fields as
+ * the JSON codec, so a movie survives a round trip through any of them.</p>
+ */
+public final class MovieCodec {
+
+  /**
+   * System property that turns on the Blackbird accelerated codec.
+   */
+  public static final String ACCELERATED_PROPERTY = "movielibrary.json.accelerated";
+
+  private static final String BLACKBIRD_CLASS =
+      "com.fasterxml.jackson.module.blackbird.BlackbirdModule";
+
+  private static final Map<MovieFormat, MovieCodec> INSTANCES = createInstances();
+
+  private final MovieFormat format;
+  private final boolean accelerated;
+  private final ObjectMapper mapper;
+  private final ObjectReader movieReader;
+  private final ObjectReader movieListReader;
+  private final ObjectWriter movieWriter;
+  private final ObjectWriter movieListWriter;
+  private final ObjectWriter prettyMovieListWriter;
+
+  private MovieCodec(boolean accelerated, MovieFormat format) {
+    this.format = format;
+    this.accelerated = accelerated && canAccelerate();
+    mapper = createMapper(format);
+    if (this.accelerated) {
+      Blackbird.register(mapper);
+    }
+    movieReader = mapper.readerFor(Movie.class);
+    movieListReader = mapper.readerFor(new TypeReference<List<Movie>>(){});
+    movieWriter = mapper.writerFor(Movie.class);
+    movieListWriter = mapper.writerFor(new TypeReference<List<Movie>>(){});
+    prettyMovieListWriter = movieListWriter.withDefaultPrettyPrinter();
+  }
+
+  /**
+   * Creates a {@code MovieCodec} with its own {@code ObjectMapper}.
+   * Most callers should use the shared {@link #getInstance()} instead.
+   *
+   * @param accelerated {@code true} to register the Blackbird module, if it can be used
+   * @return a new {@code MovieCodec}
+   */
+  public static MovieCodec createMovieCodec(boolean accelerated) {
+    return new MovieCodec(accelerated, MovieFormat.JSON);
+  }
+
+  /**
+   * Creates a {@code MovieCodec} for the given format with its own {@code ObjectMapper}.
+   * Most callers should use the shared {@link #getInstance(MovieFormat)} instead.
+   *
+   * @param accelerated {@code true} to register the Blackbird module, if it can be used
+   * @param format the format the codec reads and writes
+   * @return a new {@code MovieCodec}
+   */
+  public static MovieCodec createMovieCodec(boolean accelerated, MovieFormat format) {
+    return new MovieCodec(accelerated, format);
+  }
+
+  /**
+   * Creates the shared codecs, one for each format.
+   *
+   * @return the shared codec of each format
+   */
+  private static Map<MovieFormat, MovieCodec> createInstances() {
+    boolean accelerated = Boolean.getBoolean(ACCELERATED_PROPERTY);
+    Map<MovieFormat, MovieCodec> instances = new EnumMap<>(MovieFormat.class);
+    for (MovieFormat format : MovieFormat.values()) {
+      instances.put(format, new MovieCodec(accelerated, format));
+    }
+    return instances;
+  }
+
+  /**
+   * Creates an {@code ObjectMapper} that reads and writes the given format.
+   *
+   * @param format the format
+   * @return a new {@code ObjectMapper}
+   */
+  private static ObjectMapper createMapper(MovieFormat format) {
+    return switch (format) {
+      case CBOR -> new CBORMapper();
+      case SMILE -> new SmileMapper();
+      default -> new ObjectMapper();
+    };
+  }
+
+  /**
+   * Checks whether Blackbird can generate accessors for the movie classes. That takes the movie
+   * classes to be on the class path rather than in a named module, and the Blackbird classes to
+   * be on the class path too.
+   *
+   * @return {@code true} if the Blackbird module can be used
+   */
+  public static boolean canAccelerate() {
+    if (Movie.class.getModule().isNamed()) {
+      return false;
+    }
+    try {
+      Class.forName(BLACKBIRD_CLASS, false, MovieCodec.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns the codec shared by the whole application.
+   *
+   * @return the shared {@code MovieCodec}
+   */
+  public static MovieCodec getInstance() {
+    return INSTANCES.get(MovieFormat.JSON);
+  }
+
+  /**
+   * Returns the codec of the given format shared by the whole application.
+   *
+   * @param format the format to read and write
+   * @return the shared {@code MovieCodec} of the format
+   */
+  public static MovieCodec getInstance(MovieFormat format) {
+    return INSTANCES.get(format);
+  }
+
+  /**
+   * Returns the format the codec reads and writes.
+   *
+   * @return the format of the codec
+   */
+  public MovieFormat getFormat() {
+    return format;
+  }
+
+  /**
+   * Returns whether the codec uses the Blackbird module. It only does if it was asked to and
+   * {@link #canAccelerate()} was {@code true}.
+   *
+   * @return {@code true} if the codec is accelerated
+   */
+  public boolean isAccelerated() {
+    return accelerated;
+  }
+
+  /**
+   * Returns the underlying {@code ObjectMapper}, for reading and writing types the codec does not
+   * have a dedicated reader or writer for. It must not be reconfigured.
+   *
+   * @return the {@code ObjectMapper} of the codec
+   */
+  public ObjectMapper getMapper() {
+    return mapper;
+  }
+
+  /**
+   * Returns the reader for a single {@link Movie}.
+   *
+   * @return an {@code ObjectReader} for {@code Movie}
+   */
+  public ObjectReader getMovieReader() {
+    return movieReader;
+  }
+
+  /**
+   * Returns the reader for a list of movies.
+   *
+   * @return an {@code ObjectReader} for {@code List<Movie>}
+   */
+  public ObjectReader getMovieListReader() {
+    return movieListReader;
+  }
+
+  /**
+   * Returns the writer for a single {@link Movie}.
+   *
+   * @return an {@code ObjectWriter} for {@code Movie}
+   */
+  public ObjectWriter getMovieWriter() {
+    return movieWriter;
+  }
+
+  /**
+   * Returns the compact writer for a list of movies.
+   *
+   * @return an {@code ObjectWriter} for {@code List<Movie>}
+   */
+  public ObjectWriter getMovieListWriter() {
+    return movieListWriter;
+  }
+
+  /**
+   * Returns the pretty-printing writer for a list of movies, used for the movie library file.
+   * The binary formats have nothing to indent, so theirs is the same as the compact writer.
+   *
+   * @return an indenting {@code ObjectWriter} for {@code List<Movie>}
+   */
+  public ObjectWriter getPrettyMovieListWriter() {
+    return prettyMovieListWriter;
+  }
+
+  /**
+   * Registers the Blackbird module. It is kept apart from {@link MovieCodec}, so the Blackbird
+   * classes are only loaded once {@link #canAccelerate()} has found them.
+   */
+  private static final class Blackbird {
+
+    private Blackbird() {
+    }
+
+    /**
+     * Registers the Blackbird module with a mapper.
+     *
+     * @param mapper the mapper
+     */
+    static void register(ObjectMapper mapper) {
+      mapper.registerModule(new BlackbirdModule());
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package movielibrary.json.internal;
+
+/**
+ * The {@code MovieConflictException} is thrown when a movie is lent that is already lent, or
+ * returned that is not lent. It carries the movie as it was when the change was refused, so
+ * the caller can show it without reading it again, when it may have changed once more.
+ */
+public class MovieConflictException extends IllegalStateException {
+
+  private final transient MovieState state;
+
+  /**
+   * Creates a {@code MovieConflictException}.
+   *
+   * @param message the reason the change was refused
+   * @param state the movie as it was when the change was refused
+   */
+  public MovieConflictException(String message, MovieState state) {
+    super(message);
+    this.state = state;
+  }
+
+  /**
+   * Returns the movie as it was when the change was refused.
+   *
+   * @return the movie and its version
+   */
+  public MovieState getState() {
+    return state;
+  }
+}
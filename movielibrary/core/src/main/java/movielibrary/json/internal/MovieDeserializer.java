@@ -1,14 +1,19 @@
 package movielibrary.json.internal;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import movielibrary.core.Movie;
 
 /**
@@ -16,13 +21,39 @@ import movielibrary.core.Movie;
  * from a file into a list of {@link Movie} objects. It allows searching for movies by title, 
  * retrieving the list of movies, and checking whether a movie is lent. 
  *
- * <p>This class uses the Jackson library to handle JSON deserialization.</p>
+ * <p>This class uses the Jackson library, through the shared {@link MovieCodec},
+ * to handle JSON deserialization.</p>
+ *
+ * <p>It also keeps a catalog version that increases every time the movies in memory change,
+ * and the version at which each movie last changed, so callers can tell cheaply whether
+ * anything is different from what they saw before.</p>
+ *
+ * <p>If a binary {@link MovieSnapshot} that was written together with the current content of the
+ * file is next to it, and there is no journal to replay, the file is not parsed at all.
+ * {@link #findMovie(String)} and {@link #checkIfLent(String)} are answered from the mapped
+ * snapshot, and the movies are only created from it, still without parsing, once they are needed
+ * in memory: for the first change, to list them all or to search them. Movies found in the
+ * snapshot are copies, so changes go through the movies in memory instead.</p>
+ *
+ * <p>The deserializer does no locking of its own. {@link MovieSerializer} reads and changes the
+ * lent status of movies while holding the read side of its catalog lock, so the catalog version
+ * and the versions of the movies can be updated from several threads at once, and everything
+ * else, from adding and removing movies to reading the file again, while holding the write
+ * side.</p>
  */ 
 public class MovieDeserializer {
 
-  private ObjectMapper movieLibrary;
+  private MovieStreamReader movieReader;
   private File file; 
-  private List<Movie> moviesInLibrary;
+  private Catalog catalog;
+  private MovieSnapshot snapshot;
+  private boolean loadedFromSnapshot;
+  private volatile FileStamp loadedStamp;
+  private volatile FileStamp loadedJournalStamp;
+  private final AtomicLong catalogVersion = new AtomicLong();
+  private long loadedVersion;
+  private Map<String, Long> movieVersions = new ConcurrentHashMap<>();
+  private boolean exclusive;
     
   /**
    * Constructs a {@code MovieDeserializer} object that initializes the movie file 
@@ -34,7 +65,7 @@ public class MovieDeserializer {
    * @throws IOException if an I/O error occurs during the file initialization or reading
    */
   public MovieDeserializer(File file) throws IOException {
-    movieLibrary = new ObjectMapper();
+    movieReader = new MovieStreamReader(false);
     this.file = file;
     try {
       initializeMovieFile(file);
@@ -42,7 +73,7 @@ public class MovieDeserializer {
       e.printStackTrace();
     }
     try {
-      moviesInLibrary = movieLibrary.readValue(this.file, new TypeReference<List<Movie>>(){});
+      readMovieData();
     } catch (IOException e) {
       System.err.println("An error occured during reading movie data: " + e.getMessage());
     }
@@ -64,21 +95,130 @@ public class MovieDeserializer {
     }
   }
 
+  /**
+   * Normalizes a movie title into the key used by the title index.
+   * Titles are compared case-insensitively and without surrounding whitespace.
+   *
+   * @param title the title to normalize
+   * @return the normalized title
+   */
+  static String normalizeTitle(String title) {
+    return title.toLowerCase().trim();
+  }
+
+  /**
+   * Adds a movie to the deserialized movie library, the title index and the search index.
+   *
+   * @param movie the movie to add
+   * @throws IOException if the movies could not be loaded into memory
+   */
+  void addMovie(Movie movie) throws IOException {
+    catalog().add(movie);
+    markChanged(movie);
+  }
+
+  /**
+   * Removes a movie from the deserialized movie library, the title index and the search index.
+   * If another movie with the same normalized title is still in the library,
+   * it takes over the index entry. Removing takes the same time however large the library is.
+   *
+   * @param movie the movie to remove
+   * @throws IOException if the movies could not be loaded into memory
+   */
+  void removeMovie(Movie movie) throws IOException {
+    catalog().remove(movie);
+    markChanged(movie);
+  }
+
+  /**
+   * Returns the number of movies in the deserialized movie library.
+   *
+   * @return the number of movies
+   */
+  int size() {
+    return catalog == null ? snapshot.size() : catalog.size();
+  }
+
+  /**
+   * Records that a movie in memory has changed, for example after its lent status was set.
+   * Increases the catalog version and sets the version of the movie to it. Changes to different
+   * titles may be recorded from several threads at once.
+   *
+   * @param movie the movie that changed
+   * @return the new version of the movie
+   */
+  long markChanged(Movie movie) {
+    long version = catalogVersion.incrementAndGet();
+    movieVersions.merge(normalizeTitle(movie.getTitle()), version, Math::max);
+    return version;
+  }
+
+  /**
+   * Returns the catalog version, which increases every time a movie is added, deleted, lent or
+   * returned, and every time the file is read again. It is only meaningful within the lifetime
+   * of this object.
+   *
+   * @return the current catalog version
+   */
+  public long getCatalogVersion() {
+    return catalogVersion.get();
+  }
+
+  /**
+   * Returns the catalog version at which the movie with the given title last changed,
+   * or at which the file was last read if it has not changed since.
+   *
+   * @param title the title of the movie
+   * @return the version of the movie
+   */
+  public long getMovieVersion(String title) {
+    return movieVersions.getOrDefault(normalizeTitle(title), loadedVersion);
+  }
+
   /**
    * Finds and returns a movie with the specified title from the deserialized movie library. 
+   * The lookup goes through the title index, so it does not scan the library.
+   * While the movies are not in memory yet, it is a binary search in the mapped snapshot, and the
+   * movie returned is a copy; use {@link #findMovieToChange(String)} to change it.
    *
    * @param title the title of the movie to find
    * @return the {@link Movie} object with the specified title, or {@code null} if no movie is found
    * @throws IOException IOException if an I/O error occurs while accessing the movie library
    */
   public Movie findMovie(String title) throws IOException {
-    Movie foundMovie = moviesInLibrary.stream()
-                                    .filter(selectedMovie -> 
-                                    selectedMovie.getTitle().toLowerCase().trim()
-                                    .equals(title.toLowerCase().trim()))
-                                    .findFirst()
-                                    .orElse(null);
-    return foundMovie;
+    if (catalog == null) {
+      int index = snapshot.indexOf(title);
+      return index < 0 ? null : snapshot.getMovie(index);
+    }
+    return catalog.titleIndex.get(normalizeTitle(title));
+  }
+
+  /**
+   * Finds the movie with the specified title in memory, loading the movies into memory first if
+   * they are still only in the mapped snapshot, so the movie returned can be changed.
+   *
+   * @param title the title of the movie to find
+   * @return the {@link Movie} in the library, or {@code null} if no movie is found
+   * @throws IOException if the movies could not be loaded into memory
+   */
+  Movie findMovieToChange(String title) throws IOException {
+    return catalog().titleIndex.get(normalizeTitle(title));
+  }
+
+  /**
+   * Searches the titles and descriptions of the movies for the words in a query, including
+   * words that only contain a search word, like {@code troll} in {@code The_Trollgirl}.
+   * The search goes through the {@link MovieSearchIndex}, so it only looks at movies containing
+   * the words and does not scan the library.
+   *
+   * @param query the words to search for
+   * @param limit the largest number of movies to return
+   * @return the best matching movies, best first
+   * @throws IllegalArgumentException if the query has no words or the limit is less than 1
+   * @throws IOException if the movies could not be loaded into memory
+   */
+  public List<Movie> searchMovies(String query, int limit) throws IOException {
+    return catalog().searchIndex.search(query, limit);
   }
 
   /**
@@ -88,7 +228,7 @@ public class MovieDeserializer {
    * @throws IOException if an I/O error occurs while accessing the movie library
    */
   public List<Movie> getMoviesInLibrary() throws IOException {
-    return this.moviesInLibrary;
+    return catalog().list();
   }
 
   /**
@@ -102,6 +242,23 @@ public class MovieDeserializer {
    */
   public boolean checkIfLent(String title) throws IOException {
     reloadMovieData();
+    return isLent(title);
+  }
+
+  /**
+   * Checks whether the movie with the specified title is lent, in the movies as they are loaded,
+   * without checking the file for changes first.
+   *
+   * @param title the title of the movie to check
+   * @return {@code true} if the movie is lent, {@code false} otherwise
+   * @throws IOException if an I/O error occurs while the accessing the movie library
+   * @throws NoSuchElementException if the movie with the specified 
+   *                                title is not found in the library
+   */
+  boolean isLent(String title) throws IOException {
+    if (catalog == null) {
+      return snapshot.isLent(title);
+    }
     Movie selectedMovie = findMovie(title);
     if (selectedMovie == null) {
       throw new NoSuchElementException("The movie doesn't exist in the library.");
@@ -110,13 +267,285 @@ public class MovieDeserializer {
   }
 
   /**
-   * Reloads the data from the updated file into moviesInLibrary by 
+   * Tells the deserializer whether the movies in memory are the only copy that changes, because
+   * this process is the only one writing the file. While it is, the file is read once and
+   * never checked for changes again.
+   *
+   * @param exclusive {@code true} if no one else writes the file
+   */
+  void setExclusive(boolean exclusive) {
+    this.exclusive = exclusive;
+  }
+
+  /**
+   * Reloads the data from the updated file into the movie library by 
    * converting the file into a list of {@link Movie}.
+   * The file is only parsed again if its modification time or size has changed since it was
+   * last read or written, otherwise the movies already in memory are kept.
+   * With exclusive access the file is never read again once it has been loaded.
    *
    * @throws IOException if an I/O error occurs while reading the file
    */
   public void reloadMovieData() throws IOException {
-    moviesInLibrary = movieLibrary.readValue(this.file, new TypeReference<List<Movie>>(){});
+    reload();
+  }
+
+  /**
+   * Reads the file again if it has changed, like {@link #reloadMovieData()}, and tells whether
+   * that replaced movies that were already loaded.
+   *
+   * @return {@code true} if movies that had been loaded before were read again
+   * @throws IOException if an I/O error occurs while reading the file
+   */
+  boolean reload() throws IOException {
+    if (isCurrent()) {
+      return false;
+    }
+    boolean loaded = isLoaded();
+    readMovieData();
+    return loaded;
+  }
+
+  /**
+   * Checks whether the movies are loaded and still match the file and its journal, by comparing
+   * their modification times and sizes with those they had when they were last read or written.
+   * With exclusive access nothing is compared once the movies are loaded.
+   *
+   * @return {@code true} if {@link #reloadMovieData()} would keep the movies as they are
+   * @throws IOException if an I/O error occurs while reading the file attributes
+   */
+  boolean isCurrent() throws IOException {
+    if (!isLoaded()) {
+      return false;
+    }
+    return exclusive
+        || FileStamp.of(this.file).equals(loadedStamp)
+        && FileStamp.of(MovieJournal.logFileFor(this.file)).equals(loadedJournalStamp);
+  }
+
+  /**
+   * Checks whether the movies are in memory, rather than only looked up in the mapped snapshot.
+   *
+   * @return {@code true} if the movies are in memory
+   */
+  boolean isInMemory() {
+    return catalog != null;
+  }
+
+  /**
+   * Creates the movies in memory from the mapped snapshot, if they have only been looked up in
+   * it so far.
+   *
+   * @throws IOException if an I/O error occurs while reading the file
+   */
+  void loadIntoMemory() throws IOException {
+    catalog();
+  }
+
+  /**
+   * Reads the file and its journal again, even with exclusive access, throwing away every
+   * change in memory that has not been written to them. Used to roll the movies in memory back
+   * to what is on disk after persisting a change failed.
+   *
+   * @throws IOException if an I/O error occurs while reading the file
+   */
+  void readAgain() throws IOException {
+    readMovieData();
+  }
+
+  private boolean isLoaded() {
+    return catalog != null || snapshot != null;
+  }
+
+  /**
+   * Checks whether the movies were last loaded from a binary snapshot of the current content of
+   * the file rather than by parsing it, so the snapshot does not have to be written again.
+   *
+   * @return {@code true} if the last load used the binary snapshot
+   */
+  boolean isLoadedFromSnapshot() {
+    return loadedFromSnapshot;
+  }
+
+  /**
+   * Returns the movies in memory, creating them from the mapped snapshot first if they have only
+   * been looked up in it so far. A snapshot that turns out to be damaged is dropped, and the file
+   * is parsed instead.
+   *
+   * @return the movies in memory
+   * @throws IOException if an I/O error occurs while reading the file
+   */
+  private Catalog catalog() throws IOException {
+    if (catalog == null) {
+      Catalog movies = new Catalog();
+      try {
+        snapshot.toLibraryList().forEach(movies::add);
+      } catch (IOException e) {
+        movies = new Catalog();
+        movieReader.read(this.file, movies::add);
+      }
+      catalog = movies;
+      snapshot = null;
+    }
+    return catalog;
+  }
+
+  /**
+   * Streams the file into the movie library, building the title and search indexes movie by movie
+   * as the file is read, and replays the
+   * {@link MovieJournal} of changes made since the file was last written, if there is one.
+   * If a binary snapshot of the current content of the file is next to it and there is no
+   * journal, only the snapshot is mapped, and the movies are created from it when first needed.
+   * The stamps of the files are taken before parsing, so a change made while the files are being
+   * read is picked up by the next reload.
+   * If several movies share the same normalized title, the first one in the file is indexed,
+   * matching the order a linear search would find them in.
+   *
+   * @throws IOException if an I/O error occurs while reading the file
+   */
+  private void readMovieData() throws IOException {
+    final long start = System.nanoTime();
+    final FileStamp stamp = FileStamp.of(this.file);
+    final FileStamp journalStamp = FileStamp.of(MovieJournal.logFileFor(this.file));
+    MovieSnapshot mapped = openSnapshot();
+    loadedFromSnapshot = mapped != null;
+    if (mapped != null && !MovieJournal.logFileFor(this.file).exists()) {
+      catalog = null;
+      snapshot = mapped;
+    } else {
+      Catalog movies = new Catalog();
+      List<Movie> snapshotMovies = mapped == null ? null : toLibraryList(mapped);
+      if (snapshotMovies != null) {
+        snapshotMovies.forEach(movies::add);
+      } else {
+        loadedFromSnapshot = false;
+        movieReader.read(this.file, movies::add);
+      }
+      catalog = movies;
+      snapshot = null;
+      MovieJournal.replay(this.file, this);
+    }
+    loadedVersion = catalogVersion.incrementAndGet();
+    movieVersions = new ConcurrentHashMap<>();
+    loadedStamp = stamp;
+    loadedJournalStamp = journalStamp;
+    MovieMetrics metrics = MovieMetrics.getInstance();
+    metrics.increment(MovieMetrics.BYTES_READ,
+        snapshot != null ? 0 : stamp.getSize() + journalStamp.getSize());
+    metrics.recordSince(MovieMetrics.REPARSE, start);
+  }
+
+  /**
+   * Maps the binary snapshot next to the file, if it was written together with the current
+   * content of the file. A snapshot of another content, because the file was changed without it,
+   * or that cannot be read is ignored, and the file is parsed instead.
+   *
+   * @return the mapped snapshot, or {@code null} if the file must be parsed
+   */
+  private MovieSnapshot openSnapshot() {
+    File snapshotFile = MovieSnapshot.snapshotFileFor(this.file);
+    if (!snapshotFile.isFile()) {
+      return null;
+    }
+    try {
+      MovieSnapshot mapped = MovieSnapshot.open(snapshotFile);
+      return mapped.isSnapshotOf(this.file) ? mapped : null;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static List<Movie> toLibraryList(MovieSnapshot mapped) {
+    try {
+      return mapped.toLibraryList();
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Records that the file and its journal now hold exactly the movies in memory,
+   * typically right after {@link MovieSerializer} has written to them.
+   * The next reload will then not parse the file again.
+   *
+   * @throws IOException if an I/O error occurs while reading the file attributes
+   */
+  void markFileInSync() throws IOException {
+    loadedStamp = FileStamp.of(this.file);
+    loadedJournalStamp = FileStamp.of(MovieJournal.logFileFor(this.file));
   }
     
+  /**
+   * The movies in memory, in library order, with the indexes that find them by title and by the
+   * words in them. Every movie knows its position, so removing one leaves an empty slot behind
+   * instead of shifting the movies after it. The slots are dropped when the list is read as a
+   * whole, which takes time in proportion to the library anyway, or once half of it is empty.
+   * Movies sharing a normalized title are kept per title, in library order, so the next one takes
+   * over the title index without a scan.
+   */
+  private static final class Catalog {
+
+    private final List<Movie> movies = new ArrayList<>();
+    private final Map<Movie, Integer> positions = new IdentityHashMap<>();
+    private final Map<String, Movie> titleIndex = new HashMap<>();
+    private final Map<String, List<Movie>> duplicates = new HashMap<>();
+    private final MovieSearchIndex searchIndex = new MovieSearchIndex();
+    private int removed;
+
+    private void add(Movie movie) {
+      positions.put(movie, movies.size());
+      movies.add(movie);
+      String key = normalizeTitle(movie.getTitle());
+      if (titleIndex.putIfAbsent(key, movie) != null) {
+        duplicates.computeIfAbsent(key, title -> new ArrayList<>()).add(movie);
+      }
+      searchIndex.add(movie);
+    }
+
+    private void remove(Movie movie) {
+      Integer position = positions.remove(movie);
+      if (position == null) {
+        return;
+      }
+      movies.set(position, null);
+      removed++;
+      searchIndex.remove(movie);
+      String key = normalizeTitle(movie.getTitle());
+      List<Movie> others = duplicates.get(key);
+      if (titleIndex.get(key) == movie) {
+        if (others == null) {
+          titleIndex.remove(key);
+        } else {
+          titleIndex.put(key, others.remove(0));
+        }
+      } else if (others != null) {
+        others.remove(movie);
+      }
+      if (others != null && others.isEmpty()) {
+        duplicates.remove(key);
+      }
+      if (removed > movies.size() / 2) {
+        compact();
+      }
+    }
+
+    private int size() {
+      return movies.size() - removed;
+    }
+
+    private List<Movie> list() {
+      if (removed > 0) {
+        compact();
+      }
+      return movies;
+    }
+
+    private void compact() {
+      movies.removeIf(Objects::isNull);
+      for (int position = 0; position < movies.size(); position++) {
+        positions.put(movies.get(position), position);
+      }
+      removed = 0;
+    }
+  }
 }
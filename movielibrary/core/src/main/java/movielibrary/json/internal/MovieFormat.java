@@ -0,0 +1,64 @@
+package movielibrary.json.internal;
+
+import java.util.Locale;
+
+/**
+ * The {@code MovieFormat} enum lists the formats movies can be exchanged in between the client
+ * and the server. JSON is readable and understood by everyone, while CBOR and Smile are binary
+ * encodings of the same data that are smaller and faster to read and write.
+ */
+public enum MovieFormat {
+
+  /**
+   * Plain text JSON.
+   */
+  JSON("application/json"),
+
+  /**
+   * Concise Binary Object Representation, RFC 8949.
+   */
+  CBOR("application/cbor"),
+
+  /**
+   * The binary JSON format of Jackson, which also avoids repeating the field names.
+   */
+  SMILE("application/x-jackson-smile");
+
+  private final String mediaType;
+
+  MovieFormat(String mediaType) {
+    this.mediaType = mediaType;
+  }
+
+  /**
+   * Returns the media type of the format, as used in the {@code Accept} and
+   * {@code Content-Type} headers.
+   *
+   * @return the media type
+   */
+  public String getMediaType() {
+    return mediaType;
+  }
+
+  /**
+   * Finds the format of a {@code Content-Type} header. Parameters like {@code charset} are
+   * ignored, and anything that is not one of the binary formats is taken to be JSON.
+   *
+   * @param contentType the value of the header, may be {@code null}
+   * @return the format of the content
+   */
+  public static MovieFormat forContentType(String contentType) {
+    if (contentType == null) {
+      return JSON;
+    }
+    int parameters = contentType.indexOf(';');
+    String type = (parameters < 0 ? contentType : contentType.substring(0, parameters))
+        .trim().toLowerCase(Locale.ROOT);
+    for (MovieFormat format : values()) {
+      if (format.mediaType.equals(type)) {
+        return format;
+      }
+    }
+    return JSON;
+  }
+}
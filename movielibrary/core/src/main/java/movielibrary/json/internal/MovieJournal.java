@@ -0,0 +1,303 @@
+package movielibrary.json.internal;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import movielibrary.core.Movie;
+
+/**
+ * The {@code MovieJournal} class is an append-only log of changes to the movie library.
+ * It lives next to the movie library file (as {@code movies.json.log}) and holds one compact
+ * JSON record per line for every movie that is added, deleted, lent or returned.
+ *
+ * <p>Appending a record costs the same no matter how large the library is. The
+ * {@link MovieDeserializer} replays the log on top of the last written snapshot when the
+ * library is loaded, and the {@link MovieSerializer} folds the log into a new snapshot once it
+ * has grown past the compaction threshold.</p>
+ *
+ * <p>Appended records are not forced to disk until {@link #sync()} is called, which lets several
+ * records share a single fsync. Records appended since the last sync can be taken back with
+ * {@link #rollBack()} when persisting them failed.</p>
+ *
+ * <p>The journal does no locking of its own. Appending, taking a {@link #mark()} and recording a
+ * sync with {@link #synced(Mark)} must be guarded by one lock, while {@link #force()} may run
+ * outside it, so records can be appended while earlier ones are being forced to disk.</p>
+ */
+final class MovieJournal {
+
+  /**
+   * The kinds of changes that are recorded in the journal.
+   */
+  enum Operation {
+    ADD, DELETE, LEND, RETURN
+  }
+
+  private static final String OPERATION_FIELD = "op";
+  private static final String TITLE_FIELD = "title";
+  private static final String MOVIE_FIELD = "movie";
+
+  private final ObjectMapper mapper;
+  private final File logFile;
+  private final int compactionThreshold;
+  private int recordCount;
+  private int syncedRecordCount;
+  private long size;
+  private long syncedSize;
+  private volatile FileChannel channel;
+  private volatile boolean directorySynced;
+
+  /**
+   * Constructs a {@code MovieJournal} for the given movie library file.
+   * Records that are already in the log are counted towards the compaction threshold.
+   *
+   * @param file the movie library file the journal belongs to
+   * @param compactionThreshold the number of records after which the log should be
+   *                            folded into a new snapshot, must be at least 1
+   * @throws IOException if an I/O error occurs while reading the existing log
+   * @throws IllegalArgumentException if the compaction threshold is less than 1
+   */
+  MovieJournal(File file, int compactionThreshold) throws IOException {
+    if (compactionThreshold < 1) {
+      throw new IllegalArgumentException("The compaction threshold must be at least 1.");
+    }
+    this.mapper = MovieCodec.getInstance().getMapper();
+    this.logFile = logFileFor(file);
+    this.compactionThreshold = compactionThreshold;
+    this.recordCount = readRecords(logFile, mapper).size();
+    this.syncedRecordCount = recordCount;
+    this.size = logFile.length();
+    this.syncedSize = size;
+  }
+
+  /**
+   * Returns the log file that belongs to the given movie library file.
+   *
+   * @param file the movie library file
+   * @return the journal file next to it
+   */
+  static File logFileFor(File file) {
+    return new File(file.getPath() + ".log");
+  }
+
+  /**
+   * Appends a record for a change to a single movie.
+   *
+   * @param operation the kind of change
+   * @param title the title of the movie that changed
+   * @throws IOException if an I/O error occurs while writing to the log
+   */
+  void append(Operation operation, String title) throws IOException {
+    ObjectNode record = mapper.createObjectNode();
+    record.put(OPERATION_FIELD, operation.name());
+    record.put(TITLE_FIELD, title);
+    write(record);
+  }
+
+  /**
+   * Appends a record for a movie that was added to the library.
+   *
+   * @param movie the movie that was added
+   * @throws IOException if an I/O error occurs while writing to the log
+   */
+  void appendAdd(Movie movie) throws IOException {
+    ObjectNode record = mapper.createObjectNode();
+    record.put(OPERATION_FIELD, Operation.ADD.name());
+    record.set(MOVIE_FIELD, mapper.valueToTree(movie));
+    write(record);
+  }
+
+  private void write(ObjectNode record) throws IOException {
+    byte[] line = (mapper.writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8);
+    if (channel == null) {
+      FileChannel opened = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      directorySynced = false;
+      size = opened.size();
+      channel = opened;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(line);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    size += line.length;
+    recordCount++;
+    MovieMetrics.getInstance().increment(MovieMetrics.BYTES_WRITTEN, line.length);
+  }
+
+  /**
+   * Forces every record appended so far to disk and records that they are, in one step.
+   * See {@link #force()}.
+   *
+   * @throws IOException if an I/O error occurs while syncing the log
+   */
+  void sync() throws IOException {
+    Mark mark = mark();
+    force();
+    synced(mark);
+  }
+
+  /**
+   * Marks how far the log has been written, so a later {@link #synced(Mark)} records that
+   * everything up to here is on disk.
+   *
+   * @return the records appended so far
+   */
+  Mark mark() {
+    return new Mark(size, recordCount);
+  }
+
+  /**
+   * Forces the records appended so far to disk, without recording how far that is. The first
+   * force after the log was opened also forces its directory, in case opening it created the
+   * file. May run while more records are appended.
+   *
+   * @throws IOException if an I/O error occurs while forcing the log
+   */
+  void force() throws IOException {
+    FileChannel current = channel;
+    if (current == null) {
+      return;
+    }
+    final long start = System.nanoTime();
+    current.force(false);
+    if (!directorySynced) {
+      MovieSerializer.forceDirectory(logFile.toPath());
+      directorySynced = true;
+    }
+    MovieMetrics.getInstance().recordSince(MovieMetrics.JOURNAL_SYNC, start);
+  }
+
+  /**
+   * Records that the records up to a mark taken before a {@link #force()} are on disk, so
+   * {@link #rollBack()} keeps them.
+   *
+   * @param mark the mark taken before forcing the log
+   */
+  void synced(Mark mark) {
+    syncedSize = Math.max(syncedSize, mark.size);
+    syncedRecordCount = Math.max(syncedRecordCount, mark.recordCount);
+  }
+
+  /**
+   * Takes back every record appended since the last sync, by cutting the log back to the size
+   * it had then. Used when appending or syncing failed, so the log does not keep changes that
+   * were reported as failed.
+   *
+   * @throws IOException if an I/O error occurs while truncating the log
+   */
+  void rollBack() throws IOException {
+    recordCount = syncedRecordCount;
+    size = syncedSize;
+    if (channel != null) {
+      channel.truncate(syncedSize);
+      channel.force(false);
+    }
+  }
+
+  /**
+   * Checks whether the log has grown enough to be folded into a new snapshot.
+   *
+   * @return {@code true} if the log holds at least as many records as the compaction threshold
+   */
+  boolean needsCompaction() {
+    return recordCount >= compactionThreshold;
+  }
+
+  /**
+   * Empties the log. Must only be called once a snapshot containing all of its records
+   * has been written.
+   *
+   * @throws IOException if an I/O error occurs while deleting the log
+   */
+  void clear() throws IOException {
+    if (channel != null) {
+      channel.close();
+      channel = null;
+    }
+    Files.deleteIfExists(logFile.toPath());
+    recordCount = 0;
+    syncedRecordCount = 0;
+    size = 0;
+    syncedSize = 0;
+  }
+
+  /**
+   * Replays the log that belongs to the given movie library file on top of the movies
+   * in the deserializer. Replaying is idempotent: movies that are already added or deleted
+   * are skipped, so a log that was already folded into the snapshot can safely be replayed.
+   * A damaged last line, left behind by a crash in the middle of an append, is ignored.
+   *
+   * @param file the movie library file
+   * @param movieDeserializer the deserializer holding the snapshot to replay the log onto
+   * @throws IOException if an I/O error occurs while reading the log
+   */
+  static void replay(File file, MovieDeserializer movieDeserializer) throws IOException {
+    MovieCodec codec = MovieCodec.getInstance();
+    for (JsonNode record : readRecords(logFileFor(file), codec.getMapper())) {
+      Operation operation = Operation.valueOf(record.get(OPERATION_FIELD).asText());
+      if (operation == Operation.ADD) {
+        Movie movie = codec.getMovieReader().readValue(record.get(MOVIE_FIELD));
+        if (movieDeserializer.findMovie(movie.getTitle()) == null) {
+          movieDeserializer.addMovie(movie);
+        }
+        continue;
+      }
+      Movie movie = movieDeserializer.findMovieToChange(record.get(TITLE_FIELD).asText());
+      if (movie == null) {
+        continue;
+      }
+      if (operation == Operation.DELETE) {
+        movieDeserializer.removeMovie(movie);
+      } else {
+        movie.setLent(operation == Operation.LEND);
+      }
+    }
+  }
+
+  private static List<JsonNode> readRecords(File logFile, ObjectMapper mapper)
+      throws IOException {
+    List<JsonNode> records = new ArrayList<>();
+    if (!logFile.exists()) {
+      return records;
+    }
+    try (BufferedReader reader = Files.newBufferedReader(logFile.toPath())) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isBlank()) {
+          continue;
+        }
+        try {
+          records.add(mapper.readTree(line));
+        } catch (JsonProcessingException e) {
+          System.err.println("Skipping damaged journal record: " + e.getMessage());
+        }
+      }
+    }
+    return records;
+  }
+
+  /**
+   * How far the log had been written when a {@link #mark()} was taken.
+   */
+  static final class Mark {
+
+    private final long size;
+    private final int recordCount;
+
+    private Mark(long size, int recordCount) {
+      this.size = size;
+      this.recordCount = recordCount;
+    }
+  }
+}
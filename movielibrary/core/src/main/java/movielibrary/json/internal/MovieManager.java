@@ -5,17 +5,43 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import movielibrary.core.Movie;
+import movielibrary.json.internal.MovieJournal.Operation;
 
 /**
  * The {@code MovieManager} class provides methods to manage the lending and returning of movies in 
  * a movie library. It interacts with the {@link MovieSerializer} class
  * to update and retrieve movie data from a JSON file. 
+ *
+ * <p>Lending, returning, adding and deleting check the library and then change it. The
+ * {@link MovieSerializer} does both under the lock of the movie's title, for single changes and
+ * batches alike, so two concurrent changes can never both pass a check that only one of them
+ * should, while changes to different titles are checked and applied in parallel. Waiting for the
+ * flush to disk happens outside every lock of the library, so changes to different titles share
+ * flushes instead of queueing for them.</p>
+ *
+ * <p>With {@link #enableSingleWriter(int, int)} every change is instead handed to a single
+ * writer thread, which applies the changes in batches and persists each batch once. The
+ * {@code ...Async} methods return a {@link CompletableFuture} with the outcome of the change,
+ * while the other methods wait for it.</p>
+ *
+ * <p>Reads like {@link #getMovies()} and {@link #getLentStatus(String)} are answered from the
+ * same movies in memory that the changes are applied to, so a {@code MovieManager} can be the
+ * single store of the library for a whole application. See {@link #enableExclusiveAccess()}.
+ * </p>
  */
 public class MovieManager {
-    
+
   private File file;
   private MovieSerializer movieSerializer;
+  private SingleWriter singleWriter;
+  private final List<Consumer<MovieChange>> changeListeners = new CopyOnWriteArrayList<>();
 
   /**
    * Construcs a {@code MovieManager} with a default file path to the movie library data 
@@ -105,45 +131,463 @@ public class MovieManager {
   /**
    * Sets the file for the movie library data.
    * The file cannot be empty and has to be of type {@code File}
+   * The single writer and group commit, if they were enabled, are stopped once the changes
+   * waiting for them have been saved to the previous file.
    *
    * @param file a {@code File} object representing the new movie library data file
    * @throws IOException if an I/O error occurs while reading the file 
    */
   public void setFile(File file) throws IOException {
+    if (singleWriter != null) {
+      singleWriter.stop();
+      singleWriter = null;
+    }
+    movieSerializer.stopGroupCommit();
     this.file = file;
     movieSerializer = new MovieSerializer(file);
+    changeListeners.forEach(movieSerializer::addChangeListener);
+  }
+
+  /**
+   * Adds a listener that is told about every change made through this manager once it has been
+   * persisted, with the catalog version it produced. The listener is kept when the file is
+   * changed with {@link #setFile(File)}. See {@link MovieSerializer#addChangeListener(Consumer)}.
+   *
+   * @param listener the listener to add, which must return quickly and never block
+   */
+  public void addChangeListener(Consumer<MovieChange> listener) {
+    changeListeners.add(listener);
+    movieSerializer.addChangeListener(listener);
+  }
+
+  /**
+   * Switches the movie library to journaled persistence, so lending, returning, adding and
+   * deleting movies appends a small record instead of rewriting the whole file.
+   * See {@link MovieSerializer#enableJournal(int)}.
+   *
+   * @param compactionThreshold the number of journal records that triggers a new snapshot
+   * @throws IOException if an I/O error occurs while reading an existing journal
+   */
+  public void enableJournal(int compactionThreshold) throws IOException {
+    movieSerializer.enableJournal(compactionThreshold);
+  }
+
+  /**
+   * Lets changes that arrive close together share a single flush to disk.
+   * See {@link MovieSerializer#enableGroupCommit(long, int)}.
+   *
+   * @param windowMillis how long to wait for more changes after the first one, in milliseconds
+   * @param maxBatchSize the number of waiting changes that triggers a flush right away
+   */
+  public void enableGroupCommit(long windowMillis, int maxBatchSize) {
+    movieSerializer.enableGroupCommit(windowMillis, maxBatchSize);
+  }
+
+  /**
+   * Keeps a memory-mapped binary snapshot of the library next to the file.
+   * See {@link MovieSerializer#enableBinarySnapshot()}.
+   *
+   * @throws IOException if an I/O error occurs while writing the binary snapshot
+   */
+  public void enableBinarySnapshot() throws IOException {
+    movieSerializer.enableBinarySnapshot();
+  }
+
+  /**
+   * Makes the movies in memory the authoritative copy of the library, so the file is only
+   * written to persist changes and never read again.
+   * See {@link MovieSerializer#enableExclusiveAccess()}.
+   */
+  public void enableExclusiveAccess() {
+    movieSerializer.enableExclusiveAccess();
+  }
+
+  /**
+   * Folds the journal into a new snapshot of the file before the application stops, so the next
+   * start has no journal to replay and can answer lookups from the binary snapshot without
+   * loading every movie. The single writer and group commit, if they were enabled, first save
+   * the changes waiting for them and stop. See {@link MovieSerializer#compactJournal()}.
+   *
+   * @throws IOException if an I/O error occurs while writing the files
+   */
+  public void close() throws IOException {
+    if (singleWriter != null) {
+      singleWriter.stop();
+      singleWriter = null;
+    }
+    movieSerializer.stopGroupCommit();
+    movieSerializer.compactJournal();
+  }
+
+  /**
+   * Returns all the movies in the library. See {@link MovieSerializer#getMovies()}.
+   *
+   * @return an unmodifiable list of the movies, in library order
+   * @throws IOException if an I/O error occurs while accessing the file
+   */
+  public List<Movie> getMovies() throws IOException {
+    return movieSerializer.getMovies();
+  }
+
+  /**
+   * Finds the movie with the given title.
+   *
+   * @param title the title of the movie to find
+   * @return the movie, or {@code null} if it is not in the library
+   * @throws IOException if an I/O error occurs while accessing the file
+   */
+  public Movie findMovie(String title) throws IOException {
+    return movieSerializer.findMovie(title);
+  }
+
+  /**
+   * Checks whether the movie with the given title is lent.
+   *
+   * @param title the title of the movie
+   * @return {@code true} if the movie is lent, {@code false} otherwise
+   * @throws IOException if an I/O error occurs while accessing the file
+   * @throws java.util.NoSuchElementException if the movie is not in the library
+   */
+  public boolean getLentStatus(String title) throws IOException {
+    return movieSerializer.getLentStatus(title);
+  }
+
+  /**
+   * Searches the titles and descriptions of the movies, best matches first.
+   * See {@link MovieDeserializer#searchMovies(String, int)}.
+   *
+   * @param query the words to search for
+   * @param limit the largest number of movies to return
+   * @return the best matching movies
+   * @throws IOException if an I/O error occurs while accessing the file
+   * @throws IllegalArgumentException if the query has no words or the limit is less than 1
+   */
+  public List<Movie> searchMovies(String query, int limit) throws IOException {
+    return movieSerializer.searchMovies(query, limit);
+  }
+
+  /**
+   * Returns the catalog version, which increases with every change to the library.
+   * See {@link MovieDeserializer#getCatalogVersion()}.
+   *
+   * @return the current catalog version
+   * @throws IOException if an I/O error occurs while accessing the file
+   */
+  public long getCatalogVersion() throws IOException {
+    return movieSerializer.getCatalogVersion();
+  }
+
+  /**
+   * Returns the catalog version at which the movie with the given title last changed.
+   * See {@link MovieDeserializer#getMovieVersion(String)}.
+   *
+   * @param title the title of the movie
+   * @return the version of the movie
+   * @throws IOException if an I/O error occurs while accessing the file
+   */
+  public long getMovieVersion(String title) throws IOException {
+    return movieSerializer.getMovieVersion(title);
+  }
+
+  /**
+   * Hands every change to a single writer thread instead of applying it on the calling thread.
+   * The writer takes up to {@code maxBatchSize} waiting changes at a time, applies them in order
+   * and persists them with a single write. Callers block while {@code queueCapacity} changes are
+   * already waiting. If a single writer was already enabled, it applies every change waiting for
+   * it and stops before the new one takes over.
+   *
+   * @param queueCapacity the number of changes that can wait for the writer
+   * @param maxBatchSize the largest number of changes applied and persisted together
+   * @throws IllegalArgumentException if the capacity or the batch size is less than 1
+   */
+  public void enableSingleWriter(int queueCapacity, int maxBatchSize) {
+    SingleWriter next = new SingleWriter(movieSerializer, queueCapacity, maxBatchSize);
+    if (singleWriter != null) {
+      singleWriter.stop();
+    }
+    this.singleWriter = next;
+  }
+
+  /**
+   * Lends the movie with the specified title without waiting for the change to be applied.
+   *
+   * @param title the title of the movie to be lend
+   * @return a future that completes once the movie is lent, or completes exceptionally with an
+   *         {@link IllegalStateException} if it is already lent
+   * @see #lend(String)
+   */
+  public CompletableFuture<Void> lendAsync(String title) {
+    return submit(MovieMutation.of(Operation.LEND, title));
+  }
+
+  /**
+   * Returns the movie with the specified title without waiting for the change to be applied.
+   *
+   * @param title the title of the movie to be returned
+   * @return a future that completes once the movie is returned, or completes exceptionally with
+   *         an {@link IllegalStateException} if it is not lent
+   * @see #returnBack(String)
+   */
+  public CompletableFuture<Void> returnBackAsync(String title) {
+    return submit(MovieMutation.of(Operation.RETURN, title));
+  }
+
+  /**
+   * Adds a new movie without waiting for the change to be applied.
+   *
+   * @param title title of the new movie
+   * @param movieLength movielength of the new movie
+   * @param description description of the new movie
+   * @return a future that completes once the movie is added
+   * @see #addMovie(String, double, String)
+   */
+  public CompletableFuture<Void> addMovieAsync(String title, double movieLength,
+      String description) {
+    return submit(MovieMutation.add(title, movieLength, description));
+  }
+
+  /**
+   * Deletes a movie without waiting for the change to be applied.
+   *
+   * @param title title of the movie to be deleted
+   * @return a future that completes once the movie is deleted
+   * @see #deleteMovie(String)
+   */
+  public CompletableFuture<Void> deleteMovieAsync(String title) {
+    return submit(MovieMutation.of(Operation.DELETE, title));
+  }
+
+  /**
+   * Adds many movies at once. The movies are validated in parallel, and every valid movie is
+   * then added and persisted with a single write, or by the single writer if it is enabled.
+   * Each movie succeeds or fails on its own.
+   *
+   * @param movies the movies to add, not yet validated
+   * @return one completed future per movie, in the same order, holding the outcome of adding it
+   */
+  public List<CompletableFuture<Void>> addMovies(List<Movie> movies) {
+    List<MovieMutation> mutations = movies.parallelStream()
+        .map(MovieManager::validatedAdd)
+        .collect(Collectors.toList());
+    return applyAll(mutations);
+  }
+
+  /**
+   * Lends many movies at once, persisting every change with a single write, or by the single
+   * writer if it is enabled. Each title succeeds or fails on its own, just like
+   * {@link #lend(String)}.
+   *
+   * @param titles the titles of the movies to lend
+   * @return one completed future per title, in the same order, holding the outcome of lending it
+   */
+  public List<CompletableFuture<Void>> lendAll(List<String> titles) {
+    return applyAll(mutationsOf(Operation.LEND, titles));
+  }
+
+  /**
+   * Returns many movies at once, persisting every change with a single write, or by the single
+   * writer if it is enabled. Each title succeeds or fails on its own, just like
+   * {@link #returnBack(String)}.
+   *
+   * @param titles the titles of the movies to return
+   * @return one completed future per title, in the same order, holding the outcome of returning it
+   */
+  public List<CompletableFuture<Void>> returnAll(List<String> titles) {
+    return applyAll(mutationsOf(Operation.RETURN, titles));
+  }
+
+  /**
+   * Creates the mutations that lend or return the movies with the given titles. A missing title
+   * fails on its own instead of failing the whole batch.
+   *
+   * @param operation the kind of change
+   * @param titles the titles of the movies
+   * @return one mutation per title, in the same order
+   */
+  private static List<MovieMutation> mutationsOf(Operation operation, List<String> titles) {
+    return titles.stream()
+        .map(title -> title == null
+            ? rejected(MovieMutation.of(operation, null), "The title can't be null.")
+            : MovieMutation.of(operation, title))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Validates a movie with {@link Movie#createMovie(String, double, String)} and creates the
+   * mutation that adds it. If the movie is missing or invalid, the mutation has already failed.
+   *
+   * @param movie the movie to validate
+   * @return the mutation that adds the movie
+   */
+  private static MovieMutation validatedAdd(Movie movie) {
+    if (movie == null) {
+      return rejected(MovieMutation.add(null, 0, null), "The movie can't be null.");
+    }
+    try {
+      return MovieMutation.add(
+          Movie.createMovie(movie.getTitle(), movie.getMovieLength(), movie.getDescription()));
+    } catch (IllegalArgumentException e) {
+      MovieMutation mutation = MovieMutation.add(movie.getTitle(), movie.getMovieLength(),
+          movie.getDescription());
+      mutation.getResult().completeExceptionally(e);
+      return mutation;
+    }
+  }
+
+  /**
+   * Fails a mutation before it is applied, because its input is invalid.
+   *
+   * @param mutation the mutation
+   * @param message the reason it is invalid
+   * @return the failed mutation
+   */
+  private static MovieMutation rejected(MovieMutation mutation, String message) {
+    mutation.getResult().completeExceptionally(new IllegalArgumentException(message));
+    return mutation;
+  }
+
+  /**
+   * Applies every mutation that has not already failed and returns the outcomes. With the single
+   * writer they are submitted to it, in order, so they are applied on the writer thread like every
+   * other change; otherwise they are applied as one batch with a single write, each checked and
+   * changed under the lock of its title in the {@link MovieSerializer}. Either way, the batch
+   * shares the next flush with other changes when group commit is enabled.
+   *
+   * @param mutations the mutations to apply
+   * @return the futures of the mutations, all completed, in the same order
+   */
+  private List<CompletableFuture<Void>> applyAll(List<MovieMutation> mutations) {
+    List<MovieMutation> pending = mutations.stream()
+        .filter(mutation -> !mutation.getResult().isDone())
+        .collect(Collectors.toList());
+    SingleWriter writer = singleWriter;
+    if (writer != null) {
+      pending.forEach(writer::submit);
+    } else if (!pending.isEmpty()) {
+      movieSerializer.applyBatch(pending);
+    }
+    pending.forEach(mutation -> mutation.getResult().exceptionally(e -> null).join());
+    return mutations.stream().map(MovieMutation::getResult).collect(Collectors.toList());
+  }
+
+  /**
+   * Submits a change to the single writer, or applies it right away on the calling thread
+   * if the single writer is not enabled.
+   *
+   * @param mutation the change to apply
+   * @return the future holding the outcome of the change
+   */
+  private CompletableFuture<Void> submit(MovieMutation mutation) {
+    if (singleWriter != null) {
+      return singleWriter.submit(mutation);
+    }
+    try {
+      String title = mutation.getTitle();
+      switch (mutation.getOperation()) {
+        case ADD:
+          addMovie(title, mutation.getMovieLength(), mutation.getDescription());
+          break;
+        case DELETE:
+          deleteMovie(title);
+          break;
+        case LEND:
+          lend(title);
+          break;
+        default:
+          returnBack(title);
+          break;
+      }
+      mutation.getResult().complete(null);
+    } catch (IOException | RuntimeException e) {
+      mutation.getResult().completeExceptionally(e);
+    }
+    return mutation.getResult();
+  }
+
+  /**
+   * Waits for a change submitted to the single writer and rethrows the exception it failed with.
+   *
+   * @param result the future holding the outcome of the change
+   * @throws IOException if the change could not be persisted
+   */
+  private static void await(CompletableFuture<Void> result) throws IOException {
+    try {
+      result.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException("Could not apply the change.", cause);
+    }
+  }
+
+  /**
+   * Submits a lend or return to the single writer and waits for it.
+   *
+   * @param writer the single writer
+   * @param mutation the lend or return
+   * @return the movie as the change left it
+   * @throws IOException if the change could not be persisted
+   */
+  private static MovieState awaitState(SingleWriter writer, MovieMutation mutation)
+      throws IOException {
+    await(writer.submit(mutation));
+    return mutation.getState();
   }
 
   /**
    * Lending a movie with the specified title by setting its lending status to be true. 
-   * If the movie is already lent, an {@link IllegalStateException} is thrown.
+   * If the movie is already lent, a {@link MovieConflictException} is thrown.
+   * Checking and changing the status happen atomically in the {@link MovieSerializer}, so
+   * concurrent calls for the same title, including bulk and single writer changes, lend it only
+   * once.
    *
    * @param title the title of the movie to be lend
+   * @return a copy of the lent movie, with its version right after the change
    * @throws IOException if an I/O error occurs while accessing the file
-   * @throws IllegalStateException if the movie is already lent
+   * @throws MovieConflictException if the movie is already lent, holding the movie as it is
    */
-  public void lend(String title) throws IOException {
-    if (this.movieSerializer.getLentStatus(title)) {
-      throw new IllegalStateException("The movie is already lent.");
+  public MovieState lend(String title) throws IOException {
+    long start = System.nanoTime();
+    try {
+      SingleWriter writer = singleWriter;
+      if (writer != null) {
+        return awaitState(writer, MovieMutation.of(Operation.LEND, title));
+      }
+      return this.movieSerializer.changeLentStatus(title, true);
+    } finally {
+      MovieMetrics.getInstance().recordSince(MovieMetrics.MANAGER_LEND, start);
     }
-
-    this.movieSerializer.changeLentStatus(title, true);
   }
 
   /**
    * Returns a movie with the specified title by setting its lending status to false. 
-   * If the movie is not currently lent, an {@link IllegalStateException} is thrown.
+   * If the movie is not currently lent, a {@link MovieConflictException} is thrown.
+   * Checking and changing the status happen atomically in the {@link MovieSerializer}, so
+   * concurrent calls for the same title, including bulk and single writer changes, return it
+   * only once.
    *
    * @param title the title of the movie to be returned
+   * @return a copy of the returned movie, with its version right after the change
    * @throws IOException if an I/O error occurs while accessing the file 
-   * @throws IllegalStateException if the movie is not currently lent
+   * @throws MovieConflictException if the movie is not currently lent, holding the movie as it
+   *                                is
    */
-  public void returnBack(String title) throws IOException {
-    if (!this.movieSerializer.getLentStatus(title)) {
-      throw new IllegalStateException("The movie is not lent.");
+  public MovieState returnBack(String title) throws IOException {
+    long start = System.nanoTime();
+    try {
+      SingleWriter writer = singleWriter;
+      if (writer != null) {
+        return awaitState(writer, MovieMutation.of(Operation.RETURN, title));
+      }
+      return this.movieSerializer.changeLentStatus(title, false);
+    } finally {
+      MovieMetrics.getInstance().recordSince(MovieMetrics.MANAGER_RETURN, start);
     }
-
-    this.movieSerializer.changeLentStatus(title, false);
   }
 
   /**
@@ -155,11 +599,16 @@ public class MovieManager {
    * @throws IOException if an I/O error occurs while accessing the file 
    */
   public void addMovie(String title, double movieLength, String description) throws IOException {
-    if (movieSerializer.movieIsFound(title)) {
-      throw new IllegalStateException("The movie title already exists in the movielibrary!");
+    long start = System.nanoTime();
+    try {
+      if (singleWriter != null) {
+        await(addMovieAsync(title, movieLength, description));
+        return;
+      }
+      movieSerializer.addMovieToLibrary(Movie.createMovie(title, movieLength, description));
+    } finally {
+      MovieMetrics.getInstance().recordSince(MovieMetrics.MANAGER_ADD, start);
     }
-    Movie movie = Movie.createMovie(title, movieLength, description);
-    movieSerializer.addMovieToLibrary(movie);
   }
 
   /**
@@ -169,7 +618,16 @@ public class MovieManager {
    * @throws IOException if an I/O error occurs while accessing the file 
    */
   public void deleteMovie(String title) throws IOException {
-    this.movieSerializer.deleteMovieFromLibrary(title);
+    long start = System.nanoTime();
+    try {
+      if (singleWriter != null) {
+        await(deleteMovieAsync(title));
+        return;
+      }
+      this.movieSerializer.deleteMovieFromLibrary(title);
+    } finally {
+      MovieMetrics.getInstance().recordSince(MovieMetrics.MANAGER_DELETE, start);
+    }
   }
 
 }
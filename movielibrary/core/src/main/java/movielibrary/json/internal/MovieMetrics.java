@@ -0,0 +1,136 @@
+package movielibrary.json.internal;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code MovieMetrics} class collects timings and counters from every layer of the movie
+ * library, from the REST endpoints down to the reads and writes of the file, so a slow request
+ * can be traced to where the time went. Timings are kept in a {@link LatencyHistogram} per name,
+ * counters in a {@link LongAdder} per name, and both are created the first time they are used.
+ *
+ * <p>There is one shared instance, reached through {@link #getInstance()}.</p>
+ */
+public final class MovieMetrics {
+
+  /**
+   * Timer of {@link MovieManager#lend(String)}, including the wait for the title's lock.
+   */
+  public static final String MANAGER_LEND = "manager.lend";
+
+  /**
+   * Timer of {@link MovieManager#returnBack(String)}, including the wait for the title's lock.
+   */
+  public static final String MANAGER_RETURN = "manager.return";
+
+  /**
+   * Timer of {@link MovieManager#addMovie(String, double, String)}.
+   */
+  public static final String MANAGER_ADD = "manager.add";
+
+  /**
+   * Timer of {@link MovieManager#deleteMovie(String)}.
+   */
+  public static final String MANAGER_DELETE = "manager.delete";
+
+  /**
+   * Timer of every time the file and its journal are parsed again. Its count is the number of
+   * reparses.
+   */
+  public static final String REPARSE = "json.reparse";
+
+  /**
+   * Timer of every rewrite of the file, including the binary snapshot if it is enabled.
+   */
+  public static final String SNAPSHOT_WRITE = "json.snapshot.write";
+
+  /**
+   * Timer of every flush of the journal to disk.
+   */
+  public static final String JOURNAL_SYNC = "json.journal.sync";
+
+  /**
+   * Counter of the bytes parsed from the file and its journal.
+   */
+  public static final String BYTES_READ = "json.bytes.read";
+
+  /**
+   * Counter of the bytes written to the file, the binary snapshot and the journal.
+   */
+  public static final String BYTES_WRITTEN = "json.bytes.written";
+
+  private static final MovieMetrics INSTANCE = new MovieMetrics();
+
+  private final ConcurrentMap<String, LatencyHistogram> timers = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+  private MovieMetrics() {
+  }
+
+  /**
+   * Returns the shared {@code MovieMetrics}.
+   *
+   * @return the shared instance
+   */
+  public static MovieMetrics getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the timer with the given name, creating it if it does not exist yet.
+   *
+   * @param name the name of the timer
+   * @return the histogram of the timer
+   */
+  public LatencyHistogram timer(String name) {
+    LatencyHistogram timer = timers.get(name);
+    return timer != null ? timer : timers.computeIfAbsent(name, key -> new LatencyHistogram());
+  }
+
+  /**
+   * Records the time from {@code startNanos} until now in the timer with the given name.
+   *
+   * @param name the name of the timer
+   * @param startNanos the start of the operation, from {@link System#nanoTime()}
+   */
+  public void recordSince(String name, long startNanos) {
+    timer(name).record(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Adds to the counter with the given name, creating it if it does not exist yet.
+   *
+   * @param name the name of the counter
+   * @param amount the amount to add
+   */
+  public void increment(String name, long amount) {
+    LongAdder counter = counters.get(name);
+    if (counter == null) {
+      counter = counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+    counter.add(amount);
+  }
+
+  /**
+   * Returns every timer, sorted by name.
+   *
+   * @return the timers by name
+   */
+  public Map<String, LatencyHistogram> getTimers() {
+    return new TreeMap<>(timers);
+  }
+
+  /**
+   * Returns the current value of every counter, sorted by name.
+   *
+   * @return the counter values by name
+   */
+  public Map<String, Long> getCounters() {
+    Map<String, Long> values = new TreeMap<>();
+    counters.forEach((name, counter) -> values.put(name, counter.sum()));
+    return values;
+  }
+}
@@ -0,0 +1,145 @@
+package movielibrary.json.internal;
+
+import java.util.concurrent.CompletableFuture;
+import movielibrary.core.Movie;
+import movielibrary.json.internal.MovieJournal.Operation;
+
+/**
+ * The {@code MovieMutation} class is a single change to the movie library waiting to be applied,
+ * by the {@link SingleWriter} or as part of a bulk change, together with the future that is
+ * completed with its outcome.
+ */
+final class MovieMutation {
+
+  private final Operation operation;
+  private final String title;
+  private final double movieLength;
+  private final String description;
+  private final Movie movie;
+  private final CompletableFuture<Void> result = new CompletableFuture<>();
+  private MovieState state;
+
+  private MovieMutation(Operation operation, String title, double movieLength,
+      String description, Movie movie) {
+    this.operation = operation;
+    this.title = title;
+    this.movieLength = movieLength;
+    this.description = description;
+    this.movie = movie;
+  }
+
+  /**
+   * Creates a mutation that adds a new movie. The movie is validated when it is applied.
+   *
+   * @param title the title of the new movie
+   * @param movieLength the length of the new movie
+   * @param description the description of the new movie
+   * @return the mutation
+   */
+  static MovieMutation add(String title, double movieLength, String description) {
+    return new MovieMutation(Operation.ADD, title, movieLength, description, null);
+  }
+
+  /**
+   * Creates a mutation that adds a movie that has already been validated,
+   * for example with {@link Movie#createMovie(String, double, String)}.
+   *
+   * @param movie the validated movie to add
+   * @return the mutation
+   */
+  static MovieMutation add(Movie movie) {
+    return new MovieMutation(Operation.ADD, movie.getTitle(), movie.getMovieLength(),
+        movie.getDescription(), movie);
+  }
+
+  /**
+   * Creates a mutation that deletes, lends or returns the movie with the given title.
+   *
+   * @param operation the kind of change, anything but {@link Operation#ADD}
+   * @param title the title of the movie
+   * @return the mutation
+   * @throws IllegalArgumentException if the operation is {@link Operation#ADD}
+   */
+  static MovieMutation of(Operation operation, String title) {
+    if (operation == Operation.ADD) {
+      throw new IllegalArgumentException("Use MovieMutation.add to add a movie.");
+    }
+    return new MovieMutation(operation, title, 0, null, null);
+  }
+
+  /**
+   * Returns the kind of change.
+   *
+   * @return the operation of the mutation
+   */
+  Operation getOperation() {
+    return operation;
+  }
+
+  /**
+   * Returns the title of the movie the mutation changes.
+   *
+   * @return the title of the movie
+   */
+  String getTitle() {
+    return title;
+  }
+
+  /**
+   * Returns the length of the movie to add.
+   *
+   * @return the movie length, only meaningful for {@link Operation#ADD}
+   */
+  double getMovieLength() {
+    return movieLength;
+  }
+
+  /**
+   * Returns the description of the movie to add.
+   *
+   * @return the description, only meaningful for {@link Operation#ADD}
+   */
+  String getDescription() {
+    return description;
+  }
+
+  /**
+   * Returns the movie to add if it was validated before the mutation was created.
+   *
+   * @return the validated movie, or {@code null} if it is validated when applied
+   */
+  Movie getMovie() {
+    return movie;
+  }
+
+  /**
+   * Returns the movie as the mutation left it, if it lends or returns a movie. It is set when the
+   * mutation is applied, before its future completes.
+   *
+   * @return the movie and its version right after the change, or {@code null} if the mutation
+   *         has not been applied or does not lend or return a movie
+   */
+  MovieState getState() {
+    return state;
+  }
+
+  /**
+   * Records the movie as the mutation left it. Called by the {@link MovieSerializer} under its
+   * lock, when it applies the mutation.
+   *
+   * @param state the movie and its version right after the change
+   */
+  void setState(MovieState state) {
+    this.state = state;
+  }
+
+  /**
+   * Returns the future that completes once the mutation has been applied and persisted,
+   * or completes exceptionally if it was rejected or could not be persisted.
+   *
+   * @return the future holding the outcome of the mutation
+   */
+  CompletableFuture<Void> getResult() {
+    return result;
+  }
+}
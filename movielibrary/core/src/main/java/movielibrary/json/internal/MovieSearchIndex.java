@@ -0,0 +1,274 @@
+package movielibrary.json.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import movielibrary.core.Movie;
+
+/**
+ * The {@code MovieSearchIndex} class is an inverted index over the titles and descriptions of
+ * the movies, so a search only looks at the movies that contain the words searched for instead
+ * of scanning the whole catalog.
+ *
+ * <p>Titles and descriptions are split into lower-case words at anything that is not a letter
+ * or a digit, so {@code The_Trollgirl} becomes {@code the} and {@code trollgirl}. Every word
+ * points to the movies it occurs in, weighted so a word in the title counts three times as much
+ * as one in the description. Every word is also split into trigrams, which point back to the
+ * words they occur in, so a search for part of a word, like {@code troll}, finds
+ * {@code trollgirl} without looking through every word either.</p>
+ *
+ * <p>The index is updated one movie at a time with {@link #add(Movie)} and
+ * {@link #remove(Movie)}. Searches may run at the same time as each other, while changes wait
+ * for the searches in progress to finish.</p>
+ */
+final class MovieSearchIndex {
+
+  private static final int TITLE_WEIGHT = 3;
+  private static final int GRAM_LENGTH = 3;
+  private static final double PARTIAL_MATCH_FACTOR = 0.5;
+
+  private final Map<String, Map<Movie, Integer>> postings = new HashMap<>();
+  private final Map<String, Set<String>> gramIndex = new HashMap<>();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * Adds a movie to the index.
+   *
+   * @param movie the movie to add
+   */
+  void add(Movie movie) {
+    Map<String, Integer> weights = weightsOf(movie);
+    lock.writeLock().lock();
+    try {
+      weights.forEach((word, weight) -> {
+        Map<Movie, Integer> movies = postings.get(word);
+        if (movies == null) {
+          movies = new HashMap<>();
+          postings.put(word, movies);
+          for (String gram : gramsOf(word)) {
+            gramIndex.computeIfAbsent(gram, key -> new HashSet<>()).add(word);
+          }
+        }
+        movies.merge(movie, weight, Integer::sum);
+      });
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes a movie from the index. Words that no other movie contains are forgotten.
+   *
+   * @param movie the movie to remove, the same object that was added
+   */
+  void remove(Movie movie) {
+    Set<String> words = weightsOf(movie).keySet();
+    lock.writeLock().lock();
+    try {
+      for (String word : words) {
+        Map<Movie, Integer> movies = postings.get(word);
+        if (movies == null || movies.remove(movie) == null || !movies.isEmpty()) {
+          continue;
+        }
+        postings.remove(word);
+        for (String gram : gramsOf(word)) {
+          Set<String> gramWords = gramIndex.get(gram);
+          if (gramWords != null && gramWords.remove(word) && gramWords.isEmpty()) {
+            gramIndex.remove(gram);
+          }
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Finds the movies that best match a query. Movies matching more of the words in the query
+   * come first; among those, the ones whose title matches, or that match whole words rather than
+   * parts of words, rank higher. Ties are broken by title.
+   *
+   * @param query the words to search for
+   * @param limit the largest number of movies to return
+   * @return the best matching movies, best first
+   * @throws IllegalArgumentException if the query has no words or the limit is less than 1
+   */
+  List<Movie> search(String query, int limit) {
+    Set<String> terms = new LinkedHashSet<>(tokenize(query));
+    if (terms.isEmpty()) {
+      throw new IllegalArgumentException("The search must contain at least one word.");
+    }
+    if (limit < 1) {
+      throw new IllegalArgumentException("The limit must be at least 1.");
+    }
+    Map<Movie, Hit> hits = new HashMap<>();
+    lock.readLock().lock();
+    try {
+      for (String term : terms) {
+        Map<Movie, Double> termScores = scoreTerm(term);
+        termScores.forEach((movie, score) -> hits.computeIfAbsent(movie, Hit::new).add(score));
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return topHits(hits.values(), limit);
+  }
+
+  /**
+   * Scores every movie that contains a term, as a whole word or as part of a word.
+   * Must be called while holding the read lock.
+   *
+   * @param term the term, in lower case
+   * @return the score of each matching movie
+   */
+  private Map<Movie, Double> scoreTerm(String term) {
+    Map<Movie, Double> scores = new HashMap<>();
+    for (String word : wordsContaining(term)) {
+      double factor = word.equals(term) ? 1 : PARTIAL_MATCH_FACTOR;
+      postings.get(word).forEach((movie, weight) ->
+          scores.merge(movie, factor * weight, Math::max));
+    }
+    return scores;
+  }
+
+  /**
+   * Finds the indexed words that contain a term, using the trigrams of the term to narrow
+   * down the candidates. Terms shorter than a trigram only match whole words.
+   * Must be called while holding the read lock.
+   *
+   * @param term the term, in lower case
+   * @return the words that contain the term
+   */
+  private Set<String> wordsContaining(String term) {
+    if (term.length() < GRAM_LENGTH) {
+      return postings.containsKey(term) ? Set.of(term) : Set.of();
+    }
+    Set<String> smallest = null;
+    for (String gram : gramsOf(term)) {
+      Set<String> words = gramIndex.get(gram);
+      if (words == null) {
+        return Set.of();
+      }
+      if (smallest == null || words.size() < smallest.size()) {
+        smallest = words;
+      }
+    }
+    Set<String> matches = new HashSet<>();
+    for (String word : smallest) {
+      if (word.contains(term)) {
+        matches.add(word);
+      }
+    }
+    return matches;
+  }
+
+  /**
+   * Picks the best hits without sorting all of them.
+   *
+   * @param hits every movie that matched
+   * @param limit the largest number of movies to return
+   * @return the best movies, best first
+   */
+  private static List<Movie> topHits(Iterable<Hit> hits, int limit) {
+    Comparator<Hit> ranking = Comparator.comparingInt((Hit hit) -> hit.matchedTerms)
+        .thenComparingDouble(hit -> hit.score)
+        .thenComparing(hit -> hit.movie.getTitle(), Comparator.reverseOrder());
+    PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, ranking);
+    for (Hit hit : hits) {
+      best.add(hit);
+      if (best.size() > limit) {
+        best.poll();
+      }
+    }
+    List<Movie> movies = new ArrayList<>(best.size());
+    while (!best.isEmpty()) {
+      movies.add(best.poll().movie);
+    }
+    Collections.reverse(movies);
+    return movies;
+  }
+
+  /**
+   * Counts the weighted occurrences of every word in the title and description of a movie.
+   *
+   * @param movie the movie
+   * @return the weight of each word
+   */
+  private static Map<String, Integer> weightsOf(Movie movie) {
+    Map<String, Integer> weights = new HashMap<>();
+    for (String word : tokenize(movie.getTitle())) {
+      weights.merge(word, TITLE_WEIGHT, Integer::sum);
+    }
+    for (String word : tokenize(movie.getDescription())) {
+      weights.merge(word, 1, Integer::sum);
+    }
+    return weights;
+  }
+
+  /**
+   * Splits text into lower-case words at anything that is not a letter or a digit.
+   *
+   * @param text the text, may be {@code null}
+   * @return the words in order
+   */
+  static List<String> tokenize(String text) {
+    List<String> words = new ArrayList<>();
+    if (text == null) {
+      return words;
+    }
+    int start = -1;
+    for (int i = 0; i <= text.length(); i++) {
+      boolean wordCharacter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+      if (wordCharacter && start < 0) {
+        start = i;
+      } else if (!wordCharacter && start >= 0) {
+        words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+        start = -1;
+      }
+    }
+    return words;
+  }
+
+  /**
+   * Returns the trigrams of a word.
+   *
+   * @param word the word
+   * @return the distinct trigrams, empty if the word is shorter than a trigram
+   */
+  private static Set<String> gramsOf(String word) {
+    Set<String> grams = new HashSet<>();
+    for (int i = 0; i + GRAM_LENGTH <= word.length(); i++) {
+      grams.add(word.substring(i, i + GRAM_LENGTH));
+    }
+    return grams;
+  }
+
+  /**
+   * The score of one movie while a search is being ranked.
+   */
+  private static final class Hit {
+
+    private final Movie movie;
+    private int matchedTerms;
+    private double score;
+
+    private Hit(Movie movie) {
+      this.movie = movie;
+    }
+
+    private void add(double termScore) {
+      matchedTerms++;
+      score += termScore;
+    }
+  }
+}
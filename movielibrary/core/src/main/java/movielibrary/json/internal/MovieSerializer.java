@@ -1,9 +1,33 @@
 package movielibrary.json.internal;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 import movielibrary.core.Movie;
+import movielibrary.json.internal.MovieJournal.Operation;
 
 /**
  * The {@code MovieSerializer} class provides functionality for serializing and 
@@ -12,12 +36,64 @@ import movielibrary.core.Movie;
  * 
  * <p>This class utilizes the Jackson Library for JSON serialization and deserialization, 
  * and interacts with the {@link MovieDeserializer} class to manage the list of movies. </p>
+ *
+ * <p>By default every change rewrites the whole file. With {@link #enableJournal(int)} changes
+ * are instead appended to a {@link MovieJournal} next to the file, and the file is only
+ * rewritten when the journal is compacted.</p>
+ *
+ * <p>The file is always replaced atomically through a temporary file, so a crash in the middle of
+ * a write never leaves a truncated library behind. With {@link #enableGroupCommit(long, int)}
+ * changes that arrive close together share a single flush to disk.</p>
+ *
+ * <p>With {@link #enableBinarySnapshot()} every snapshot of the file is also written as a
+ * memory-mapped {@link MovieSnapshot} next to it, which the next start answers lookups from
+ * without parsing the file.</p>
+ *
+ * <p>The serializer also answers reads, like {@link #getMovies()} and
+ * {@link #findMovie(String)}, from the movies it holds in memory. By default every read first
+ * checks whether someone else has changed the file. With {@link #enableExclusiveAccess()} the
+ * serializer is the only one writing the file, so it is never checked or read again.</p>
+ *
+ * <p>Listeners added with {@link #addChangeListener(Consumer)} are told about every change once
+ * it has been written, in the order the changes were made. If writing a change fails, the movies
+ * in memory are rolled back to what is on disk, and the listeners never hear about it. Whenever
+ * the movies are read from disk again, because of such a rollback or because someone else
+ * changed the file, the listeners get a {@link MovieChange.Type#RESYNC} instead, since readers
+ * may have seen changes that are now gone.</p>
+ *
+ * <p>Changes to different movies run in parallel. A lend or return holds the catalog read lock
+ * and the lock of its title, striped over a fixed set of locks, while adding or deleting a movie
+ * holds the catalog write lock. A change is appended to the journal under a short log lock that
+ * keeps the records in order, and the fsync, or the rewrite of the file without a journal, runs
+ * afterwards under a separate flush lock, outside the catalog lock. A change waiting for the disk
+ * therefore never holds up changes to other movies, and every change that was appended while a
+ * flush ran shares the next one.</p>
+ *
+ * <p>All locks are {@link ReentrantLock} and {@link ReentrantReadWriteLock} rather than
+ * {@code synchronized}, so callers running on virtual threads are unmounted while they wait for
+ * a lock or the disk instead of pinning their carrier thread.</p>
  */
 public class MovieSerializer {
 
-  private ObjectMapper movieLibrary;
+  private static final int TITLE_LOCKS = 64;
+
+  private MovieCodec movieLibrary;
   private File file;
   private MovieDeserializer movieDeserializer;
+  private MovieJournal journal;
+  private volatile GroupCommitter groupCommitter;
+  private boolean binarySnapshot;
+  private volatile boolean exclusive;
+  private List<Movie> moviesView;
+  private long moviesViewVersion;
+  private final ReentrantLock flushLock = new ReentrantLock();
+  private final ReentrantReadWriteLock catalogLock = new ReentrantReadWriteLock();
+  private final ReentrantLock[] titleLocks = new ReentrantLock[TITLE_LOCKS];
+  private final ReentrantLock logLock = new ReentrantLock();
+  private final ReentrantLock listenerLock = new ReentrantLock();
+  private final List<Consumer<MovieChange>> changeListeners = new CopyOnWriteArrayList<>();
+  private final List<PendingChange> pendingChanges = new ArrayList<>();
+  private Exception logFailure;
 
   /**
    * Constructs a {@code MovieSerializer} with the specified file. 
@@ -28,33 +104,777 @@ public class MovieSerializer {
    * @throws IOException if an I/O error occurs while reading the file 
    */
   public MovieSerializer(File file) throws IOException {
-    movieLibrary = new ObjectMapper();
+    movieLibrary = MovieCodec.getInstance();
     this.file = file;
     this.movieDeserializer = new MovieDeserializer(this.file);
+    for (int i = 0; i < TITLE_LOCKS; i++) {
+      titleLocks[i] = new ReentrantLock();
+    }
+  }
+
+  /**
+   * Switches to journaled persistence. Every add, delete, lend and return is appended as a
+   * single record to the journal next to the file instead of rewriting the whole file.
+   * Once the journal holds {@code compactionThreshold} records, it is folded into a new
+   * snapshot of the file and emptied. Changes still waiting for group commit are flushed to the
+   * file first.
+   *
+   * @param compactionThreshold the number of journal records that triggers a new snapshot
+   * @throws IOException if an I/O error occurs while reading an existing journal
+   * @throws IllegalArgumentException if the compaction threshold is less than 1
+   */
+  public void enableJournal(int compactionThreshold) throws IOException {
+    lockExclusively();
+    try {
+      flushChanges();
+      this.journal = new MovieJournal(this.file, compactionThreshold);
+    } finally {
+      unlockExclusively();
+    }
+  }
+
+  /**
+   * Switches to group commit. Instead of flushing every change to disk on its own, changes
+   * arriving within {@code windowMillis} of each other (or until {@code maxBatchSize} changes
+   * are waiting) are flushed together: with one fsync of the journal, or with one rewrite of the
+   * file when no journal is used. Each change still returns only once it has been flushed.
+   * If group commit was already enabled, the changes waiting for the previous settings are
+   * flushed and its thread is stopped first.
+   *
+   * @param windowMillis how long to wait for more changes after the first one, in milliseconds
+   * @param maxBatchSize the number of waiting changes that triggers a flush right away
+   * @throws IllegalArgumentException if the window is negative or the batch size less than 1
+   */
+  public void enableGroupCommit(long windowMillis, int maxBatchSize) {
+    GroupCommitter next = new GroupCommitter(this::flushChanges, windowMillis, maxBatchSize);
+    stopGroupCommit();
+    this.groupCommitter = next;
+  }
+
+  /**
+   * Flushes the changes waiting for group commit and stops its thread, so every change is
+   * flushed on its own again. Does nothing if group commit is not enabled. Must be called
+   * without holding a lock of the serializer, which the last flush needs.
+   */
+  void stopGroupCommit() {
+    GroupCommitter previous = groupCommitter;
+    groupCommitter = null;
+    if (previous != null) {
+      previous.stop();
+    }
+  }
+
+  /**
+   * Writes a binary {@link MovieSnapshot} next to the file every time the file is rewritten.
+   * If the movies were not loaded from a snapshot of the current file, a new snapshot of both is
+   * written right away; otherwise the files are left as they are, so enabling it on every start
+   * does not rewrite them. Changes that are only in the journal are not in the binary snapshot
+   * until the journal is compacted, and are replayed on top of it when loading.
+   *
+   * @throws IOException if an I/O error occurs while writing the files
+   */
+  public void enableBinarySnapshot() throws IOException {
+    lockExclusively();
+    try {
+      this.binarySnapshot = true;
+      refresh(false);
+      if (!movieDeserializer.isLoadedFromSnapshot()) {
+        writeSnapshotLocked();
+      }
+    } finally {
+      unlockExclusively();
+    }
+  }
+
+  /**
+   * Makes the movies in memory the authoritative copy of the library: the file is only written
+   * to persist changes, and never checked or read again. Use this when this serializer is the
+   * only one writing the file. Changes made to the file by anyone else are not picked up, and
+   * are overwritten by the next snapshot.
+   */
+  public void enableExclusiveAccess() {
+    catalogLock.writeLock().lock();
+    try {
+      movieDeserializer.setExclusive(true);
+      this.exclusive = true;
+    } finally {
+      catalogLock.writeLock().unlock();
+    }
+  }
 
+  /**
+   * Adds a listener that is called with every change made through this serializer, once the
+   * change is on disk (with group commit, after the flush that included it). A change that could
+   * not be written is never published, and a {@link MovieChange.Type#RESYNC} follows whenever
+   * the movies are read from disk again. Listeners are called by the thread that flushed the
+   * changes or read the movies, one thread at a time and in the order the changes were made, so
+   * they must return quickly and never block.
+   *
+   * @param listener the listener to add
+   */
+  public void addChangeListener(Consumer<MovieChange> listener) {
+    changeListeners.add(listener);
+  }
+
+  /**
+   * Removes a listener added with {@link #addChangeListener(Consumer)}.
+   *
+   * @param listener the listener to remove
+   */
+  public void removeChangeListener(Consumer<MovieChange> listener) {
+    changeListeners.remove(listener);
+  }
+
+  /**
+   * Tells every listener about the changes of a flush, then completes their commits.
+   * A listener that fails does not affect the change or the other listeners.
+   * Must be called while holding the flush lock, once the changes are on disk.
+   *
+   * @param changes the changes, in the order they were made
+   */
+  private void publish(List<PendingChange> changes) {
+    for (PendingChange change : changes) {
+      notifyListeners(change.change);
+      change.commit.complete(null);
+    }
+  }
+
+  /**
+   * Tells every listener that the movies were read from disk again, with the catalog version
+   * they were read as.
+   */
+  private void publishResync() {
+    notifyListeners(MovieChange.resync(movieDeserializer.getCatalogVersion()));
+  }
+
+  /**
+   * Calls every listener with a change, one thread at a time. The listener lock is taken last,
+   * after any other lock, and listeners never take a lock of the library.
+   *
+   * @param change the change
+   */
+  private void notifyListeners(MovieChange change) {
+    listenerLock.lock();
+    try {
+      for (Consumer<MovieChange> listener : changeListeners) {
+        try {
+          listener.accept(change);
+        } catch (RuntimeException e) {
+          System.err.println("A movie change listener failed: " + e.getMessage());
+        }
+      }
+    } finally {
+      listenerLock.unlock();
+    }
+  }
+
+  /**
+   * Takes the changes that are waiting for a flush. Must be called while holding the log lock.
+   *
+   * @return the waiting changes, in the order they were made
+   */
+  private List<PendingChange> takePendingChanges() {
+    List<PendingChange> changes = new ArrayList<>(pendingChanges);
+    pendingChanges.clear();
+    return changes;
+  }
+
+  /**
+   * Rolls the library back to what is on disk after writing changes failed: records appended to
+   * the journal since its last sync are taken back, and the movies in memory are read again from
+   * the file and the journal. Every change that was not written fails with the same cause and is
+   * never published: the changes of the failed flush, and every change still waiting for the next
+   * one, since it was rolled back too. The listeners get a resync instead, since readers may
+   * have seen those changes.
+   *
+   * @param cause the failure that made the rollback necessary, which gets any failure of the
+   *              rollback itself added as suppressed
+   * @param failed the changes of the flush that failed
+   */
+  private void rollBack(Exception cause, List<PendingChange> failed) {
+    rollBack(cause, failed, false);
+  }
+
+  private void rollBack(Exception failure, List<PendingChange> failed, boolean afterAppend) {
+    List<PendingChange> rolledBack = new ArrayList<>(failed);
+    Exception cause = failure;
+    lockExclusively();
+    try {
+      logLock.lock();
+      try {
+        if (afterAppend) {
+          if (logFailure == null) {
+            return;
+          }
+          cause = logFailure;
+        }
+        logFailure = null;
+        rolledBack.addAll(takePendingChanges());
+        try {
+          if (journal != null) {
+            journal.rollBack();
+          }
+          movieDeserializer.readAgain();
+        } catch (IOException | RuntimeException e) {
+          cause.addSuppressed(e);
+        }
+        publishResync();
+      } finally {
+        logLock.unlock();
+      }
+    } finally {
+      unlockExclusively();
+    }
+    for (PendingChange change : rolledBack) {
+      change.commit.completeExceptionally(cause);
+    }
+  }
+
+  /**
+   * Rolls the library back after appending a change to the journal failed, unless another thread
+   * already did. See {@link #rollBack(Exception, List)}.
+   */
+  private void rollBackFailedAppend() {
+    rollBack(null, List.of(), true);
   }
 
   //Inspired by https://www.baeldung.com/jackson-object-mapper-tutorial
   /**
    * Writes all the movies in the library to the file in a formatted (pretty) JSON structure. 
    * This method overwrites the current file contents with the updated movie list. 
+   * Since the new snapshot contains every change in the journal, the journal is emptied.
    *
    * @throws IOException if an I/O error occurs while writing to the file. 
    */
   public void writeAllMoviesPretty() throws IOException {
-    movieLibrary.writerWithDefaultPrettyPrinter()
-                .writeValue(this.file, movieDeserializer.getMoviesInLibrary());
+    lockExclusively();
+    try {
+      refresh(true);
+      writeSnapshotLocked();
+    } finally {
+      unlockExclusively();
+    }
+  }
+
+  /**
+   * Folds the journal into a new snapshot of the file, and of the binary snapshot if it is
+   * enabled, if the journal holds any changes. Without a journal nothing is written.
+   *
+   * @throws IOException if an I/O error occurs while writing the files
+   */
+  public void compactJournal() throws IOException {
+    lockExclusively();
+    try {
+      if (journal != null && MovieJournal.logFileFor(this.file).isFile()) {
+        refresh(true);
+        writeSnapshotLocked();
+      }
+    } finally {
+      unlockExclusively();
+    }
+  }
+
+  /**
+   * Writes a snapshot of the movies in memory, which makes every change waiting for a flush
+   * durable, and publishes those changes. If writing fails, the library is rolled back and the
+   * changes fail. Must be called while holding the flush lock and the catalog write lock.
+   *
+   * @throws IOException if an I/O error occurs while writing the files
+   */
+  private void writeSnapshotLocked() throws IOException {
+    rollBackFailedAppend();
+    List<PendingChange> changes;
+    logLock.lock();
+    try {
+      changes = takePendingChanges();
+    } finally {
+      logLock.unlock();
+    }
+    try {
+      writeSnapshot(movieDeserializer.getMoviesInLibrary());
+    } catch (IOException | RuntimeException e) {
+      rollBack(e, changes);
+      throw e;
+    }
+    publish(changes);
+  }
+
+  /**
+   * Writes the snapshot of the movie library file, and the binary snapshot if it is enabled,
+   * then empties the journal. Both are streamed into temporary files, the CRC-32 of the JSON
+   * being computed as it is written, so neither is ever held in memory as a whole. The binary
+   * snapshot is moved into place first, so the file is left as it was if either write fails;
+   * a binary snapshot without its file is ignored when loading. The journal is only emptied once
+   * the new files are durable. Must be called while holding the flush lock, with movies that do
+   * not change while they are written.
+   *
+   * @param movies the movies to write
+   * @throws IOException if an I/O error occurs while writing or moving the files
+   */
+  private void writeSnapshot(List<Movie> movies) throws IOException {
+    final long start = System.nanoTime();
+    ObjectWriter writer = movieLibrary.getPrettyMovieListWriter()
+        .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    CRC32 crc = new CRC32();
+    File snapshotFile = MovieSnapshot.snapshotFileFor(this.file);
+    Path json = writeTemporary(this.file,
+        out -> writer.writeValue(new CheckedOutputStream(out, crc), movies));
+    Path binary = null;
+    try {
+      if (binarySnapshot) {
+        long length = Files.size(json);
+        long modified = Files.getLastModifiedTime(json).to(TimeUnit.NANOSECONDS);
+        binary = writeTemporary(snapshotFile, out ->
+            MovieSnapshot.write(movies, length, modified, crc.getValue(), out));
+      }
+      logLock.lock();
+      try {
+        if (binary != null) {
+          moveOver(binary, snapshotFile);
+        }
+        moveOver(json, this.file);
+        movieDeserializer.markFileInSync();
+      } finally {
+        logLock.unlock();
+      }
+    } finally {
+      Files.deleteIfExists(json);
+      if (binary != null) {
+        Files.deleteIfExists(binary);
+      }
+    }
+    forceDirectory(this.file.toPath());
+    logLock.lock();
+    try {
+      if (journal != null) {
+        journal.clear();
+      } else {
+        Files.deleteIfExists(MovieJournal.logFileFor(this.file).toPath());
+      }
+      movieDeserializer.markFileInSync();
+    } finally {
+      logLock.unlock();
+    }
+    MovieMetrics.getInstance().recordSince(MovieMetrics.SNAPSHOT_WRITE, start);
+  }
+
+  /**
+   * Streams content into a new temporary file next to the given file and forces it to disk.
+   * The temporary file is deleted again if writing it fails.
+   *
+   * @param file the file the content is meant to replace
+   * @param content writes the content to the stream it is given
+   * @return the temporary file
+   * @throws IOException if an I/O error occurs while writing the file
+   */
+  private static Path writeTemporary(File file, Content content) throws IOException {
+    Path temporary = file.toPath().toAbsolutePath()
+        .resolveSibling(file.getName() + "." + UUID.randomUUID() + ".tmp");
+    boolean written = false;
+    try (FileChannel channel = FileChannel.open(temporary,
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel))) {
+      content.writeTo(out);
+      out.flush();
+      channel.force(true);
+      MovieMetrics.getInstance().increment(MovieMetrics.BYTES_WRITTEN, channel.size());
+      written = true;
+    } finally {
+      if (!written) {
+        Files.deleteIfExists(temporary);
+      }
+    }
+    return temporary;
+  }
+
+  /**
+   * Moves a temporary file over the given file in one atomic step, where the file system
+   * supports it. The move is only durable once the directory has been forced to disk.
+   *
+   * @param temporary the temporary file holding the new content
+   * @param file the file to replace
+   * @throws IOException if an I/O error occurs while moving the file
+   */
+  private static void moveOver(Path temporary, File file) throws IOException {
+    Path target = file.toPath().toAbsolutePath();
+    try {
+      Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Forces the directory holding the given file to disk, so a file that was created, renamed
+   * or replaced in it survives a crash. Some platforms, like Windows, cannot open a directory;
+   * there the rename is left to the file system.
+   *
+   * @param file the file whose directory to force
+   * @throws IOException if an I/O error occurs while forcing the directory
+   */
+  static void forceDirectory(Path file) throws IOException {
+    Path directory = file.toAbsolutePath().getParent();
+    if (directory == null) {
+      return;
+    }
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(directory, StandardOpenOption.READ);
+    } catch (IOException e) {
+      return;
+    }
+    try (channel) {
+      channel.force(true);
+    }
+  }
+
+  /**
+   * Records a change that has already been applied to the movies in memory, so the next flush
+   * persists and publishes it: with a journal the change is appended to it, without one the next
+   * flush rewrites the file. Must be called while holding the catalog lock, and the lock of the
+   * title for a lend or return, so changes to the same movie are recorded in the order they were
+   * made. Nothing is forced to disk here.
+   * If appending fails, no change is recorded until the library has been rolled back with
+   * {@link #rollBackFailedAppend()}.
+   *
+   * @param operation the kind of change
+   * @param movie the movie that changed
+   * @param version the catalog version the change was made at
+   * @return the recorded change, whose commit completes once it is on disk
+   * @throws IOException if an I/O error occurs while writing to the journal, or an earlier
+   *                     append failed
+   */
+  private PendingChange record(Operation operation, Movie movie, long version)
+      throws IOException {
+    logLock.lock();
+    try {
+      if (logFailure != null) {
+        throw new IOException("An earlier change could not be written to the journal.",
+            logFailure);
+      }
+      boolean compact = false;
+      if (journal != null) {
+        try {
+          appendToJournal(operation, movie);
+          if (!exclusive) {
+            movieDeserializer.markFileInSync();
+          }
+        } catch (IOException | RuntimeException e) {
+          logFailure = e;
+          throw e;
+        }
+        compact = journal.needsCompaction();
+      }
+      PendingChange change =
+          new PendingChange(MovieChange.of(operation, movie.getTitle(), version), compact);
+      pendingChanges.add(change);
+      return change;
+    } finally {
+      logLock.unlock();
+    }
+  }
+
+  /**
+   * Appends the record for a change to the journal.
+   *
+   * @param operation the kind of change
+   * @param movie the movie that changed
+   * @throws IOException if an I/O error occurs while writing to the journal
+   */
+  private void appendToJournal(Operation operation, Movie movie) throws IOException {
+    if (operation == Operation.ADD) {
+      journal.appendAdd(movie);
+    } else {
+      journal.append(operation, movie.getTitle());
+    }
+  }
+
+  /**
+   * Makes recorded changes durable: compacts the journal if it has grown large enough, then
+   * hands the changes to group commit, or flushes them right away without it. Must be called
+   * without holding a lock of the serializer.
+   *
+   * @param changes the recorded changes
+   */
+  private void persist(List<PendingChange> changes) {
+    if (changes.stream().anyMatch(change -> change.compact)) {
+      compact();
+    }
+    GroupCommitter committer = groupCommitter;
+    if (committer == null || !committer.register(changes.size())) {
+      flushChanges();
+    }
+  }
+
+  /**
+   * Folds the journal into a new snapshot, unless another change already did. If that fails,
+   * every waiting change fails with it.
+   */
+  private void compact() {
+    lockExclusively();
+    try {
+      if (journal != null && journal.needsCompaction()) {
+        writeSnapshotLocked();
+      }
+    } catch (IOException | RuntimeException e) {
+      // writeSnapshotLocked() has rolled back and failed every waiting change with e.
+      return;
+    } finally {
+      unlockExclusively();
+    }
+  }
+
+  /**
+   * Flushes every change recorded since the last flush, from the group commit thread or the
+   * thread that made the change. Flushes run one at a time under the flush lock, but outside the
+   * catalog lock, so changes to other movies go on while one waits for the disk: with a journal,
+   * the records appended so far are forced to disk without any other lock; without one, the
+   * movies are copied under the catalog write lock and the file is rewritten from the copy. The
+   * changes are published once they are on disk; if the flush fails, the library is rolled back
+   * to what is on disk, and the changes fail instead.
+   */
+  private void flushChanges() {
+    flushLock.lock();
+    try {
+      if (journal == null) {
+        flushSnapshot();
+      } else {
+        flushJournal();
+      }
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  private void flushJournal() {
+    List<PendingChange> changes;
+    MovieJournal.Mark mark;
+    logLock.lock();
+    try {
+      if (logFailure != null) {
+        changes = null;
+        mark = null;
+      } else {
+        changes = takePendingChanges();
+        mark = journal.mark();
+      }
+    } finally {
+      logLock.unlock();
+    }
+    if (changes == null) {
+      rollBackFailedAppend();
+      return;
+    }
+    if (changes.isEmpty()) {
+      return;
+    }
+    try {
+      journal.force();
+    } catch (IOException | RuntimeException e) {
+      rollBack(e, changes);
+      return;
+    }
+    logLock.lock();
+    try {
+      journal.synced(mark);
+    } finally {
+      logLock.unlock();
+    }
+    publish(changes);
+  }
+
+  private void flushSnapshot() {
+    List<PendingChange> changes = List.of();
+    List<Movie> movies;
+    catalogLock.writeLock().lock();
+    try {
+      logLock.lock();
+      try {
+        changes = takePendingChanges();
+      } finally {
+        logLock.unlock();
+      }
+      if (changes.isEmpty()) {
+        return;
+      }
+      movies = copyOf(movieDeserializer.getMoviesInLibrary());
+    } catch (IOException | RuntimeException e) {
+      rollBack(e, changes);
+      return;
+    } finally {
+      catalogLock.writeLock().unlock();
+    }
+    try {
+      writeSnapshot(movies);
+    } catch (IOException | RuntimeException e) {
+      rollBack(e, changes);
+      return;
+    }
+    publish(changes);
+  }
+
+  /**
+   * Copies the movies, so they can be written while the movies in memory go on changing.
+   *
+   * @param movies the movies to copy
+   * @return copies of the movies, in the same order
+   */
+  private static List<Movie> copyOf(List<Movie> movies) {
+    List<Movie> copies = new ArrayList<>(movies.size());
+    for (Movie movie : movies) {
+      Movie copy = new Movie(movie.getTitle(), movie.getMovieLength(), movie.getDescription());
+      copy.setLent(movie.getIsLent());
+      copies.add(copy);
+    }
+    return copies;
+  }
+
+  /**
+   * Applies a batch of changes, from the {@link SingleWriter} or a bulk change made through the
+   * {@link MovieManager}, and persists them together: with
+   * one journal sync, or with one rewrite of the file when no journal is used, shared with other
+   * changes through group commit if it is enabled. Every change takes the same locks as a single
+   * change to its movie, so it is checked against the changes before it in the batch and against
+   * concurrent changes alike. A change that is
+   * rejected, for example lending a movie that is already lent, fails on its own without
+   * affecting the rest of the batch. The result of every other change completes once it is on
+   * disk, or fails if persisting it fails; listeners are only told about the changes once they are
+   * on disk.
+   *
+   * @param batch the changes to apply, in the order they were submitted
+   */
+  void applyBatch(List<MovieMutation> batch) {
+    List<PendingChange> changes = new ArrayList<>();
+    for (MovieMutation mutation : batch) {
+      try {
+        PendingChange change = submit(mutation);
+        change.commit.whenComplete((ignored, failure) -> {
+          if (failure == null) {
+            mutation.getResult().complete(null);
+          } else {
+            mutation.getResult().completeExceptionally(failure);
+          }
+        });
+        changes.add(change);
+      } catch (IOException | RuntimeException e) {
+        mutation.getResult().completeExceptionally(e);
+      }
+    }
+    if (!changes.isEmpty()) {
+      persist(changes);
+    }
+  }
+
+  /**
+   * Applies a single change to the movies in memory and records it, after checking that it is
+   * allowed. A lend or return holds the catalog read lock and the lock of its title, so changes
+   * to different movies are checked and applied in parallel, while two changes to the same movie
+   * never are. Adding or deleting a movie changes the catalog itself, and holds the catalog write
+   * lock. If recording the change fails, the library is rolled back before this returns.
+   *
+   * @param mutation the change to apply
+   * @return the recorded change
+   * @throws IOException if an I/O error occurs while reading the file or writing the journal
+   * @throws IllegalStateException if the change is not allowed in the current state
+   * @throws NoSuchElementException if the movie to lend or return is not in the library
+   */
+  private PendingChange submit(MovieMutation mutation) throws IOException {
+    boolean lentChange = mutation.getOperation() == Operation.LEND
+        || mutation.getOperation() == Operation.RETURN;
+    Lock catalog = lentChange ? lockForReading(true) : lockForWriting();
+    Exception failure;
+    try {
+      ReentrantLock titleLock = titleLockFor(mutation.getTitle());
+      titleLock.lock();
+      try {
+        Movie changed = apply(mutation);
+        long version = lentChange
+            ? mutation.getState().getVersion() : movieDeserializer.getCatalogVersion();
+        try {
+          return record(mutation.getOperation(), changed, version);
+        } catch (IOException | RuntimeException e) {
+          failure = e;
+        }
+      } finally {
+        titleLock.unlock();
+      }
+    } finally {
+      catalog.unlock();
+    }
+    rollBackFailedAppend();
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    }
+    throw (RuntimeException) failure;
+  }
+
+  /**
+   * Returns the lock that guards changes to the movie with the given title. Titles that are the
+   * same once normalized share a lock, as do some others, since the locks are striped.
+   *
+   * @param title the title of the movie
+   * @return the lock of the title
+   */
+  private ReentrantLock titleLockFor(String title) {
+    int hash = MovieDeserializer.normalizeTitle(title).hashCode();
+    return titleLocks[Math.floorMod(hash, TITLE_LOCKS)];
   }
 
   /**
-   * Adds new movie to movielibrary.
+   * Applies a single change to the movies in memory, after checking that it is allowed.
+   * Must be called while holding the catalog lock and the lock of the title.
+   *
+   * @param mutation the change to apply
+   * @return the movie that was added, deleted, lent or returned
+   * @throws IOException if an I/O error occurs while accessing the movie library
+   * @throws IllegalStateException if the change is not allowed in the current state
+   * @throws MovieConflictException if the movie to lend is already lent, or the movie to
+   *                                return is not lent
+   * @throws NoSuchElementException if the movie to lend or return is not in the library
+   */
+  private Movie apply(MovieMutation mutation) throws IOException {
+    String title = mutation.getTitle();
+    switch (mutation.getOperation()) {
+      case ADD:
+        if (movieDeserializer.findMovie(title) != null) {
+          throw new IllegalStateException("The movie title already exists in the movielibrary!");
+        }
+        Movie movie = mutation.getMovie() != null ? mutation.getMovie()
+            : Movie.createMovie(title, mutation.getMovieLength(), mutation.getDescription());
+        movieDeserializer.addMovie(movie);
+        return movie;
+      case DELETE:
+        return removeMovie(title);
+      default:
+        boolean newStatus = mutation.getOperation() == Operation.LEND;
+        Movie movieToUpdate = movieDeserializer.findMovieToChange(title);
+        if (movieToUpdate == null) {
+          throw new NoSuchElementException("The movie doesn't exist in the library.");
+        }
+        if (movieToUpdate.getIsLent() == newStatus) {
+          throw new MovieConflictException(
+              newStatus ? "The movie is already lent." : "The movie is not lent.",
+              new MovieState(movieToUpdate, movieDeserializer.getMovieVersion(title)));
+        }
+        movieToUpdate.setLent(newStatus);
+        mutation.setState(
+            new MovieState(movieToUpdate, movieDeserializer.markChanged(movieToUpdate)));
+        return movieToUpdate;
+    }
+  }
+
+  /**
+   * Adds new movie to movielibrary. Checking that the title is free and adding the movie happen
+   * under one lock, so two concurrent adds of the same title never both succeed.
    *
    * @param movie new movie that is added to the movielibrary
    * @throws IOException if an I/O error occurs while writing to the file. 
+   * @throws IllegalStateException if a movie with the same title is already in the library
    */
   public void addMovieToLibrary(Movie movie) throws IOException {
-    movieDeserializer.getMoviesInLibrary().add(movie);
-    writeAllMoviesPretty();
+    applyChange(MovieMutation.add(movie));
   }
 
   /**
@@ -66,33 +886,72 @@ public class MovieSerializer {
    * @throws IllegalStateException if there is only 1 movie left in the library
    */
   public void deleteMovieFromLibrary(String title) throws IOException {
-    Movie movieToDelete = movieDeserializer.findMovie(title);
+    applyChange(MovieMutation.of(Operation.DELETE, title));
+  }
+
+  /**
+   * Checks that a single change is allowed, applies it to the movies in memory and records it,
+   * then waits for it to be on disk. Since the check and the change are never apart, the outcome
+   * is the same as with {@link #applyBatch(List)}, whichever of them a concurrent change goes
+   * through.
+   *
+   * @param mutation the change to apply
+   * @return the movie as the change left it, if it lends or returns a movie
+   * @throws IOException if an I/O error occurs while reading or writing the file
+   * @throws IllegalStateException if the change is not allowed in the current state
+   * @throws NoSuchElementException if the movie to lend or return is not in the library
+   */
+  private MovieState applyChange(MovieMutation mutation) throws IOException {
+    PendingChange change = submit(mutation);
+    persist(List.of(change));
+    GroupCommitter.await(change.commit);
+    return mutation.getState();
+  }
+
+  /**
+   * Removes the movie with the given title from the movies in memory.
+   * Must be called while holding the catalog write lock.
+   *
+   * @param title title of the movie to be deleted
+   * @return the movie that was removed
+   * @throws IOException if an I/O error occurs while accessing the movie library
+   * @throws IllegalStateException if the movie is not present in movielibrary
+   * @throws IllegalStateException if there is only 1 movie left in the library
+   */
+  private Movie removeMovie(String title) throws IOException {
+    Movie movieToDelete = movieDeserializer.findMovieToChange(title);
 
     if (movieToDelete == null) {
       throw new IllegalStateException("The movie doesn't exist in the library. ");
     }
 
-    if (movieDeserializer.getMoviesInLibrary().size() <= 1) {
+    if (movieDeserializer.size() <= 1) {
       throw new 
             IllegalStateException("There has to be at least 1 movie left in the movielibrary. ");
     }
 
-    movieDeserializer.getMoviesInLibrary().remove(movieToDelete);
-    writeAllMoviesPretty();
+    movieDeserializer.removeMovie(movieToDelete);
+    return movieToDelete;
   }
 
   /**
    * Updates the lent status of the movie with the specified title in the library, 
-   * then serializes the updated movie list back to the file in a formatted JSON structure. 
+   * then persists the change to the file (or its journal). Checking the current status and
+   * changing it happen under the lock of the title, so of two concurrent calls setting the same
+   * status, only one succeeds, while calls for other movies go on in parallel. The movie is
+   * returned as the change left it, with its version, even if
+   * other changes follow before the caller gets to look at it.
    *
    * @param title the title of the movie to update
    * @param newStatus the new lent status to set for the movie
+   * @return a copy of the movie right after the change, with its version
    * @throws IOException if an I/O error occurs while the writing to the file 
+   * @throws MovieConflictException if the movie already has the new status, holding the movie
+   *                                as it is
+   * @throws NoSuchElementException if the movie is not in the library
    */
-  public void changeLentStatus(String title, boolean newStatus) throws IOException {
-    Movie movieToUpdate = this.movieDeserializer.findMovie(title);
-    movieToUpdate.setLent(newStatus);
-    writeAllMoviesPretty();
+  public MovieState changeLentStatus(String title, boolean newStatus) throws IOException {
+    return applyChange(MovieMutation.of(newStatus ? Operation.LEND : Operation.RETURN, title));
   }
 
   /**
@@ -103,8 +962,111 @@ public class MovieSerializer {
    * @throws IOException if an I/O error occurs while reading the file
    */
   public boolean getLentStatus(String title) throws IOException {
-    movieDeserializer.reloadMovieData();
-    return this.movieDeserializer.checkIfLent(title);
+    Lock lock = lockForReading(false);
+    try {
+      return this.movieDeserializer.isLent(title);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns all the movies in the library, after picking up changes made to the file by others.
+   * The list is an unmodifiable copy that is shared by every caller until the library changes,
+   * so reading an unchanged library costs nothing.
+   *
+   * @return the movies in library order
+   * @throws IOException if an I/O error occurs while reading the file
+   */
+  public List<Movie> getMovies() throws IOException {
+    Lock lock = lockForReading(false);
+    try {
+      if (moviesView != null && moviesViewVersion == movieDeserializer.getCatalogVersion()) {
+        return moviesView;
+      }
+    } finally {
+      lock.unlock();
+    }
+    lock = lockForWriting();
+    try {
+      long version = movieDeserializer.getCatalogVersion();
+      if (moviesView == null || moviesViewVersion != version) {
+        moviesView = List.copyOf(movieDeserializer.getMoviesInLibrary());
+        moviesViewVersion = version;
+      }
+      return moviesView;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Finds the movie with the given title, after picking up changes made to the file by others.
+   * See {@link MovieDeserializer#findMovie(String)}.
+   *
+   * @param title the title of the movie to find
+   * @return the movie, or {@code null} if it is not in the library
+   * @throws IOException if an I/O error occurs while reading the file
+   */
+  public Movie findMovie(String title) throws IOException {
+    Lock lock = lockForReading(false);
+    try {
+      return movieDeserializer.findMovie(title);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Searches the titles and descriptions of the movies, after picking up changes made to the
+   * file by others. See {@link MovieDeserializer#searchMovies(String, int)}.
+   *
+   * @param query the words to search for
+   * @param limit the largest number of movies to return
+   * @return the best matching movies, best first
+   * @throws IOException if an I/O error occurs while reading the file
+   * @throws IllegalArgumentException if the query has no words or the limit is less than 1
+   */
+  public List<Movie> searchMovies(String query, int limit) throws IOException {
+    Lock lock = lockForReading(true);
+    try {
+      return movieDeserializer.searchMovies(query, limit);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the catalog version of the movies, after picking up changes made to the file
+   * by others. See {@link MovieDeserializer#getCatalogVersion()}.
+   *
+   * @return the current catalog version
+   * @throws IOException if an I/O error occurs while reading the file
+   */
+  public long getCatalogVersion() throws IOException {
+    Lock lock = lockForReading(false);
+    try {
+      return movieDeserializer.getCatalogVersion();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the version at which the movie with the given title last changed.
+   * See {@link MovieDeserializer#getMovieVersion(String)}.
+   *
+   * @param title the title of the movie
+   * @return the version of the movie
+   * @throws IOException if an I/O error occurs while reading the file
+   */
+  public long getMovieVersion(String title) throws IOException {
+    Lock lock = lockForReading(false);
+    try {
+      return movieDeserializer.getMovieVersion(title);
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
@@ -117,7 +1079,148 @@ public class MovieSerializer {
    * @throws IOException if an I/O error occurs while reading the file
    */
   public boolean movieIsFound(String title) throws IOException {
-    movieDeserializer.reloadMovieData();
-    return movieDeserializer.findMovie(title.toLowerCase().strip()) != null;
+    Lock lock = lockForReading(false);
+    try {
+      return movieDeserializer.findMovie(title.toLowerCase().strip()) != null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Takes the catalog read lock, once the movies are loaded and match the file. If they do not,
+   * the file is read again under the write lock first, which is then downgraded.
+   *
+   * @param inMemory whether the movies must be in memory rather than only in the mapped snapshot,
+   *                 because they are about to change
+   * @return the read lock, to unlock once done
+   * @throws IOException if an I/O error occurs while reading the file
+   */
+  private Lock lockForReading(boolean inMemory) throws IOException {
+    Lock lock = catalogLock.readLock();
+    lock.lock();
+    try {
+      if (isCurrent() && (!inMemory || movieDeserializer.isInMemory())) {
+        return lock;
+      }
+    } catch (IOException | RuntimeException e) {
+      lock.unlock();
+      throw e;
+    }
+    lock.unlock();
+    catalogLock.writeLock().lock();
+    try {
+      refresh(inMemory);
+      lock.lock();
+    } finally {
+      catalogLock.writeLock().unlock();
+    }
+    return lock;
+  }
+
+  /**
+   * Takes the catalog write lock, once the movies are in memory and match the file.
+   *
+   * @return the write lock, to unlock once done
+   * @throws IOException if an I/O error occurs while reading the file
+   */
+  private Lock lockForWriting() throws IOException {
+    Lock lock = catalogLock.writeLock();
+    lock.lock();
+    try {
+      refresh(true);
+    } catch (IOException | RuntimeException e) {
+      lock.unlock();
+      throw e;
+    }
+    return lock;
+  }
+
+  /**
+   * Takes the flush lock and the catalog write lock, so nothing changes or is written until
+   * {@link #unlockExclusively()}.
+   */
+  private void lockExclusively() {
+    flushLock.lock();
+    catalogLock.writeLock().lock();
+  }
+
+  private void unlockExclusively() {
+    catalogLock.writeLock().unlock();
+    flushLock.unlock();
+  }
+
+  /**
+   * Checks whether the movies are loaded and match the file. The file is compared under the log
+   * lock, so it is never caught between a change being written and being marked as written.
+   *
+   * @return {@code true} if the movies do not have to be read again
+   * @throws IOException if an I/O error occurs while reading the file attributes
+   */
+  private boolean isCurrent() throws IOException {
+    if (exclusive) {
+      return movieDeserializer.isCurrent();
+    }
+    logLock.lock();
+    try {
+      return movieDeserializer.isCurrent();
+    } finally {
+      logLock.unlock();
+    }
+  }
+
+  /**
+   * Reads the file again if it no longer matches the movies, and tells the listeners if that
+   * replaced movies that were loaded before. Must be called while holding the catalog write
+   * lock.
+   *
+   * @param inMemory whether to create the movies in memory if they are only in the mapped snapshot
+   * @throws IOException if an I/O error occurs while reading the file
+   */
+  private void refresh(boolean inMemory) throws IOException {
+    boolean reloaded;
+    logLock.lock();
+    try {
+      reloaded = movieDeserializer.reload();
+    } finally {
+      logLock.unlock();
+    }
+    if (reloaded) {
+      publishResync();
+    }
+    if (inMemory) {
+      movieDeserializer.loadIntoMemory();
+    }
+  }
+
+  /**
+   * A change that has been applied in memory and recorded, waiting for the flush that makes it
+   * durable.
+   */
+  private static final class PendingChange {
+
+    private final MovieChange change;
+    private final boolean compact;
+    private final CompletableFuture<Void> commit = new CompletableFuture<>();
+
+    private PendingChange(MovieChange change, boolean compact) {
+      this.change = change;
+      this.compact = compact;
+    }
+  }
+
+  /**
+   * Writes the content of a file to a stream.
+   */
+  @FunctionalInterface
+  private interface Content {
+
+    /**
+     * Writes the content to the given stream, without closing it.
+     *
+     * @param out the stream to write to
+     * @throws IOException if an I/O error occurs while writing
+     */
+    void writeTo(OutputStream out) throws IOException;
   }
 }
@@ -0,0 +1,461 @@
+package movielibrary.json.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import movielibrary.core.Movie;
+
+/**
+ * The {@code MovieSnapshot} class is a compact binary snapshot of the movie library that is read
+ * through a memory-mapped file. Opening it maps the file without reading it, and lookups and lent
+ * status reads work directly on the mapped bytes, touching only the pages they need, without
+ * creating a {@link Movie} for every entry. {@link MovieDeserializer} answers lookups from it
+ * until the movies are needed in memory, for the first change or to list them all.
+ *
+ * <p>The file starts with a header (magic number, version, number of movies, the offset of the
+ * string heap, and the length, modification time and CRC-32 of the JSON file the snapshot was
+ * written with), followed
+ * by one fixed-width record per movie and then a heap holding the UTF-8
+ * bytes of all titles and descriptions. A record holds the movie length, the lent flag, the
+ * position of the movie in the library and the offset and length of the title, the normalized
+ * title and the description in the heap. Records are sorted by normalized title, so a title is
+ * found with a binary search, while the positions let the library be rebuilt in its own
+ * order.</p>
+ *
+ * <p>JSON stays the format the library is imported from and exported to. The snapshot mirrors the
+ * movie library file as it was last written by the {@link MovieSerializer}, and
+ * {@link #isSnapshotOf(File)} tells whether the file still holds exactly what it was written with.
+ * </p>
+ *
+ * <p>The whole file is mapped as one buffer, so a snapshot holds at most
+ * {@link Integer#MAX_VALUE} bytes. Sizes are computed as {@code long} and checked against that
+ * limit before anything is written.</p>
+ */
+public final class MovieSnapshot {
+
+  private static final int MAGIC = 0x4D4C4253;
+  private static final int VERSION = 4;
+  private static final int HEADER_SIZE = 40;
+  private static final int SOURCE_LENGTH_OFFSET = 16;
+  private static final int SOURCE_CRC_OFFSET = 24;
+  private static final int SOURCE_MODIFIED_OFFSET = 32;
+  private static final long MAX_SIZE = Integer.MAX_VALUE;
+  private static final int RECORD_SIZE = 40;
+  private static final int LENGTH_OFFSET = 0;
+  private static final int TITLE_OFFSET = 8;
+  private static final int KEY_OFFSET = 16;
+  private static final int DESCRIPTION_OFFSET = 24;
+  private static final int FLAGS_OFFSET = 32;
+  private static final int POSITION_OFFSET = 36;
+  private static final int LENT_FLAG = 1;
+  private static final int NO_STRING = -1;
+  private static final long NO_SOURCE = -1;
+
+  private final ByteBuffer buffer;
+  private final int size;
+  private final int heapStart;
+
+  private MovieSnapshot(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IOException("The file is not a movie library snapshot.");
+    }
+    if (buffer.getInt(4) != VERSION) {
+      throw new IOException("Unsupported movie library snapshot version: " + buffer.getInt(4));
+    }
+    this.size = buffer.getInt(8);
+    this.heapStart = buffer.getInt(12);
+    if (size < 0 || heapStart != HEADER_SIZE + (long) size * RECORD_SIZE
+        || heapStart > buffer.capacity()) {
+      throw new IOException("The movie library snapshot is damaged.");
+    }
+  }
+
+  /**
+   * Returns the snapshot file that belongs to the given movie library file.
+   *
+   * @param file the movie library file
+   * @return the snapshot file next to it
+   */
+  public static File snapshotFileFor(File file) {
+    return new File(file.getPath() + ".bin");
+  }
+
+  /**
+   * Opens a snapshot by mapping the given file into memory.
+   *
+   * @param file the snapshot file
+   * @return the opened {@code MovieSnapshot}
+   * @throws IOException if an I/O error occurs or the file is not a valid snapshot
+   */
+  public static MovieSnapshot open(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() > MAX_SIZE) {
+        throw new IOException("The movie library snapshot is larger than " + MAX_SIZE + " bytes.");
+      }
+      return new MovieSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Encodes the given movies into the snapshot format, without a JSON file it belongs to.
+   * See {@link #encode(List, byte[])}.
+   *
+   * @param movies the movies to encode
+   * @return the bytes of the snapshot
+   */
+  public static byte[] encode(List<Movie> movies) {
+    return encode(movies, null);
+  }
+
+  /**
+   * Encodes the given movies into the snapshot format in memory. See
+   * {@link #write(List, long, long, long, OutputStream)}, which streams the snapshot instead.
+   * The snapshot does not know the modification time of the JSON, so it is only used in place of
+   * a file whose CRC-32 matches.
+   *
+   * @param movies the movies to encode
+   * @param source the content of the JSON file the movies were written to, or {@code null} if
+   *               the snapshot does not belong to a file
+   * @return the bytes of the snapshot
+   */
+  public static byte[] encode(List<Movie> movies, byte[] source) {
+    long sourceLength = NO_SOURCE;
+    long sourceCrc = 0;
+    if (source != null) {
+      CRC32 crc = new CRC32();
+      crc.update(source);
+      sourceLength = source.length;
+      sourceCrc = crc.getValue();
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      write(movies, sourceLength, NO_SOURCE, sourceCrc, out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Writes the given movies in the snapshot format to a stream, one part at a time, so the
+   * snapshot is never held in memory as a whole. If several movies share the same
+   * normalized title, the first one in the list is the one found by lookups.
+   * The length, modification time and CRC-32 of the JSON the movies were written as are stored
+   * in the header, so the snapshot is only used in place of a file that still holds that JSON.
+   * The stream is flushed, but not closed.
+   *
+   * @param movies the movies to write
+   * @param sourceLength the length of the JSON file the movies were written to, or {@code -1}
+   *                     if the snapshot does not belong to a file
+   * @param sourceModified the modification time of the JSON file in nanoseconds since the epoch,
+   *                       or {@code -1} if it is not known
+   * @param sourceCrc the CRC-32 of the JSON file the movies were written to
+   * @param out the stream to write to
+   * @throws IOException if an I/O error occurs while writing to the stream, or if the snapshot
+   *                     would be larger than {@link Integer#MAX_VALUE} bytes
+   */
+  public static void write(List<Movie> movies, long sourceLength, long sourceModified,
+      long sourceCrc, OutputStream out) throws IOException {
+    List<Entry> entries = new ArrayList<>(movies.size());
+    for (int position = 0; position < movies.size(); position++) {
+      entries.add(new Entry(movies.get(position), position));
+    }
+    entries.sort(Comparator.comparing(entry -> entry.key, Arrays::compareUnsigned));
+
+    long heapStart = HEADER_SIZE + (long) entries.size() * RECORD_SIZE;
+    long heapSize = 0;
+    for (Entry entry : entries) {
+      heapSize += Math.max(0, entry.titleLength) + entry.key.length
+          + Math.max(0, entry.descriptionLength);
+    }
+    if (heapStart + heapSize > MAX_SIZE) {
+      throw new IOException("A snapshot of " + entries.size() + " movies would take "
+          + (heapStart + heapSize) + " bytes, more than the " + MAX_SIZE + " a snapshot can hold.");
+    }
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(MAGIC);
+    data.writeInt(VERSION);
+    data.writeInt(entries.size());
+    data.writeInt((int) heapStart);
+    data.writeLong(sourceLength);
+    data.writeLong(sourceLength == NO_SOURCE ? 0 : sourceCrc);
+    data.writeLong(sourceLength == NO_SOURCE ? NO_SOURCE : sourceModified);
+
+    int heapPosition = 0;
+    for (Entry entry : entries) {
+      data.writeDouble(entry.movie.getMovieLength());
+      heapPosition = writeString(data, heapPosition, entry.titleLength);
+      heapPosition = writeString(data, heapPosition, entry.key.length);
+      heapPosition = writeString(data, heapPosition, entry.descriptionLength);
+      data.writeInt(entry.movie.getIsLent() ? LENT_FLAG : 0);
+      data.writeInt(entry.position);
+    }
+    for (Entry entry : entries) {
+      writeHeap(data, entry.movie.getTitle(), entry.titleLength);
+      data.write(entry.key);
+      writeHeap(data, entry.movie.getDescription(), entry.descriptionLength);
+    }
+    data.flush();
+  }
+
+  private static int writeString(DataOutputStream data, int heapPosition, int length)
+      throws IOException {
+    if (length == NO_STRING) {
+      data.writeInt(NO_STRING);
+      data.writeInt(0);
+      return heapPosition;
+    }
+    data.writeInt(heapPosition);
+    data.writeInt(length);
+    return heapPosition + length;
+  }
+
+  private static void writeHeap(DataOutputStream data, String value, int length)
+      throws IOException {
+    if (value == null) {
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length != length) {
+      throw new IllegalStateException("A movie changed while its snapshot was written.");
+    }
+    data.write(bytes);
+  }
+
+  /**
+   * Counts the bytes the given string takes in UTF-8, the way {@link String#getBytes} encodes
+   * it, without encoding it. A surrogate without its pair is encoded as one replacement byte.
+   *
+   * @param value the string to measure, or {@code null}
+   * @return the length of the string in UTF-8, or {@code -1} for {@code null}
+   */
+  private static int utf8Length(String value) {
+    if (value == null) {
+      return NO_STRING;
+    }
+    int length = 0;
+    int i = 0;
+    while (i < value.length()) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        length += 1;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        length += 1;
+      } else {
+        length += 3;
+      }
+      i++;
+    }
+    return length;
+  }
+
+  /**
+   * Checks whether the given JSON file holds exactly the JSON this snapshot was written with,
+   * so the snapshot can be used instead of parsing it. If the length and the modification time
+   * of the file are still those it had when the snapshot was written, the file is not read at
+   * all, so this takes the same time however large the library is. If only the length matches,
+   * for example because the file was copied, it is read, without parsing, to compare its CRC-32.
+   *
+   * @param file the movie library file
+   * @return {@code true} if the snapshot was written with the current content of the file
+   * @throws IOException if an I/O error occurs while reading the file
+   */
+  public boolean isSnapshotOf(File file) throws IOException {
+    long length = buffer.getLong(SOURCE_LENGTH_OFFSET);
+    if (length == NO_SOURCE || !file.isFile() || file.length() != length) {
+      return false;
+    }
+    long modified = buffer.getLong(SOURCE_MODIFIED_OFFSET);
+    if (modified != NO_SOURCE && modified
+        == Files.getLastModifiedTime(file.toPath()).to(TimeUnit.NANOSECONDS)) {
+      return true;
+    }
+    try (CheckedInputStream in =
+        new CheckedInputStream(Files.newInputStream(file.toPath()), new CRC32())) {
+      in.transferTo(OutputStream.nullOutputStream());
+      return in.getChecksum().getValue() == buffer.getLong(SOURCE_CRC_OFFSET);
+    }
+  }
+
+  /**
+   * Returns the number of movies in the snapshot.
+   *
+   * @return the number of movies
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Finds the position of the movie with the given title, compared the same way as
+   * {@link MovieDeserializer#findMovie(String)} does.
+   *
+   * @param title the title of the movie to find
+   * @return the position of the movie, or {@code -1} if it is not in the snapshot
+   */
+  public int indexOf(String title) {
+    byte[] key = MovieDeserializer.normalizeTitle(title).getBytes(StandardCharsets.UTF_8);
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (compareKey(middle, key) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low < size && compareKey(low, key) == 0 ? low : -1;
+  }
+
+  /**
+   * Checks whether a movie with the given title is in the snapshot.
+   *
+   * @param title the title of the movie
+   * @return {@code true} if the movie is in the snapshot
+   */
+  public boolean contains(String title) {
+    return indexOf(title) >= 0;
+  }
+
+  /**
+   * Checks whether the movie with the given title is lent, without creating a {@link Movie}.
+   *
+   * @param title the title of the movie to check
+   * @return {@code true} if the movie is lent, {@code false} otherwise
+   * @throws NoSuchElementException if the movie is not in the snapshot
+   */
+  public boolean isLent(String title) {
+    int index = indexOf(title);
+    if (index < 0) {
+      throw new NoSuchElementException("The movie doesn't exist in the library.");
+    }
+    return (buffer.getInt(record(index) + FLAGS_OFFSET) & LENT_FLAG) != 0;
+  }
+
+  /**
+   * Creates the movie at the given position in the snapshot.
+   *
+   * @param index the position of the movie, ordered by normalized title
+   * @return a new {@link Movie} with the data of the entry
+   * @throws IndexOutOfBoundsException if the position is outside the snapshot
+   */
+  public Movie getMovie(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("No movie at position " + index);
+    }
+    int record = record(index);
+    Movie movie = new Movie(getString(record + TITLE_OFFSET),
+        buffer.getDouble(record + LENGTH_OFFSET), getString(record + DESCRIPTION_OFFSET));
+    movie.setLent((buffer.getInt(record + FLAGS_OFFSET) & LENT_FLAG) != 0);
+    return movie;
+  }
+
+  /**
+   * Creates every movie in the snapshot, for example to export the library as JSON.
+   *
+   * @return a list of all movies, ordered by normalized title
+   */
+  public List<Movie> toList() {
+    List<Movie> movies = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      movies.add(getMovie(i));
+    }
+    return movies;
+  }
+
+  /**
+   * Creates every movie in the snapshot in the order they had in the library when the snapshot
+   * was written, so the library can be loaded from the snapshot instead of the JSON file.
+   * This skips parsing, but still creates a {@link Movie} for every entry, so it takes time in
+   * proportion to the size of the library.
+   *
+   * @return a list of all movies, in library order
+   * @throws IOException if the positions in the snapshot are damaged
+   */
+  public List<Movie> toLibraryList() throws IOException {
+    Movie[] movies = new Movie[size];
+    for (int i = 0; i < size; i++) {
+      int position = buffer.getInt(record(i) + POSITION_OFFSET);
+      if (position < 0 || position >= size || movies[position] != null) {
+        throw new IOException("The movie library snapshot is damaged.");
+      }
+      movies[position] = getMovie(i);
+    }
+    return new ArrayList<>(Arrays.asList(movies));
+  }
+
+  private int record(int index) {
+    return HEADER_SIZE + index * RECORD_SIZE;
+  }
+
+  private int compareKey(int index, byte[] key) {
+    int field = record(index) + KEY_OFFSET;
+    int start = heapStart + buffer.getInt(field);
+    int length = buffer.getInt(field + 4);
+    int common = Math.min(length, key.length);
+    for (int i = 0; i < common; i++) {
+      int difference = Byte.toUnsignedInt(buffer.get(start + i)) - Byte.toUnsignedInt(key[i]);
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return length - key.length;
+  }
+
+  private String getString(int field) {
+    int offset = buffer.getInt(field);
+    if (offset == NO_STRING) {
+      return null;
+    }
+    byte[] bytes = new byte[buffer.getInt(field + 4)];
+    buffer.get(heapStart + offset, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * A movie prepared for encoding, with its normalized title already converted to UTF-8 for
+   * sorting. The title and description are only measured here, and encoded as they are
+   * written to the heap.
+   */
+  private static final class Entry {
+
+    private final Movie movie;
+    private final byte[] key;
+    private final int titleLength;
+    private final int descriptionLength;
+    private final int position;
+
+    private Entry(Movie movie, int position) {
+      this.movie = movie;
+      this.key = MovieDeserializer.normalizeTitle(movie.getTitle())
+                                  .getBytes(StandardCharsets.UTF_8);
+      this.titleLength = utf8Length(movie.getTitle());
+      this.descriptionLength = utf8Length(movie.getDescription());
+      this.position = position;
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package movielibrary.json.internal;
+
+import movielibrary.core.Movie;
+
+/**
+ * The {@code MovieState} class is a copy of a movie as it was right after a change to it, or
+ * when a change to it was refused, together with the version of the movie at that moment.
+ * Both are taken under the lock of the {@link MovieSerializer} in the same step as the change,
+ * so they always belong together, however many changes follow.
+ */
+public final class MovieState {
+
+  private final Movie movie;
+  private final long version;
+
+  /**
+   * Creates a {@code MovieState} from a copy of the given movie.
+   *
+   * @param movie the movie, which is copied so later changes to it are not seen
+   * @param version the version of the movie, see {@link MovieManager#getMovieVersion(String)}
+   */
+  public MovieState(Movie movie, long version) {
+    this.movie = new Movie(movie.getTitle(), movie.getMovieLength(), movie.getDescription());
+    this.movie.setLent(movie.getIsLent());
+    this.version = version;
+  }
+
+  /**
+   * Returns a copy of the movie as it was.
+   *
+   * @return a copy of the movie, which may be changed freely
+   */
+  public Movie getMovie() {
+    Movie copy = new Movie(movie.getTitle(), movie.getMovieLength(), movie.getDescription());
+    copy.setLent(movie.getIsLent());
+    return copy;
+  }
+
+  /**
+   * Returns the version of the movie as it was.
+   *
+   * @return the version of the movie
+   */
+  public long getVersion() {
+    return version;
+  }
+}
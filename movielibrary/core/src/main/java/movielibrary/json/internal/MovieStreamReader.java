@@ -0,0 +1,116 @@
+package movielibrary.json.internal;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+import movielibrary.core.Movie;
+
+/**
+ * The {@code MovieStreamReader} class reads a JSON array of movies one movie at a time with
+ * Jackson's streaming {@link JsonParser}, instead of building the whole list in one go.
+ *
+ * <p>Every movie is handed to a visitor as soon as it has been parsed, so callers can build
+ * indexes while the file is being read, or handle files that are larger than the memory
+ * available by not keeping the movies at all. Descriptions can be skipped without ever being
+ * turned into strings when they are not needed.</p>
+ */
+public final class MovieStreamReader {
+
+  private final JsonFactory jsonFactory;
+  private final boolean skipDescriptions;
+
+  /**
+   * Constructs a {@code MovieStreamReader}.
+   *
+   * @param skipDescriptions {@code true} to leave the description of every movie {@code null}
+   *                         instead of reading it
+   */
+  public MovieStreamReader(boolean skipDescriptions) {
+    this.jsonFactory = MovieCodec.getInstance().getMapper().getFactory();
+    this.skipDescriptions = skipDescriptions;
+  }
+
+  /**
+   * Reads the movies in the given file and hands each of them to the visitor.
+   *
+   * @param file the file containing a JSON array of movies
+   * @param visitor the consumer that receives each movie as soon as it is read
+   * @return the number of movies read
+   * @throws IOException if an I/O error occurs or the file is not a JSON array of movies
+   */
+  public long read(File file, Consumer<Movie> visitor) throws IOException {
+    try (JsonParser parser = jsonFactory.createParser(file)) {
+      return read(parser, visitor);
+    }
+  }
+
+  /**
+   * Reads the movies in the given stream and hands each of them to the visitor.
+   * The stream is not closed.
+   *
+   * @param input the stream containing a JSON array of movies
+   * @param visitor the consumer that receives each movie as soon as it is read
+   * @return the number of movies read
+   * @throws IOException if an I/O error occurs or the stream is not a JSON array of movies
+   */
+  public long read(InputStream input, Consumer<Movie> visitor) throws IOException {
+    try (JsonParser parser = jsonFactory.createParser(input)) {
+      parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+      return read(parser, visitor);
+    }
+  }
+
+  private long read(JsonParser parser, Consumer<Movie> visitor) throws IOException {
+    if (parser.nextToken() != JsonToken.START_ARRAY) {
+      throw new JsonParseException(parser, "Expected an array of movies");
+    }
+    long count = 0;
+    JsonToken token;
+    while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+      visitor.accept(readMovie(parser));
+      count++;
+    }
+    if (token != JsonToken.END_ARRAY) {
+      throw new JsonParseException(parser, "Expected a movie object");
+    }
+    return count;
+  }
+
+  private Movie readMovie(JsonParser parser) throws IOException {
+    String title = null;
+    double movieLength = 0;
+    String description = null;
+    boolean isLent = false;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      switch (field) {
+        case "title":
+          title = parser.getValueAsString();
+          break;
+        case "movieLength":
+          movieLength = parser.getValueAsDouble();
+          break;
+        case "description":
+          if (!skipDescriptions) {
+            description = parser.getValueAsString();
+          }
+          break;
+        case "isLent":
+          isLent = parser.getValueAsBoolean();
+          break;
+        default:
+          parser.skipChildren();
+          break;
+      }
+    }
+    Movie movie = new Movie(title, movieLength, description);
+    movie.setLent(isLent);
+    return movie;
+  }
+}
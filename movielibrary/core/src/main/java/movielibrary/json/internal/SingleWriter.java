@@ -0,0 +1,116 @@
+package movielibrary.json.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code SingleWriter} class funnels every change to the movie library through one thread.
+ * Changes are submitted to a bounded queue; the writer thread takes everything that is waiting,
+ * up to the maximum batch size, and hands it to {@link MovieSerializer#applyBatch(List)}, which
+ * applies the whole batch and persists it once. With group commit the batch joins the next group
+ * flush, and the writer goes on with the next batch while it runs. Submitting blocks while the
+ * queue is full, which holds callers back when the disk cannot keep up. {@link #stop()} lets the
+ * writer apply every change that is already waiting before it finishes.
+ */
+final class SingleWriter {
+
+  private static final long STOP_CHECK_MILLIS = 100;
+
+  private final MovieSerializer movieSerializer;
+  private final BlockingQueue<MovieMutation> queue;
+  private final int maxBatchSize;
+  private final Thread writer;
+  private volatile boolean stopped;
+
+  /**
+   * Constructs a {@code SingleWriter} and starts its writer thread.
+   *
+   * @param movieSerializer the serializer that applies and persists the batches
+   * @param queueCapacity the number of changes that can wait before submitting blocks
+   * @param maxBatchSize the largest number of changes applied and persisted together
+   * @throws IllegalArgumentException if the capacity or the batch size is less than 1
+   */
+  SingleWriter(MovieSerializer movieSerializer, int queueCapacity, int maxBatchSize) {
+    if (queueCapacity < 1 || maxBatchSize < 1) {
+      throw new IllegalArgumentException("The queue capacity and batch size must be at least 1.");
+    }
+    this.movieSerializer = movieSerializer;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.maxBatchSize = maxBatchSize;
+    this.writer = new Thread(this::writeLoop, "movielibrary-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Submits a change to be applied by the writer thread, waiting for room in the queue if needed.
+   *
+   * @param mutation the change to apply
+   * @return the future that completes with the outcome of the change
+   */
+  CompletableFuture<Void> submit(MovieMutation mutation) {
+    if (stopped) {
+      rejectStopped(mutation);
+      return mutation.getResult();
+    }
+    try {
+      queue.put(mutation);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      mutation.getResult().completeExceptionally(e);
+      return mutation.getResult();
+    }
+    if (stopped && queue.remove(mutation)) {
+      rejectStopped(mutation);
+    }
+    return mutation.getResult();
+  }
+
+  /**
+   * Stops the writer thread once it has applied every change that is already waiting in the queue,
+   * and waits for it to finish. Changes submitted afterwards fail with an
+   * {@link IllegalStateException}.
+   */
+  void stop() {
+    stopped = true;
+    if (Thread.currentThread() == writer) {
+      return;
+    }
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void writeLoop() {
+    List<MovieMutation> batch = new ArrayList<>(maxBatchSize);
+    while (!stopped || !queue.isEmpty()) {
+      MovieMutation first;
+      try {
+        first = queue.poll(STOP_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        break;
+      }
+      if (first == null) {
+        continue;
+      }
+      batch.add(first);
+      queue.drainTo(batch, maxBatchSize - 1);
+      movieSerializer.applyBatch(batch);
+      batch.clear();
+    }
+    stopped = true;
+    queue.drainTo(batch);
+    batch.forEach(SingleWriter::rejectStopped);
+  }
+
+  private static void rejectStopped(MovieMutation mutation) {
+    mutation.getResult().completeExceptionally(
+        new IllegalStateException("The movie library writer has been stopped."));
+  }
+}
@@ -0,0 +1,122 @@
+package movielibrary.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class MovieTableTest {
+
+  // MovieTable-object for testing
+  private MovieTable table;
+
+  // Default setup for each test
+  @BeforeEach
+  public void setup() {
+    Movie lentMovie = Movie.createMovie("Moana", 100, "Moana about a girl who saves her island");
+    lentMovie.setLent(true);
+    table = MovieTable.fromMovies(List.of(
+        Movie.createMovie("Cinderella", 110, "A girl with evil step sisters."), lentMovie));
+  }
+
+  // Testing that the columns hold the data of the movies
+  @Test
+  @DisplayName("Columns")
+  public void testColumns() {
+    Assertions.assertEquals(2, table.size());
+    Assertions.assertEquals("Cinderella", table.getTitle(0));
+    Assertions.assertEquals(110, table.getMovieLength(0));
+    Assertions.assertEquals("A girl with evil step sisters.", table.getDescription(0));
+    Assertions.assertFalse(table.isLent(0));
+    Assertions.assertTrue(table.isLent(1));
+    Assertions.assertThrows(IndexOutOfBoundsException.class, () -> table.getTitle(2));
+  }
+
+  // Testing title lookups and the movies created on demand
+  @Test
+  @DisplayName("Lookups")
+  public void testLookups() {
+    Assertions.assertEquals(1, table.indexOf(" MOANA "));
+    Assertions.assertEquals(-1, table.indexOf("Frozen"));
+
+    Movie movie = table.getMovie(table.indexOf("moana"));
+    Assertions.assertEquals("Moana", movie.getTitle());
+    Assertions.assertEquals(100, movie.getMovieLength());
+    Assertions.assertTrue(movie.getIsLent());
+  }
+
+  // Testing that the table grows and that the scans see every movie
+  @Test
+  @DisplayName("Growing and scanning")
+  public void testGrowAndScan() {
+    List<Movie> movies = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      Movie movie = new Movie("Movie_" + i, 100, i % 2 == 0 ? null : "Description " + i);
+      movie.setLent(i % 3 == 0);
+      movies.add(movie);
+    }
+    MovieTable bigTable = MovieTable.fromMovies(movies.subList(0, 10));
+    movies.subList(10, movies.size()).forEach(bigTable::add);
+
+    Assertions.assertEquals(1000, bigTable.size());
+    Assertions.assertEquals(334, bigTable.countLent());
+    Assertions.assertEquals(100000, bigTable.totalMovieLength());
+    Assertions.assertEquals(777, bigTable.indexOf("movie_777"));
+    Assertions.assertEquals("Description 777", bigTable.getDescription(777));
+    Assertions.assertNull(bigTable.getDescription(778));
+
+    bigTable.setLent(1, true);
+    Assertions.assertEquals(335, bigTable.countLent());
+    Assertions.assertTrue(bigTable.estimateHeapBytes() > 0);
+
+    long heapBytes = bigTable.estimateHeapBytes();
+    bigTable.trimToSize();
+    Assertions.assertTrue(bigTable.estimateHeapBytes() < heapBytes);
+    Assertions.assertEquals("Description 999", bigTable.getDescription(999));
+    Assertions.assertEquals(1000, bigTable.add("Movie_1000", 100, null, true));
+    Assertions.assertEquals(336, bigTable.countLent());
+  }
+
+  // Testing titles that don't fit in Latin-1 and titles added twice
+  @Test
+  @DisplayName("Wide and duplicate titles")
+  public void testWideAndDuplicateTitles() {
+    int amelie = table.add("Amélie", 122, null, false);
+    int spirited = table.add("千と千尋の神隠し", 125, "Унесённые призраками", true);
+    int duplicate = table.add("CINDERELLA", 74, null, false);
+
+    Assertions.assertEquals("Amélie", table.getTitle(amelie));
+    Assertions.assertEquals("千と千尋の神隠し", table.getTitle(spirited));
+    Assertions.assertEquals("Унесённые призраками", table.getDescription(spirited));
+    Assertions.assertEquals(amelie, table.indexOf("AMÉLIE "));
+    Assertions.assertEquals(spirited, table.indexOf("\t千と千尋の神隠し"));
+    Assertions.assertEquals(0, table.indexOf("cinderella"));
+    Assertions.assertEquals("CINDERELLA", table.getTitle(duplicate));
+    Assertions.assertEquals(-1, table.indexOf("Amelie"));
+  }
+
+  // Testing the list view of the table and the limits of its capacity
+  @Test
+  @DisplayName("List view and capacity")
+  public void testListViewAndCapacity() {
+    List<Movie> movies = table.asList();
+    Assertions.assertEquals(2, movies.size());
+    Assertions.assertEquals("Moana", movies.get(1).getTitle());
+    Assertions.assertTrue(movies.get(1).getIsLent());
+    Assertions.assertThrows(UnsupportedOperationException.class,
+        () -> movies.add(new Movie("Frozen", 102, "")));
+
+    table.add("Frozen", 102, "", false);
+    Assertions.assertEquals(3, movies.size());
+    Assertions.assertEquals("", movies.get(2).getDescription());
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> table.add(null, 90, "", false));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new MovieTable(-1));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> new MovieTable(MovieTable.MAX_ROWS + 1));
+    Assertions.assertEquals(0, new MovieTable(0).size());
+  }
+}
@@ -0,0 +1,121 @@
+package movielibrary.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.junit.jupiter.api.Test;
+
+import movielibrary.core.Movie;
+import movielibrary.json.internal.MovieCodec;
+import movielibrary.json.internal.MovieFormat;
+
+// Tests for MovieCodec.java class
+public class MovieCodecTest {
+
+  // Test that the shared codec is the same object every time
+  @Test
+  @DisplayName("Test shared codec")
+  public void testSharedInstance() {
+    Assertions.assertSame(MovieCodec.getInstance(), MovieCodec.getInstance());
+  }
+
+  // Test that a list of movies survives a round trip, with and without the Blackbird module
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  @DisplayName("Test round trip of a movie list")
+  public void testMovieListRoundTrip(boolean accelerated) throws IOException {
+    MovieCodec codec = MovieCodec.createMovieCodec(accelerated);
+    Assertions.assertEquals(accelerated && MovieCodec.canAccelerate(), codec.isAccelerated());
+    Movie lentMovie = new Movie("Moana", 100, "Moana about a girl who saves her island");
+    lentMovie.setLent(true);
+    List<Movie> movies = List.of(lentMovie, new Movie("Frozen", 100, "Movie about a girl with ice powers"));
+
+    String json = codec.getMovieListWriter().writeValueAsString(movies);
+    List<Movie> readMovies = codec.getMovieListReader().readValue(json);
+
+    Assertions.assertEquals(2, readMovies.size());
+    Assertions.assertEquals("Moana", readMovies.get(0).getTitle());
+    Assertions.assertTrue(readMovies.get(0).getIsLent());
+    Assertions.assertEquals("Movie about a girl with ice powers", readMovies.get(1).getDescription());
+  }
+
+  // Test that a single movie survives a round trip
+  @Test
+  @DisplayName("Test round trip of a movie")
+  public void testMovieRoundTrip() throws IOException {
+    MovieCodec codec = MovieCodec.getInstance();
+    String json = codec.getMovieWriter().writeValueAsString(new Movie("Frozen", 90, "Movie about a girl with ice powers"));
+    Movie movie = codec.getMovieReader().readValue(json);
+    Assertions.assertEquals("Frozen", movie.getTitle());
+    Assertions.assertEquals(90, movie.getMovieLength());
+  }
+
+  // Test that a list of movies survives a round trip through every format
+  @ParameterizedTest
+  @EnumSource(MovieFormat.class)
+  @DisplayName("Test round trip in every format")
+  public void testFormatRoundTrip(MovieFormat format) throws IOException {
+    MovieCodec codec = MovieCodec.getInstance(format);
+    Assertions.assertEquals(format, codec.getFormat());
+    Movie lentMovie = new Movie("Moana", 100, "Moana about a girl who saves her island");
+    lentMovie.setLent(true);
+
+    byte[] bytes = codec.getMovieListWriter().writeValueAsBytes(List.of(lentMovie));
+    List<Movie> readMovies = codec.getMovieListReader().readValue(bytes);
+    Assertions.assertEquals("Moana", readMovies.get(0).getTitle());
+    Assertions.assertEquals(100, readMovies.get(0).getMovieLength());
+    Assertions.assertTrue(readMovies.get(0).getIsLent());
+  }
+
+  // Test that the format is found from the Content-Type header
+  @Test
+  @DisplayName("Test format of a content type")
+  public void testForContentType() {
+    Assertions.assertEquals(MovieFormat.CBOR, MovieFormat.forContentType("application/cbor"));
+    Assertions.assertEquals(MovieFormat.SMILE, MovieFormat.forContentType("Application/X-Jackson-Smile;charset=UTF-8"));
+    Assertions.assertEquals(MovieFormat.JSON, MovieFormat.forContentType("application/json"));
+    Assertions.assertEquals(MovieFormat.JSON, MovieFormat.forContentType(null));
+  }
+
+  // Test that the binary formats are smaller than JSON for 10k movies, and that gzip makes every format smaller.
+  // The encode and decode times are measured by MovieFormatBenchmark.
+  @Test
+  @DisplayName("Test payload size of 10k movies")
+  public void testFormatSizesWithTenThousandMovies() throws IOException {
+    List<Movie> movies = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      Movie movie = new Movie("Movie_number_" + i, 60 + i % 120,
+          "Description of movie number " + i + ", a story about a girl who saves her island");
+      movie.setLent(i % 3 == 0);
+      movies.add(movie);
+    }
+    Map<MovieFormat, Integer> sizes = new EnumMap<>(MovieFormat.class);
+    for (MovieFormat format : MovieFormat.values()) {
+      MovieCodec codec = MovieCodec.getInstance(format);
+      byte[] bytes = codec.getMovieListWriter().writeValueAsBytes(movies);
+      Assertions.assertEquals(movies.size(), codec.getMovieListReader().<List<Movie>>readValue(bytes).size());
+      Assertions.assertTrue(gzippedSize(bytes) < bytes.length, format + " should be smaller gzipped");
+      sizes.put(format, bytes.length);
+    }
+    Assertions.assertTrue(sizes.get(MovieFormat.CBOR) < sizes.get(MovieFormat.JSON));
+    Assertions.assertTrue(sizes.get(MovieFormat.SMILE) < sizes.get(MovieFormat.JSON));
+  }
+
+  private static int gzippedSize(byte[] bytes) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+      gzip.write(bytes);
+    }
+    return compressed.size();
+  }
+}
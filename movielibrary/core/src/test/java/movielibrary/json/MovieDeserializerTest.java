@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.io.File;
@@ -20,6 +21,7 @@ import org.junit.jupiter.api.Test;
 
 import movielibrary.core.Movie;
 import movielibrary.json.internal.MovieDeserializer;
+import movielibrary.json.internal.MovieSerializer;
 
 // Tests for MovieDeserializer.java
 public class MovieDeserializerTest {
@@ -64,6 +66,15 @@ public class MovieDeserializerTest {
 
   }
 
+  // Test that findMovie ignores case and surrounding whitespace
+  @Test
+  @DisplayName("Test case-insensitive movie search")
+  public void testFindMovieIgnoresCaseAndWhitespace() throws IOException{
+    Movie movie = movieDeserializer.findMovie("  the_TROLLGIRL ");
+    assertNotNull(movie, "The movie should be found regardless of case and whitespace.");
+    assertEquals("The_Trollgirl", movie.getTitle(), "The title should match.");
+  }
+
   // Test non-existen movie in library
   @Test
   @DisplayName("Test finding a non-exsistent movie")
@@ -97,4 +108,49 @@ public class MovieDeserializerTest {
     assertEquals(4, movies.size(), "Movie library should still contain 4 movie after reloading");
   }
 
+  // Test that reloading an unchanged file keeps the movies already in memory
+  @Test
+  @DisplayName("Test reloading unchanged file, reloadmoviedata()")
+  public void testReloadUnchangedFileKeepsMovies() throws IOException{
+    List<Movie> moviesBefore = movieDeserializer.getMoviesInLibrary();
+    movieDeserializer.reloadMovieData();
+    assertSame(moviesBefore, movieDeserializer.getMoviesInLibrary(), "An unchanged file should not be parsed again");
+  }
+
+  // Test that reloading picks up changes made to the file by someone else
+  @Test
+  @DisplayName("Test reloading changed file, reloadmoviedata()")
+  public void testReloadChangedFile() throws IOException{
+    Files.writeString(temporaryFile.toPath(),
+        "[{\"title\":\"Only_movie\",\"movieLength\":90,\"description\":\"The only movie left in the file.\"}]");
+    movieDeserializer.reloadMovieData();
+    assertEquals(1, movieDeserializer.getMoviesInLibrary().size(), "The changed file should be parsed again");
+    assertNotNull(movieDeserializer.findMovie("Only_movie"), "The new movie should be found.");
+  }
+
+  // Test searching titles and descriptions, including parts of words
+  @Test
+  @DisplayName("Test search, searchMovies()")
+  public void testSearchMovies() throws IOException{
+    List<Movie> life = movieDeserializer.searchMovies("LIFE", 10);
+    assertEquals(3, life.size(), "Three movies mention life.");
+    assertEquals("Life_is_tough", life.get(0).getTitle(), "Life in both title and description ranks first.");
+    assertEquals("The_Trollgirl", life.get(2).getTitle(), "Life only in the description ranks last.");
+
+    assertEquals("The_Trollgirl", movieDeserializer.searchMovies("troll", 10).get(0).getTitle());
+    assertEquals("Loverboy", movieDeserializer.searchMovies("crush boy", 1).get(0).getTitle());
+    assertEquals("Loverboy", movieDeserializer.searchMovies("lover", 10).get(0).getTitle(), "Part of a word should match.");
+    assertEquals(0, movieDeserializer.searchMovies("dragon", 10).size());
+    assertThrows(IllegalArgumentException.class, () -> movieDeserializer.searchMovies(" _ ", 10));
+
+    // Changes to the library are searchable after a reload
+    MovieSerializer movieSerializer = new MovieSerializer(temporaryFile);
+    movieSerializer.enableJournal(100);
+    movieSerializer.addMovieToLibrary(Movie.createMovie("Dragon_rider", 90, "A girl learns to ride a dragon."));
+    movieSerializer.deleteMovieFromLibrary("Loverboy");
+    movieDeserializer.reloadMovieData();
+    assertEquals("Dragon_rider", movieDeserializer.searchMovies("dragon", 10).get(0).getTitle());
+    assertEquals(0, movieDeserializer.searchMovies("loverboy", 10).size());
+    new File(temporaryFile.getPath() + ".log").delete();
+  }
 }
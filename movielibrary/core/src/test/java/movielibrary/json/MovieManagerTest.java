@@ -4,8 +4,20 @@ import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
@@ -13,8 +25,15 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import movielibrary.core.Movie;
+import movielibrary.json.internal.MovieChange;
+import movielibrary.json.internal.LatencyHistogram;
+import movielibrary.json.internal.MovieConflictException;
 import movielibrary.json.internal.MovieManager;
+import movielibrary.json.internal.MovieMetrics;
 import movielibrary.json.internal.MovieSerializer;
+import movielibrary.json.internal.MovieSnapshot;
+import movielibrary.json.internal.MovieState;
 
 // Tests for MovieManager.java class
 public class MovieManagerTest {
@@ -43,6 +62,8 @@ public class MovieManagerTest {
   @AfterEach
   public void deleteTemporaryFile() {
     temporaryFile.delete();
+    new File(temporaryFile.getPath() + ".log").delete();
+    MovieSnapshot.snapshotFileFor(temporaryFile).delete();
   }
 
   // Tests fake file input in instructor
@@ -147,6 +168,472 @@ public class MovieManagerTest {
       movieManager.deleteMovie("Life_is_tough");
     });
   }
-}
 
+  // Test that concurrent lends of the same title only succeed once, and concurrent returns too
+  @Test
+  @DisplayName("Test concurrent lend and return of one title")
+  public void testConcurrentLendOfSameTitle() throws Exception {
+    movieManager.enableJournal(1000);
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      for (int round = 0; round < 5; round++) {
+        Assertions.assertEquals(1, runConcurrently(executor, threads, () -> movieManager.lend("Loverboy")),
+            "Only one of the concurrent lends should succeed");
+        Assertions.assertEquals(1, runConcurrently(executor, threads, () -> movieManager.returnBack("Loverboy")),
+            "Only one of the concurrent returns should succeed");
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    Assertions.assertFalse(movieSerializer.getLentStatus("Loverboy"));
+  }
+
+  // Stress test lending and returning different titles from one and from four threads, checking
+  // that no lend or return is lost, that the changes share syncs instead of queueing for them, and
+  // that the throughput grows with the threads. Without group commit the syncs are too fast here
+  // to tell apart from warming up, so LendBenchmark measures that case.
+  @Test
+  @DisplayName("Test concurrent lend and return of different titles")
+  public void testConcurrentLendOfDifferentTitles() throws Exception {
+    String[] titles = {"The_Trollgirl", "Loverboy", "Day_in_the_life_of_gr2403", "Life_is_tough"};
+    movieManager.enableJournal(100_000);
+    movieManager.enableGroupCommit(2, 64);
+    LatencyHistogram syncs = MovieMetrics.getInstance().timer(MovieMetrics.JOURNAL_SYNC);
+    lendAndReturnConcurrently(titles, 1, 20);
+    long syncsBefore = syncs.getCount();
+    double single = lendAndReturnConcurrently(titles, 1, 50);
+    Assertions.assertEquals(100, syncs.getCount() - syncsBefore);
+    lendAndReturnConcurrently(titles, 2, 50);
+    syncsBefore = syncs.getCount();
+    double four = lendAndReturnConcurrently(titles, 4, 50);
+    Assertions.assertTrue(syncs.getCount() - syncsBefore < 200,
+        "Changes to different titles should share syncs");
+    Assertions.assertTrue(four > 2 * single,
+        "Lending four titles at once should be faster than one: " + four + " vs " + single);
+    for (String title : titles) {
+      Assertions.assertFalse(new MovieSerializer(temporaryFile).getLentStatus(title));
+    }
+  }
+
+  // Lends and returns a different title from each thread, and returns the changes per second
+  private double lendAndReturnConcurrently(String[] titles, int threads, int operationsPerThread)
+      throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<?>> results = new ArrayList<>();
+    CountDownLatch ready = new CountDownLatch(threads);
+    long start = System.nanoTime();
+    for (int i = 0; i < threads; i++) {
+      String title = titles[i];
+      results.add(executor.submit(() -> {
+        ready.countDown();
+        ready.await();
+        for (int j = 0; j < operationsPerThread; j++) {
+          movieManager.lend(title);
+          movieManager.returnBack(title);
+        }
+        return null;
+      }));
+    }
+    for (Future<?> result : results) {
+      result.get();
+    }
+    executor.shutdown();
+    return 2.0 * operationsPerThread * threads * 1e9 / (System.nanoTime() - start);
+  }
+
+  // Test that a lend and a bulk lend of the same title racing each other only succeed once,
+  // since both check the status under the same lock as they change it
+  @Test
+  @DisplayName("Test concurrent lend and bulk lend of one title")
+  public void testConcurrentLendAndBulkLend() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      for (int round = 0; round < 20; round++) {
+        CountDownLatch ready = new CountDownLatch(2);
+        Future<Boolean> single = executor.submit(() -> {
+          ready.countDown();
+          ready.await();
+          try {
+            movieManager.lend("Loverboy");
+            return true;
+          } catch (IllegalStateException e) {
+            return false;
+          }
+        });
+        Future<Boolean> bulk = executor.submit(() -> {
+          ready.countDown();
+          ready.await();
+          return !movieManager.lendAll(List.of("Loverboy")).get(0).isCompletedExceptionally();
+        });
+        Assertions.assertTrue(single.get() ^ bulk.get(), "Exactly one of the lends should succeed");
+        movieManager.returnBack("Loverboy");
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  // Test that the single writer applies changes in order and rejects the ones that are not allowed
+  @Test
+  @DisplayName("Test single writer outcomes")
+  public void testSingleWriter() throws Exception {
+    movieManager.enableSingleWriter(16, 8);
+    List<CompletableFuture<Void>> lends = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      lends.add(movieManager.lendAsync("Loverboy"));
+    }
+    int successes = 0;
+    for (CompletableFuture<Void> lend : lends) {
+      try {
+        lend.get();
+        successes++;
+      } catch (ExecutionException e) {
+        Assertions.assertTrue(e.getCause() instanceof IllegalStateException);
+      }
+    }
+    Assertions.assertEquals(1, successes, "Only the first lend should succeed");
+
+    movieManager.addMovie("Writer_Movie", 90, "A movie added through the single writer.");
+    Assertions.assertThrows(IllegalStateException.class, () -> {
+      movieManager.addMovie("Writer_Movie", 90, "A movie added through the single writer.");
+    });
+    MovieState returned = movieManager.returnBack("Loverboy");
+    Assertions.assertFalse(returned.getMovie().getIsLent());
+    Assertions.assertEquals(movieManager.getMovieVersion("Loverboy"), returned.getVersion());
+    MovieConflictException conflict = Assertions.assertThrows(MovieConflictException.class,
+        () -> movieManager.returnBack("Loverboy"));
+    Assertions.assertEquals(returned.getVersion(), conflict.getState().getVersion());
+
+    // The changes are on disk once the futures have completed
+    MovieSerializer reloaded = new MovieSerializer(temporaryFile);
+    Assertions.assertTrue(reloaded.movieIsFound("Writer_Movie"));
+    Assertions.assertFalse(reloaded.getLentStatus("Loverboy"));
+  }
+
+  // Test that replacing the single writer or the file applies the waiting changes and stops the old threads
+  @Test
+  @DisplayName("Test replacing the single writer and group commit")
+  public void testReplacedWriterIsDrainedAndStopped() throws Exception {
+    int writers = countLiveThreads("movielibrary-writer");
+    int committers = countLiveThreads("movielibrary-group-commit");
+    movieManager.enableGroupCommit(50, 64);
+    movieManager.enableSingleWriter(16, 1);
+    List<CompletableFuture<Void>> lends = new ArrayList<>();
+    for (String title : List.of("Loverboy", "The_Trollgirl", "Life_is_tough")) {
+      lends.add(movieManager.lendAsync(title));
+    }
+    movieManager.enableSingleWriter(16, 8);
+    movieManager.enableGroupCommit(0, 64);
+    for (CompletableFuture<Void> lend : lends) {
+      Assertions.assertTrue(lend.isDone(), "The replaced writer should apply its waiting changes");
+      lend.get();
+    }
+    Assertions.assertEquals(writers + 1, countLiveThreads("movielibrary-writer"));
+    Assertions.assertEquals(committers + 1, countLiveThreads("movielibrary-group-commit"));
+
+    movieManager.lendAsync("Day_in_the_life_of_gr2403");
+    movieManager.setFile(temporaryFile);
+    Assertions.assertEquals(writers, countLiveThreads("movielibrary-writer"));
+    Assertions.assertEquals(committers, countLiveThreads("movielibrary-group-commit"));
+    Assertions.assertTrue(new MovieSerializer(temporaryFile).getLentStatus("Day_in_the_life_of_gr2403"));
+  }
+
+  // Test that bulk changes go through the single writer when it is enabled
+  @Test
+  @DisplayName("Test bulk changes through the single writer")
+  public void testBulkChangesThroughSingleWriter() throws Exception {
+    List<String> writingThreads = new ArrayList<>();
+    movieManager.addChangeListener(change -> writingThreads.add(Thread.currentThread().getName()));
+    movieManager.enableSingleWriter(16, 8);
+    CompletableFuture<Void> single = movieManager.lendAsync("Loverboy");
+    List<CompletableFuture<Void>> lent = movieManager.lendAll(List.of("Loverboy", "The_Trollgirl"));
+    single.get();
+    Assertions.assertTrue(lent.stream().allMatch(CompletableFuture::isDone));
+    ExecutionException alreadyLent = Assertions.assertThrows(ExecutionException.class, () -> lent.get(0).get());
+    Assertions.assertTrue(alreadyLent.getCause() instanceof IllegalStateException);
+    lent.get(1).get();
+    Assertions.assertEquals(List.of("movielibrary-writer", "movielibrary-writer"), writingThreads);
+  }
+
+  // Test that many concurrent changes through the single writer are all applied and persisted
+  @Test
+  @DisplayName("Test single writer with concurrent callers")
+  public void testSingleWriterConcurrentCallers() throws Exception {
+    movieManager.enableJournal(1000);
+    movieManager.enableSingleWriter(32, 64);
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        int thread = i;
+        results.add(executor.submit(() -> {
+          for (int j = 0; j < 20; j++) {
+            movieManager.addMovieAsync("Movie_" + thread + "_" + j, 90,
+                "A movie added by one of many threads.").join();
+          }
+          return null;
+        }));
+      }
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    MovieSerializer reloaded = new MovieSerializer(temporaryFile);
+    for (int i = 0; i < threads; i++) {
+      Assertions.assertTrue(reloaded.movieIsFound("Movie_" + i + "_19"));
+    }
+  }
+
+  // Test that bulk changes succeed or fail per item and are all persisted
+  @Test
+  @DisplayName("Test bulk add, lend and return")
+  public void testBulkChanges() throws Exception {
+    List<CompletableFuture<Void>> added = movieManager.addMovies(List.of(
+        new Movie("Bulk_Movie", 90, "A movie added together with others."),
+        new Movie("Loverboy", 90, "A movie whose title already exists."),
+        new Movie("Too_Long", 500, "A movie that is far too long to be added."),
+        new Movie("Bulk_Movie_2", 80, "Another movie added together with others.")));
+    Assertions.assertEquals(4, added.size());
+    added.get(0).get();
+    ExecutionException duplicate = Assertions.assertThrows(ExecutionException.class,
+        () -> added.get(1).get());
+    Assertions.assertTrue(duplicate.getCause() instanceof IllegalStateException);
+    ExecutionException invalid = Assertions.assertThrows(ExecutionException.class,
+        () -> added.get(2).get());
+    Assertions.assertTrue(invalid.getCause() instanceof IllegalArgumentException);
+    added.get(3).get();
+
+    List<CompletableFuture<Void>> lent = movieManager.lendAll(
+        List.of("Bulk_Movie", "Non_Existing_Movie", "Bulk_Movie"));
+    lent.get(0).get();
+    Assertions.assertThrows(ExecutionException.class, () -> lent.get(1).get());
+    Assertions.assertThrows(ExecutionException.class, () -> lent.get(2).get());
+
+    List<CompletableFuture<Void>> returned = movieManager.returnAll(
+        List.of("Bulk_Movie", "Bulk_Movie_2"));
+    returned.get(0).get();
+    Assertions.assertThrows(ExecutionException.class, () -> returned.get(1).get());
 
+    MovieSerializer reloaded = new MovieSerializer(temporaryFile);
+    Assertions.assertTrue(reloaded.movieIsFound("Bulk_Movie"));
+    Assertions.assertTrue(reloaded.movieIsFound("Bulk_Movie_2"));
+    Assertions.assertFalse(reloaded.movieIsFound("Too_Long"));
+    Assertions.assertFalse(reloaded.getLentStatus("Bulk_Movie"));
+  }
+
+  // Test that a missing movie or title in a bulk change fails on its own instead of the batch
+  @Test
+  @DisplayName("Test bulk changes with null entries")
+  public void testBulkChangesWithNulls() throws Exception {
+    List<CompletableFuture<Void>> added = movieManager.addMovies(Arrays.asList(
+        null, new Movie("Bulk_Movie", 90, "A movie added next to a missing one.")));
+    ExecutionException missing = Assertions.assertThrows(ExecutionException.class,
+        () -> added.get(0).get());
+    Assertions.assertTrue(missing.getCause() instanceof IllegalArgumentException);
+    added.get(1).get();
+
+    List<CompletableFuture<Void>> lent = movieManager.lendAll(Arrays.asList("Bulk_Movie", null));
+    lent.get(0).get();
+    missing = Assertions.assertThrows(ExecutionException.class, () -> lent.get(1).get());
+    Assertions.assertTrue(missing.getCause() instanceof IllegalArgumentException);
+    Assertions.assertTrue(new MovieSerializer(temporaryFile).getLentStatus("Bulk_Movie"));
+  }
+
+  // Test that a bulk change joins the group flush of a change that is already waiting for it,
+  // instead of syncing the journal on its own
+  @Test
+  @DisplayName("Test bulk change shares the group flush")
+  public void testBulkChangeSharesGroupFlush() throws Exception {
+    movieManager.enableJournal(1000);
+    movieManager.enableGroupCommit(500, 64);
+    LatencyHistogram syncs = MovieMetrics.getInstance().timer(MovieMetrics.JOURNAL_SYNC);
+    long syncsBefore = syncs.getCount();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<?> single = executor.submit(() -> movieManager.lend("Loverboy"));
+      Thread.sleep(100);
+      List<CompletableFuture<Void>> lent = movieManager.lendAll(
+          List.of("The_Trollgirl", "Life_is_tough"));
+      single.get();
+      for (CompletableFuture<Void> result : lent) {
+        result.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    Assertions.assertEquals(1, syncs.getCount() - syncsBefore);
+    Assertions.assertTrue(new MovieSerializer(temporaryFile).getLentStatus("Life_is_tough"));
+  }
+
+  // Test that a bulk change that cannot be written is rolled back and never published, but
+  // followed by a resync
+  @Test
+  @DisplayName("Test failed bulk change is rolled back")
+  public void testFailedBulkChangeIsRolledBack() throws Exception {
+    List<MovieChange> changes = new ArrayList<>();
+    movieManager.addChangeListener(changes::add);
+    movieManager.enableBinarySnapshot();
+    // A directory where the binary snapshot goes makes the next write fail
+    File snapshotFile = MovieSnapshot.snapshotFileFor(temporaryFile);
+    File blocker = new File(snapshotFile, "blocker");
+    Assertions.assertTrue(snapshotFile.delete() && snapshotFile.mkdir() && blocker.createNewFile());
+    try {
+      for (CompletableFuture<Void> lend : movieManager.lendAll(List.of("Loverboy", "The_Trollgirl"))) {
+        ExecutionException failure = Assertions.assertThrows(ExecutionException.class, lend::get);
+        Assertions.assertTrue(failure.getCause() instanceof IOException);
+      }
+      Assertions.assertFalse(movieManager.getLentStatus("Loverboy"));
+      Assertions.assertFalse(movieManager.getLentStatus("The_Trollgirl"));
+      Assertions.assertEquals(List.of(MovieChange.Type.RESYNC),
+          changes.stream().map(MovieChange::getType).distinct().toList());
+    } finally {
+      blocker.delete();
+      snapshotFile.delete();
+    }
+
+    int resyncs = changes.size();
+    movieManager.lend("Loverboy");
+    Assertions.assertEquals(resyncs + 1, changes.size());
+    Assertions.assertTrue(new MovieSerializer(temporaryFile).getLentStatus("Loverboy"));
+  }
+
+  @Test
+  @DisplayName("Test exclusive access")
+  public void testExclusiveAccess() throws IOException {
+    movieManager.enableExclusiveAccess();
+    Assertions.assertEquals(4, movieManager.getMovies().size());
+    Assertions.assertSame(movieManager.getMovies(), movieManager.getMovies());
+
+    movieSerializer.addMovieToLibrary(new Movie("Written_By_Others", 90, "Added behind the back of the manager."));
+    Assertions.assertNull(movieManager.findMovie("Written_By_Others"));
+    Assertions.assertEquals(4, movieManager.getMovies().size());
+
+    movieManager.lend("Loverboy");
+    Assertions.assertTrue(movieManager.getLentStatus("Loverboy"));
+    MovieSerializer reloaded = new MovieSerializer(temporaryFile);
+    Assertions.assertTrue(reloaded.getLentStatus("Loverboy"));
+    Assertions.assertFalse(reloaded.movieIsFound("Written_By_Others"));
+  }
+
+  @Test
+  @DisplayName("Test loading from the binary snapshot")
+  public void testLoadFromBinarySnapshot() throws IOException {
+    movieManager.enableBinarySnapshot();
+    movieManager.lend("Loverboy");
+
+    // A snapshot that claims to be written with the current file is loaded instead of the file
+    File snapshotFile = MovieSnapshot.snapshotFileFor(temporaryFile);
+    byte[] json = Files.readAllBytes(temporaryFile.toPath());
+    Files.write(snapshotFile.toPath(), MovieSnapshot.encode(
+        List.of(new Movie("Only_In_Snapshot", 90, "A movie that is only in the snapshot.")), json));
+    MovieManager restarted = new MovieManager(temporaryFile);
+    Assertions.assertEquals(1, restarted.getMovies().size());
+    Assertions.assertNotNull(restarted.findMovie("Only_In_Snapshot"));
+
+    // Once the file is changed, the snapshot no matter how new is ignored and the file is parsed
+    Files.write(temporaryFile.toPath(), new String(json, StandardCharsets.UTF_8)
+        .replace("\"isLent\" : true", "\"isLent\" : false").getBytes(StandardCharsets.UTF_8));
+    Assertions.assertTrue(snapshotFile.setLastModified(temporaryFile.lastModified() + 1000));
+    restarted = new MovieManager(temporaryFile);
+    Assertions.assertEquals(4, restarted.getMovies().size());
+    Assertions.assertNull(restarted.findMovie("Only_In_Snapshot"));
+    Assertions.assertFalse(restarted.getLentStatus("Loverboy"));
+  }
+
+  @Test
+  @DisplayName("Test lookups from the binary snapshot")
+  public void testLookupsFromBinarySnapshot() throws IOException {
+    movieManager.enableJournal(10);
+    movieManager.enableBinarySnapshot();
+    movieManager.lend("Loverboy");
+    // Closing folds the journal into the snapshot, so the next start has nothing to replay
+    movieManager.close();
+    Assertions.assertFalse(new File(temporaryFile.getPath() + ".log").exists());
+    File snapshotFile = MovieSnapshot.snapshotFileFor(temporaryFile);
+    byte[] snapshot = Files.readAllBytes(snapshotFile.toPath());
+    long written = snapshotFile.lastModified();
+
+    // Enabling the snapshot again on start does not rewrite the files
+    MovieManager restarted = new MovieManager(temporaryFile);
+    restarted.enableBinarySnapshot();
+    Assertions.assertEquals(written, snapshotFile.lastModified());
+    Assertions.assertArrayEquals(snapshot, Files.readAllBytes(snapshotFile.toPath()));
+
+    // Lookups are answered from the mapped snapshot, with a copy of the movie every time
+    Assertions.assertTrue(restarted.getLentStatus("loverboy"));
+    Assertions.assertNotSame(restarted.findMovie("Loverboy"), restarted.findMovie("Loverboy"));
+    Assertions.assertNull(restarted.findMovie("Not_There"));
+
+    // The first change loads the movies into memory
+    restarted.lend("The_Trollgirl");
+    Assertions.assertSame(restarted.findMovie("Loverboy"), restarted.findMovie("Loverboy"));
+    Assertions.assertTrue(restarted.getLentStatus("The_Trollgirl"));
+    Assertions.assertEquals(4, restarted.getMovies().size());
+    Assertions.assertTrue(new MovieManager(temporaryFile).getLentStatus("The_Trollgirl"));
+  }
+
+  @Test
+  @DisplayName("Test change listeners")
+  public void testChangeListeners() throws Exception {
+    List<MovieChange> changes = new ArrayList<>();
+    movieManager.addChangeListener(changes::add);
+    movieManager.addMovie("Listened_Movie", 90, "A movie whose changes are listened to.");
+    movieManager.lend("Listened_Movie");
+    Assertions.assertThrows(IllegalStateException.class, () -> movieManager.lend("Listened_Movie"));
+    movieManager.returnAll(List.of("Listened_Movie", "Non_Existing_Movie")).get(0).get();
+    movieManager.deleteMovie("Listened_Movie");
+
+    List<MovieChange.Type> types = new ArrayList<>();
+    long version = -1;
+    for (MovieChange change : changes) {
+      Assertions.assertEquals("Listened_Movie", change.getTitle());
+      Assertions.assertTrue(change.getVersion() > version);
+      version = change.getVersion();
+      types.add(change.getType());
+    }
+    Assertions.assertEquals(List.of(MovieChange.Type.ADDED, MovieChange.Type.LENT,
+        MovieChange.Type.RETURNED, MovieChange.Type.DELETED), types);
+  }
+
+  // Counts the live threads with the given name
+  private static int countLiveThreads(String name) {
+    return (int) Thread.getAllStackTraces().keySet().stream()
+        .filter(thread -> thread.isAlive() && thread.getName().equals(name))
+        .count();
+  }
+
+  // An operation that may be rejected with an IllegalStateException
+  private interface LibraryOperation {
+    void run() throws IOException;
+  }
+
+  // Runs the operation from the given number of threads at the same time,
+  // and returns how many of them succeeded
+  private int runConcurrently(ExecutorService executor, int threads, LibraryOperation operation)
+      throws Exception {
+    CountDownLatch start = new CountDownLatch(1);
+    AtomicInteger successes = new AtomicInteger();
+    List<Future<?>> results = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      results.add(executor.submit(() -> {
+        start.await(5, TimeUnit.SECONDS);
+        try {
+          operation.run();
+          successes.incrementAndGet();
+        } catch (IllegalStateException e) {
+          // Another thread got there first
+        }
+        return null;
+      }));
+    }
+    start.countDown();
+    for (Future<?> result : results) {
+      result.get();
+    }
+    return successes.get();
+  }
+}
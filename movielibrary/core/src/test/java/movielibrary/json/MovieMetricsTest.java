@@ -0,0 +1,84 @@
+package movielibrary.json;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import movielibrary.json.internal.LatencyHistogram;
+import movielibrary.json.internal.MovieManager;
+import movielibrary.json.internal.MovieMetrics;
+
+// Tests for LatencyHistogram.java and MovieMetrics.java
+public class MovieMetricsTest {
+
+  private File temporaryFile;
+
+  // Creates a temporary copy of moviesTest.json for the tests
+  @BeforeEach
+  public void setup() throws IOException {
+    File sourceOfFile = new File("../core/src/main/resources/movielibrary/json/internal/moviesTest.json");
+    temporaryFile = new File("../core/src/main/resources/movielibrary/json/internal/tempmovies.json");
+    Files.copy(sourceOfFile.toPath(), temporaryFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  // Deletes the temporary file after each test
+  @AfterEach
+  public void deleteTemporaryFile() {
+    temporaryFile.delete();
+  }
+
+  // Test that percentiles are close to the true values
+  @Test
+  @DisplayName("Test histogram percentiles")
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Assertions.assertEquals(0, histogram.getPercentileNanos(0.99));
+    for (long micros = 1; micros <= 1000; micros++) {
+      histogram.record(micros * 1000);
+    }
+    Assertions.assertEquals(1000, histogram.getCount());
+    Assertions.assertEquals(1_000_000, histogram.getMaxNanos());
+    assertClose(500_000, histogram.getPercentileNanos(0.5));
+    assertClose(990_000, histogram.getPercentileNanos(0.99));
+    Assertions.assertEquals(1_000_000, histogram.getPercentileNanos(1));
+
+    // Small values are exact, and no percentile is above the maximum
+    LatencyHistogram small = new LatencyHistogram();
+    small.record(3);
+    small.record(-5);
+    Assertions.assertEquals(0, small.getPercentileNanos(0.5));
+    Assertions.assertEquals(3, small.getPercentileNanos(0.999));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> small.getPercentileNanos(2));
+  }
+
+  // Test that a lend is timed in the manager and that the file reads and writes are counted
+  @Test
+  @DisplayName("Test library metrics")
+  public void testLibraryMetrics() throws IOException {
+    MovieMetrics metrics = MovieMetrics.getInstance();
+    long lends = metrics.timer(MovieMetrics.MANAGER_LEND).getCount();
+    long reparses = metrics.timer(MovieMetrics.REPARSE).getCount();
+    long written = metrics.getCounters().getOrDefault(MovieMetrics.BYTES_WRITTEN, 0L);
+
+    MovieManager movieManager = MovieManager.createMovieManager(temporaryFile);
+    movieManager.lend("Loverboy");
+
+    Assertions.assertEquals(lends + 1, metrics.timer(MovieMetrics.MANAGER_LEND).getCount());
+    Assertions.assertTrue(metrics.timer(MovieMetrics.REPARSE).getCount() > reparses);
+    Assertions.assertTrue(metrics.getCounters().get(MovieMetrics.BYTES_WRITTEN) > written);
+    Assertions.assertTrue(metrics.getCounters().get(MovieMetrics.BYTES_READ) > 0);
+  }
+
+  // Checks that a percentile is within the precision of the histogram
+  private static void assertClose(long expected, long actual) {
+    Assertions.assertTrue(Math.abs(actual - expected) <= expected / 16,
+        "Expected about " + expected + " but was " + actual);
+  }
+}
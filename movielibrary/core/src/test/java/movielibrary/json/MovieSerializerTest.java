@@ -4,6 +4,13 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
@@ -12,7 +19,13 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
 
+import movielibrary.core.Movie;
+import movielibrary.json.internal.MovieChange;
+import movielibrary.json.internal.MovieConflictException;
+import movielibrary.json.internal.MovieDeserializer;
 import movielibrary.json.internal.MovieSerializer;
+import movielibrary.json.internal.MovieSnapshot;
+import movielibrary.json.internal.MovieState;
 
 // Tests for MovieSerializer.java class
 public class MovieSerializerTest {
@@ -20,6 +33,8 @@ public class MovieSerializerTest {
   // MovieSerializer object for testing, File object for temporary file
   private MovieSerializer movieSerializer;
   private File temporaryFile;
+  private File journalFile;
+  private File binarySnapshotFile;
 
   // Default setup for each test
   // Creates a temporary file (a copy of the original moviesTest.json) for the testing, and initializes the MovieSerializer object
@@ -28,6 +43,8 @@ public class MovieSerializerTest {
     File sourceOfFile = new File("../core/src/main/resources/movielibrary/json/internal/moviesTest.json");
     temporaryFile = new File("../core/src/main/resources/movielibrary/json/internal/tempmovies.json");
     Files.copy(sourceOfFile.toPath(), temporaryFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    journalFile = new File(temporaryFile.getPath() + ".log");
+    binarySnapshotFile = MovieSnapshot.snapshotFileFor(temporaryFile);
 
     movieSerializer = new MovieSerializer(temporaryFile);
   }
@@ -36,6 +53,8 @@ public class MovieSerializerTest {
   @AfterEach
   public void deleteTemporaryFile() {
     temporaryFile.delete();
+    journalFile.delete();
+    binarySnapshotFile.delete();
   }
 
   // Test serialize method of MovieSerializer.java
@@ -47,4 +66,227 @@ public class MovieSerializerTest {
     Assertions.assertTrue(movieSerializer.getLentStatus("Loverboy"));
   }
 
+  // Test that changes are checked against the current state in the same step as they are made
+  @Test
+  @DisplayName("Test-checked-changes")
+  public void testChangesAreChecked() throws IOException {
+    movieSerializer.changeLentStatus("Loverboy", true);
+    Assertions.assertThrows(IllegalStateException.class, () -> movieSerializer.changeLentStatus("loverboy", true));
+    movieSerializer.changeLentStatus("Loverboy", false);
+    Assertions.assertThrows(IllegalStateException.class, () -> movieSerializer.changeLentStatus("Loverboy", false));
+    Assertions.assertThrows(NoSuchElementException.class, () -> movieSerializer.changeLentStatus("Non_Existing_Movie", true));
+    Assertions.assertThrows(IllegalStateException.class,
+        () -> movieSerializer.addMovieToLibrary(new Movie(" LOVERBOY ", 90, "A movie with a title that is taken.")));
+    Assertions.assertEquals(4, movieSerializer.getMovies().size());
+  }
+
+  // Test that the catalog version and the version of the changed movie increase, and no other movie's
+  @Test
+  @DisplayName("Test-versions")
+  public void testVersionsFollowChanges() throws IOException {
+    long catalogVersion = movieSerializer.getCatalogVersion();
+    long otherMovieVersion = movieSerializer.getMovieVersion("The_Trollgirl");
+    movieSerializer.changeLentStatus("Loverboy", true);
+
+    Assertions.assertTrue(movieSerializer.getCatalogVersion() > catalogVersion);
+    Assertions.assertEquals(movieSerializer.getCatalogVersion(), movieSerializer.getMovieVersion("loverboy"));
+    Assertions.assertEquals(otherMovieVersion, movieSerializer.getMovieVersion("The_Trollgirl"));
+    // Reading the version again without changes does not increase it
+    Assertions.assertEquals(movieSerializer.getCatalogVersion(), movieSerializer.getCatalogVersion());
+  }
+
+  // Test that a lend returns a copy of the movie with the version it produced, which later changes
+  // do not touch, and that a refused lend carries the movie as it is
+  @Test
+  @DisplayName("Test-changed-movie")
+  public void testChangeReturnsMovieState() throws IOException {
+    MovieState lent = movieSerializer.changeLentStatus("Loverboy", true);
+    Assertions.assertTrue(lent.getMovie().getIsLent());
+    Assertions.assertEquals(movieSerializer.getMovieVersion("Loverboy"), lent.getVersion());
+
+    MovieConflictException conflict = Assertions.assertThrows(MovieConflictException.class,
+        () -> movieSerializer.changeLentStatus("Loverboy", true));
+    Assertions.assertTrue(conflict.getState().getMovie().getIsLent());
+    Assertions.assertEquals(lent.getVersion(), conflict.getState().getVersion());
+
+    movieSerializer.changeLentStatus("Loverboy", false);
+    Assertions.assertTrue(lent.getMovie().getIsLent());
+    Assertions.assertTrue(movieSerializer.getMovieVersion("Loverboy") > lent.getVersion());
+  }
+
+  // Test that the binary snapshot is written next to the file and follows every rewrite
+  @Test
+  @DisplayName("Test-binary-snapshot")
+  public void testBinarySnapshotFollowsChanges() throws IOException {
+    movieSerializer.enableBinarySnapshot();
+    Assertions.assertEquals(4, MovieSnapshot.open(binarySnapshotFile).size());
+    Assertions.assertFalse(MovieSnapshot.open(binarySnapshotFile).isLent("Loverboy"));
+
+    movieSerializer.changeLentStatus("Loverboy", true);
+    MovieSnapshot snapshot = MovieSnapshot.open(binarySnapshotFile);
+    Assertions.assertTrue(snapshot.isLent("loverboy"));
+    Assertions.assertEquals(4, snapshot.size());
+    Assertions.assertTrue(snapshot.isSnapshotOf(temporaryFile));
+  }
+
+  // Test that title lookups stay in sync when movies are added and deleted
+  @Test
+  @DisplayName("Test-title-index")
+  public void testTitleIndexFollowsAddAndDelete() throws IOException {
+    Assertions.assertFalse(movieSerializer.movieIsFound("Index_Movie"));
+    movieSerializer.addMovieToLibrary(Movie.createMovie("Index_Movie", 90, "A movie used to test the title index."));
+    Assertions.assertTrue(movieSerializer.movieIsFound("index_movie"));
+
+    movieSerializer.deleteMovieFromLibrary("INDEX_MOVIE");
+    Assertions.assertFalse(movieSerializer.movieIsFound("Index_Movie"));
+  }
+
+  // Test that deleting keeps the library in order and lets a movie with the same title take over
+  @Test
+  @DisplayName("Test-delete-keeps-order")
+  public void testDeleteKeepsOrderAndDuplicates() throws IOException {
+    Files.writeString(temporaryFile.toPath(), "[{\"title\":\"Twin\",\"movieLength\":90},"
+        + "{\"title\":\"Single\",\"movieLength\":80},{\"title\":\" twin \",\"movieLength\":100},"
+        + "{\"title\":\"Last\",\"movieLength\":70}]");
+    movieSerializer = new MovieSerializer(temporaryFile);
+
+    movieSerializer.deleteMovieFromLibrary("Twin");
+    Assertions.assertTrue(movieSerializer.movieIsFound("TWIN"));
+    Assertions.assertEquals(100, movieSerializer.findMovie("twin").getMovieLength());
+    movieSerializer.deleteMovieFromLibrary("Single");
+    Assertions.assertEquals(List.of(" twin ", "Last"),
+        movieSerializer.getMovies().stream().map(Movie::getTitle).toList());
+
+    movieSerializer.deleteMovieFromLibrary("twin");
+    Assertions.assertFalse(movieSerializer.movieIsFound("Twin"));
+    movieSerializer.addMovieToLibrary(Movie.createMovie("After_Delete", 90, "A movie added after the deletes."));
+    Assertions.assertEquals(List.of("Last", "After_Delete"),
+        movieSerializer.getMovies().stream().map(Movie::getTitle).toList());
+  }
+
+  // Test that changes are appended to the journal and replayed when the file is loaded again
+  @Test
+  @DisplayName("Test-journal")
+  public void testJournalIsReplayed() throws IOException {
+    String snapshot = Files.readString(temporaryFile.toPath());
+    movieSerializer.enableJournal(10);
+    movieSerializer.changeLentStatus("Loverboy", true);
+    movieSerializer.addMovieToLibrary(Movie.createMovie("Journal_Movie", 90, "A movie that only exists in the journal."));
+    movieSerializer.deleteMovieFromLibrary("Life_is_tough");
+
+    Assertions.assertEquals(snapshot, Files.readString(temporaryFile.toPath()), "The snapshot should not be rewritten");
+    Assertions.assertEquals(3, Files.readAllLines(journalFile.toPath()).size());
+
+    MovieDeserializer reloaded = new MovieDeserializer(temporaryFile);
+    Assertions.assertTrue(reloaded.checkIfLent("Loverboy"));
+    Assertions.assertNotNull(reloaded.findMovie("Journal_Movie"));
+    Assertions.assertNull(reloaded.findMovie("Life_is_tough"));
+  }
+
+  // Test that the journal is folded into the snapshot once it reaches the compaction threshold
+  @Test
+  @DisplayName("Test-journal-compaction")
+  public void testJournalCompaction() throws IOException {
+    movieSerializer.enableJournal(2);
+    movieSerializer.changeLentStatus("Loverboy", true);
+    Assertions.assertTrue(journalFile.exists());
+
+    movieSerializer.changeLentStatus("The_Trollgirl", true);
+    Assertions.assertFalse(journalFile.exists(), "The journal should be emptied after compaction");
+
+    MovieDeserializer reloaded = new MovieDeserializer(temporaryFile);
+    Assertions.assertTrue(reloaded.checkIfLent("Loverboy"));
+    Assertions.assertTrue(reloaded.checkIfLent("The_Trollgirl"));
+  }
+
+  // Test that the snapshot is written through a temporary file that does not stay behind
+  @Test
+  @DisplayName("Test-atomic-snapshot")
+  public void testSnapshotLeavesNoTemporaryFile() throws IOException {
+    movieSerializer.changeLentStatus("Loverboy", true);
+    try (Stream<java.nio.file.Path> files = Files.list(temporaryFile.toPath().toAbsolutePath().getParent())) {
+      Assertions.assertTrue(files.noneMatch(path -> path.getFileName().toString().endsWith(".tmp")));
+    }
+    Assertions.assertTrue(new MovieDeserializer(temporaryFile).checkIfLent("Loverboy"));
+  }
+
+  // Test that a change that cannot be written is rolled back and never published, but followed
+  // by a resync, whether it is written right away or by a group commit
+  @Test
+  @DisplayName("Test-failed-change")
+  public void testFailedChangeIsRolledBack() throws IOException {
+    List<MovieChange> changes = new ArrayList<>();
+    movieSerializer.addChangeListener(changes::add);
+    movieSerializer.enableBinarySnapshot();
+    // A directory where the binary snapshot goes makes every write fail
+    File blocker = new File(binarySnapshotFile, "blocker");
+    Assertions.assertTrue(binarySnapshotFile.delete() && binarySnapshotFile.mkdir() && blocker.createNewFile());
+    try {
+      Assertions.assertThrows(IOException.class, () -> movieSerializer.changeLentStatus("Loverboy", true));
+      Assertions.assertFalse(movieSerializer.getLentStatus("Loverboy"));
+
+      movieSerializer.enableGroupCommit(0, 1);
+      Assertions.assertThrows(IOException.class, () -> movieSerializer.changeLentStatus("Loverboy", true));
+      Assertions.assertFalse(movieSerializer.getLentStatus("Loverboy"));
+      Assertions.assertEquals(2, changes.size());
+      Assertions.assertTrue(changes.stream().allMatch(change -> change.getType() == MovieChange.Type.RESYNC));
+    } finally {
+      blocker.delete();
+      binarySnapshotFile.delete();
+    }
+
+    movieSerializer.changeLentStatus("Loverboy", true);
+    Assertions.assertEquals(3, changes.size());
+    Assertions.assertEquals(MovieChange.Type.LENT, changes.get(2).getType());
+    Assertions.assertTrue(new MovieDeserializer(temporaryFile).checkIfLent("Loverboy"));
+  }
+
+  // Test that the listeners are told to resync when the file is read again after someone else
+  // changed it, but not when it is read for the first time
+  @Test
+  @DisplayName("Test-resync-on-reload")
+  public void testResyncOnReload() throws IOException {
+    List<MovieChange> changes = new ArrayList<>();
+    movieSerializer.addChangeListener(changes::add);
+    Assertions.assertFalse(movieSerializer.getLentStatus("Loverboy"));
+    Assertions.assertTrue(changes.isEmpty());
+
+    new MovieSerializer(temporaryFile).changeLentStatus("Loverboy", true);
+    Assertions.assertTrue(movieSerializer.getLentStatus("Loverboy"));
+    Assertions.assertEquals(1, changes.size());
+    Assertions.assertEquals(MovieChange.Type.RESYNC, changes.get(0).getType());
+    Assertions.assertNull(changes.get(0).getTitle());
+    Assertions.assertEquals(movieSerializer.getCatalogVersion(), changes.get(0).getVersion());
+  }
+
+  // Test that concurrent changes are all saved when they share a group commit
+  @Test
+  @DisplayName("Test-group-commit")
+  public void testGroupCommit() throws Exception {
+    List<String> titles = List.of("Loverboy", "The_Trollgirl", "Day_in_the_life_of_gr2403", "Life_is_tough");
+    movieSerializer.enableJournal(100);
+    movieSerializer.enableGroupCommit(20, titles.size());
+
+    ExecutorService executor = Executors.newFixedThreadPool(titles.size());
+    try {
+      List<Future<?>> lends = new ArrayList<>();
+      for (String title : titles) {
+        lends.add(executor.submit(() -> {
+          movieSerializer.changeLentStatus(title, true);
+          return null;
+        }));
+      }
+      for (Future<?> lend : lends) {
+        lend.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    MovieDeserializer reloaded = new MovieDeserializer(temporaryFile);
+    for (String title : titles) {
+      Assertions.assertTrue(reloaded.checkIfLent(title), title + " should be saved as lent");
+    }
+  }
+
 }
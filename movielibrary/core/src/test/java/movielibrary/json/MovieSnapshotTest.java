@@ -0,0 +1,134 @@
+package movielibrary.json;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import movielibrary.core.Movie;
+import movielibrary.json.internal.MovieSnapshot;
+
+// Tests for MovieSnapshot.java class
+public class MovieSnapshotTest {
+
+  // File object for the temporary snapshot file
+  private File snapshotFile;
+
+  // Writes a snapshot of a few movies to a temporary file before each test
+  @BeforeEach
+  public void setUp() throws IOException {
+    snapshotFile = new File("../core/src/main/resources/movielibrary/json/internal/tempmovies.json.bin");
+    Movie lentMovie = new Movie("Moana", 100, "Moana about a girl who saves her island");
+    lentMovie.setLent(true);
+    List<Movie> movies = List.of(new Movie("Frozen", 90, "Movie about a girl with ice powers"),
+        lentMovie, new Movie("Zootopia", 110, null), new Movie("Amélie", 120, "A film from Paris"));
+    Files.write(snapshotFile.toPath(), MovieSnapshot.encode(movies));
+  }
+
+  // Deletes the temporary file after each test
+  @AfterEach
+  public void deleteTemporaryFile() {
+    snapshotFile.delete();
+  }
+
+  // Test that lookups and lent status reads work on the mapped file
+  @Test
+  @DisplayName("Test lookups in a mapped snapshot")
+  public void testLookups() throws IOException {
+    MovieSnapshot snapshot = MovieSnapshot.open(snapshotFile);
+    Assertions.assertEquals(4, snapshot.size());
+    Assertions.assertTrue(snapshot.contains("frozen"));
+    Assertions.assertTrue(snapshot.contains(" AMÉLIE "));
+    Assertions.assertFalse(snapshot.contains("Frozen 2"));
+    Assertions.assertTrue(snapshot.isLent("Moana"));
+    Assertions.assertFalse(snapshot.isLent("Zootopia"));
+    Assertions.assertThrows(NoSuchElementException.class, () -> snapshot.isLent("Cars"));
+  }
+
+  // Test that movies can be read back in full from the snapshot
+  @Test
+  @DisplayName("Test reading movies back from a snapshot")
+  public void testToList() throws IOException {
+    MovieSnapshot snapshot = MovieSnapshot.open(snapshotFile);
+    Movie moana = snapshot.getMovie(snapshot.indexOf("moana"));
+    Assertions.assertEquals("Moana", moana.getTitle());
+    Assertions.assertEquals(100, moana.getMovieLength());
+    Assertions.assertEquals("Moana about a girl who saves her island", moana.getDescription());
+    Assertions.assertTrue(moana.getIsLent());
+    Assertions.assertNull(snapshot.getMovie(snapshot.indexOf("Zootopia")).getDescription());
+
+    List<String> titles = new ArrayList<>();
+    snapshot.toList().forEach(movie -> titles.add(movie.getTitle()));
+    Assertions.assertEquals(List.of("Amélie", "Frozen", "Moana", "Zootopia"), titles);
+  }
+
+  // Test that titles and descriptions of every UTF-8 length are streamed into the right places
+  @Test
+  @DisplayName("Test writing a snapshot to a stream")
+  public void testWrite() throws IOException {
+    List<Movie> movies = List.of(new Movie("千と千尋の神隠し", 125, "Spirited Away \uD83D\uDC09"),
+        new Movie("Broken \uD83C", 1, "\uDC00 lone surrogates"), new Movie("Up", 96, ""));
+    try (OutputStream out = Files.newOutputStream(snapshotFile.toPath())) {
+      MovieSnapshot.write(movies, -1, -1, 0, out);
+    }
+    MovieSnapshot snapshot = MovieSnapshot.open(snapshotFile);
+    for (Movie movie : movies) {
+      Movie read = snapshot.getMovie(snapshot.indexOf(movie.getTitle()));
+      Assertions.assertEquals(new String(movie.getTitle().getBytes(StandardCharsets.UTF_8),
+          StandardCharsets.UTF_8), read.getTitle());
+      Assertions.assertEquals(new String(movie.getDescription().getBytes(StandardCharsets.UTF_8),
+          StandardCharsets.UTF_8), read.getDescription());
+    }
+  }
+
+  // Test that the movies are read back in the order they had in the library
+  @Test
+  @DisplayName("Test reading movies back in library order")
+  public void testToLibraryList() throws IOException {
+    List<String> titles = new ArrayList<>();
+    MovieSnapshot.open(snapshotFile).toLibraryList().forEach(movie -> titles.add(movie.getTitle()));
+    Assertions.assertEquals(List.of("Frozen", "Moana", "Zootopia", "Amélie"), titles);
+  }
+
+  // Test that a snapshot only belongs to a file holding the JSON it was written with
+  @Test
+  @DisplayName("Test matching a snapshot to its JSON file")
+  public void testIsSnapshotOf() throws IOException {
+    File jsonFile = new File("../core/src/main/resources/movielibrary/json/internal/tempmovies.json");
+    try {
+      byte[] json = "[ ]".getBytes(StandardCharsets.UTF_8);
+      Files.write(jsonFile.toPath(), json);
+      Assertions.assertFalse(MovieSnapshot.open(snapshotFile).isSnapshotOf(jsonFile));
+
+      Files.write(snapshotFile.toPath(), MovieSnapshot.encode(List.of(), json));
+      Assertions.assertTrue(MovieSnapshot.open(snapshotFile).isSnapshotOf(jsonFile));
+
+      Files.write(jsonFile.toPath(), "[ ] ".getBytes(StandardCharsets.UTF_8));
+      Assertions.assertFalse(MovieSnapshot.open(snapshotFile).isSnapshotOf(jsonFile));
+      Files.write(jsonFile.toPath(), "[\n]".getBytes(StandardCharsets.UTF_8));
+      Assertions.assertFalse(MovieSnapshot.open(snapshotFile).isSnapshotOf(jsonFile));
+    } finally {
+      jsonFile.delete();
+    }
+  }
+
+  // Test that a file that is not a snapshot is rejected
+  @Test
+  @DisplayName("Test rejecting a file that is not a snapshot")
+  public void testInvalidFile() throws IOException {
+    File jsonFile = new File("../core/src/main/resources/movielibrary/json/internal/moviesTest.json");
+    Files.copy(jsonFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    Assertions.assertThrows(IOException.class, () -> MovieSnapshot.open(snapshotFile));
+  }
+}
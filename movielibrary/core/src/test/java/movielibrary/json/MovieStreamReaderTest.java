@@ -0,0 +1,76 @@
+package movielibrary.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import movielibrary.core.Movie;
+import movielibrary.json.internal.MovieStreamReader;
+
+// Tests for MovieStreamReader.java class
+public class MovieStreamReaderTest {
+
+  private static final File TEST_FILE =
+      new File("../core/src/main/resources/movielibrary/json/internal/moviesTest.json");
+
+  // Test that every movie in the file is visited in order, with all of its fields
+  @Test
+  @DisplayName("Test streaming every movie in a file")
+  public void testReadFile() throws IOException {
+    List<Movie> movies = new ArrayList<>();
+    long count = new MovieStreamReader(false).read(TEST_FILE, movies::add);
+
+    Assertions.assertEquals(4, count);
+    Assertions.assertEquals(4, movies.size());
+    Assertions.assertEquals("The_Trollgirl", movies.get(0).getTitle());
+    Assertions.assertNotNull(movies.get(0).getDescription());
+  }
+
+  // Test that descriptions are left out when they are skipped
+  @Test
+  @DisplayName("Test skipping descriptions")
+  public void testSkipDescriptions() throws IOException {
+    List<Movie> movies = new ArrayList<>();
+    new MovieStreamReader(true).read(TEST_FILE, movies::add);
+
+    Assertions.assertEquals(4, movies.size());
+    for (Movie movie : movies) {
+      Assertions.assertNotNull(movie.getTitle());
+      Assertions.assertNull(movie.getDescription());
+    }
+  }
+
+  // Test that the lent status is read and that unknown fields are ignored
+  @Test
+  @DisplayName("Test reading lent status and ignoring unknown fields")
+  public void testReadStream() throws IOException {
+    String json = "[{\"title\":\"Moana\",\"movieLength\":1.7,\"extra\":{\"a\":[1,2]},"
+        + "\"description\":\"Moana about a girl who saves her island\",\"isLent\":true}]";
+    List<Movie> movies = new ArrayList<>();
+    try (InputStream input = new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))) {
+      new MovieStreamReader(false).read(input, movies::add);
+    }
+
+    Assertions.assertEquals(1, movies.size());
+    Assertions.assertEquals("Moana", movies.get(0).getTitle());
+    Assertions.assertEquals(1.7, movies.get(0).getMovieLength());
+    Assertions.assertTrue(movies.get(0).getIsLent());
+  }
+
+  // Test that input that is not an array of movies is rejected
+  @Test
+  @DisplayName("Test rejecting input that is not an array of movies")
+  public void testInvalidInput() {
+    InputStream input = new ByteArrayInputStream("{\"title\":\"Moana\"}".getBytes(StandardCharsets.UTF_8));
+    Assertions.assertThrows(IOException.class,
+        () -> new MovieStreamReader(false).read(input, movie -> { }));
+  }
+}
@@ -1,6 +1,7 @@
 package movielibrary.ui;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -10,6 +11,7 @@ import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.stage.Stage;
@@ -26,6 +28,10 @@ import movielibrary.core.Movie;
  * <li> A button to submit the movie information and add it to the library. </li> 
  * <li> A cancel button that returns the user to the {@code FrontPage.fxml} 
  * without making changes. </li></ul>
+ *
+ * <p>The movie is sent to the server in the background, see {@link BackgroundTasks}. While the
+ * page waits for the server it shows a progress indicator and disables the {@code Add Movie}
+ * button, and leaving the page cancels the call if it is still running.</p>
  */
 public class AddMoviePageController {
 
@@ -34,6 +40,11 @@ public class AddMoviePageController {
    */
   private RemoteMovieLibraryAccess access = new RemoteMovieLibraryAccess();
 
+  /**
+   * Runs the calls to the server off the JavaFX application thread.
+   */
+  private final BackgroundTasks tasks = new BackgroundTasks();
+
   /**
    * FXML UI component on the MoviePage.
    * {@code newMovieTitle} is a textfield that sets the new movie title.
@@ -68,6 +79,23 @@ public class AddMoviePageController {
    */
   @FXML
   private Button cancelbtn;
+
+  /**
+   * FXML UI component on the MoviePage.
+   * {@code progress} is shown while the page waits for the server.
+   */
+  @FXML
+  private ProgressIndicator progress;
+
+  /**
+   * Shows the progress indicator and disables the {@code Add Movie} button
+   * while the page waits for the server. Called by the {@link FXMLLoader}.
+   */
+  @FXML
+  public void initialize() {
+    progress.visibleProperty().bind(tasks.busyProperty());
+    addMoviebtn.disableProperty().bind(tasks.busyProperty());
+  }
   
   /**
    * Sets the remote access object for interacting with the remote movie library service.
@@ -78,6 +106,15 @@ public class AddMoviePageController {
   public void setRemoteAccess(final RemoteMovieLibraryAccess access) {
     this.access = access;
   }
+
+  /**
+   * Sets the executor the calls to the server run on, which is handed on to the next page.
+   *
+   * @param executor The executor, for example one that runs the calls at once in tests.
+   */
+  public void setExecutor(final Executor executor) {
+    tasks.setExecutor(executor);
+  }
   
   /**
    * Handles the "Add Movie" button click event. It validates the input fields for movie title,
@@ -125,23 +162,34 @@ public class AddMoviePageController {
       return;
     }
 
+    Movie movie;
     try {
-      Movie movie = Movie.createMovie(newMovieTitle.getText(), 
+      movie = Movie.createMovie(newMovieTitle.getText(), 
           Integer.parseInt(newMovieLength.getText()), newMovieDescription.getText());
-      access.addMovie(movie);
-      showAlert(AlertType.INFORMATION, "Success!", "New movie is added to the library!");
-      returnToFrontPage(event);
-    } catch (IllegalStateException e) {
-      error = e.getMessage();
-      alert.setContentText("The movie title already exists in the movielibrary!");
-      alert.showAndWait();
-      return;
     } catch (IllegalArgumentException e) {
-      error = e.getMessage();
-      alert.setContentText(error);
+      alert.setContentText(e.getMessage());
       alert.showAndWait();
       return;
     }
+
+    tasks.run(() -> {
+      access.addMovie(movie);
+      return null;
+    }, added -> {
+      showAlert(AlertType.INFORMATION, "Success!", "New movie is added to the library!");
+      try {
+        returnToFrontPage(event);
+      } catch (IOException e) {
+        showAlert(AlertType.ERROR, "Error", "Could not load the page");
+      }
+    }, e -> {
+      if (e instanceof IllegalStateException) {
+        alert.setContentText("The movie title already exists in the movielibrary!");
+      } else {
+        alert.setContentText(e.getMessage());
+      }
+      alert.showAndWait();
+    });
   }
 
 
@@ -170,10 +218,12 @@ public class AddMoviePageController {
       if (throwError) {
         throw new IOException("Simulated IOException");
       }
+      tasks.cancelAll();
       FXMLLoader loader = new FXMLLoader(getClass().getResource("/movielibrary/ui/FrontPage.fxml"));
       Parent root = loader.load();
 
       FrontPageController frontPageController = loader.getController();
+      frontPageController.setExecutor(tasks.getExecutor());
       frontPageController.initializes(this.access);
 
       // get current stage and set the new scene (frontpage).
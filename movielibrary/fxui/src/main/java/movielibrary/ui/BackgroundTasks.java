@@ -0,0 +1,145 @@
+package movielibrary.ui;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
+
+/**
+ * The {@code BackgroundTasks} class runs the calls a page makes to the server off the JavaFX
+ * application thread, so the window keeps drawing and answering the user however slow the
+ * server is.
+ *
+ * <p>Every call runs as a JavaFX {@link Task} on an executor, by default one shared by every
+ * page with daemon threads that are created as needed and reused. What the page does with the
+ * result, or with the error, runs back on the JavaFX application thread. The page shows that it
+ * is waiting by binding to {@link #busyProperty()}, and cancels its calls with
+ * {@link #cancelAll()} when the user leaves it, so a late answer never changes a page that is no
+ * longer shown.</p>
+ */
+final class BackgroundTasks {
+
+  private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+  /**
+   * The executor shared by every page unless another one is given.
+   */
+  static final ExecutorService SHARED_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "movielibrary-ui-" + THREAD_COUNT.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private volatile Executor executor;
+  private final Set<Task<?>> running = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger generation = new AtomicInteger();
+  private final ReadOnlyBooleanWrapper busy = new ReadOnlyBooleanWrapper(this, "busy");
+
+  /**
+   * Creates the background tasks of a page, run on the shared executor.
+   */
+  BackgroundTasks() {
+    this.executor = SHARED_EXECUTOR;
+  }
+
+  /**
+   * Returns the executor the tasks run on, to be handed to the next page.
+   *
+   * @return the executor
+   */
+  Executor getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Sets the executor the tasks run on, for example one that runs them at once in tests.
+   *
+   * @param executor the executor
+   */
+  void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Returns whether any task is running, for showing a progress indicator.
+   * The property only changes on the JavaFX application thread.
+   *
+   * @return the property that is true while a task is running
+   */
+  ReadOnlyBooleanProperty busyProperty() {
+    return busy.getReadOnlyProperty();
+  }
+
+  /**
+   * Runs a call in the background, and hands its result or error to the page on the JavaFX
+   * application thread, unless the tasks have been cancelled since.
+   *
+   * @param <T> the type of the result
+   * @param work the call, run off the JavaFX application thread
+   * @param onSuccess what to do with the result
+   * @param onFailure what to do with the error
+   * @return the task running the call
+   */
+  <T> Task<T> run(Callable<T> work, Consumer<T> onSuccess, Consumer<Throwable> onFailure) {
+    final int startedIn = generation.get();
+    Task<T> task = new Task<>() {
+      @Override
+      protected T call() throws Exception {
+        return work.call();
+      }
+    };
+    task.setOnSucceeded(event -> {
+      if (startedIn == generation.get()) {
+        onSuccess.accept(task.getValue());
+      }
+    });
+    task.setOnFailed(event -> {
+      if (startedIn == generation.get()) {
+        onFailure.accept(task.getException());
+      }
+    });
+    task.stateProperty().addListener((observable, oldState, newState) -> {
+      if (newState == Worker.State.SUCCEEDED || newState == Worker.State.FAILED
+          || newState == Worker.State.CANCELLED) {
+        running.remove(task);
+        busy.set(!running.isEmpty());
+      }
+    });
+    running.add(task);
+    onFxThread(() -> busy.set(!running.isEmpty()));
+    executor.execute(task);
+    return task;
+  }
+
+  /**
+   * Cancels every running task, and drops the results of tasks that finish anyway.
+   */
+  void cancelAll() {
+    generation.incrementAndGet();
+    for (Task<?> task : running) {
+      task.cancel(true);
+    }
+  }
+
+  /**
+   * Runs an update on the JavaFX application thread, at once if this is that thread.
+   *
+   * @param update the update
+   */
+  private static void onFxThread(Runnable update) {
+    if (Platform.isFxApplicationThread()) {
+      update.run();
+    } else {
+      Platform.runLater(update);
+    }
+  }
+}
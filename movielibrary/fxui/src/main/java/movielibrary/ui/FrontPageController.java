@@ -3,6 +3,7 @@ package movielibrary.ui;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -11,6 +12,7 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.ProgressIndicator;
 import javafx.stage.Stage;
 import movielibrary.core.Movie;
 
@@ -19,6 +21,10 @@ import movielibrary.core.Movie;
  * Handles the user interaction with the UI components on the FrontPage.
  * The user interaction includes choosing a movie from the {@code ChoiceBox} 
  * and clicking the {@code MoreInfo} button.
+ *
+ * <p>The calls to the server run in the background, see {@link BackgroundTasks}. While the page
+ * waits for the server it shows a progress indicator, and leaving the page cancels the calls
+ * that are still running.</p>
  */
 public class FrontPageController {
   
@@ -27,6 +33,11 @@ public class FrontPageController {
    */
   private RemoteMovieLibraryAccess access;
 
+  /**
+   * Runs the calls to the server off the JavaFX application thread.
+   */
+  private final BackgroundTasks tasks = new BackgroundTasks();
+
   /**
    * FXML UI components on the FrontPage.
    * {@code MoreInfobtn} is a button that redirects the user to the {@code MoviePage.fxml} page
@@ -48,6 +59,23 @@ public class FrontPageController {
   @FXML
   private ChoiceBox<String> movieScrollBar;
 
+  /**
+   * FXML UI components on the FrontPage.
+   * {@code progress} is shown while the page waits for the server.
+   */
+  @FXML
+  private ProgressIndicator progress;
+
+  /**
+   * Shows the progress indicator and disables the {@code MoreInfo} button
+   * while the page waits for the server. Called by the {@link FXMLLoader}.
+   */
+  @FXML
+  public void initialize() {
+    progress.visibleProperty().bind(tasks.busyProperty());
+    moreInfobtn.disableProperty().bind(tasks.busyProperty());
+  }
+
   /**
    * Initializes the front page by loading the movie titles from the remote movie library access,
    * and populating the {@code movieScrollBar} with the movie titles.
@@ -57,16 +85,13 @@ public class FrontPageController {
   public void initializes(RemoteMovieLibraryAccess access) throws IOException {
     this.access = access;
 
-    try {
-      List<Movie> movies = access.getMovies();
+    tasks.run(access::getMovies, movies -> {
       List<String> movieTitles = new ArrayList<>();
       for (Movie mov : movies) {
         movieTitles.add(mov.getTitle());
       }
       movieScrollBar.getItems().addAll(movieTitles);
-    } catch (RuntimeException e) {
-      e.printStackTrace();
-    }
+    }, Throwable::printStackTrace);
   }
 
   /**
@@ -81,8 +106,13 @@ public class FrontPageController {
   public void handleMoreInfoButton() throws IOException {
     String chosenMovie = movieScrollBar.getValue();
     if (chosenMovie != null && !chosenMovie.isEmpty()) {
-      Movie movie = access.getMovieByTitle(chosenMovie);
-      loadPage("MoviePage.fxml", movie.getTitle(), movie.getDescription(), movie.getMovieLength());
+      tasks.run(() -> access.getMovieByTitle(chosenMovie), movie -> loadPage("MoviePage.fxml",
+          movie.getTitle(), movie.getDescription(), movie.getMovieLength()), error -> {
+            Alert alert = new Alert(AlertType.ERROR, error.getMessage());
+            alert.setTitle("Error");
+            alert.setHeaderText("Could not fetch the movie");
+            alert.showAndWait();
+          });
     } else {
       Alert alert = new Alert(AlertType.ERROR, "Please choose a movie from the scrollbar menu");
       alert.setTitle("Error");
@@ -92,16 +122,22 @@ public class FrontPageController {
   }
 
   /**
-   * Handles AddMoviebtn onAction. Loads AddMoviePage.fxml when the button is clicked.
+   * Handles AddMoviebtn onAction. Loads AddMoviePage.fxml when the button is clicked,
+   * handing it the same remote access so the pages share one connection and one cache.
    *
    * @throws IOException Throws IOException if an I/O error occurs while accessing the file
    */
   public void handleAddMovieButton() throws IOException {
     try {
+      tasks.cancelAll();
       FXMLLoader loader = new FXMLLoader(getClass()
                           .getResource("/movielibrary/ui/AddMoviePage.fxml"));
       Parent parent = loader.load();
 
+      AddMoviePageController addMoviePageController = loader.getController();
+      addMoviePageController.setRemoteAccess(this.access);
+      addMoviePageController.setExecutor(tasks.getExecutor());
+
       Stage stage = (Stage) addMoviebtn.getScene().getWindow();
       Scene scene = new Scene(parent);
       stage.setScene(scene);
@@ -121,11 +157,13 @@ public class FrontPageController {
    */
   public void loadPage(String page, String movieTitle, String description, double movieLength) {
     try {
+      tasks.cancelAll();
       FXMLLoader loader = new FXMLLoader(getClass().getResource("/movielibrary/ui/" + page));
       Parent parent = loader.load();
 
       MoviePageController moviePageController = loader.getController();
       moviePageController.setRemoteAccess(this.access);
+      moviePageController.setExecutor(tasks.getExecutor());
 
       moviePageController.setMovieDetails(movieTitle);
 
@@ -147,4 +185,13 @@ public class FrontPageController {
   public void setRemoteAccess(final RemoteMovieLibraryAccess access) {
     this.access = access;
   }
+
+  /**
+   * Sets the executor the calls to the server run on, which is handed on to the next page.
+   *
+   * @param executor The executor, for example one that runs the calls at once in tests.
+   */
+  public void setExecutor(final Executor executor) {
+    tasks.setExecutor(executor);
+  }
 }
@@ -0,0 +1,333 @@
+package movielibrary.ui;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import movielibrary.core.Movie;
+
+/**
+ * The {@code MovieCache} class keeps the movies the client has fetched from the server, so
+ * showing the same movie or the same list again does not need another request.
+ *
+ * <p>An entry is fresh for a fixed time to live after it was fetched, and is used as it is while
+ * it is fresh. After that it is stale: it is kept, together with the ETag the server sent, so the
+ * client can ask the server whether it has changed with {@code If-None-Match} and only download
+ * it again if it has. The list of all movies is one entry; movies fetched one at a time are kept
+ * in a map of bounded size that forgets the least recently used movie first. A movie that is in
+ * a fresh list does not need an entry of its own.</p>
+ *
+ * <p>Changes the client makes itself are written into the cache right away. Every such change
+ * also moves the cache to a new generation, and a response is only stored if no change was made
+ * while it was on its way, so a slow response never overwrites a newer change. Movies are copied
+ * in and out of the cache, since {@link Movie} is mutable. The cache is safe to use from several
+ * threads.</p>
+ */
+final class MovieCache {
+
+  /**
+   * How long an entry is used without asking the server, unless another time to live is given.
+   */
+  static final Duration DEFAULT_TTL = Duration.ofSeconds(30);
+
+  /**
+   * How many movies fetched one at a time are kept, unless another capacity is given.
+   */
+  static final int DEFAULT_CAPACITY = 256;
+
+  private final long ttlNanos;
+  private final LongSupplier clock;
+  private final Map<String, Entry<Movie>> movies;
+  private ListEntry movieList;
+  private long generation;
+
+  /**
+   * A value taken out of the cache, with the ETag it was fetched with and whether it is fresh.
+   *
+   * @param <T> the type of the value
+   */
+  static final class Cached<T> {
+
+    private final T value;
+    private final String etag;
+    private final boolean fresh;
+
+    private Cached(T value, String etag, boolean fresh) {
+      this.value = value;
+      this.etag = etag;
+      this.fresh = fresh;
+    }
+
+    /**
+     * Returns a copy of the cached value.
+     *
+     * @return the value
+     */
+    T getValue() {
+      return value;
+    }
+
+    /**
+     * Returns the ETag the value was fetched with.
+     *
+     * @return the quoted ETag, or {@code null} if the server sent none or the value was changed
+     *         by the client since
+     */
+    String getEtag() {
+      return etag;
+    }
+
+    /**
+     * Returns whether the value may be used without asking the server.
+     *
+     * @return {@code true} if the value is younger than the time to live
+     */
+    boolean isFresh() {
+      return fresh;
+    }
+  }
+
+  /**
+   * A cached movie, with the ETag and the time it was fetched.
+   *
+   * @param <T> the type of the value
+   */
+  private static final class Entry<T> {
+
+    private final T value;
+    private final String etag;
+    private final long fetchedAt;
+
+    private Entry(T value, String etag, long fetchedAt) {
+      this.value = value;
+      this.etag = etag;
+      this.fetchedAt = fetchedAt;
+    }
+  }
+
+  /**
+   * The cached list of all movies, with an index of the movies by title.
+   */
+  private static final class ListEntry {
+
+    private final Entry<List<Movie>> entry;
+    private final Map<String, Movie> byTitle = new HashMap<>();
+
+    private ListEntry(List<Movie> movies, String etag, long fetchedAt) {
+      this.entry = new Entry<>(movies, etag, fetchedAt);
+      for (Movie movie : movies) {
+        byTitle.put(movie.getTitle(), movie);
+      }
+    }
+  }
+
+  /**
+   * Creates a cache with the default time to live and capacity.
+   */
+  MovieCache() {
+    this(DEFAULT_TTL, DEFAULT_CAPACITY, System::nanoTime);
+  }
+
+  /**
+   * Creates a cache.
+   *
+   * @param ttl how long an entry is used without asking the server, zero to always ask
+   * @param capacity how many movies fetched one at a time are kept
+   * @param clock the time in nanoseconds, like {@link System#nanoTime()}
+   * @throws IllegalArgumentException if the time to live is negative or the capacity is less
+   *                                  than 1
+   */
+  MovieCache(Duration ttl, int capacity, LongSupplier clock) {
+    if (ttl.isNegative()) {
+      throw new IllegalArgumentException("The time to live of the cache cannot be negative.");
+    }
+    if (capacity < 1) {
+      throw new IllegalArgumentException("The capacity of the cache must be at least 1.");
+    }
+    this.ttlNanos = ttl.toNanos();
+    this.clock = clock;
+    this.movies = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry<Movie>> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Returns the generation of the cache, to be passed back when a response is stored.
+   *
+   * @return the current generation
+   */
+  synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Looks up the list of all movies.
+   *
+   * @return a copy of the cached list, or {@code null} if there is none
+   */
+  synchronized Cached<List<Movie>> getMovies() {
+    if (movieList == null) {
+      return null;
+    }
+    Entry<List<Movie>> entry = movieList.entry;
+    return new Cached<>(copyOf(entry.value), entry.etag, isFresh(entry));
+  }
+
+  /**
+   * Looks up a movie, in the movies fetched one at a time and in the list of all movies.
+   *
+   * @param title the title of the movie
+   * @return a copy of the cached movie, preferring a fresh one, or {@code null} if there is none
+   */
+  synchronized Cached<Movie> getMovie(String title) {
+    Entry<Movie> entry = movies.get(title);
+    if (entry != null && isFresh(entry)) {
+      return new Cached<>(copyOf(entry.value), entry.etag, true);
+    }
+    if (movieList != null && isFresh(movieList.entry) && movieList.byTitle.containsKey(title)) {
+      return new Cached<>(copyOf(movieList.byTitle.get(title)), null, true);
+    }
+    return entry == null ? null : new Cached<>(copyOf(entry.value), entry.etag, false);
+  }
+
+  /**
+   * Stores the list of all movies fetched from the server, unless the client changed a movie
+   * while it was being fetched.
+   *
+   * @param list the movies
+   * @param etag the ETag of the list, or {@code null}
+   * @param fetchedIn the generation of the cache when the request was sent
+   */
+  synchronized void putMovies(List<Movie> list, String etag, long fetchedIn) {
+    if (fetchedIn == generation) {
+      movieList = new ListEntry(copyOf(list), etag, clock.getAsLong());
+    }
+  }
+
+  /**
+   * Stores a movie fetched from the server, unless the client changed a movie while it was
+   * being fetched.
+   *
+   * @param movie the movie
+   * @param etag the ETag of the movie, or {@code null}
+   * @param fetchedIn the generation of the cache when the request was sent
+   */
+  synchronized void putMovie(Movie movie, String etag, long fetchedIn) {
+    if (fetchedIn == generation) {
+      movies.put(movie.getTitle(), new Entry<>(copyOf(movie), etag, clock.getAsLong()));
+    }
+  }
+
+  /**
+   * Records that the client added a movie.
+   *
+   * @param movie the movie that was added
+   */
+  synchronized void added(Movie movie) {
+    generation++;
+    movieList = null;
+    movies.put(movie.getTitle(), new Entry<>(copyOf(movie), null, clock.getAsLong()));
+  }
+
+  /**
+   * Records that the client lent or returned a movie. The cached copies of the movie are
+   * updated, and lose their ETags since the server has a new version of the movie.
+   *
+   * @param title the title of the movie
+   * @param lent whether the movie is now lent
+   */
+  synchronized void lentStatusChanged(String title, boolean lent) {
+    generation++;
+    Entry<Movie> entry = movies.get(title);
+    if (entry != null) {
+      movies.put(title, new Entry<>(withLentStatus(entry.value, lent), null, entry.fetchedAt));
+    }
+    if (movieList != null && movieList.byTitle.containsKey(title)) {
+      List<Movie> list = new ArrayList<>(movieList.entry.value.size());
+      for (Movie movie : movieList.entry.value) {
+        list.add(movie.getTitle().equals(title) ? withLentStatus(movie, lent) : movie);
+      }
+      movieList = new ListEntry(list, null, movieList.entry.fetchedAt);
+    }
+  }
+
+  /**
+   * Records the movie the server answered a lend or return with. The list of all movies is
+   * updated like in {@link #lentStatusChanged(String, boolean)}, while the movie itself is
+   * stored fresh with its new ETag, so it does not have to be fetched again.
+   *
+   * @param movie the movie as it is on the server now
+   * @param etag the ETag of the movie, or {@code null}
+   */
+  synchronized void lentStatusChanged(Movie movie, String etag) {
+    lentStatusChanged(movie.getTitle(), movie.getIsLent());
+    movies.put(movie.getTitle(), new Entry<>(copyOf(movie), etag, clock.getAsLong()));
+  }
+
+  /**
+   * Forgets a movie, and the list of all movies it may be in, because the client deleted it or
+   * does not know what the server did with it.
+   *
+   * @param title the title of the movie
+   */
+  synchronized void invalidate(String title) {
+    generation++;
+    movies.remove(title);
+    movieList = null;
+  }
+
+  /**
+   * Checks whether an entry is younger than the time to live.
+   *
+   * @param entry the entry
+   * @return {@code true} if the entry is fresh
+   */
+  private boolean isFresh(Entry<?> entry) {
+    return clock.getAsLong() - entry.fetchedAt < ttlNanos;
+  }
+
+  /**
+   * Copies a movie with another lent status.
+   *
+   * @param movie the movie
+   * @param lent the lent status of the copy
+   * @return the copy
+   */
+  private static Movie withLentStatus(Movie movie, boolean lent) {
+    Movie copy = copyOf(movie);
+    copy.setLent(lent);
+    return copy;
+  }
+
+  /**
+   * Copies a movie.
+   *
+   * @param movie the movie
+   * @return a movie with the same fields
+   */
+  private static Movie copyOf(Movie movie) {
+    Movie copy = new Movie(movie.getTitle(), movie.getMovieLength(), movie.getDescription());
+    copy.setLent(movie.getIsLent());
+    return copy;
+  }
+
+  /**
+   * Copies a list of movies.
+   *
+   * @param list the movies
+   * @return a new list with copies of the movies
+   */
+  private static List<Movie> copyOf(List<Movie> list) {
+    List<Movie> copy = new ArrayList<>(list.size());
+    for (Movie movie : list) {
+      copy.add(copyOf(movie));
+    }
+    return copy;
+  }
+}
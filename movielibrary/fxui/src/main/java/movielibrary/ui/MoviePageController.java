@@ -1,6 +1,7 @@
 package movielibrary.ui;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -10,6 +11,7 @@ import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.stage.Stage;
@@ -21,6 +23,10 @@ import movielibrary.core.Movie;
  * The user interaction includes lending a movie with the {@code lend} button, 
  * and returning a lend movie with {@code return} button. 
  * If the user wants to cancel the chosen movie, user can click on the {@code cancel} button.  
+ *
+ * <p>The calls to the server run in the background, see {@link BackgroundTasks}. While the page
+ * waits for the server it shows a progress indicator and disables the buttons that change the
+ * movie, and leaving the page cancels the calls that are still running.</p>
  */
 public class MoviePageController {
 
@@ -29,6 +35,11 @@ public class MoviePageController {
    */
   private RemoteMovieLibraryAccess access = new RemoteMovieLibraryAccess();
 
+  /**
+   * Runs the calls to the server off the JavaFX application thread.
+   */
+  private final BackgroundTasks tasks = new BackgroundTasks();
+
   /**
    * FXML UI components on the MoviePage.
    * {@code MovieTitle} is a textfield that gives the chosen movie title.
@@ -79,6 +90,25 @@ public class MoviePageController {
   @FXML
   private Button deleteMoviebtn;
 
+  /**
+   * FXML UI components on the MoviePage.
+   * {@code progress} is shown while the page waits for the server.
+   */
+  @FXML
+  private ProgressIndicator progress;
+
+  /**
+   * Shows the progress indicator and disables the buttons that change the movie
+   * while the page waits for the server. Called by the {@link FXMLLoader}.
+   */
+  @FXML
+  public void initialize() {
+    progress.visibleProperty().bind(tasks.busyProperty());
+    lendbtn.disableProperty().bind(tasks.busyProperty());
+    returnbtn.disableProperty().bind(tasks.busyProperty());
+    deleteMoviebtn.disableProperty().bind(tasks.busyProperty());
+  }
+
   /**
    * Sets the details of the movie that is to be displayed.
    * Fetches the rest of the information from the {@link RemoteMovieLibraryAccess} object
@@ -87,14 +117,15 @@ public class MoviePageController {
    * @param movieTitle the title of the movie to be displayed
    */
   public void setMovieDetails(String movieTitle) {
-    Movie movie = access.getMovieByTitle(movieTitle);
-    if (movie != null) {
-      movieTitleInPage.setText(movie.getTitle());
-      summary.setText(movie.getDescription());
-      movieDuration.setText(String.valueOf(movie.getMovieLength()));
-    } else {
-      showAlert(AlertType.ERROR, "Error", "Movie not found on server.");
-    }
+    tasks.run(() -> access.getMovieByTitle(movieTitle), movie -> {
+      if (movie != null) {
+        movieTitleInPage.setText(movie.getTitle());
+        summary.setText(movie.getDescription());
+        movieDuration.setText(String.valueOf(movie.getMovieLength()));
+      } else {
+        showAlert(AlertType.ERROR, "Error", "Movie not found on server.");
+      }
+    }, this::showServerError);
   }
 
   /**
@@ -107,9 +138,19 @@ public class MoviePageController {
     this.access = access;
   }
 
+  /**
+   * Sets the executor the calls to the server run on, which is handed on to the next page.
+   *
+   * @param executor The executor, for example one that runs the calls at once in tests.
+   */
+  public void setExecutor(final Executor executor) {
+    tasks.setExecutor(executor);
+  }
+
   /**
    * Handles the {@code lent} button, and lends the movie. 
-   * Finds the chosen movie and checks if it is lent.
+   * Asks the server to lend the chosen movie, which it only does if the movie is not lent,
+   * in a single request.
    * If the movie is already lend, the program will give an error alert.
    * If the movie is not lend, it sets the movie as lent and gives a confirmation alert.
    *
@@ -118,17 +159,19 @@ public class MoviePageController {
   @FXML
   public void handleLendbtn(ActionEvent event) throws IOException {
     String title = movieTitleInPage.getText();
-    if (access.getLentStatus(title)) {
-      showAlert(AlertType.ERROR, "Failed", "The movie is already lent!");
-    } else {
-      access.lendMovie(title);
-      showAlert(AlertType.INFORMATION, "Success", "Movie lend!");
-    }
+    tasks.run(() -> access.lendMovie(title), lent -> {
+      if (lent) {
+        showAlert(AlertType.INFORMATION, "Success", "Movie lend!");
+      } else {
+        showAlert(AlertType.ERROR, "Failed", "The movie is already lent!");
+      }
+    }, this::showServerError);
   }
 
   /**
    * Handles the {@code return} button, returns the movie. 
-   * Finds the chosen movie and checks if it is lent.
+   * Asks the server to return the chosen movie, which it only does if the movie is lent,
+   * in a single request.
    * If the movie is not lent, the program will give an error alert. If the movie is lent, 
    * it sets the movie as not lent (returns) and gives a confirmation alert.
    *
@@ -136,12 +179,14 @@ public class MoviePageController {
    */
   @FXML
   public void handleReturnbtn(ActionEvent event) throws IOException {
-    if (!access.getLentStatus(movieTitleInPage.getText())) {
-      showAlert(AlertType.ERROR, "Failed!", "The movie is not lent.");
-    } else {
-      access.returnMovie(movieTitleInPage.getText());
-      showAlert(AlertType.INFORMATION, "Success!", "Movie is returned!");
-    }    
+    String title = movieTitleInPage.getText();
+    tasks.run(() -> access.returnMovie(title), returned -> {
+      if (returned) {
+        showAlert(AlertType.INFORMATION, "Success!", "Movie is returned!");
+      } else {
+        showAlert(AlertType.ERROR, "Failed!", "The movie is not lent.");
+      }
+    }, this::showServerError);
   }
 
   /**
@@ -152,14 +197,14 @@ public class MoviePageController {
    */
   @FXML
   public void handleDeleteMoviebtn(ActionEvent event) throws IOException {
-    try {
-      String movieTitle = movieTitleInPage.getText();
+    String movieTitle = movieTitleInPage.getText();
+    tasks.run(() -> {
       access.deleteMovie(movieTitle);
+      return null;
+    }, deleted -> {
       showAlert(AlertType.INFORMATION, "Success!", "Movie is deleted!");
-      returnToFrontPage(event);
-    } catch (IllegalStateException e) {
-      showAlert(AlertType.ERROR, "Failed!", e.getMessage());
-    }
+      loadFrontPage();
+    }, this::showServerError);
   } 
 
   /**
@@ -173,6 +218,18 @@ public class MoviePageController {
   public void returnToFrontPage(ActionEvent event) throws IOException {
     loadFrontPage(false);
   }
+
+  /**
+   * Loads the front page, for use where an {@link IOException} cannot be thrown.
+   * {@link #loadFrontPage(boolean)} shows an alert instead of throwing it anyway.
+   */
+  private void loadFrontPage() {
+    try {
+      loadFrontPage(false);
+    } catch (IOException e) {
+      showAlert(AlertType.ERROR, "Error", "Could not load the page");
+    }
+  }
   
   /**
    * Loads the front page {@code FrontPage.fxml} and sets the new stage to this page.
@@ -186,10 +243,12 @@ public class MoviePageController {
       if (throwError) {
         throw new IOException("Simulated IOException");
       }
+      tasks.cancelAll();
       FXMLLoader loader = new FXMLLoader(getClass().getResource("/movielibrary/ui/FrontPage.fxml"));
       Parent root = loader.load();
 
       FrontPageController frontPageController = loader.getController();
+      frontPageController.setExecutor(tasks.getExecutor());
       frontPageController.initializes(this.access);
 
       // get current stage and set the new scene (frontpage).
@@ -217,5 +276,14 @@ public class MoviePageController {
     alert.setTitle(title);
     alert.setContentText(message);
     alert.showAndWait();
+  }
+
+  /**
+   * Shows an error alert for a call to the server that failed.
+   *
+   * @param error The error the call failed with.
+   */
+  private void showServerError(Throwable error) {
+    showAlert(AlertType.ERROR, "Failed!", error.getMessage());
   }  
 }
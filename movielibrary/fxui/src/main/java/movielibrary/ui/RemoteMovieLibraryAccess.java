@@ -1,25 +1,67 @@
 package movielibrary.ui;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
 import movielibrary.core.Movie;
+import movielibrary.json.internal.MovieCodec;
+import movielibrary.json.internal.MovieFormat;
 
 /**
- * The {@code RemoteMovieLibraryAccess} class is responsible for handling the 
+ * The {@code RemoteMovieLibraryAccess} class is responsible for handling the
  * communication between the client and the server.
  * It sends requests to the server and receives responses from the server.
- * The class is responsible for fetching, adding, 
+ * The class is responsible for fetching, adding,
  * deleting, lending and returning movies.
+ *
+ * <p>Movies are fetched in the most compact format the server offers: Smile, then CBOR, then
+ * JSON, and gzip compressed if the server compresses the response. Each response is read in
+ * the format its {@code Content-Type} says it is in.</p>
+ *
+ * <p>All requests go through one {@link HttpClient}, which keeps its connections to the server
+ * open between requests and asks for HTTP/2, falling back to HTTP/1.1 if the server does not
+ * offer it. Every method has an {@code ...Async} variant that returns a
+ * {@link CompletableFuture} instead of waiting, so several requests can be in flight at once.
+ * The futures complete on the threads of the executor the access was created with.</p>
+ *
+ * <p>Movies and the list of movies are cached for a short while, so showing the same movie
+ * again, or checking whether it is lent, does not go to the server. Once the time has run out,
+ * the client asks the server whether its copy is still current with {@code If-None-Match}, and
+ * the server only sends the movies again if they have changed. Lending, returning, adding and
+ * deleting movies through this object updates the cache right away; changes made by other
+ * clients are seen once the cached copy runs out. See {@link MovieCache}.</p>
+ *
+ * <p>Every call fails with a {@link java.util.concurrent.TimeoutException} as its cause if there
+ * is no answer before its deadline, so a server that has stopped answering never freezes the
+ * caller. The access may be given several servers serving the same library, the first of them
+ * the primary. Lending, returning, adding and deleting always go to the primary, and are only
+ * ever sent once. Reads go to the primary as well, so they see those changes, unless the servers
+ * are known to share one store, see {@link #setSharedBackend(boolean)}. Then every read goes to
+ * the server that has answered fastest lately, and a read that takes longer than 95 in 100
+ * reads from that server usually do is sent once more to the next fastest one, with the first
+ * answer used and the other request cancelled. Reads also move on to the next server at once if
+ * the first one fails. See {@link ServerSelector}.</p>
+ *
+ * <p>Lending and returning take a single request: the server only makes the change if the
+ * movie is not lent, or lent, already, and answers with the movie as it is afterwards.</p>
  */
 public class RemoteMovieLibraryAccess {
-  
-  private String baseUri = "http://localhost:";
 
   private static final String APPLICATION_JSON = "application/json";
 
@@ -27,9 +69,67 @@ public class RemoteMovieLibraryAccess {
 
   private static final String CONTENT_TYPE_HEADER = "Content-Type";
 
+  private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+
+  private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+
+  private static final String GZIP = "gzip";
+
+  private static final String ETAG_HEADER = "ETag";
+
+  private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+
+  private static final int NOT_MODIFIED = 304;
+
+  private static final String ACCEPT_MOVIE_FORMATS = MovieFormat.SMILE.getMediaType() + ", "
+      + MovieFormat.CBOR.getMediaType() + ";q=0.9, " + MovieFormat.JSON.getMediaType() + ";q=0.8";
+
   private static final int DEFAULT_PORT = 8080;
 
-  private ObjectMapper objectMapper; 
+  private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+
+  private static final Duration DEFAULT_DEADLINE = Duration.ofSeconds(10);
+
+  private static final int SERVER_ERROR = 500;
+
+  private static final int CONFLICT = 409;
+
+  private static final int BAD_REQUEST = 400;
+
+  private static final String MESSAGE_FIELD = "message";
+
+  private final MovieCodec codec;
+
+  private final HttpClient httpClient;
+
+  private final MovieCache cache;
+
+  private final ServerSelector servers;
+
+  private volatile Duration deadline = DEFAULT_DEADLINE;
+
+  private volatile boolean hedging = true;
+
+  private volatile boolean sharedBackend;
+
+  /**
+   * Reads the value of a response, possibly failing with an I/O error.
+   *
+   * @param <B> the type of the body of the response
+   * @param <T> the type of the value
+   */
+  @FunctionalInterface
+  private interface ResponseReader<B, T> {
+
+    /**
+     * Reads the value of a response.
+     *
+     * @param response the response
+     * @return the value
+     * @throws IOException if the body cannot be read
+     */
+    T read(HttpResponse<B> response) throws IOException;
+  }
 
   /**
    * Initializes the {@code RemoteMovieLibraryAccess} with the default port.
@@ -41,11 +141,147 @@ public class RemoteMovieLibraryAccess {
   /**
    * Initializes the {@code RemoteMovieLibraryAccess} with the specified port.
    *
-   * @param port the server port to connect to 
+   * @param port the server port to connect to
    */
   public RemoteMovieLibraryAccess(final int port) {
-    baseUri += port + "/";
-    this.objectMapper = new ObjectMapper();  
+    this(port, null);
+  }
+
+  /**
+   * Initializes the {@code RemoteMovieLibraryAccess} with the specified port, running the
+   * asynchronous work of the HTTP client on the given executor.
+   *
+   * @param port the server port to connect to
+   * @param executor the executor the responses are handled on and the futures are completed on,
+   *                 or {@code null} for the default executor of the HTTP client
+   */
+  public RemoteMovieLibraryAccess(final int port, final Executor executor) {
+    this(port, executor, new MovieCache());
+  }
+
+  /**
+   * Initializes the {@code RemoteMovieLibraryAccess} with the specified port and executor,
+   * using the cached movies without asking the server for the given time.
+   *
+   * @param port the server port to connect to
+   * @param executor the executor the responses are handled on and the futures are completed on,
+   *                 or {@code null} for the default executor of the HTTP client
+   * @param cacheTtl how long a fetched movie is used without asking the server,
+   *                 {@link Duration#ZERO} to ask every time
+   * @throws IllegalArgumentException if the time is negative
+   */
+  public RemoteMovieLibraryAccess(final int port, final Executor executor,
+      final Duration cacheTtl) {
+    this(List.of(localServer(port)), executor, cacheTtl);
+  }
+
+  /**
+   * Initializes the {@code RemoteMovieLibraryAccess} with several servers serving the same
+   * library. Every request goes to the first server, the primary, unless the servers share one
+   * store, see {@link #setSharedBackend(boolean)}.
+   *
+   * @param servers the base URIs of the servers, like {@code http://localhost:8080/}, the
+   *                primary first
+   * @param executor the executor the responses are handled on and the futures are completed on,
+   *                 or {@code null} for the default executor of the HTTP client
+   * @param cacheTtl how long a fetched movie is used without asking the server,
+   *                 {@link Duration#ZERO} to ask every time
+   * @throws IllegalArgumentException if there are no servers or the time is negative
+   */
+  public RemoteMovieLibraryAccess(final List<URI> servers, final Executor executor,
+      final Duration cacheTtl) {
+    this(servers, executor,
+        new MovieCache(cacheTtl, MovieCache.DEFAULT_CAPACITY, System::nanoTime));
+  }
+
+  /**
+   * Initializes the {@code RemoteMovieLibraryAccess} with the specified port, executor and cache.
+   *
+   * @param port the server port to connect to
+   * @param executor the executor of the HTTP client, or {@code null} for the default one
+   * @param cache the cache of the fetched movies
+   */
+  RemoteMovieLibraryAccess(final int port, final Executor executor, final MovieCache cache) {
+    this(List.of(localServer(port)), executor, cache);
+  }
+
+  /**
+   * Initializes the {@code RemoteMovieLibraryAccess} with the specified servers, executor and
+   * cache.
+   *
+   * @param servers the base URIs of the servers
+   * @param executor the executor of the HTTP client, or {@code null} for the default one
+   * @param cache the cache of the fetched movies
+   */
+  RemoteMovieLibraryAccess(final List<URI> servers, final Executor executor,
+      final MovieCache cache) {
+    this.servers = new ServerSelector(servers.stream()
+        .map(server -> server.getPath().endsWith("/") ? server : endpoint(server, "/"))
+        .toList());
+    this.cache = cache;
+    this.codec = MovieCodec.getInstance();
+    HttpClient.Builder builder = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .connectTimeout(CONNECT_TIMEOUT);
+    if (executor != null) {
+      builder.executor(executor);
+    }
+    this.httpClient = builder.build();
+  }
+
+  /**
+   * Sets how long a call may take before it fails, including every server it is sent to.
+   * It is ten seconds unless set.
+   *
+   * @param deadline the longest time a call may take
+   * @throws IllegalArgumentException if the deadline is not positive
+   */
+  public void setDeadline(final Duration deadline) {
+    if (deadline.isNegative() || deadline.isZero()) {
+      throw new IllegalArgumentException("The deadline must be positive.");
+    }
+    this.deadline = deadline;
+  }
+
+  /**
+   * Sets whether reads that take longer than usual are sent a second time, to the next fastest
+   * server, using whichever answer comes first. Only reads are hedged, since sending them twice
+   * changes nothing, and only if there is more than one server and they share one store, see
+   * {@link #setSharedBackend(boolean)}. It is on unless set, so reads are hedged as soon as the
+   * servers are known to share a store.
+   *
+   * @param hedging whether to hedge reads once the servers share a store
+   */
+  public void setHedging(final boolean hedging) {
+    this.hedging = hedging;
+  }
+
+  /**
+   * Tells whether reads are hedged: hedging has not been turned off, there is more than one
+   * server, and they share one store. See {@link #setHedging(boolean)}.
+   *
+   * @return {@code true} if slow reads are sent to a second server
+   */
+  public boolean isHedging() {
+    return hedging && sharedBackend && servers.size() > 1;
+  }
+
+  /**
+   * Sets whether every server reads and writes the same store, like several REST servers in
+   * front of one shared library file or database, so a change made through the primary is seen
+   * at once by every other server. Only then may reads go to the fastest server, be hedged, and
+   * move on to another server if one fails. Otherwise every server has a library of its own,
+   * and reads stay on the primary, which all changes go to, so they see them. Changes go to the
+   * primary either way. It is off unless set.
+   *
+   * <p>The movie library REST server keeps its library in memory with exclusive access to its
+   * file, so two of them never share a store, even when pointed at the same file. Only set this
+   * for servers that are backed by one store all of them read and write.</p>
+   *
+   * @param sharedBackend whether the servers share one store
+   */
+  public void setSharedBackend(final boolean sharedBackend) {
+    this.sharedBackend = sharedBackend;
   }
 
   /**
@@ -55,21 +291,29 @@ public class RemoteMovieLibraryAccess {
    * @throws RuntimeException if there is an error in fetching the movies
    */
   public List<Movie> getMovies() {
-    String endpoint = baseUri + "movielibrary/movies";
-    try {
-      HttpRequest request = HttpRequest.newBuilder()
-          .uri(URI.create(endpoint))
-          .header(ACCEPT_HEADER, APPLICATION_JSON)
-          .GET()
-          .build();
-      HttpResponse<String> response = HttpClient.newBuilder()
-                                                .build()
-                                                .send(request, HttpResponse
-                                                              .BodyHandlers.ofString());
-      return objectMapper.readValue(response.body(), new TypeReference<List<Movie>>(){});
-    } catch (IOException | InterruptedException e) {
-      throw new  RuntimeException("Failed to fetch movies", e);
+    return await(getMoviesAsync());
+  }
+
+  /**
+   * Retrieves a list of all movies from the remote server without waiting.
+   *
+   * @return a future completed with the list of Movie objects, or exceptionally with a
+   *         {@link RuntimeException} if there is an error in fetching the movies
+   */
+  public CompletableFuture<List<Movie>> getMoviesAsync() {
+    MovieCache.Cached<List<Movie>> cached = cache.getMovies();
+    if (cached != null && cached.isFresh()) {
+      return CompletableFuture.completedFuture(cached.getValue());
     }
+    long generation = cache.getGeneration();
+    String failure = "Failed to fetch movies";
+    return sendAsync(server -> newGetRequest(server, "movielibrary/movies", cached), true,
+        HttpResponse.BodyHandlers.ofByteArray(), response -> {
+          List<Movie> movies = isNotModified(response, cached, failure)
+              ? cached.getValue() : readBody(response, MovieCodec::getMovieListReader);
+          cache.putMovies(movies, etagOf(response), generation);
+          return movies;
+        }, failure);
   }
 
   /**
@@ -80,22 +324,30 @@ public class RemoteMovieLibraryAccess {
    * @throws RuntimeException if there is an error in fetching the movie
    */
   public Movie getMovieByTitle(String title) {
-    String endpoint = baseUri + "movielibrary/movies/" + title;
-    try {
-      HttpRequest request = HttpRequest.newBuilder()
-          .uri(URI.create(endpoint))
-          .header(ACCEPT_HEADER, APPLICATION_JSON)
-          .GET()
-          .build();
-      HttpResponse<String> response = HttpClient
-                                          .newBuilder()
-                                          .build() 
-                                          .send(request, HttpResponse
-                                                        .BodyHandlers.ofString());
-      return objectMapper.readValue(response.body(), Movie.class);
-    } catch (IOException | InterruptedException e) {
-      throw new  RuntimeException("Failed to fetch movie with title: " + title, e);
+    return await(getMovieByTitleAsync(title));
+  }
+
+  /**
+   * Retrieves a movie by its title from the remote server without waiting.
+   *
+   * @param title the title of the movie to fetch
+   * @return a future completed with the Movie object with the specified title, or exceptionally
+   *         with a {@link RuntimeException} if there is an error in fetching the movie
+   */
+  public CompletableFuture<Movie> getMovieByTitleAsync(String title) {
+    MovieCache.Cached<Movie> cached = cache.getMovie(title);
+    if (cached != null && cached.isFresh()) {
+      return CompletableFuture.completedFuture(cached.getValue());
     }
+    long generation = cache.getGeneration();
+    String failure = "Failed to fetch movie with title: " + title;
+    return sendAsync(server -> newGetRequest(server, "movielibrary/movies/" + title, cached), true,
+        HttpResponse.BodyHandlers.ofByteArray(), response -> {
+          Movie movie = isNotModified(response, cached, failure)
+              ? cached.getValue() : readBody(response, MovieCodec::getMovieReader);
+          cache.putMovie(movie, etagOf(response), generation);
+          return movie;
+        }, failure);
   }
 
   /**
@@ -106,62 +358,85 @@ public class RemoteMovieLibraryAccess {
    * @throws RuntimeException if there is an error in fetching the lent status
    */
   public boolean getLentStatus(String title) {
-    String endpoint = baseUri + "movielibrary/movies/" + title + "/lentstatus";
-    try {
-      HttpRequest request = HttpRequest.newBuilder()
-          .uri(URI.create(endpoint))
-          .header(ACCEPT_HEADER, APPLICATION_JSON)
-          .GET()
-          .build();
-      HttpResponse<String> response = HttpClient
-                                          .newBuilder()
-                                          .build()
-                                          .send(request, HttpResponse
-                                                        .BodyHandlers.ofString());
-      return objectMapper.readValue(response.body(), Boolean.class);
-    } catch (IOException | InterruptedException e) {
-      throw new  RuntimeException("Failed to fetch lent status for movie with title: " + title, e);
-    } 
+    return await(getLentStatusAsync(title));
+  }
+
+  /**
+   * Checks if a movie is currently lent without waiting.
+   *
+   * @param title the title of the movie
+   * @return a future completed with true if the movie is lent and false otherwise, or
+   *         exceptionally with a {@link RuntimeException} if there is an error in fetching the
+   *         lent status
+   */
+  public CompletableFuture<Boolean> getLentStatusAsync(String title) {
+    MovieCache.Cached<Movie> cached = cache.getMovie(title);
+    if (cached != null && cached.isFresh()) {
+      return CompletableFuture.completedFuture(cached.getValue().getIsLent());
+    }
+    String failure = "Failed to fetch lent status for movie with title: " + title;
+    return sendAsync(server -> newGetRequest(server,
+        "movielibrary/movies/" + title + "/lentstatus", null), true,
+        HttpResponse.BodyHandlers.ofByteArray(), response -> {
+          checkSuccess(response, failure);
+          return readBody(response, bodyCodec -> bodyCodec.getMapper().readerFor(Boolean.class));
+        }, failure);
   }
 
   /**
-   * Lends a movie by its title. 
+   * Lends a movie by its title, if it is not lent already. The server checks and changes the
+   * lent status in one step, so there is no need to ask for the status first.
    *
    * @param title the title of the movie to lend
+   * @return true if the movie was lent, false if it was already lent
    * @throws RuntimeException if there is an error in lending the movie
    */
-  public void lendMovie(String title) {
-    String endpoint = baseUri + "movielibrary/movies/" + title + "/lend";
-    try {
-      HttpRequest request = HttpRequest.newBuilder()
-          .uri(URI.create(endpoint))
-          .header(ACCEPT_HEADER, APPLICATION_JSON)
-          .POST(HttpRequest.BodyPublishers.noBody())
-          .build();
-      HttpClient.newBuilder().build().send(request, HttpResponse.BodyHandlers.discarding());
-    } catch (IOException | InterruptedException e) {
-      throw new  RuntimeException("Failed to lend movie with title: " + title, e);
-    }
+  public boolean lendMovie(String title) {
+    return await(lendMovieAsync(title));
   }
 
   /**
-   * Returns a movie by its title.
+   * Lends a movie by its title without waiting, if it is not lent already.
+   *
+   * @param title the title of the movie to lend
+   * @return a future completed with true if the movie was lent and false if it was already lent,
+   *         or exceptionally with a {@link RuntimeException} if there is an error in lending the
+   *         movie
+   */
+  public CompletableFuture<Boolean> lendMovieAsync(String title) {
+    return sendAsync(server -> newPostRequest(server, "movielibrary/movies/" + title + "/lend"),
+        false,
+        HttpResponse.BodyHandlers.ofByteArray(),
+        response -> updateLentStatus(response, title, true),
+        "Failed to lend movie with title: " + title);
+  }
+
+  /**
+   * Returns a movie by its title, if it is lent. The server checks and changes the lent status
+   * in one step, so there is no need to ask for the status first.
    *
    * @param title the title of the movie to return
+   * @return true if the movie was returned, false if it was not lent
    * @throws RuntimeException if there is an error in returning the movie
    */
-  public void returnMovie(String title) {
-    String endpoint = baseUri + "movielibrary/movies/" + title + "/return";
-    try {
-      HttpRequest request = HttpRequest.newBuilder()
-          .uri(URI.create(endpoint))
-          .header(ACCEPT_HEADER, APPLICATION_JSON)
-          .POST(HttpRequest.BodyPublishers.noBody())
-          .build();
-      HttpClient.newBuilder().build().send(request, HttpResponse.BodyHandlers.discarding());
-    } catch (IOException | InterruptedException e) {
-      throw new  RuntimeException("Failed to return movie with title: " + title, e);
-    }
+  public boolean returnMovie(String title) {
+    return await(returnMovieAsync(title));
+  }
+
+  /**
+   * Returns a movie by its title without waiting, if it is lent.
+   *
+   * @param title the title of the movie to return
+   * @return a future completed with true if the movie was returned and false if it was not lent,
+   *         or exceptionally with a {@link RuntimeException} if there is an error in returning
+   *         the movie
+   */
+  public CompletableFuture<Boolean> returnMovieAsync(String title) {
+    return sendAsync(server -> newPostRequest(server,
+        "movielibrary/movies/" + title + "/return"), false,
+        HttpResponse.BodyHandlers.ofByteArray(),
+        response -> updateLentStatus(response, title, false),
+        "Failed to return movie with title: " + title);
   }
 
   /**
@@ -169,32 +444,43 @@ public class RemoteMovieLibraryAccess {
    *
    * @param movie the Movie object to add
    * @throws RuntimeException if there is an error in adding the movie
-   * @throws IllegalStateException if the movie title already exists
+   * @throws IllegalStateException if the movie title already exists or the movie is invalid
    */
   public void addMovie(Movie movie) {
-    String endpoint = baseUri + "movielibrary/movies";
+    await(addMovieAsync(movie));
+  }
+
+  /**
+   * Adds a new movie to the library without waiting.
+   *
+   * @param movie the Movie object to add
+   * @return a future completed once the movie is added, or exceptionally with an
+   *         {@link IllegalStateException} with the message of the server if it turned the movie
+   *         down, because the title already exists or the movie is invalid, or with a
+   *         {@link RuntimeException} if there is another error in adding the movie
+   */
+  public CompletableFuture<Void> addMovieAsync(Movie movie) {
+    String failure = "Failed to add movie; " + movie.getTitle();
+    String jsonBody;
     try {
-      String jsonBody = objectMapper.writeValueAsString(movie);
-      HttpRequest request = HttpRequest.newBuilder()
-          .uri(URI.create(endpoint))
-          .header(CONTENT_TYPE_HEADER, APPLICATION_JSON)
-          .PUT(HttpRequest.BodyPublishers.ofString(jsonBody))
-          .build();
-      HttpResponse<Void> response = 
-                          HttpClient.newBuilder()
-                                    .build()
-                                    .send(request, HttpResponse.BodyHandlers.discarding());
-      if (response.statusCode() == 201) {
-        return;
-      } else if (response.statusCode() == 409) {
-        throw new IllegalStateException("The movie title already exists in the movielibrary!");
-      } else if (response.statusCode() != 200) {
-        throw new RuntimeException("Failed to add movie; server responded with status: " 
-                                    + response.statusCode());
-      }
-    } catch (IOException | InterruptedException e) {
-      throw new RuntimeException("Failed to add movie; " + movie.getTitle(), e);
+      jsonBody = codec.getMovieWriter().writeValueAsString(movie);
+    } catch (IOException e) {
+      return CompletableFuture.failedFuture(new RuntimeException(failure, e));
     }
+    Function<URI, HttpRequest> request = server -> HttpRequest.newBuilder()
+        .uri(endpoint(server, "movielibrary/movies"))
+        .header(CONTENT_TYPE_HEADER, APPLICATION_JSON)
+        .PUT(HttpRequest.BodyPublishers.ofString(jsonBody))
+        .build();
+    return sendAsync(request, false, HttpResponse.BodyHandlers.ofByteArray(), response -> {
+      if (response.statusCode() == BAD_REQUEST) {
+        throw new IllegalStateException(errorMessage(response,
+            "The movie title already exists in the movielibrary!"));
+      }
+      checkSuccess(response, "Failed to add movie");
+      cache.added(movie);
+      return null;
+    }, failure);
   }
 
   /**
@@ -204,17 +490,383 @@ public class RemoteMovieLibraryAccess {
    * @throws RuntimeException if there is an error in deleting the movie
    */
   public void deleteMovie(String title) {
-    String endpoint = baseUri + "movielibrary/movies/" + title;
+    await(deleteMovieAsync(title));
+  }
+
+  /**
+   * Deletes a movie by its title without waiting.
+   *
+   * @param title the title of the movie to delete
+   * @return a future completed once the movie is deleted, or exceptionally with a
+   *         {@link RuntimeException} if there is an error in deleting the movie, like the movie
+   *         not being found
+   */
+  public CompletableFuture<Void> deleteMovieAsync(String title) {
+    Function<URI, HttpRequest> request = server -> HttpRequest.newBuilder()
+        .uri(endpoint(server, "movielibrary/movies/" + title))
+        .header(ACCEPT_HEADER, APPLICATION_JSON)
+        .DELETE()
+        .build();
+    String failure = "Failed to delete movie with title: " + title;
+    return sendAsync(request, false, HttpResponse.BodyHandlers.discarding(), response -> {
+      cache.invalidate(title);
+      checkSuccess(response, failure);
+      return null;
+    }, failure);
+  }
+
+  /**
+   * Sends a request through the shared client without waiting, and reads the response.
+   * A read of servers sharing one store goes to the fastest server, and may be hedged, while
+   * everything else goes to the primary. The request fails if there is no answer before the
+   * deadline.
+   * Errors while sending or reading are wrapped in a {@link RuntimeException} with the given
+   * message, while runtime exceptions thrown by the reader are passed on as they are.
+   *
+   * @param <B> the type of the body of the response
+   * @param <T> the type of the value read from the response
+   * @param request creates the request for the base URI of a server
+   * @param idempotent whether the request only reads, so it may be sent to any server and twice
+   * @param bodyHandler the handler of the body of the response
+   * @param reader reads the value from the response
+   * @param failure the message of the exception if the request fails
+   * @return a future completed with the value read from the response, which cancels the
+   *         requests in flight if it is cancelled
+   */
+  private <B, T> CompletableFuture<T> sendAsync(Function<URI, HttpRequest> request,
+      boolean idempotent, HttpResponse.BodyHandler<B> bodyHandler, ResponseReader<B, T> reader,
+      String failure) {
+    CompletableFuture<HttpResponse<B>> exchange = new CompletableFuture<>();
+    boolean anyServer = idempotent && sharedBackend;
+    URI server = anyServer ? servers.pick() : servers.primary();
+    CompletableFuture<HttpResponse<B>> first = attempt(server, request, bodyHandler, idempotent);
+    if (anyServer && isHedging()) {
+      CompletableFuture<HttpResponse<B>> second = hedge(server, first, exchange, request,
+          bodyHandler);
+      completeWithFirstSuccess(exchange, first, second);
+    } else {
+      completeWithFirstSuccess(exchange, first, first);
+    }
+    exchange.orTimeout(deadline.toNanos(), TimeUnit.NANOSECONDS);
+    CompletableFuture<T> result = exchange.handle((response, error) -> {
+      if (error != null) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+        throw new RuntimeException(failure, cause);
+      }
+      try {
+        return reader.read(response);
+      } catch (IOException e) {
+        throw new RuntimeException(failure, e);
+      }
+    });
+    result.whenComplete((value, error) -> {
+      if (result.isCancelled()) {
+        exchange.cancel(true);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Sends a request to one server, and records how long the server took to answer.
+   * An answer with a server error status makes the server less likely to be picked, and fails
+   * the attempt if it may be retried, so the read can be sent to another server. If the attempt
+   * is cancelled because another one answered first, the time it had taken so far is recorded,
+   * since the server took at least that long.
+   *
+   * @param <B> the type of the body of the response
+   * @param server the base URI of the server
+   * @param request creates the request for the base URI of a server
+   * @param bodyHandler the handler of the body of the response
+   * @param retryable whether a server error fails the attempt
+   * @return the future of the response, which cancels the request if it is cancelled
+   */
+  private <B> CompletableFuture<HttpResponse<B>> attempt(URI server,
+      Function<URI, HttpRequest> request, HttpResponse.BodyHandler<B> bodyHandler,
+      boolean retryable) {
+    final long start = System.nanoTime();
+    CompletableFuture<HttpResponse<B>> result = new CompletableFuture<>();
+    CompletableFuture<HttpResponse<B>> response =
+        httpClient.sendAsync(request.apply(server), bodyHandler);
+    response.whenComplete((answer, error) -> {
+      if (result.isCancelled()) {
+        return;
+      }
+      if (error != null) {
+        servers.recordFailure(server);
+        result.completeExceptionally(error);
+      } else if (answer.statusCode() >= SERVER_ERROR) {
+        servers.recordFailure(server);
+        if (retryable) {
+          result.completeExceptionally(new IOException(
+              "The server responded with status: " + answer.statusCode()));
+        } else {
+          result.complete(answer);
+        }
+      } else {
+        servers.record(server, System.nanoTime() - start);
+        result.complete(answer);
+      }
+    });
+    result.whenComplete((answer, error) -> {
+      if (result.isCancelled()) {
+        servers.record(server, System.nanoTime() - start);
+        response.cancel(true);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Sends a hedged copy of a read to the next fastest server, once the first server has taken
+   * longer than it usually does, or at once if the first attempt fails. No copy is sent if the
+   * first attempt succeeds or the exchange is over before then.
+   *
+   * @param <B> the type of the body of the response
+   * @param server the server the first attempt went to
+   * @param first the first attempt
+   * @param exchange the outcome of the whole exchange
+   * @param request creates the request for the base URI of a server
+   * @param bodyHandler the handler of the body of the response
+   * @return the second attempt, or the first one if no copy was sent
+   */
+  private <B> CompletableFuture<HttpResponse<B>> hedge(URI server,
+      CompletableFuture<HttpResponse<B>> first, CompletableFuture<HttpResponse<B>> exchange,
+      Function<URI, HttpRequest> request, HttpResponse.BodyHandler<B> bodyHandler) {
+    CompletableFuture<Void> hedgeTime = new CompletableFuture<>();
+    Duration delay = servers.hedgeDelay(server);
+    CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS)
+        .execute(() -> hedgeTime.complete(null));
+    first.whenComplete((answer, error) -> hedgeTime.complete(null));
+    return hedgeTime.thenCompose(ignored -> {
+      if (exchange.isDone() || first.isDone() && !first.isCompletedExceptionally()) {
+        return first;
+      }
+      CompletableFuture<HttpResponse<B>> second =
+          attempt(servers.pickOther(server), request, bodyHandler, true);
+      exchange.whenComplete((answer, error) -> second.cancel(true));
+      return second;
+    });
+  }
+
+  /**
+   * Completes an exchange with the first attempt that succeeds, or with the error of the last
+   * one if both fail, and cancels whichever attempt is still running once it is complete.
+   *
+   * @param <B> the type of the body of the response
+   * @param exchange the outcome of the whole exchange
+   * @param first the first attempt
+   * @param second the second attempt, or the first one again if there is only one
+   */
+  private static <B> void completeWithFirstSuccess(CompletableFuture<HttpResponse<B>> exchange,
+      CompletableFuture<HttpResponse<B>> first, CompletableFuture<HttpResponse<B>> second) {
+    int attempts = first == second ? 1 : 2;
+    AtomicInteger failures = new AtomicInteger();
+    BiConsumer<HttpResponse<B>, Throwable> onAttempt = (response, error) -> {
+      if (error == null) {
+        exchange.complete(response);
+      } else if (failures.incrementAndGet() == attempts) {
+        exchange.completeExceptionally(error);
+      }
+    };
+    first.whenComplete(onAttempt);
+    if (attempts == 2) {
+      second.whenComplete(onAttempt);
+    }
+    exchange.whenComplete((response, error) -> first.cancel(true));
+  }
+
+  /**
+   * Waits for a request sent without waiting, and rethrows the exception it failed with.
+   * If the waiting thread is interrupted, for example because the page that made the call was
+   * left, the request is cancelled.
+   *
+   * @param <T> the type of the value of the request
+   * @param future the future of the request
+   * @return the value of the request
+   * @throws RuntimeException if the request failed or the thread was interrupted
+   */
+  private static <T> T await(CompletableFuture<T> future) {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for the server", e);
+    }
+  }
+
+  /**
+   * Returns the base URI of a server on this machine.
+   *
+   * @param port the port of the server
+   * @return the base URI
+   */
+  private static URI localServer(int port) {
+    return URI.create("http://localhost:" + port + "/");
+  }
+
+  /**
+   * Returns the URI of a path on a server.
+   *
+   * @param server the base URI of the server
+   * @param path the path, relative to the base URI
+   * @return the URI
+   */
+  private static URI endpoint(URI server, String path) {
+    return URI.create(server + path);
+  }
+
+  /**
+   * Reads the answer to a lend or return, and records the lent status in the cache.
+   * The server answers with the movie as it is after the request: changed, or with
+   * {@code 409 Conflict} if it was already lent or returned. That copy and its ETag are cached.
+   * If the server sent no movie the status is known anyway, and if it answered with another
+   * error the cached movie is forgotten, since its lent status is no longer known.
+   *
+   * @param response the response to the lend or return request
+   * @param title the title of the movie
+   * @param lent whether the request was to lend the movie
+   * @return true if the server made the change, false if the movie already had that status
+   * @throws IOException if the movie in the body cannot be read
+   */
+  private Boolean updateLentStatus(HttpResponse<byte[]> response, String title, boolean lent)
+      throws IOException {
+    boolean changed = response.statusCode() / 100 == 2;
+    if (!changed && response.statusCode() != CONFLICT) {
+      cache.invalidate(title);
+      throw new RuntimeException("Failed to " + (lent ? "lend" : "return") + " movie with title: "
+          + title + "; server responded with status: " + response.statusCode());
+    }
+    if (response.body().length > 0) {
+      cache.lentStatusChanged(readBody(response, MovieCodec::getMovieReader), etagOf(response));
+    } else {
+      cache.lentStatusChanged(title, lent);
+    }
+    return changed;
+  }
+
+  /**
+   * Creates a GET request that accepts the movie formats and gzip compression, and that only
+   * asks for the body if it differs from a cached copy.
+   *
+   * @param server the base URI of the server
+   * @param path the path to get
+   * @param cached the cached copy of the response, or {@code null}
+   * @return the request
+   */
+  private static HttpRequest newGetRequest(URI server, String path,
+      MovieCache.Cached<?> cached) {
+    HttpRequest.Builder builder = HttpRequest.newBuilder()
+        .uri(endpoint(server, path))
+        .header(ACCEPT_HEADER, ACCEPT_MOVIE_FORMATS)
+        .header(ACCEPT_ENCODING_HEADER, GZIP)
+        .GET();
+    if (cached != null && cached.getEtag() != null) {
+      builder.header(IF_NONE_MATCH_HEADER, cached.getEtag());
+    }
+    return builder.build();
+  }
+
+  /**
+   * Checks whether a GET answered {@code 304 Not Modified} for the cached copy it revalidated.
+   *
+   * @param response the response
+   * @param cached the cached copy the request revalidated, or {@code null}
+   * @param failure what failed, for the message of the exception
+   * @return {@code true} if the cached copy is still current
+   * @throws RuntimeException if the response is neither that nor a success
+   */
+  private static boolean isNotModified(HttpResponse<?> response, MovieCache.Cached<?> cached,
+      String failure) {
+    if (response.statusCode() == NOT_MODIFIED && cached != null) {
+      return true;
+    }
+    checkSuccess(response, failure);
+    return false;
+  }
+
+  /**
+   * Fails unless the server answered with a success, so an error body is never read as a movie.
+   *
+   * @param response the response
+   * @param failure what failed, for the message of the exception
+   * @throws RuntimeException with the status of the response if it is not a success
+   */
+  private static void checkSuccess(HttpResponse<?> response, String failure) {
+    if (response.statusCode() / 100 != 2) {
+      throw new RuntimeException(failure + "; server responded with status: "
+          + response.statusCode());
+    }
+  }
+
+  /**
+   * Reads the message of an error response of the server, which is a JSON object with a
+   * {@code message} field.
+   *
+   * @param response the error response
+   * @param fallback the message to use if the response has none
+   * @return the message
+   */
+  private String errorMessage(HttpResponse<byte[]> response, String fallback) {
     try {
-      HttpRequest request = HttpRequest.newBuilder()
-          .uri(URI.create(endpoint))
-          .header(ACCEPT_HEADER, APPLICATION_JSON)
-          .DELETE()
-          .build();
-      HttpClient.newBuilder().build().send(request, HttpResponse.BodyHandlers.discarding());
-    } catch (IOException | InterruptedException e) {
-      throw new  RuntimeException("Failed to delete movie with title: " + title, e);
+      String message = codec.getMapper().readTree(response.body()).path(MESSAGE_FIELD).asText();
+      return message.isEmpty() ? fallback : message;
+    } catch (IOException e) {
+      return fallback;
     }
   }
 
+  /**
+   * Returns the ETag of a response.
+   *
+   * @param response the response
+   * @return the ETag, or {@code null} if the response has none
+   */
+  private static String etagOf(HttpResponse<?> response) {
+    return response.headers().firstValue(ETAG_HEADER).orElse(null);
+  }
+
+  /**
+   * Creates a POST request without a body, that accepts a movie in the movie formats.
+   *
+   * @param server the base URI of the server
+   * @param path the path to post to
+   * @return the request
+   */
+  private static HttpRequest newPostRequest(URI server, String path) {
+    return HttpRequest.newBuilder()
+        .uri(endpoint(server, path))
+        .header(ACCEPT_HEADER, ACCEPT_MOVIE_FORMATS)
+        .POST(HttpRequest.BodyPublishers.noBody())
+        .build();
+  }
+
+  /**
+   * Reads the body of a response, uncompressing it if needed, in the format given by its
+   * {@code Content-Type}.
+   *
+   * @param <T> the type of the value in the body
+   * @param response the response
+   * @param reader picks the reader for the value from the codec of the format
+   * @return the value in the body
+   * @throws IOException if the body cannot be read
+   */
+  private static <T> T readBody(HttpResponse<byte[]> response,
+      Function<MovieCodec, ObjectReader> reader) throws IOException {
+    MovieFormat format = MovieFormat.forContentType(
+        response.headers().firstValue(CONTENT_TYPE_HEADER).orElse(null));
+    boolean gzipped = response.headers().firstValue(CONTENT_ENCODING_HEADER)
+        .map(GZIP::equalsIgnoreCase).orElse(false);
+    try (InputStream body = gzipped
+        ? new GZIPInputStream(new ByteArrayInputStream(response.body()))
+        : new ByteArrayInputStream(response.body())) {
+      return reader.apply(MovieCodec.getInstance(format)).readValue(body);
+    }
+  }
 }
@@ -0,0 +1,179 @@
+package movielibrary.ui;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The {@code ServerSelector} class keeps track of how fast each of the servers the client may
+ * talk to has answered lately, so reads can go to the one that answers fastest.
+ *
+ * <p>The first server is the primary. Changes always go to it, since sending them to whichever
+ * server is fastest would let the servers drift apart unless they share one store.</p>
+ *
+ * <p>Every server has a moving average of its latency, where the latest answer counts a fifth,
+ * and which a failed request raises by a fixed penalty. Requests go to the server with the
+ * lowest average. A server nobody has asked yet counts as the fastest, so every server is tried
+ * once. Every server also keeps its last latencies, from which the delay before a hedged request
+ * is taken: the 95th percentile, so only one request in twenty is sent twice.</p>
+ *
+ * <p>The selector is safe to use from several threads.</p>
+ */
+final class ServerSelector {
+
+  /**
+   * How long to wait before hedging a request to a server that has not answered often enough
+   * for its percentile to mean anything.
+   */
+  static final Duration DEFAULT_HEDGE_DELAY = Duration.ofMillis(100);
+
+  private static final int WINDOW_SIZE = 64;
+  private static final int MIN_SAMPLES = 16;
+  private static final double PERCENTILE = 0.95;
+  private static final double SMOOTHING = 0.2;
+  private static final long FAILURE_PENALTY_NANOS = Duration.ofSeconds(1).toNanos();
+
+  private final List<URI> servers;
+  private final double[] averages;
+  private final boolean[] sampled;
+  private final long[][] windows;
+  private final int[] counts;
+
+  /**
+   * Creates a selector for the given servers.
+   *
+   * @param servers the base URIs of the servers, the primary first
+   * @throws IllegalArgumentException if there are no servers
+   */
+  ServerSelector(List<URI> servers) {
+    if (servers.isEmpty()) {
+      throw new IllegalArgumentException("There must be at least one server.");
+    }
+    this.servers = List.copyOf(servers);
+    this.averages = new double[servers.size()];
+    this.sampled = new boolean[servers.size()];
+    this.windows = new long[servers.size()][WINDOW_SIZE];
+    this.counts = new int[servers.size()];
+  }
+
+  /**
+   * Returns the number of servers.
+   *
+   * @return how many servers there are
+   */
+  int size() {
+    return servers.size();
+  }
+
+  /**
+   * Returns the primary server, the first one given, which every change is sent to.
+   *
+   * @return the base URI of the primary server
+   */
+  URI primary() {
+    return servers.get(0);
+  }
+
+  /**
+   * Picks the server with the lowest recent latency.
+   *
+   * @return the base URI of the server
+   */
+  synchronized URI pick() {
+    return servers.get(best(-1));
+  }
+
+  /**
+   * Picks the server with the lowest recent latency other than the given one,
+   * to send a hedged request to.
+   *
+   * @param server the server that was picked first
+   * @return the base URI of another server, or the same one if there is only one
+   */
+  synchronized URI pickOther(URI server) {
+    if (servers.size() == 1) {
+      return server;
+    }
+    return servers.get(best(servers.indexOf(server)));
+  }
+
+  /**
+   * Records how long a server took to answer.
+   *
+   * @param server the server
+   * @param nanos the latency in nanoseconds
+   */
+  synchronized void record(URI server, long nanos) {
+    int index = servers.indexOf(server);
+    update(index, nanos);
+    windows[index][counts[index] % WINDOW_SIZE] = nanos;
+    counts[index]++;
+  }
+
+  /**
+   * Records that a request to a server failed, which makes it less likely to be picked.
+   *
+   * @param server the server
+   */
+  synchronized void recordFailure(URI server) {
+    int index = servers.indexOf(server);
+    update(index, averages[index] + FAILURE_PENALTY_NANOS);
+  }
+
+  /**
+   * Returns how long to wait for a server before sending the same request to another one:
+   * the 95th percentile of its recent latencies.
+   *
+   * @param server the server
+   * @return the delay before hedging
+   */
+  synchronized Duration hedgeDelay(URI server) {
+    int index = servers.indexOf(server);
+    int samples = Math.min(counts[index], WINDOW_SIZE);
+    if (samples < MIN_SAMPLES) {
+      return DEFAULT_HEDGE_DELAY;
+    }
+    long[] sorted = Arrays.copyOf(windows[index], samples);
+    Arrays.sort(sorted);
+    return Duration.ofNanos(sorted[(int) Math.ceil(PERCENTILE * samples) - 1]);
+  }
+
+  /**
+   * Finds the server with the lowest average, skipping one.
+   *
+   * @param skip the index of the server to skip, or -1
+   * @return the index of the best server
+   */
+  private int best(int skip) {
+    int best = -1;
+    for (int i = 0; i < servers.size(); i++) {
+      if (i != skip && (best < 0 || score(i) < score(best))) {
+        best = i;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Returns the score of a server, where servers that have not been asked yet come first.
+   *
+   * @param index the index of the server
+   * @return the average latency, or zero if there is none
+   */
+  private double score(int index) {
+    return sampled[index] ? averages[index] : 0;
+  }
+
+  /**
+   * Moves the average of a server towards a new latency.
+   *
+   * @param index the index of the server
+   * @param nanos the new latency
+   */
+  private void update(int index, double nanos) {
+    averages[index] = sampled[index] ? averages[index] + SMOOTHING * (nanos - averages[index])
+        : nanos;
+    sampled[index] = true;
+  }
+}
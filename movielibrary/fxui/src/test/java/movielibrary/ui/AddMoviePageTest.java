@@ -59,6 +59,7 @@ public class AddMoviePageTest extends ApplicationTest {
     root = fxmlLoader.load();    
     addMoviePageController = fxmlLoader.getController();
     addMoviePageController.setRemoteAccess(mockedAccess);
+    addMoviePageController.setExecutor(Runnable::run);
 
     stage.setScene(new Scene(root));
     stage.show();
@@ -57,6 +57,7 @@ public class FrontPageTest extends ApplicationTest {
     root = fxmlLoader.load();
 
     frontPageController = fxmlLoader.getController(); // Inject dependencies automatically
+    frontPageController.setExecutor(Runnable::run);
     frontPageController.initializes(mockedAccess);;
 
     stage.setScene(new Scene(root));
@@ -0,0 +1,99 @@
+package movielibrary.ui;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import movielibrary.core.Movie;
+
+public class MovieCacheTest {
+
+  private final AtomicLong now = new AtomicLong();
+
+  private MovieCache cache;
+
+  @BeforeEach
+  public void setUp() {
+    cache = new MovieCache(Duration.ofSeconds(10), 2, now::get);
+  }
+
+  // Test that an entry is fresh until the time to live runs out, and is then kept as stale
+  // together with its ETag so it can be revalidated.
+  @Test
+  public void testTimeToLive() {
+    cache.putMovie(new Movie("Interstellar", 100, "Movie about space and time"), "\"v1\"",
+        cache.getGeneration());
+    assertTrue(cache.getMovie("Interstellar").isFresh());
+
+    now.addAndGet(Duration.ofSeconds(10).toNanos());
+    MovieCache.Cached<Movie> stale = cache.getMovie("Interstellar");
+    assertFalse(stale.isFresh());
+    assertEquals("\"v1\"", stale.getEtag());
+    assertEquals("Interstellar", stale.getValue().getTitle());
+  }
+
+  // Test that the movies in a fresh list are found by title, and that the least recently used
+  // movie fetched on its own is forgotten when the cache is full.
+  @Test
+  public void testListLookupAndEviction() {
+    cache.putMovies(List.of(new Movie("Interstellar", 100, "Movie about space and time")),
+        "\"list\"", cache.getGeneration());
+    assertTrue(cache.getMovie("Interstellar").isFresh());
+    assertNull(cache.getMovie("Inception"));
+
+    cache.putMovie(new Movie("Inception", 120, "Movie about dreams"), null, 0);
+    cache.putMovie(new Movie("Moana", 100, "Movie about the sea"), null, 0);
+    cache.getMovie("Inception");
+    cache.putMovie(new Movie("Stitch", 90, "Movie about an alien"), null, 0);
+    assertNull(cache.getMovie("Moana"));
+    assertEquals("Inception", cache.getMovie("Inception").getValue().getTitle());
+  }
+
+  // Test that changes made by the client update the cached copies, drop their ETags,
+  // and keep responses fetched before the change from being stored.
+  @Test
+  public void testLocalChanges() {
+    long generation = cache.getGeneration();
+    cache.putMovies(List.of(new Movie("Interstellar", 100, "Movie about space and time")),
+        "\"list\"", generation);
+
+    cache.lentStatusChanged("Interstellar", true);
+    MovieCache.Cached<List<Movie>> movies = cache.getMovies();
+    assertTrue(movies.getValue().get(0).getIsLent());
+    assertNull(movies.getEtag());
+    assertTrue(cache.getMovie("Interstellar").getValue().getIsLent());
+
+    cache.putMovies(List.of(), "\"old\"", generation);
+    assertEquals(1, cache.getMovies().getValue().size());
+
+    cache.invalidate("Interstellar");
+    assertNull(cache.getMovies());
+    assertNull(cache.getMovie("Interstellar"));
+  }
+
+  // Test that the values handed out are copies, so changing them does not change the cache.
+  @Test
+  public void testCopies() {
+    cache.putMovie(new Movie("Interstellar", 100, "Movie about space and time"), null, 0);
+    cache.getMovie("Interstellar").getValue().setLent(true);
+    assertFalse(cache.getMovie("Interstellar").getValue().getIsLent());
+  }
+
+  // Test that the cache cannot be created with a negative time to live or no room.
+  @Test
+  public void testInvalidSettings() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new MovieCache(Duration.ofSeconds(-1), 1, now::get));
+    assertThrows(IllegalArgumentException.class,
+        () -> new MovieCache(Duration.ofSeconds(1), 0, now::get));
+  }
+}
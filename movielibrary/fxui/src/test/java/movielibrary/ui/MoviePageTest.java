@@ -54,6 +54,7 @@ public class MoviePageTest extends ApplicationTest {
     root = fxmlLoader.load();
     moviePageController = fxmlLoader.getController();
     moviePageController.setRemoteAccess(mockedAccess);
+    moviePageController.setExecutor(Runnable::run);
 
     stage.setScene(new Scene(root));
     stage.show();
@@ -100,7 +101,7 @@ public class MoviePageTest extends ApplicationTest {
     // Sets default movie details for the movie page
     moviePageController.setMovieDetails("Loverboy");
 
-    when(mockedAccess.getLentStatus("Loverboy")).thenReturn(false);
+    when(mockedAccess.lendMovie("Loverboy")).thenReturn(true);
 
     Button lendbtn = (Button) lookup("#lendbtn").query();  // Locate the button by its ID
 
@@ -127,7 +128,7 @@ public class MoviePageTest extends ApplicationTest {
     when(mockedAccess.getMovieByTitle("Loverboy")).thenReturn(new Movie("Loverboy", 30.0, "Based on a true story, about a boy who marries his crush"));
     // Sets default movie details for the movie page
     moviePageController.setMovieDetails("Loverboy");
-    when(mockedAccess.getLentStatus("Loverboy")).thenReturn(true);
+    when(mockedAccess.returnMovie("Loverboy")).thenReturn(true);
 
     Button returnbtn = (Button) lookup("#returnbtn").query();  // Locate the button by its ID
 
@@ -152,7 +153,7 @@ public class MoviePageTest extends ApplicationTest {
     when(mockedAccess.getMovieByTitle("Loverboy")).thenReturn(new Movie("Loverboy", 30.0, "Based on a true story, about a boy who marries his crush"));
     // Sets default movie details for the movie page
     moviePageController.setMovieDetails("Loverboy");
-    when(mockedAccess.getLentStatus("Loverboy")).thenReturn(true);
+    when(mockedAccess.lendMovie("Loverboy")).thenReturn(false);
     
     Button lendbtn = (Button) lookup("#lendbtn").query();  // Locate the button by its ID
 
@@ -167,7 +168,8 @@ public class MoviePageTest extends ApplicationTest {
 
     verifyThat(".alert", NodeMatchers.isVisible());
     verifyThat(".alert .content", hasText("The movie is already lent!"));
-    verify(mockedAccess, never()).lendMovie("Loverboy");
+    verify(mockedAccess).lendMovie("Loverboy");
+    verify(mockedAccess, never()).getLentStatus("Loverboy");
   }
 
   // Test deleting movie success
@@ -201,7 +203,7 @@ public class MoviePageTest extends ApplicationTest {
     when(mockedAccess.getMovieByTitle("Loverboy")).thenReturn(new Movie("Loverboy", 30.0, "Based on a true story, about a boy who marries his crush"));
     // Sets default movie details for the movie page
     moviePageController.setMovieDetails("Loverboy");
-    when(mockedAccess.getLentStatus("Loverboy")).thenReturn(false);
+    when(mockedAccess.returnMovie("Loverboy")).thenReturn(false);
 
     Button returnbtn = (Button) lookup("#returnbtn").query();  // Locate the button by its ID
 
@@ -216,7 +218,8 @@ public class MoviePageTest extends ApplicationTest {
     
     verifyThat(".alert", NodeMatchers.isVisible());
     verifyThat(".alert .content", hasText("The movie is not lent."));
-    verify(mockedAccess, never()).returnMovie("Loverboy");
+    verify(mockedAccess).returnMovie("Loverboy");
+    verify(mockedAccess, never()).getLentStatus("Loverboy");
   }
 
   // Test returning to the front page by pressing the cancel button
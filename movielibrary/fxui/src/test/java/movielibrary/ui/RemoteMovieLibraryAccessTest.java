@@ -1,7 +1,19 @@
 package movielibrary.ui;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -10,12 +22,18 @@ import org.mockito.*;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.client.WireMock;
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
 
 import movielibrary.core.Movie;
+import movielibrary.json.internal.MovieCodec;
+import movielibrary.json.internal.MovieFormat;
 
 public class RemoteMovieLibraryAccessTest {
   
@@ -57,6 +75,29 @@ public class RemoteMovieLibraryAccessTest {
     assertEquals("Inception", movies.get(1).getTitle());
   }
 
+  // Test for "getMovies" method when the server answers in gzipped Smile, the format the client
+  // prefers, verifying that the client asks for the binary formats and reads the response.
+  @Test
+  public void testGetMoviesAsSmile() throws IOException {
+    byte[] smile = MovieCodec.getInstance(MovieFormat.SMILE).getMovieListWriter()
+        .writeValueAsBytes(List.of(new Movie("Interstellar", 100, "Movie about space and time")));
+    ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+      gzip.write(smile);
+    }
+    stubFor(get(urlEqualTo("/movielibrary/movies"))
+        .withHeader("Accept", containing("application/x-jackson-smile"))
+        .withHeader("Accept-Encoding", containing("gzip"))
+        .willReturn(aResponse()
+            .withHeader("Content-Type", "application/x-jackson-smile")
+            .withHeader("Content-Encoding", "gzip")
+            .withBody(gzipped.toByteArray())));
+
+    List<Movie> movies = access.getMovies();
+    assertEquals(1, movies.size());
+    assertEquals("Interstellar", movies.get(0).getTitle());
+  }
+
   // Test for "getMovieByTitle" method, simulating a GET request to retrieve a movie by title
   // and verifying that the returned movie has the correct details.
   @Test
@@ -84,17 +125,21 @@ public class RemoteMovieLibraryAccessTest {
   }
 
   // Test for "lendMovie" method, simulating a POST request to lend a movie
-  // and verifying that the request was made to the currect URL.
+  // and verifying that the request was made to the currect URL, and that the lent movie
+  // the server answers with is cached.
   @Test
   public void testLendMovie() {
     stubFor(post(urlEqualTo("/movielibrary/movies/Interstellar/lend"))
         .willReturn(aResponse()
             .withStatus(200)
             .withHeader("Content-Type", "application/json")
-            .withBody("true")));
+            .withHeader("ETag", "\"v2\"")
+            .withBody("{\"title\":\"Interstellar\",\"movieLength\":100,\"description\":\"Movie about space and time\",\"isLent\":true}")));
     
-    access.lendMovie("Interstellar");
+    assertTrue(access.lendMovie("Interstellar"));
     verify(postRequestedFor(urlEqualTo("/movielibrary/movies/Interstellar/lend")));
+    assertTrue(access.getLentStatus("Interstellar"));
+    verify(0, getRequestedFor(urlEqualTo("/movielibrary/movies/Interstellar/lentstatus")));
   }
 
   // Test for "returnMovie" method, simulating a POST request to return a movie
@@ -105,12 +150,28 @@ public class RemoteMovieLibraryAccessTest {
         .willReturn(aResponse()
             .withStatus(200)
             .withHeader("Content-Type", "application/json")
-            .withBody("true")));
+            .withBody("{\"title\":\"Moana\",\"movieLength\":100,\"description\":\"Movie about the sea\",\"isLent\":false}")));
     
-    access.returnMovie("Moana");
+    assertTrue(access.returnMovie("Moana"));
     verify(postRequestedFor(urlEqualTo("/movielibrary/movies/Moana/return")));
   }
 
+  // Test for "lendMovie" method when the movie is already lent, verifying that the single
+  // request answers false and that the movie as the server has it is cached.
+  @Test
+  public void testLendMovieConflict() {
+    stubFor(post(urlEqualTo("/movielibrary/movies/Interstellar/lend"))
+        .willReturn(aResponse()
+            .withStatus(409)
+            .withHeader("Content-Type", "application/json")
+            .withBody("{\"title\":\"Interstellar\",\"movieLength\":100,\"description\":\"Movie about space and time\",\"isLent\":true}")));
+
+    assertFalse(access.lendMovie("Interstellar"));
+    assertTrue(access.getMovieByTitle("Interstellar").getIsLent());
+    verify(1, postRequestedFor(urlEqualTo("/movielibrary/movies/Interstellar/lend")));
+    verify(0, getRequestedFor(urlEqualTo("/movielibrary/movies/Interstellar")));
+  }
+
   // Test for "addMovie" method, simulating a PUT request to add a movie
   // and verifying that the movie is added with the correct title.
   @Test
@@ -127,17 +188,307 @@ public class RemoteMovieLibraryAccessTest {
   }
 
   // Test for "deleteMovie" method, simulating a DELETE request to delete a movie
-  // and verifying that the request was made to the correct URL for deletion.
+  // and verifying that the request was made to the correct URL for deletion, and that deleting
+  // a movie the server cannot find fails.
   @Test
   public void testDeleteMovie() {
+    stubFor(delete(urlEqualTo("/movielibrary/movies/Interstellar"))
+        .willReturn(aResponse().withStatus(204)));
     stubFor(delete(urlEqualTo("/movielibrary/movies/Stitch"))
         .willReturn(aResponse()
-            .withStatus(200)
+            .withStatus(404)
             .withHeader("Content-Type", "application/json")
-            .withBody("true")));
+            .withBody("{\"message\":\"Could not find movie with title: Stitch\"}")));
     
     access.deleteMovie("Interstellar");
     verify(deleteRequestedFor(urlEqualTo("/movielibrary/movies/Interstellar")));
+    RuntimeException e = assertThrows(RuntimeException.class, () -> access.deleteMovie("Stitch"));
+    assertTrue(e.getMessage().contains("404"));
+  }
+
+  // Test for the GET methods when the server answers with an error, verifying that the error
+  // body is never read as a movie and nothing is cached.
+  @Test
+  public void testGetMovieError() {
+    stubFor(get(urlEqualTo("/movielibrary/movies/Stitch"))
+        .willReturn(aResponse()
+            .withStatus(404)
+            .withHeader("Content-Type", "application/json")
+            .withBody("{\"message\":\"Could not find movie with title: Stitch\"}")));
+    stubFor(get(urlEqualTo("/movielibrary/movies/Stitch/lentstatus"))
+        .willReturn(aResponse()
+            .withStatus(404)
+            .withHeader("Content-Type", "application/json")
+            .withBody("{\"message\":\"Could not find movie with title: Stitch\"}")));
+
+    RuntimeException e = assertThrows(RuntimeException.class, () -> access.getMovieByTitle("Stitch"));
+    assertTrue(e.getMessage().contains("404"));
+    assertThrows(RuntimeException.class, () -> access.getLentStatus("Stitch"));
+    assertThrows(RuntimeException.class, () -> access.getMovieByTitle("Stitch"));
+    verify(2, getRequestedFor(urlEqualTo("/movielibrary/movies/Stitch")));
+  }
+
+  // Test for the asynchronous methods, sending several requests at once through the same client
+  // and verifying that every future completes with the answer to its own request.
+  @Test
+  public void testAsyncRequests() {
+    stubFor(get(urlEqualTo("/movielibrary/movies/Interstellar"))
+        .willReturn(aResponse()
+            .withFixedDelay(200)
+            .withHeader("Content-Type", "application/json")
+            .withBody("{\"title\":\"Interstellar\",\"movieLength\":100,\"description\":\"Movie about space and time\"}")));
+    stubFor(get(urlEqualTo("/movielibrary/movies/Interstellar/lentstatus"))
+        .willReturn(aResponse()
+            .withFixedDelay(200)
+            .withHeader("Content-Type", "application/json")
+            .withBody("true")));
+    stubFor(post(urlEqualTo("/movielibrary/movies/Interstellar/lend"))
+        .willReturn(aResponse().withStatus(200)));
+
+    CompletableFuture<Movie> movie = access.getMovieByTitleAsync("Interstellar");
+    CompletableFuture<Boolean> lent = access.getLentStatusAsync("Interstellar");
+    CompletableFuture<Boolean> lend = access.lendMovieAsync("Interstellar");
+    CompletableFuture.allOf(movie, lent, lend).join();
+
+    assertEquals("Interstellar", movie.join().getTitle());
+    assertTrue(lent.join());
+    assertTrue(lend.join());
+    verify(postRequestedFor(urlEqualTo("/movielibrary/movies/Interstellar/lend")));
+  }
+
+  // Test for "addMovieAsync" method when the title is taken, which the server answers with
+  // 400 Bad Request, verifying that the future fails with the same exception "addMovie" throws,
+  // carrying the message of the server.
+  @Test
+  public void testAddMovieAsyncConflict() {
+    stubFor(put(urlEqualTo("/movielibrary/movies"))
+        .willReturn(aResponse()
+            .withStatus(400)
+            .withHeader("Content-Type", "application/json")
+            .withBody("{\"message\":\"The movie title already exists in the movielibrary!\"}")));
+
+    CompletableFuture<Void> added =
+        access.addMovieAsync(new Movie("Interstellar", 100, "Movie about space and time"));
+    ExecutionException e = assertThrows(ExecutionException.class, added::get);
+    assertInstanceOf(IllegalStateException.class, e.getCause());
+    assertEquals("The movie title already exists in the movielibrary!", e.getCause().getMessage());
+    assertThrows(IllegalStateException.class,
+        () -> access.addMovie(new Movie("Interstellar", 100, "Movie about space and time")));
+  }
+
+  // Test for the constructor with an executor, verifying that the responses are handled
+  // on the executor that was given and that one client serves several requests.
+  @Test
+  public void testCustomExecutor() throws InterruptedException {
+    AtomicInteger tasks = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      RemoteMovieLibraryAccess executorAccess = new RemoteMovieLibraryAccess(
+          wireMockServer.port(), task -> {
+            tasks.incrementAndGet();
+            executor.execute(task);
+          }, Duration.ZERO);
+      stubFor(get(urlEqualTo("/movielibrary/movies"))
+          .willReturn(aResponse()
+              .withHeader("Content-Type", "application/json")
+              .withBody("[]")));
+
+      assertEquals(0, executorAccess.getMovies().size());
+      assertEquals(0, executorAccess.getMoviesAsync().join().size());
+      assertTrue(tasks.get() > 0);
+      verify(2, getRequestedFor(urlEqualTo("/movielibrary/movies")));
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+  }
+
+  // Test for the cache, verifying that movies shown again and their lent status come from the
+  // cache, and that lending a movie updates the cached copy without asking the server.
+  @Test
+  public void testCachedMovies() {
+    stubFor(get(urlEqualTo("/movielibrary/movies"))
+        .willReturn(aResponse()
+            .withHeader("Content-Type", "application/json")
+            .withBody("[{\"title\":\"Interstellar\",\"movieLength\":100,\"description\":\"Movie about space and time\",\"isLent\":false}]")));
+    stubFor(post(urlEqualTo("/movielibrary/movies/Interstellar/lend"))
+        .willReturn(aResponse().withStatus(200)));
+
+    assertEquals(1, access.getMovies().size());
+    assertEquals(1, access.getMovies().size());
+    assertEquals("Interstellar", access.getMovieByTitle("Interstellar").getTitle());
+    assertFalse(access.getLentStatus("Interstellar"));
+    access.lendMovie("Interstellar");
+    assertTrue(access.getLentStatus("Interstellar"));
+    assertTrue(access.getMovies().get(0).getIsLent());
+
+    verify(1, getRequestedFor(urlEqualTo("/movielibrary/movies")));
+    verify(0, getRequestedFor(urlEqualTo("/movielibrary/movies/Interstellar")));
+    verify(0, getRequestedFor(urlEqualTo("/movielibrary/movies/Interstellar/lentstatus")));
+  }
+
+  // Test for the revalidation of cached movies, verifying that a stale movie is asked for with
+  // its ETag and kept if the server answers that it has not changed.
+  @Test
+  public void testRevalidateCachedMovie() {
+    RemoteMovieLibraryAccess revalidatingAccess =
+        new RemoteMovieLibraryAccess(wireMockServer.port(), null, Duration.ZERO);
+    stubFor(get(urlEqualTo("/movielibrary/movies/Interstellar"))
+        .willReturn(aResponse()
+            .withHeader("Content-Type", "application/json")
+            .withHeader("ETag", "\"v1\"")
+            .withBody("{\"title\":\"Interstellar\",\"movieLength\":100,\"description\":\"Movie about space and time\",\"isLent\":true}")));
+    stubFor(get(urlEqualTo("/movielibrary/movies/Interstellar"))
+        .withHeader("If-None-Match", equalTo("\"v1\""))
+        .willReturn(aResponse().withStatus(304).withHeader("ETag", "\"v1\"")));
+
+    assertTrue(revalidatingAccess.getMovieByTitle("Interstellar").getIsLent());
+    Movie movie = revalidatingAccess.getMovieByTitle("Interstellar");
+    assertEquals("Movie about space and time", movie.getDescription());
+    assertTrue(movie.getIsLent());
+
+    verify(2, getRequestedFor(urlEqualTo("/movielibrary/movies/Interstellar")));
+    verify(1, getRequestedFor(urlEqualTo("/movielibrary/movies/Interstellar"))
+        .withHeader("If-None-Match", equalTo("\"v1\"")));
+  }
+
+  // Test for the deadline, verifying that a call to a server that does not answer in time fails
+  // with a timeout instead of waiting for the server.
+  @Test
+  public void testDeadline() {
+    stubFor(get(urlEqualTo("/movielibrary/movies"))
+        .willReturn(aResponse()
+            .withFixedDelay(3000)
+            .withHeader("Content-Type", "application/json")
+            .withBody("[]")));
+    access.setDeadline(Duration.ofMillis(200));
+
+    final long start = System.nanoTime();
+    RuntimeException e = assertThrows(RuntimeException.class, () -> access.getMovies());
+    assertInstanceOf(TimeoutException.class, e.getCause());
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    assertThrows(IllegalArgumentException.class, () -> access.setDeadline(Duration.ZERO));
+  }
+
+  // Test for hedged reads of servers sharing one store, verifying that a read to a slow server
+  // is sent to the other server as well, that the answer of the other server is used, and that
+  // the next read goes to the faster server.
+  @Test
+  public void testHedgedRead() {
+    WireMockServer fastServer = new WireMockServer(WireMockConfiguration.wireMockConfig()
+        .dynamicPort());
+    fastServer.start();
+    try {
+      stubFor(get(urlEqualTo("/movielibrary/movies"))
+          .willReturn(aResponse()
+              .withFixedDelay(1500)
+              .withHeader("Content-Type", "application/json")
+              .withBody("[]")));
+      fastServer.stubFor(get(urlEqualTo("/movielibrary/movies"))
+          .willReturn(aResponse()
+              .withHeader("Content-Type", "application/json")
+              .withBody("[{\"title\":\"Interstellar\",\"movieLength\":100,\"description\":\"Movie about space and time\"}]")));
+      RemoteMovieLibraryAccess hedgedAccess = new RemoteMovieLibraryAccess(
+          List.of(URI.create("http://localhost:" + wireMockServer.port()),
+              URI.create("http://localhost:" + fastServer.port() + "/")),
+          null, Duration.ZERO);
+      // Reads are only hedged once the servers are known to share a store
+      assertFalse(hedgedAccess.isHedging());
+      hedgedAccess.setSharedBackend(true);
+      assertTrue(hedgedAccess.isHedging());
+
+      // Only the fast server answers with a movie, so the hedged copy must have won
+      assertEquals(1, hedgedAccess.getMovies().size());
+      // The slow server took at least as long as the hedge delay, so the fast one is picked,
+      // and without hedging it is the only one asked however long it takes
+      hedgedAccess.setHedging(false);
+      assertFalse(hedgedAccess.isHedging());
+      assertEquals(1, hedgedAccess.getMovies().size());
+
+      verify(1, getRequestedFor(urlEqualTo("/movielibrary/movies")));
+      fastServer.verify(2, getRequestedFor(urlEqualTo("/movielibrary/movies")));
+    } finally {
+      fastServer.stop();
+    }
+  }
+
+  // Test for failover, verifying that a read the first server fails with a server error
+  // is sent to the other server at once, while a write is only sent once.
+  @Test
+  public void testFailover() {
+    WireMockServer otherServer = new WireMockServer(WireMockConfiguration.wireMockConfig()
+        .dynamicPort());
+    otherServer.start();
+    try {
+      stubFor(get(urlEqualTo("/movielibrary/movies/Interstellar/lentstatus"))
+          .willReturn(aResponse().withStatus(503)));
+      stubFor(post(urlEqualTo("/movielibrary/movies/Interstellar/lend"))
+          .willReturn(aResponse().withStatus(503)));
+      otherServer.stubFor(get(urlEqualTo("/movielibrary/movies/Interstellar/lentstatus"))
+          .willReturn(aResponse()
+              .withHeader("Content-Type", "application/json")
+              .withBody("true")));
+      RemoteMovieLibraryAccess failoverAccess = new RemoteMovieLibraryAccess(
+          List.of(URI.create("http://localhost:" + wireMockServer.port() + "/"),
+              URI.create("http://localhost:" + otherServer.port() + "/")),
+          null, Duration.ZERO);
+      failoverAccess.setSharedBackend(true);
+
+      assertTrue(failoverAccess.getLentStatus("Interstellar"));
+      verify(1, getRequestedFor(urlEqualTo("/movielibrary/movies/Interstellar/lentstatus")));
+
+      RemoteMovieLibraryAccess singleAccess = new RemoteMovieLibraryAccess(
+          List.of(URI.create("http://localhost:" + wireMockServer.port() + "/")),
+          null, Duration.ZERO);
+      RuntimeException e = assertThrows(RuntimeException.class,
+          () -> singleAccess.getLentStatus("Interstellar"));
+      assertInstanceOf(IOException.class, e.getCause());
+      assertThrows(RuntimeException.class, () -> singleAccess.lendMovie("Interstellar"));
+      verify(1, postRequestedFor(urlEqualTo("/movielibrary/movies/Interstellar/lend")));
+    } finally {
+      otherServer.stop();
+    }
+  }
+
+  // Test that changes always go to the primary server, even when another server is picked for
+  // reads, and that reads stay on the primary too unless the servers share one store.
+  @Test
+  public void testWritesGoToPrimary() {
+    WireMockServer otherServer = new WireMockServer(WireMockConfiguration.wireMockConfig()
+        .dynamicPort());
+    otherServer.start();
+    try {
+      for (WireMockServer server : List.of(wireMockServer, otherServer)) {
+        server.stubFor(get(urlEqualTo("/movielibrary/movies/Interstellar/lentstatus"))
+            .willReturn(aResponse()
+                .withHeader("Content-Type", "application/json")
+                .withBody("false")));
+        server.stubFor(post(urlEqualTo("/movielibrary/movies/Interstellar/lend"))
+            .willReturn(aResponse()
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"title\":\"Interstellar\",\"movieLength\":100,\"description\":\"Movie about space and time\",\"isLent\":true}")));
+      }
+      RemoteMovieLibraryAccess pinnedAccess = new RemoteMovieLibraryAccess(
+          List.of(URI.create("http://localhost:" + wireMockServer.port() + "/"),
+              URI.create("http://localhost:" + otherServer.port() + "/")),
+          null, Duration.ZERO);
+      pinnedAccess.setHedging(false);
+
+      // After the first read only the other server has not been asked, so it would be picked
+      assertFalse(pinnedAccess.getLentStatus("Interstellar"));
+      assertFalse(pinnedAccess.getLentStatus("Interstellar"));
+      assertTrue(pinnedAccess.lendMovie("Interstellar"));
+      otherServer.verify(0, getRequestedFor(urlEqualTo("/movielibrary/movies/Interstellar/lentstatus")));
+
+      pinnedAccess.setSharedBackend(true);
+      assertFalse(pinnedAccess.getLentStatus("Interstellar"));
+      otherServer.verify(1, getRequestedFor(urlEqualTo("/movielibrary/movies/Interstellar/lentstatus")));
+      assertTrue(pinnedAccess.lendMovie("Interstellar"));
+      verify(2, postRequestedFor(urlEqualTo("/movielibrary/movies/Interstellar/lend")));
+      otherServer.verify(0, postRequestedFor(urlEqualTo("/movielibrary/movies/Interstellar/lend")));
+    } finally {
+      otherServer.stop();
+    }
   }
 
 }
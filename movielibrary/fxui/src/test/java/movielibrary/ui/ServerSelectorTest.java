@@ -0,0 +1,60 @@
+package movielibrary.ui;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ServerSelectorTest {
+
+  private static final URI FIRST = URI.create("http://first:8080/");
+  private static final URI SECOND = URI.create("http://second:8080/");
+
+  // Test that servers nobody has asked yet are tried first, and that the server with the lowest
+  // recent latency is picked after that, while the primary stays the first server.
+  @Test
+  public void testPicksFastestServer() {
+    ServerSelector selector = new ServerSelector(List.of(FIRST, SECOND));
+    assertEquals(FIRST, selector.pick());
+    selector.record(FIRST, Duration.ofMillis(50).toNanos());
+    assertEquals(SECOND, selector.pick());
+    selector.record(SECOND, Duration.ofMillis(10).toNanos());
+    assertEquals(SECOND, selector.pick());
+    assertEquals(FIRST, selector.pickOther(SECOND));
+    assertEquals(FIRST, selector.primary());
+  }
+
+  // Test that a failed request moves a server behind the others.
+  @Test
+  public void testFailurePenalty() {
+    ServerSelector selector = new ServerSelector(List.of(FIRST, SECOND));
+    selector.record(FIRST, Duration.ofMillis(5).toNanos());
+    selector.record(SECOND, Duration.ofMillis(50).toNanos());
+    assertEquals(FIRST, selector.pick());
+    selector.recordFailure(FIRST);
+    assertEquals(SECOND, selector.pick());
+  }
+
+  // Test that the hedge delay is the default until a server has answered often enough,
+  // and then the 95th percentile of its recent latencies.
+  @Test
+  public void testHedgeDelay() {
+    ServerSelector selector = new ServerSelector(List.of(FIRST));
+    assertEquals(ServerSelector.DEFAULT_HEDGE_DELAY, selector.hedgeDelay(FIRST));
+    for (int i = 1; i <= 20; i++) {
+      selector.record(FIRST, Duration.ofMillis(i).toNanos());
+    }
+    assertEquals(Duration.ofMillis(19), selector.hedgeDelay(FIRST));
+    assertEquals(FIRST, selector.pickOther(FIRST));
+  }
+
+  // Test that a selector cannot be created without servers.
+  @Test
+  public void testNoServers() {
+    assertThrows(IllegalArgumentException.class, () -> new ServerSelector(List.of()));
+  }
+}
@@ -1,13 +1,19 @@
 module movielibrary.springboot.restserver {
   requires com.fasterxml.jackson.databind;
 
+  requires jakarta.servlet;
   requires spring.web;
+  requires spring.webmvc;
   requires spring.beans;
   requires spring.boot;
   requires spring.context;
   requires spring.boot.autoconfigure;
 
+  requires reactor.core;
+  requires org.reactivestreams;
+
   requires movielibrary.core;
 
-  opens movielibrary.springboot.restserver to spring.beans, spring.context, spring.web;
+  opens movielibrary.springboot.restserver to spring.beans, spring.context, spring.web,
+      com.fasterxml.jackson.databind;
 }
@@ -0,0 +1,53 @@
+package movielibrary.springboot.restserver;
+
+/**
+ * The {@code BatchResult} class is the outcome of one item in a bulk request.
+ * The {@code status} is the HTTP status the item would have gotten as a request of its own,
+ * and the {@code message} explains why it failed, or is {@code null} if it succeeded.
+ */
+public class BatchResult {
+
+  private final String title;
+  private final int status;
+  private final String message;
+
+  /**
+   * Creates a {@code BatchResult} for the movie with the given title.
+   *
+   * @param title The title of the movie the item was about.
+   * @param status The HTTP status of the item.
+   * @param message The reason the item failed, or {@code null} if it succeeded.
+   */
+  public BatchResult(String title, int status, String message) {
+    this.title = title;
+    this.status = status;
+    this.message = message;
+  }
+
+  /**
+   * Returns the title of the movie the item was about.
+   *
+   * @return The title of the movie.
+   */
+  public String getTitle() {
+    return title;
+  }
+
+  /**
+   * Returns the HTTP status of the item.
+   *
+   * @return The status code.
+   */
+  public int getStatus() {
+    return status;
+  }
+
+  /**
+   * Returns the reason the item failed.
+   *
+   * @return The error message, or {@code null} if the item succeeded.
+   */
+  public String getMessage() {
+    return message;
+  }
+}
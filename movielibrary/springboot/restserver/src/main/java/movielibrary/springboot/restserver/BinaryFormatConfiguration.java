@@ -0,0 +1,155 @@
+package movielibrary.springboot.restserver;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.util.List;
+import java.util.Locale;
+import movielibrary.json.internal.MovieCodec;
+import movielibrary.json.internal.MovieFormat;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * The {@code BinaryFormatConfiguration} class lets clients ask for CBOR
+ * ({@code application/cbor}) or Smile ({@code application/x-jackson-smile}) instead of JSON
+ * in the {@code Accept} header, and send request bodies in those formats.
+ *
+ * <p>The converters use the shared {@link MovieCodec} of each format, so movies are written
+ * with the same fields as in JSON. They are added after the JSON converter, so clients that
+ * accept anything still get JSON.
+ *
+ * <p>Since the same movies are sent in several formats, their ETags name the format through
+ * {@link #etagFor(String, String)}, and the answers carry {@code Vary: Accept}, so a cache
+ * never hands out one format for another. Compressed answers need nothing extra: Jetty adds
+ * {@code --gzip} to the ETag of the body it compresses, and takes it off again when the tag
+ * comes back in {@code If-None-Match}.
+ */
+@Configuration
+public class BinaryFormatConfiguration implements WebMvcConfigurer {
+
+  /**
+   * Replaces the default CBOR and Smile converters with ones using the {@link MovieCodec}.
+   *
+   * @param converters The converters configured so far.
+   */
+  @Override
+  public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+    converters.removeIf(converter -> converter instanceof MappingJackson2CborHttpMessageConverter
+        || converter instanceof MappingJackson2SmileHttpMessageConverter);
+    converters.add(new MappingJackson2CborHttpMessageConverter(
+        MovieCodec.getInstance(MovieFormat.CBOR).getMapper()));
+    converters.add(new MappingJackson2SmileHttpMessageConverter(
+        MovieCodec.getInstance(MovieFormat.SMILE).getMapper()));
+  }
+
+  /**
+   * Adds {@code Vary: Accept} to every answer about the movies, including
+   * {@code 304 Not Modified}.
+   *
+   * @param registry The registry of interceptors.
+   */
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    registry.addInterceptor(new VaryByAccept())
+        .addPathPatterns("/movielibrary/movies", "/movielibrary/movies/**");
+  }
+
+  /**
+   * Returns the ETag of a version in the format the {@code Accept} header asks for. JSON keeps
+   * the tag as it is, while the binary formats add their name to it, so a tag of one format
+   * never matches another.
+   *
+   * @param etag The quoted ETag of the version, or {@code null} if there is none.
+   * @param accept The {@code Accept} header of the request, or {@code null}.
+   * @return The quoted ETag of the version in the negotiated format, or {@code null}.
+   */
+  static String etagFor(String etag, String accept) {
+    MovieFormat format = negotiate(accept);
+    if (etag == null || format == MovieFormat.JSON) {
+      return etag;
+    }
+    return etag.substring(0, etag.length() - 1) + "-" + format.name().toLowerCase(Locale.ROOT)
+        + "\"";
+  }
+
+  /**
+   * Finds the format an answer to the {@code Accept} header is written in, the same way as the
+   * converters are chosen: the format with the highest quality, and JSON when several are
+   * equally good, when the header is missing or when it can't be read.
+   *
+   * @param accept The {@code Accept} header of the request, or {@code null}.
+   * @return The negotiated format.
+   */
+  static MovieFormat negotiate(String accept) {
+    if (accept == null || accept.isBlank()) {
+      return MovieFormat.JSON;
+    }
+    List<MediaType> accepted;
+    try {
+      accepted = MediaType.parseMediaTypes(accept);
+    } catch (InvalidMediaTypeException e) {
+      return MovieFormat.JSON;
+    }
+    MovieFormat negotiated = MovieFormat.JSON;
+    double best = -1;
+    for (MovieFormat format : MovieFormat.values()) {
+      double quality = qualityOf(MediaType.valueOf(format.getMediaType()), accepted);
+      if (quality > best) {
+        negotiated = format;
+        best = quality;
+      }
+    }
+    return negotiated;
+  }
+
+  /**
+   * Returns the quality the client gives a media type, taken from the most specific range of
+   * the {@code Accept} header that includes it.
+   *
+   * @param type The media type.
+   * @param accepted The ranges of the {@code Accept} header.
+   * @return The quality, or 0 if no range includes the type.
+   */
+  private static double qualityOf(MediaType type, List<MediaType> accepted) {
+    MediaType range = null;
+    for (MediaType candidate : accepted) {
+      if (candidate.includes(type) && (range == null || candidate.isMoreSpecific(range))) {
+        range = candidate;
+      }
+    }
+    return range == null ? 0 : range.getQualityValue();
+  }
+
+  /**
+   * Adds {@code Vary: Accept} before the controller runs, so it is also sent when the
+   * controller answers {@code 304 Not Modified}. The dispatch of an asynchronous result finds
+   * the header already there.
+   */
+  private static final class VaryByAccept implements HandlerInterceptor {
+
+    /**
+     * Adds the header, unless it is already there.
+     *
+     * @param request The current request.
+     * @param response The current response.
+     * @param handler The chosen handler.
+     * @return Always {@code true}, so the request goes on to the handler.
+     */
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response,
+                             Object handler) {
+      if (!response.getHeaders(HttpHeaders.VARY).contains(HttpHeaders.ACCEPT)) {
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package movielibrary.springboot.restserver;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import movielibrary.json.internal.MovieChange;
+
+/**
+ * The {@code ChangeSubscription} class delivers changes to one subscriber of the change feed.
+ *
+ * <p>Changes are put in a bounded queue and sent from a thread of the executor, so the thread
+ * making the change never waits for the network. If the subscriber falls so far behind that
+ * the queue is full, the waiting changes are dropped and replaced by a single resync event,
+ * which tells the subscriber to fetch the catalog again instead of relying on the feed.
+ */
+final class ChangeSubscription {
+
+  /**
+   * Sends events to the subscriber.
+   */
+  @FunctionalInterface
+  interface EventSender {
+
+    /**
+     * Sends one event, waiting until it has been written.
+     *
+     * @param change The change, or {@code null} for a resync event.
+     * @throws IOException If the subscriber can no longer be reached.
+     */
+    void send(MovieChange change) throws IOException;
+  }
+
+  private static final MovieChange RESYNC = new MovieChange(null, null, -1);
+
+  private final EventSender sender;
+  private final Executor executor;
+  private final BlockingQueue<MovieChange> queue;
+  private final AtomicBoolean draining = new AtomicBoolean();
+  private final Runnable onFailure;
+  private volatile boolean closed;
+
+  /**
+   * Creates a {@code ChangeSubscription}.
+   *
+   * @param sender Sends the events to the subscriber.
+   * @param capacity The number of changes that may wait before the subscriber has to resync.
+   * @param executor Runs the sending.
+   * @param onFailure Called once if sending fails and the subscription is closed.
+   */
+  ChangeSubscription(EventSender sender, int capacity, Executor executor, Runnable onFailure) {
+    this.sender = sender;
+    this.executor = executor;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.onFailure = onFailure;
+  }
+
+  /**
+   * Queues a change for the subscriber without waiting. If the queue is full, the waiting
+   * changes are replaced by a resync event. Changes are offered by one thread at a time,
+   * the one writing them, so there is always room for the resync event.
+   *
+   * @param change The change to deliver.
+   */
+  void offer(MovieChange change) {
+    if (closed) {
+      return;
+    }
+    if (!queue.offer(change)) {
+      queue.clear();
+      queue.add(RESYNC);
+    }
+    scheduleDrain();
+  }
+
+  /**
+   * Stops delivering changes.
+   */
+  void close() {
+    closed = true;
+    queue.clear();
+  }
+
+  /**
+   * Returns whether the subscription has been closed.
+   *
+   * @return {@code true} if no more changes will be delivered.
+   */
+  boolean isClosed() {
+    return closed;
+  }
+
+  private void scheduleDrain() {
+    if (draining.compareAndSet(false, true)) {
+      executor.execute(this::drain);
+    }
+  }
+
+  private void drain() {
+    MovieChange change;
+    while (!closed && (change = queue.poll()) != null) {
+      try {
+        sender.send(change == RESYNC ? null : change);
+      } catch (IOException | RuntimeException e) {
+        close();
+        onFailure.run();
+      }
+    }
+    draining.set(false);
+    if (!closed && !queue.isEmpty()) {
+      scheduleDrain();
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package movielibrary.springboot.restserver;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * The {@code MetricsConfiguration} class registers the {@link MetricsInterceptor},
+ * so every request is timed.
+ */
+@Configuration
+public class MetricsConfiguration implements WebMvcConfigurer {
+
+  /**
+   * Registers the {@link MetricsInterceptor} for every request.
+   *
+   * @param registry The registry of interceptors.
+   */
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    registry.addInterceptor(new MetricsInterceptor());
+  }
+}
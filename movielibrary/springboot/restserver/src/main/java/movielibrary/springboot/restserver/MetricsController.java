@@ -0,0 +1,56 @@
+package movielibrary.springboot.restserver;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import movielibrary.json.internal.LatencyHistogram;
+import movielibrary.json.internal.MovieMetrics;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * The {@code MetricsController} class exposes the timings and counters collected in
+ * {@link MovieMetrics} at {@code movielibrary/metrics}.
+ *
+ * <p>Every timer is reported with its count and its p50, p99, p99.9 and maximum in microseconds.
+ * The timers cover the REST endpoints ({@code http.*}), the {@code MovieManager}
+ * ({@code manager.*}) and the reads and writes of the file ({@code json.*}).
+ */
+@RestController
+@RequestMapping("movielibrary/metrics")
+public class MetricsController {
+
+  private static final long NANOS_PER_MICRO = 1000;
+
+  /**
+   * Handles a GET request for the current metrics.
+   *
+   * @return The timers and counters, each sorted by name.
+   */
+  @GetMapping
+  public Map<String, Object> getMetrics() {
+    MovieMetrics metrics = MovieMetrics.getInstance();
+    Map<String, Object> timers = new LinkedHashMap<>();
+    metrics.getTimers().forEach((name, timer) -> timers.put(name, describe(timer)));
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("timers", timers);
+    result.put("counters", metrics.getCounters());
+    return result;
+  }
+
+  /**
+   * Summarizes a timer.
+   *
+   * @param timer The histogram of the timer.
+   * @return The count and the percentiles in microseconds.
+   */
+  private static Map<String, Long> describe(LatencyHistogram timer) {
+    Map<String, Long> summary = new LinkedHashMap<>();
+    summary.put("count", timer.getCount());
+    summary.put("p50Micros", timer.getPercentileNanos(0.5) / NANOS_PER_MICRO);
+    summary.put("p99Micros", timer.getPercentileNanos(0.99) / NANOS_PER_MICRO);
+    summary.put("p999Micros", timer.getPercentileNanos(0.999) / NANOS_PER_MICRO);
+    summary.put("maxMicros", timer.getMaxNanos() / NANOS_PER_MICRO);
+    return summary;
+  }
+}
@@ -0,0 +1,58 @@
+package movielibrary.springboot.restserver;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import movielibrary.json.internal.MovieMetrics;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * The {@code MetricsInterceptor} class times every request from the moment a controller is
+ * chosen until the response is complete, and records it in {@link MovieMetrics} under
+ * {@code http.<method> <endpoint pattern>}, for example
+ * {@code http.POST /movielibrary/movies/{title}/lend}.
+ *
+ * <p>Requests that finish asynchronously, like streamed or reactive responses, are timed until
+ * their result has been written.
+ */
+public class MetricsInterceptor implements HandlerInterceptor {
+
+  private static final String START_ATTRIBUTE = MetricsInterceptor.class.getName() + ".start";
+
+  /**
+   * Records when the request reached the controller, unless it is the dispatch of an
+   * asynchronous result that was already timed from the start.
+   *
+   * @param request The current request.
+   * @param response The current response.
+   * @param handler The chosen handler.
+   * @return Always {@code true}, so the request goes on to the handler.
+   */
+  @Override
+  public boolean preHandle(HttpServletRequest request, HttpServletResponse response,
+                           Object handler) {
+    if (request.getAttribute(START_ATTRIBUTE) == null) {
+      request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+    }
+    return true;
+  }
+
+  /**
+   * Records the time the request took under the endpoint it was mapped to.
+   *
+   * @param request The current request.
+   * @param response The current response.
+   * @param handler The handler that served the request.
+   * @param ex The exception thrown by the handler, if any.
+   */
+  @Override
+  public void afterCompletion(HttpServletRequest request, HttpServletResponse response,
+                              Object handler, Exception ex) {
+    Object start = request.getAttribute(START_ATTRIBUTE);
+    Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+    if (start instanceof Long && pattern != null) {
+      MovieMetrics.getInstance().recordSince(
+          "http." + request.getMethod() + " " + pattern, (Long) start);
+    }
+  }
+}
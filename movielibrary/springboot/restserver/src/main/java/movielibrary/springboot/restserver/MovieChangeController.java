@@ -0,0 +1,38 @@
+package movielibrary.springboot.restserver;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * The {@code MovieChangeController} class serves the change feed at
+ * {@code movielibrary/changes}, so clients learn about added, deleted, lent and returned movies
+ * as they happen instead of polling. See {@link MovieChangeFeed}.
+ */
+@RestController
+@RequestMapping("movielibrary/changes")
+public class MovieChangeController {
+
+  private final MovieChangeFeed movieChangeFeed;
+
+  /**
+   * Creates a {@code MovieChangeController} with a {@link MovieChangeFeed}.
+   *
+   * @param movieChangeFeed The feed the clients subscribe to.
+   */
+  public MovieChangeController(MovieChangeFeed movieChangeFeed) {
+    this.movieChangeFeed = movieChangeFeed;
+  }
+
+  /**
+   * Handles a GET request to subscribe to the change feed.
+   *
+   * @return The stream of change events.
+   */
+  @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter subscribe() {
+    return movieChangeFeed.subscribe();
+  }
+}
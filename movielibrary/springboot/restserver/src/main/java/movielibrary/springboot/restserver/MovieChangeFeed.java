@@ -0,0 +1,150 @@
+package movielibrary.springboot.restserver;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import movielibrary.json.internal.MovieChange;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * The {@code MovieChangeFeed} class pushes every change made through the
+ * {@link MovieLibraryService} to the clients subscribed to the change feed, as Server-Sent
+ * Events.
+ *
+ * <p>Each event is named after the change ({@code added}, {@code deleted}, {@code lent} or
+ * {@code returned}), has the catalog version as its id, and carries the change as JSON.
+ * Every subscriber has its own bounded {@link ChangeSubscription}, so a slow client only
+ * falls behind itself: the writer hands the change over without waiting, and a client that
+ * falls too far behind gets a {@code resync} event instead of the changes it missed. The same
+ * event is sent to everyone when the store reads the movies from disk again, for example after
+ * a change could not be written, since clients may have seen changes that are now gone.
+ *
+ * <p>The feed only starts listening to the service when the first client subscribes, so
+ * creating it does not open the store.
+ */
+@Component
+public class MovieChangeFeed implements DisposableBean {
+
+  /**
+   * The number of changes that may wait for a subscriber before it has to resync.
+   */
+  static final int SUBSCRIBER_CAPACITY = 256;
+
+  /**
+   * The name of the event that tells a subscriber to fetch the catalog again.
+   */
+  static final String RESYNC_EVENT = "resync";
+
+  private final Set<ChangeSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+  private final ExecutorService senders = Executors.newCachedThreadPool(senderThreads());
+  private final MovieLibraryService movieLibraryService;
+  private final ReentrantLock listenLock = new ReentrantLock();
+  private volatile boolean listening;
+
+  /**
+   * Creates a {@code MovieChangeFeed} that pushes the changes made through the service.
+   *
+   * @param movieLibraryService The service whose changes are pushed.
+   */
+  public MovieChangeFeed(MovieLibraryService movieLibraryService) {
+    this.movieLibraryService = movieLibraryService;
+  }
+
+  /**
+   * Subscribes a new client to the feed, and starts listening to the service if it is the first.
+   *
+   * @return The emitter that streams the events to the client, it never times out.
+   */
+  public SseEmitter subscribe() {
+    listen();
+    SseEmitter emitter = new SseEmitter(0L);
+    ChangeSubscription subscription = new ChangeSubscription(change -> send(emitter, change),
+        SUBSCRIBER_CAPACITY, senders, emitter::complete);
+    emitter.onCompletion(() -> unsubscribe(subscription));
+    emitter.onTimeout(() -> unsubscribe(subscription));
+    emitter.onError(error -> unsubscribe(subscription));
+    subscriptions.add(subscription);
+    return emitter;
+  }
+
+  /**
+   * Adds the feed as a listener of the service, once.
+   */
+  private void listen() {
+    if (listening) {
+      return;
+    }
+    listenLock.lock();
+    try {
+      if (!listening) {
+        movieLibraryService.addChangeListener(this::publish);
+        listening = true;
+      }
+    } finally {
+      listenLock.unlock();
+    }
+  }
+
+  /**
+   * Queues a change for every subscriber, without waiting for any of them.
+   *
+   * @param change The change to push.
+   */
+  void publish(MovieChange change) {
+    for (ChangeSubscription subscription : subscriptions) {
+      subscription.offer(change);
+    }
+  }
+
+  /**
+   * Returns the number of clients subscribed to the feed.
+   *
+   * @return The number of subscribers.
+   */
+  int getSubscriberCount() {
+    return subscriptions.size();
+  }
+
+  /**
+   * Stops the threads that send events when the application shuts down.
+   */
+  @Override
+  public void destroy() {
+    subscriptions.forEach(ChangeSubscription::close);
+    senders.shutdownNow();
+  }
+
+  private void unsubscribe(ChangeSubscription subscription) {
+    subscription.close();
+    subscriptions.remove(subscription);
+  }
+
+  private static void send(SseEmitter emitter, MovieChange change) throws IOException {
+    if (change == null || change.getType() == MovieChange.Type.RESYNC) {
+      emitter.send(SseEmitter.event().name(RESYNC_EVENT).data(RESYNC_EVENT));
+      return;
+    }
+    emitter.send(SseEmitter.event()
+        .id(Long.toString(change.getVersion()))
+        .name(change.getType().name().toLowerCase(Locale.ROOT))
+        .data(change, MediaType.APPLICATION_JSON));
+  }
+
+  private static ThreadFactory senderThreads() {
+    AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, "movielibrary-changes-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
@@ -1,35 +1,70 @@
 package movielibrary.springboot.restserver;
 
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.NoSuchElementException;
 import movielibrary.core.Movie;
-import movielibrary.json.internal.MovieDeserializer;
-import movielibrary.json.internal.MovieManager;
-import movielibrary.json.internal.MovieSerializer;
+import movielibrary.json.internal.MovieCodec;
+import movielibrary.json.internal.MovieConflictException;
+import movielibrary.json.internal.MovieState;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
  * The {@code MovieLibraryController} class handles the HTTP requests between
  * the server and the application.
  * The HTTP in question are GET, POST, PUT and DELETE requests.
  *
- * <p>The class relies on {@link MovieManager}, {@link MovieDeserializer},
- * and {@link MovieSerializer} to handle movie data in the library.
+ * <p>The class relies on the {@link MovieLibraryService} to handle movie data in the library.
+ *
+ * <p>GET requests for the movies carry an ETag. When the client sends it back in
+ * {@code If-None-Match} and nothing has changed, the response is {@code 304 Not Modified}
+ * and no movies are serialized. Each format the movies are sent in has its own ETag, see
+ * {@link BinaryFormatConfiguration#etagFor(String, String)}.
+ *
+ * <p>Lending and returning a movie is a single compare-and-set: the answer is the movie as it
+ * is after the change, or {@code 409 Conflict} with the movie as it is if it was already lent
+ * or returned. Clients therefore never need to ask for the lent status first.
+ *
+ * <p>This is the default controller. With {@code movielibrary.controller=reactive} the
+ * {@link ReactiveMovieLibraryController} serves the same endpoints instead.
  */
 @RestController
+@ConditionalOnProperty(name = "movielibrary.controller", havingValue = "blocking",
+    matchIfMissing = true)
 @RequestMapping("movielibrary/movies")
 public class MovieLibraryController {
 
+  /**
+   * The media type of newline-delimited JSON, with one movie per line.
+   */
+  public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+  private static final MediaType APPLICATION_NDJSON = MediaType.valueOf(APPLICATION_NDJSON_VALUE);
+
+  private static final int STREAM_BUFFER_SIZE = 8192;
+
   private final MovieLibraryService movieLibraryService;
+  private final ObjectWriter movieWriter = MovieCodec.getInstance().getMovieWriter();
 
   /**
    * Creates a {@link MovieLibraryController} instance with a {@link MovieLibraryService}.
@@ -45,31 +80,98 @@ public class MovieLibraryController {
   /**
    * Handles a GET request to retrieve all movies in the library.
    *
-   * @return A list of all {@link Movie} objects in the library.
+   * @param request The request, used to check the {@code If-None-Match} header.
+   * @return A list of all {@link Movie} objects in the library, 
+   *         or {@code null} if the client already has them.
    * @throws IOException If an I/O error occurs during retrieval.
    * @throws BadRequestException If movies cannot be retrieved due 
    *                            to an invalid request.
    */
   @GetMapping
-  public List<Movie> getMovies() throws IOException {
+  public List<Movie> getMovies(WebRequest request) throws IOException {
     try {
+      if (request.checkNotModified(etagFor(movieLibraryService.getCatalogEtag(), request))) {
+        return null;
+      }
       return movieLibraryService.getMovies();
     } catch (IllegalArgumentException e) {
       throw new BadRequestException("Could not get the movies in the library");
     }
   }
 
+  /**
+   * Handles a GET request with a {@code limit} to retrieve one page of the movies.
+   * The {@code nextCursor} of the returned page is passed as {@code cursor} to get the next one.
+   *
+   * @param limit The largest number of movies on the page.
+   * @param cursor The cursor of the page to get, or nothing for the first page.
+   * @param request The request, used to check the {@code If-None-Match} header.
+   * @return The {@link MoviePage} with the movies and the cursor of the next page,
+   *         or {@code null} if the client already has it.
+   * @throws IOException If an I/O error occurs during retrieval.
+   * @throws BadRequestException If the limit is out of range or the cursor is invalid.
+   */
+  @GetMapping(params = "limit")
+  public MoviePage getMoviePage(@RequestParam int limit,
+                                @RequestParam(required = false) String cursor,
+                                WebRequest request) throws IOException {
+    try {
+      if (request.checkNotModified(etagFor(movieLibraryService.getCatalogEtag(), request))) {
+        return null;
+      }
+      return movieLibraryService.getMoviePage(cursor, limit);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException(e.getMessage());
+    }
+  }
+
+  /**
+   * Handles a GET request for newline-delimited JSON to stream all movies in the library.
+   * Each movie is written to the response as soon as it is serialized, one per line,
+   * so the server never holds the whole response in memory.
+   *
+   * @return The response that writes the movies to the client.
+   * @throws IOException If an I/O error occurs during retrieval.
+   */
+  @GetMapping(produces = APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> streamMovies() throws IOException {
+    List<Movie> movies = List.copyOf(movieLibraryService.getMovies());
+    StreamingResponseBody body = outputStream -> writeMovies(movies, outputStream);
+    return ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(body);
+  }
+
+  /**
+   * Writes the movies as newline-delimited JSON to the output stream.
+   *
+   * @param movies The movies to write.
+   * @param outputStream The stream of the response.
+   * @throws IOException If an I/O error occurs while writing.
+   */
+  private void writeMovies(List<Movie> movies, OutputStream outputStream) throws IOException {
+    OutputStream buffered = new BufferedOutputStream(outputStream, STREAM_BUFFER_SIZE);
+    for (Movie movie : movies) {
+      buffered.write(movieWriter.writeValueAsBytes(movie));
+      buffered.write('\n');
+    }
+    buffered.flush();
+  }
+
   /**
    * Handles a GET request to find a movie by title.
    *
    * @param title Title of the desired movie.
-   * @return The {@link Movie} object with the given title.
+   * @param request The request, used to check the {@code If-None-Match} header.
+   * @return The {@link Movie} object with the given title,
+   *         or {@code null} if the client already has it.
    * @throws IOException If an I/O error occurs during retrieval.
    * @throws MovieNotFoundException If no movie is found with the given title. 
    */
   @GetMapping("/{title}")
-  public Movie findMovie(@PathVariable String title) throws IOException {
+  public Movie findMovie(@PathVariable String title, WebRequest request) throws IOException {
     try {
+      if (request.checkNotModified(etagFor(movieLibraryService.getMovieEtag(title), request))) {
+        return null;
+      }
       return movieLibraryService.findMovie(title);
     } catch (IllegalArgumentException e) {
       throw new MovieNotFoundException(title);
@@ -78,38 +180,80 @@ public class MovieLibraryController {
 
   /**
    * Handles a POST request to mark a movie as lent.
-   * Will change the lent status of the movie to be true.
+   * Will change the lent status of the movie to be true, if it is not lent already.
    *
    * @param title The title of the movie to lend.
+   * @param accept The {@code Accept} header, which decides the format of the ETag.
+   * @return The lent movie with its ETag, or {@code 409 Conflict} with the movie as it is
+   *         if it was already lent.
    * @throws IOException If an I/O error occurs during the operation.
    * @throws MovieNotFoundException If no movie is found with the given title.
    */
   @PostMapping("/{title}/lend")
-  public void lendMovie(@PathVariable String title) throws IOException {
+  public ResponseEntity<Movie> lendMovie(@PathVariable String title,
+      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept)
+      throws IOException {
     try {
-      movieLibraryService.lendMovie(title);
-    } catch (IllegalArgumentException e) {
+      return movieResponse(HttpStatus.OK, movieLibraryService.lendMovie(title), accept);
+    } catch (IllegalArgumentException | NoSuchElementException e) {
       throw new MovieNotFoundException(title);
+    } catch (MovieConflictException e) {
+      return movieResponse(HttpStatus.CONFLICT, e.getState(), accept);
     }
   }
 
   /**
    * Handles a POST request to mark a movie as returned.
-   * Will change the lent status of the movie to be false.
+   * Will change the lent status of the movie to be false, if it is lent.
    *
    * @param title Title of the movie to return.
+   * @param accept The {@code Accept} header, which decides the format of the ETag.
+   * @return The returned movie with its ETag, or {@code 409 Conflict} with the movie as it is
+   *         if it was not lent.
    * @throws IOException If an I/O error occurs during the operation.
    * @throws MovieNotFoundException If the movie cannot be found.
    */
   @PostMapping("/{title}/return")
-  public void returnMovie(@PathVariable String title) throws IOException {
+  public ResponseEntity<Movie> returnMovie(@PathVariable String title,
+      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept)
+      throws IOException {
     try {
-      movieLibraryService.returnMovie(title);
-    } catch (IllegalArgumentException e) {
+      return movieResponse(HttpStatus.OK, movieLibraryService.returnMovie(title), accept);
+    } catch (IllegalArgumentException | NoSuchElementException e) {
       throw new MovieNotFoundException(title);
+    } catch (MovieConflictException e) {
+      return movieResponse(HttpStatus.CONFLICT, e.getState(), accept);
     }
   }
 
+  /**
+   * Builds the answer to a lend or return: the movie as the change left it, or as it was when
+   * the change was refused, with the ETag of that same version. Nothing is read again, so a
+   * change that follows cannot pair the movie with another version's tag.
+   *
+   * @param status The status of the answer.
+   * @param state The movie and its version, from the lend or return.
+   * @param accept The {@code Accept} header of the request.
+   * @return The response with the movie.
+   */
+  private ResponseEntity<Movie> movieResponse(HttpStatus status, MovieState state,
+                                              String accept) {
+    return ResponseEntity.status(status)
+        .eTag(BinaryFormatConfiguration.etagFor(movieLibraryService.getMovieEtag(state), accept))
+        .body(state.getMovie());
+  }
+
+  /**
+   * Returns the ETag of a version in the format the request asks for.
+   *
+   * @param etag The quoted ETag of the version.
+   * @param request The request, whose {@code Accept} header decides the format.
+   * @return The quoted ETag of the answer.
+   */
+  private static String etagFor(String etag, WebRequest request) {
+    return BinaryFormatConfiguration.etagFor(etag, request.getHeader(HttpHeaders.ACCEPT));
+  }
+
   /**
    * Handles a GET request to check whether a movie is currently lent.
    * Returns the lent status of the movie: true if it is lent and false if it is not.
@@ -169,4 +313,38 @@ public class MovieLibraryController {
       throw new BadRequestException("Could not delete movie with title: " + title);
     }
   }
+
+  /**
+   * Handles a PUT request to add many movies to the library with a single write.
+   * Each movie is validated and added on its own, so some may fail while others succeed.
+   *
+   * @param newMovies The new {@link Movie} objects to be added.
+   * @return One {@link BatchResult} per movie, in the same order as the request.
+   */
+  @PutMapping("/batch")
+  public List<BatchResult> addMovies(@RequestBody List<Movie> newMovies) {
+    return movieLibraryService.addMovies(newMovies);
+  }
+
+  /**
+   * Handles a POST request to lend many movies with a single write.
+   *
+   * @param titles Titles of the movies to lend.
+   * @return One {@link BatchResult} per title, in the same order as the request.
+   */
+  @PostMapping("/lend")
+  public List<BatchResult> lendMovies(@RequestBody List<String> titles) {
+    return movieLibraryService.lendMovies(titles);
+  }
+
+  /**
+   * Handles a POST request to return many movies with a single write.
+   *
+   * @param titles Titles of the movies to return.
+   * @return One {@link BatchResult} per title, in the same order as the request.
+   */
+  @PostMapping("/return")
+  public List<BatchResult> returnMovies(@RequestBody List<String> titles) {
+    return movieLibraryService.returnMovies(titles);
+  }
 }
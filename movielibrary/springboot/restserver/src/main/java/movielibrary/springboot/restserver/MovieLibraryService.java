@@ -1,58 +1,66 @@
 package movielibrary.springboot.restserver;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 import movielibrary.core.Movie;
-import movielibrary.json.internal.MovieDeserializer;
+import movielibrary.json.internal.MovieChange;
 import movielibrary.json.internal.MovieManager;
-import movielibrary.json.internal.MovieSerializer;
+import movielibrary.json.internal.MovieState;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
 /**
  * The {@code MovieLibraryService} class provides services to manage movies in the library.
  * This includes adding, deleting, lending, returning and checking the lent status of movies.
  *
- * <p>The class uses {@link MovieManager}, {@link MovieDeserializer} and {@link MovieSerializer}
- * for JSON file operations on movies stored in the user's home directory.
+ * <p>Every read and change goes through one {@link MovieManager}, the store of the library
+ * created by {@link MovieStoreConfiguration}, so there is a single copy of the movies in memory
+ * and the file is only written to persist changes.
  */
 @Service
 public class MovieLibraryService {
 
-  private final MovieManager movieManager;
-  private final MovieDeserializer movieDeserializer;
-  private final MovieSerializer movieSerializer;
+  /**
+   * The largest number of movies that can be asked for in one page.
+   */
+  public static final int MAX_PAGE_SIZE = 1000;
 
   /**
-   * Initializes the {@code MovieLibraryService} with the file handling for movies
-   * stored in the user's home directory.
-   *
-   * @throws IOException If an I/O error occurs while accessing or creating the JSON file. 
+   * The largest number of movies a search returns.
    */
-  public MovieLibraryService() throws IOException {
-    File jsonFile = new File(
-        System.getProperty("user.home")
-        + System.getProperty("file.separator")
-        + "movies.json"
-    );
-    this.movieManager = new MovieManager();
-    this.movieDeserializer = new MovieDeserializer(jsonFile);
-    this.movieSerializer = new MovieSerializer(jsonFile);
-  }
+  public static final int MAX_SEARCH_RESULTS = 100;
+
+  private static final String CURSOR_PREFIX = "after:";
 
   /**
-   * Initalizes the {@code MovieLibraryService} with the specified {@link MovieManager},
-   * {@link MovieDeserializer} and {@link MovieSerializer}.
+   * The order of the pages: by title, ignoring case and surrounding whitespace like the title
+   * lookups do, then by the exact title so the order is total.
+   */
+  private static final Comparator<String> TITLE_ORDER =
+      Comparator.comparing((String title) -> title.toLowerCase().strip())
+                .thenComparing(Comparator.naturalOrder());
+
+  private final String etagPrefix = Long.toHexString(System.currentTimeMillis()) + "-";
+
+  private final MovieManager movieManager;
+  private volatile SortedMovies moviesByTitle;
+
+  /**
+   * Initalizes the {@code MovieLibraryService} with the store of the library.
    *
-   * @param movieManager Movie class containing data and methods to verify it.
-   * @param movieDeserializer MovieDeserializer class to deserialize movie data.
-   * @param movieSerializer MovieSerializer class to serialize movie data.
+   * @param movieManager The {@link MovieManager} holding the movies, shared by the server.
    */
-  public MovieLibraryService(MovieManager movieManager, MovieDeserializer movieDeserializer, 
-                              MovieSerializer movieSerializer) {
+  public MovieLibraryService(MovieManager movieManager) {
     this.movieManager = movieManager;
-    this.movieDeserializer = movieDeserializer;
-    this.movieSerializer = movieSerializer;
   }
 
   /**
@@ -62,8 +70,150 @@ public class MovieLibraryService {
    * @throws IOException If an I/O error occurs during data retrieval.
    */
   public List<Movie> getMovies() throws IOException {
-    movieDeserializer.reloadMovieData();
-    return movieDeserializer.getMoviesInLibrary();
+    return movieManager.getMovies();
+  }
+
+  /**
+   * Retrieves one page of the movies in the library, in title order.
+   * The cursor is the {@code nextCursor} of the previous page, or {@code null} for the first page.
+   * It holds the last title of the previous page, and the page starts strictly after it, so
+   * movies added or deleted between two requests never make a page repeat or skip a movie that
+   * was there all along.
+   *
+   * @param cursor The cursor of the page to get, or {@code null} for the first page.
+   * @param limit The largest number of movies on the page, between 1 and {@value #MAX_PAGE_SIZE}.
+   * @return The page of movies, with the cursor of the next page if there are more movies.
+   * @throws IOException If an I/O error occurs during data retrieval.
+   * @throws IllegalArgumentException If the limit is out of range or the cursor is invalid.
+   */
+  public MoviePage getMoviePage(String cursor, int limit) throws IOException {
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      throw new IllegalArgumentException(
+          "The limit must be between 1 and " + MAX_PAGE_SIZE + ".");
+    }
+    List<Movie> movies = getMoviesByTitle();
+    int size = movies.size();
+    int start = cursor == null ? 0 : firstAfter(movies, decodeCursor(cursor));
+    int end = Math.min(start + limit, size);
+    List<Movie> page = movies.subList(start, end);
+    return new MoviePage(page, end < size ? encodeCursor(page.get(page.size() - 1).getTitle())
+        : null);
+  }
+
+  /**
+   * Returns the movies sorted in title order. The sorted list is kept, together with the catalog
+   * version it was sorted at, until the library changes, so paging through an unchanged library
+   * sorts it only once. The list is published through a volatile field rather than a lock: two
+   * requests that find it out of date may both sort, but no request ever waits for another.
+   *
+   * @return The movies in title order.
+   * @throws IOException If an I/O error occurs during data retrieval.
+   */
+  private List<Movie> getMoviesByTitle() throws IOException {
+    long version = movieManager.getCatalogVersion();
+    SortedMovies sorted = moviesByTitle;
+    if (sorted == null || sorted.version != version) {
+      List<Movie> movies = new ArrayList<>(getMovies());
+      movies.sort(Comparator.comparing(Movie::getTitle, TITLE_ORDER));
+      sorted = new SortedMovies(version, Collections.unmodifiableList(movies));
+      moviesByTitle = sorted;
+    }
+    return sorted.movies;
+  }
+
+  /**
+   * Finds the position of the first movie after the given title, with a binary search.
+   *
+   * @param movies The movies in title order.
+   * @param title The last title of the previous page.
+   * @return The position of the first movie whose title comes after it.
+   */
+  private static int firstAfter(List<Movie> movies, String title) {
+    int low = 0;
+    int high = movies.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (TITLE_ORDER.compare(movies.get(middle).getTitle(), title) <= 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Encodes the last title of a page as an opaque cursor.
+   *
+   * @param title The last title on the page.
+   * @return The cursor.
+   */
+  private static String encodeCursor(String title) {
+    return Base64.getUrlEncoder().withoutPadding()
+                 .encodeToString((CURSOR_PREFIX + title).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Decodes a cursor made by {@link #encodeCursor(String)}.
+   *
+   * @param cursor The cursor to decode.
+   * @return The last title of the previous page.
+   * @throws IllegalArgumentException If the cursor is invalid.
+   */
+  private static String decodeCursor(String cursor) {
+    try {
+      String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      if (decoded.startsWith(CURSOR_PREFIX)) {
+        return decoded.substring(CURSOR_PREFIX.length());
+      }
+    } catch (IllegalArgumentException e) {
+      // Handled below, the same way as a cursor that decodes to something unexpected
+    }
+    throw new IllegalArgumentException("Invalid cursor: " + cursor);
+  }
+
+  /**
+   * Returns the ETag of the whole catalog, which changes whenever a movie is added, deleted,
+   * lent or returned. The catalog version only counts changes within this server run,
+   * so the tag also holds the time the service was created.
+   *
+   * @return The quoted ETag of the catalog.
+   * @throws IOException If an I/O error occurs while reading the library.
+   */
+  public String getCatalogEtag() throws IOException {
+    return etagOf(movieManager.getCatalogVersion());
+  }
+
+  /**
+   * Returns the ETag of a single movie, which only changes when that movie changes.
+   *
+   * @param title Title of the movie.
+   * @return The quoted ETag of the movie.
+   * @throws IOException If an I/O error occurs while reading the library.
+   */
+  public String getMovieEtag(String title) throws IOException {
+    return etagOf(movieManager.getMovieVersion(title));
+  }
+
+  /**
+   * Returns the ETag of a movie as a lend or return left it, from the version taken together
+   * with the movie, so the tag always belongs to the movie that is sent with it.
+   *
+   * @param state The movie and its version.
+   * @return The quoted ETag of the movie.
+   */
+  public String getMovieEtag(MovieState state) {
+    return etagOf(state.getVersion());
+  }
+
+  /**
+   * Turns a version into a quoted ETag.
+   *
+   * @param version The catalog or movie version.
+   * @return The quoted ETag.
+   */
+  private String etagOf(long version) {
+    return "\"" + etagPrefix + version + "\"";
   }
 
   /**
@@ -74,27 +224,59 @@ public class MovieLibraryService {
    * @throws IOException If an I/O error occurs during the search.
    */
   public Movie findMovie(String title) throws IOException {
-    return movieDeserializer.findMovie(title);
+    return movieManager.findMovie(title);
+  }
+
+  /**
+   * Adds a listener that is told about every change made through this service.
+   * See {@link MovieManager#addChangeListener(Consumer)}.
+   *
+   * @param listener The listener, which must return quickly and never block.
+   */
+  public void addChangeListener(Consumer<MovieChange> listener) {
+    movieManager.addChangeListener(listener);
+  }
+
+  /**
+   * Searches the titles and descriptions of the movies, best matches first.
+   *
+   * @param query The words to search for.
+   * @param limit The largest number of movies to return, between 1 and
+   *              {@value #MAX_SEARCH_RESULTS}.
+   * @return The best matching {@link Movie} objects.
+   * @throws IOException If an I/O error occurs while reading the library.
+   * @throws IllegalArgumentException If the query has no words or the limit is out of range.
+   */
+  public List<Movie> searchMovies(String query, int limit) throws IOException {
+    if (limit < 1 || limit > MAX_SEARCH_RESULTS) {
+      throw new IllegalArgumentException(
+          "The limit must be between 1 and " + MAX_SEARCH_RESULTS + ".");
+    }
+    return movieManager.searchMovies(query, limit);
   }
 
   /**
    * Marks a movie as lent by changing the lent status to true.
    *
    * @param title Title of the movie to lend.
+   * @return The lent movie and its version, taken in the same step as the change.
    * @throws IOException If an I/O error occurs during the operation.
+   * @throws movielibrary.json.internal.MovieConflictException If the movie is already lent.
    */
-  public void lendMovie(String title) throws IOException {
-    movieManager.lend(title);
+  public MovieState lendMovie(String title) throws IOException {
+    return movieManager.lend(title);
   }
 
   /**
    * Marks a movie as returned by changing the lent status to false.
    *
    * @param title Title of the movie to return.
+   * @return The returned movie and its version, taken in the same step as the change.
    * @throws IOException If an I/O error occurs during the operation.
+   * @throws movielibrary.json.internal.MovieConflictException If the movie is not lent.
    */
-  public void returnMovie(String title) throws IOException {
-    movieManager.returnBack(title);
+  public MovieState returnMovie(String title) throws IOException {
+    return movieManager.returnBack(title);
   }
 
   /**
@@ -105,7 +287,7 @@ public class MovieLibraryService {
    * @throws IOException If an I/O error occurs during the operation.
    */
   public boolean getLentStatus(String title) throws IOException {
-    return movieSerializer.getLentStatus(title);
+    return movieManager.getLentStatus(title);
   }
 
   /**
@@ -130,5 +312,106 @@ public class MovieLibraryService {
     movieManager.deleteMovie(title);
   }
 
+  /**
+   * Adds many movies to the library with a single write. A {@code null} entry in the list gets
+   * {@code 400 Bad Request} on its own, like an invalid movie, without a title.
+   *
+   * @param movies The movies to add.
+   * @return One {@link BatchResult} per movie, in the same order.
+   */
+  public List<BatchResult> addMovies(List<Movie> movies) {
+    List<CompletableFuture<Void>> outcomes = movieManager.addMovies(movies);
+    List<BatchResult> results = new ArrayList<>(movies.size());
+    for (int i = 0; i < movies.size(); i++) {
+      Movie movie = movies.get(i);
+      results.add(toBatchResult(movie == null ? null : movie.getTitle(), outcomes.get(i),
+          HttpStatus.CREATED, HttpStatus.BAD_REQUEST));
+    }
+    return results;
+  }
 
+  /**
+   * Lends many movies with a single write.
+   *
+   * @param titles Titles of the movies to lend.
+   * @return One {@link BatchResult} per title, in the same order.
+   */
+  public List<BatchResult> lendMovies(List<String> titles) {
+    return toBatchResults(titles, movieManager.lendAll(titles));
+  }
+
+  /**
+   * Returns many movies with a single write.
+   *
+   * @param titles Titles of the movies to return.
+   * @return One {@link BatchResult} per title, in the same order.
+   */
+  public List<BatchResult> returnMovies(List<String> titles) {
+    return toBatchResults(titles, movieManager.returnAll(titles));
+  }
+
+  /**
+   * Turns the outcomes of a bulk lend or return into {@link BatchResult} objects. A movie that
+   * is already lent, or not lent, gets {@code 409 Conflict}, like a single lend or return.
+   *
+   * @param titles The titles of the movies.
+   * @param outcomes The completed outcome for each title.
+   * @return One {@link BatchResult} per title.
+   */
+  private static List<BatchResult> toBatchResults(List<String> titles,
+                                                  List<CompletableFuture<Void>> outcomes) {
+    List<BatchResult> results = new ArrayList<>(titles.size());
+    for (int i = 0; i < titles.size(); i++) {
+      results.add(toBatchResult(titles.get(i), outcomes.get(i), HttpStatus.OK,
+          HttpStatus.CONFLICT));
+    }
+    return results;
+  }
+
+  /**
+   * Turns the outcome of one item of a bulk request into a {@link BatchResult}, with the same
+   * status the item would have gotten as a request of its own.
+   *
+   * @param title The title of the movie.
+   * @param outcome The completed outcome of the item.
+   * @param success The status to use if the item succeeded.
+   * @param conflict The status to use if the item clashed with the state of the movie.
+   * @return The {@link BatchResult} of the item.
+   */
+  private static BatchResult toBatchResult(String title, CompletableFuture<Void> outcome,
+                                           HttpStatus success, HttpStatus conflict) {
+    try {
+      outcome.join();
+      return new BatchResult(title, success.value(), null);
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof NoSuchElementException) {
+        return new BatchResult(title, HttpStatus.NOT_FOUND.value(),
+            new MovieNotFoundException(title).getMessage());
+      }
+      if (cause instanceof IllegalStateException) {
+        return new BatchResult(title, conflict.value(), cause.getMessage());
+      }
+      if (cause instanceof IllegalArgumentException) {
+        return new BatchResult(title, HttpStatus.BAD_REQUEST.value(), cause.getMessage());
+      }
+      return new BatchResult(title, HttpStatus.INTERNAL_SERVER_ERROR.value(),
+          "Could not save the change");
+    }
+  }
+
+  /**
+   * The movies in title order, with the catalog version they were read at. The version is read
+   * before the movies, so the movies are never older than it says.
+   */
+  private static final class SortedMovies {
+
+    private final long version;
+    private final List<Movie> movies;
+
+    private SortedMovies(long version, List<Movie> movies) {
+      this.version = version;
+      this.movies = movies;
+    }
+  }
 }
@@ -0,0 +1,46 @@
+package movielibrary.springboot.restserver;
+
+import java.util.List;
+import movielibrary.core.Movie;
+
+/**
+ * The {@code MoviePage} class is one page of movies returned by a paginated
+ * GET request to {@code movielibrary/movies}.
+ *
+ * <p>The {@code nextCursor} is an opaque string that is passed back as the {@code cursor}
+ * parameter to get the next page. It is {@code null} on the last page.
+ */
+public class MoviePage {
+
+  private final List<Movie> movies;
+  private final String nextCursor;
+
+  /**
+   * Creates a {@code MoviePage} with the given movies and cursor.
+   *
+   * @param movies The movies on this page.
+   * @param nextCursor The cursor of the next page, or {@code null} if this is the last page.
+   */
+  public MoviePage(List<Movie> movies, String nextCursor) {
+    this.movies = movies;
+    this.nextCursor = nextCursor;
+  }
+
+  /**
+   * Returns the movies on this page.
+   *
+   * @return A list of {@link Movie} objects.
+   */
+  public List<Movie> getMovies() {
+    return movies;
+  }
+
+  /**
+   * Returns the cursor of the next page.
+   *
+   * @return The cursor to pass to get the next page, or {@code null} if this is the last page.
+   */
+  public String getNextCursor() {
+    return nextCursor;
+  }
+}
@@ -0,0 +1,56 @@
+package movielibrary.springboot.restserver;
+
+import java.io.IOException;
+import java.util.List;
+import movielibrary.core.Movie;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * The {@code MovieSearchController} class serves the search at {@code movielibrary/search}.
+ * It lives outside {@code movielibrary/movies}, where every other path segment is the title of
+ * a movie, so a movie can have any title, including {@code search}.
+ *
+ * <p>Like the {@link MovieLibraryController}, it is replaced by the
+ * {@link ReactiveMovieSearchController} when {@code movielibrary.controller=reactive}.
+ */
+@RestController
+@ConditionalOnProperty(name = "movielibrary.controller", havingValue = "blocking",
+    matchIfMissing = true)
+@RequestMapping("movielibrary/search")
+public class MovieSearchController {
+
+  private final MovieLibraryService movieLibraryService;
+
+  /**
+   * Creates a {@code MovieSearchController} with a {@link MovieLibraryService}.
+   *
+   * @param movieLibraryService Service holding the movies to search.
+   */
+  public MovieSearchController(MovieLibraryService movieLibraryService) {
+    this.movieLibraryService = movieLibraryService;
+  }
+
+  /**
+   * Handles a GET request to search the titles and descriptions of the movies.
+   *
+   * @param query The words to search for.
+   * @param limit The largest number of movies to return.
+   * @return The best matching {@link Movie} objects, best first.
+   * @throws IOException If an I/O error occurs during the search.
+   * @throws BadRequestException If the query has no words or the limit is out of range.
+   */
+  @GetMapping
+  public List<Movie> searchMovies(@RequestParam("q") String query,
+                                  @RequestParam(defaultValue = "20") int limit)
+      throws IOException {
+    try {
+      return movieLibraryService.searchMovies(query, limit);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException(e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package movielibrary.springboot.restserver;
+
+import java.io.IOException;
+import movielibrary.json.internal.MovieManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+/**
+ * The {@code MovieStoreConfiguration} class creates the {@link MovieManager} that is the single
+ * store of the movie library for the whole server, in {@code movies.json} in the user's home
+ * directory.
+ *
+ * <p>The server is the only one writing the file, so the movies in memory are authoritative:
+ * every read is answered from memory, and the disk is only touched to persist changes. Changes
+ * are appended to a journal, and the binary snapshot written with every compaction lets the
+ * next start load the library without parsing the JSON. The journal is also compacted when the
+ * server stops, so the next start can answer lookups straight from the mapped snapshot.
+ * Because nothing is read back, two servers must never be given the same file: each would
+ * serve and overwrite its own copy. Servers that clients treat as one shared store need a
+ * store that is shared, which this one is not.
+ *
+ * <p>How changes reach the disk is set with the {@code movielibrary.store} properties. Group
+ * commit, on by default, lets changes that arrive together share one fsync of the journal. The
+ * single writer, off by default, hands every change to one thread that applies them in batches;
+ * with group commit, its batches share the same flushes.</p>
+ */
+@Configuration
+public class MovieStoreConfiguration {
+
+  /**
+   * The number of journal records that triggers a new snapshot of the library.
+   */
+  static final int COMPACTION_THRESHOLD = 1000;
+
+  /**
+   * Creates the store of the movie library. It is created on first use, so applications that
+   * replace the {@link MovieLibraryService} never open the file. It is closed when the
+   * application stops.
+   *
+   * @param groupCommit Whether changes that arrive together share one flush to disk.
+   * @param commitWindowMillis How long group commit waits for more changes after the first one.
+   * @param commitBatchSize The number of waiting changes that makes group commit flush at once.
+   * @param singleWriter Whether every change is applied by a single writer thread.
+   * @param writerQueueCapacity The number of changes that can wait for the single writer.
+   * @param writerBatchSize The largest number of changes the single writer applies together.
+   * @return The {@link MovieManager} shared by the server.
+   * @throws IOException If an I/O error occurs while reading or creating the library.
+   */
+  @Bean(destroyMethod = "close")
+  @Lazy
+  public MovieManager movieManager(
+      @Value("${movielibrary.store.group-commit.enabled:true}") boolean groupCommit,
+      @Value("${movielibrary.store.group-commit.window-ms:0}") long commitWindowMillis,
+      @Value("${movielibrary.store.group-commit.max-batch-size:64}") int commitBatchSize,
+      @Value("${movielibrary.store.single-writer.enabled:false}") boolean singleWriter,
+      @Value("${movielibrary.store.single-writer.queue-capacity:1024}") int writerQueueCapacity,
+      @Value("${movielibrary.store.single-writer.max-batch-size:64}") int writerBatchSize)
+      throws IOException {
+    MovieManager movieManager = new MovieManager();
+    movieManager.enableExclusiveAccess();
+    movieManager.enableJournal(COMPACTION_THRESHOLD);
+    movieManager.enableBinarySnapshot();
+    if (groupCommit) {
+      movieManager.enableGroupCommit(commitWindowMillis, commitBatchSize);
+    }
+    if (singleWriter) {
+      movieManager.enableSingleWriter(writerQueueCapacity, writerBatchSize);
+    }
+    return movieManager;
+  }
+}
@@ -0,0 +1,245 @@
+package movielibrary.springboot.restserver;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import movielibrary.core.Movie;
+import movielibrary.json.internal.MovieState;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * The {@code ReactiveMovieLibrary} class is the non-blocking adapter the
+ * {@link ReactiveMovieLibraryController} uses to reach the catalog.
+ *
+ * <p>Reading and writing the movie file blocks, so every call to the {@link MovieLibraryService}
+ * is moved onto a bounded pool of worker threads. The request thread is handed back as soon as
+ * the call is scheduled, and the response is written once the returned {@link Mono} or
+ * {@link Flux} completes.
+ */
+@Service
+@ConditionalOnProperty(name = "movielibrary.controller", havingValue = "reactive")
+public class ReactiveMovieLibrary {
+
+  private final MovieLibraryService movieLibraryService;
+  private final Scheduler scheduler;
+
+  /**
+   * Creates a {@code ReactiveMovieLibrary} that runs the calls to the service on
+   * {@link Schedulers#boundedElastic()}.
+   *
+   * @param movieLibraryService The service that reads and writes the catalog.
+   */
+  @Autowired
+  public ReactiveMovieLibrary(MovieLibraryService movieLibraryService) {
+    this(movieLibraryService, Schedulers.boundedElastic());
+  }
+
+  /**
+   * Creates a {@code ReactiveMovieLibrary} that runs the calls to the service on the
+   * given scheduler.
+   *
+   * @param movieLibraryService The service that reads and writes the catalog.
+   * @param scheduler The scheduler the blocking calls run on.
+   */
+  ReactiveMovieLibrary(MovieLibraryService movieLibraryService, Scheduler scheduler) {
+    this.movieLibraryService = movieLibraryService;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Returns all movies in the library.
+   *
+   * @return The movies, emitted one at a time.
+   */
+  public Flux<Movie> getMovies() {
+    return call(movieLibraryService::getMovies).flatMapIterable(movies -> movies);
+  }
+
+  /**
+   * Returns one page of the movies.
+   *
+   * @param cursor The cursor of the page, or {@code null} for the first page.
+   * @param limit The largest number of movies on the page.
+   * @return The page, or an {@link IllegalArgumentException} if the cursor or limit is invalid.
+   */
+  public Mono<MoviePage> getMoviePage(String cursor, int limit) {
+    return call(() -> movieLibraryService.getMoviePage(cursor, limit));
+  }
+
+  /**
+   * Returns the ETag of the whole catalog.
+   *
+   * @return The quoted ETag.
+   */
+  public Mono<String> getCatalogEtag() {
+    return call(movieLibraryService::getCatalogEtag);
+  }
+
+  /**
+   * Returns the ETag of one movie.
+   *
+   * @param title The title of the movie.
+   * @return The quoted ETag.
+   */
+  public Mono<String> getMovieEtag(String title) {
+    return call(() -> movieLibraryService.getMovieEtag(title));
+  }
+
+  /**
+   * Returns the ETag of a movie as a lend or return left it.
+   *
+   * @param state The movie and its version.
+   * @return The quoted ETag of the movie.
+   */
+  public String getMovieEtag(MovieState state) {
+    return movieLibraryService.getMovieEtag(state);
+  }
+
+  /**
+   * Searches the titles and descriptions of the movies.
+   *
+   * @param query The words to search for.
+   * @param limit The largest number of movies to return.
+   * @return The best matching movies, best first, or an {@link IllegalArgumentException}
+   *         if the query has no words or the limit is out of range.
+   */
+  public Flux<Movie> searchMovies(String query, int limit) {
+    return call(() -> movieLibraryService.searchMovies(query, limit))
+        .flatMapIterable(movies -> movies);
+  }
+
+  /**
+   * Finds a movie by its title.
+   *
+   * @param title The title of the movie.
+   * @return The movie, or an {@link IllegalArgumentException} if it is not found.
+   */
+  public Mono<Movie> findMovie(String title) {
+    return call(() -> movieLibraryService.findMovie(title));
+  }
+
+  /**
+   * Lends a movie.
+   *
+   * @param title The title of the movie.
+   * @return The lent movie and its version, once it is lent.
+   */
+  public Mono<MovieState> lendMovie(String title) {
+    return call(() -> movieLibraryService.lendMovie(title));
+  }
+
+  /**
+   * Returns a movie.
+   *
+   * @param title The title of the movie.
+   * @return The returned movie and its version, once it is returned.
+   */
+  public Mono<MovieState> returnMovie(String title) {
+    return call(() -> movieLibraryService.returnMovie(title));
+  }
+
+  /**
+   * Returns the lent status of a movie.
+   *
+   * @param title The title of the movie.
+   * @return {@code true} if the movie is lent, {@code false} otherwise.
+   */
+  public Mono<Boolean> getLentStatus(String title) {
+    return call(() -> movieLibraryService.getLentStatus(title));
+  }
+
+  /**
+   * Adds a movie to the library.
+   *
+   * @param movie The movie to add.
+   * @return A {@link Mono} that completes once the movie is added.
+   */
+  public Mono<Void> addMovie(Movie movie) {
+    return run(() -> movieLibraryService.addMovie(movie.getTitle(), movie.getMovieLength(),
+        movie.getDescription()));
+  }
+
+  /**
+   * Deletes a movie from the library.
+   *
+   * @param title The title of the movie.
+   * @return A {@link Mono} that completes once the movie is deleted.
+   */
+  public Mono<Void> deleteMovie(String title) {
+    return run(() -> movieLibraryService.deleteMovie(title));
+  }
+
+  /**
+   * Adds many movies with a single write.
+   *
+   * @param movies The movies to add.
+   * @return One {@link BatchResult} per movie, in the same order.
+   */
+  public Flux<BatchResult> addMovies(List<Movie> movies) {
+    return call(() -> movieLibraryService.addMovies(movies)).flatMapIterable(results -> results);
+  }
+
+  /**
+   * Lends many movies with a single write.
+   *
+   * @param titles The titles of the movies.
+   * @return One {@link BatchResult} per title, in the same order.
+   */
+  public Flux<BatchResult> lendMovies(List<String> titles) {
+    return call(() -> movieLibraryService.lendMovies(titles)).flatMapIterable(results -> results);
+  }
+
+  /**
+   * Returns many movies with a single write.
+   *
+   * @param titles The titles of the movies.
+   * @return One {@link BatchResult} per title, in the same order.
+   */
+  public Flux<BatchResult> returnMovies(List<String> titles) {
+    return call(() -> movieLibraryService.returnMovies(titles))
+        .flatMapIterable(results -> results);
+  }
+
+  /**
+   * Runs a blocking call on the scheduler.
+   *
+   * @param <T> The type of the result.
+   * @param call The blocking call.
+   * @return A {@link Mono} with the result of the call.
+   */
+  private <T> Mono<T> call(Callable<T> call) {
+    return Mono.fromCallable(call).subscribeOn(scheduler);
+  }
+
+  /**
+   * Runs a blocking call without a result on the scheduler.
+   *
+   * @param action The blocking call.
+   * @return A {@link Mono} that completes once the call is done.
+   */
+  private Mono<Void> run(BlockingAction action) {
+    return Mono.<Void>fromCallable(() -> {
+      action.run();
+      return null;
+    }).subscribeOn(scheduler);
+  }
+
+  /**
+   * A blocking call to the service that has no result.
+   */
+  @FunctionalInterface
+  private interface BlockingAction {
+
+    /**
+     * Runs the call.
+     *
+     * @throws Exception If the call fails.
+     */
+    void run() throws Exception;
+  }
+}
@@ -0,0 +1,296 @@
+package movielibrary.springboot.restserver;
+
+import static movielibrary.springboot.restserver.MovieLibraryController.APPLICATION_NDJSON_VALUE;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+import movielibrary.core.Movie;
+import movielibrary.json.internal.MovieConflictException;
+import movielibrary.json.internal.MovieState;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The {@code ReactiveMovieLibraryController} class serves the same {@code movielibrary/movies}
+ * endpoints as the {@link MovieLibraryController}, with the same responses and errors, but
+ * returns {@link Flux} and {@link Mono} instead of blocking. The request thread is released
+ * while the {@link ReactiveMovieLibrary} reads or writes the catalog, so slow disks do not
+ * tie up the server's threads.
+ *
+ * <p>It replaces the {@link MovieLibraryController} when {@code movielibrary.controller=reactive}.
+ */
+@RestController
+@RequestMapping("movielibrary/movies")
+@ConditionalOnProperty(name = "movielibrary.controller", havingValue = "reactive")
+public class ReactiveMovieLibraryController {
+
+  private final ReactiveMovieLibrary reactiveMovieLibrary;
+
+  /**
+   * Creates a {@code ReactiveMovieLibraryController} with a {@link ReactiveMovieLibrary}.
+   *
+   * @param reactiveMovieLibrary The non-blocking adapter around the catalog.
+   */
+  public ReactiveMovieLibraryController(ReactiveMovieLibrary reactiveMovieLibrary) {
+    this.reactiveMovieLibrary = reactiveMovieLibrary;
+  }
+
+  /**
+   * Handles a GET request to retrieve all movies in the library.
+   *
+   * @param ifNoneMatch The ETag the client already has, if any.
+   * @param accept The {@code Accept} header, which decides the format of the ETag.
+   * @return All movies with the ETag of the catalog, or {@code 304 Not Modified}.
+   */
+  @GetMapping
+  public Mono<ResponseEntity<List<Movie>>> getMovies(
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+    return conditional(reactiveMovieLibrary.getCatalogEtag(), ifNoneMatch, accept,
+        () -> reactiveMovieLibrary.getMovies().collectList())
+        .onErrorMap(IllegalArgumentException.class,
+            e -> new BadRequestException("Could not get the movies in the library"));
+  }
+
+  /**
+   * Handles a GET request with a {@code limit} to retrieve one page of the movies.
+   *
+   * @param limit The largest number of movies on the page.
+   * @param cursor The cursor of the page to get, or nothing for the first page.
+   * @param ifNoneMatch The ETag the client already has, if any.
+   * @param accept The {@code Accept} header, which decides the format of the ETag.
+   * @return The page with the ETag of the catalog, or {@code 304 Not Modified}.
+   */
+  @GetMapping(params = "limit")
+  public Mono<ResponseEntity<MoviePage>> getMoviePage(@RequestParam int limit,
+      @RequestParam(required = false) String cursor,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+    return conditional(reactiveMovieLibrary.getCatalogEtag(), ifNoneMatch, accept,
+        () -> reactiveMovieLibrary.getMoviePage(cursor, limit))
+        .onErrorMap(IllegalArgumentException.class, e -> new BadRequestException(e.getMessage()));
+  }
+
+  /**
+   * Handles a GET request for newline-delimited JSON to stream all movies in the library.
+   * Each movie is written to the response as it is emitted.
+   *
+   * @return The movies, one per line.
+   */
+  @GetMapping(produces = APPLICATION_NDJSON_VALUE)
+  public Flux<Movie> streamMovies() {
+    return reactiveMovieLibrary.getMovies();
+  }
+
+  /**
+   * Handles a GET request to find a movie by title.
+   *
+   * @param title Title of the desired movie.
+   * @param ifNoneMatch The ETag the client already has, if any.
+   * @param accept The {@code Accept} header, which decides the format of the ETag.
+   * @return The movie with its ETag, or {@code 304 Not Modified}.
+   */
+  @GetMapping("/{title}")
+  public Mono<ResponseEntity<Movie>> findMovie(@PathVariable String title,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+    return conditional(reactiveMovieLibrary.getMovieEtag(title), ifNoneMatch, accept,
+        () -> reactiveMovieLibrary.findMovie(title))
+        .onErrorMap(IllegalArgumentException.class, e -> new MovieNotFoundException(title));
+  }
+
+  /**
+   * Handles a POST request to mark a movie as lent, if it is not lent already.
+   *
+   * @param title The title of the movie to lend.
+   * @param accept The {@code Accept} header, which decides the format of the ETag.
+   * @return The lent movie with its ETag, or {@code 409 Conflict} with the movie as it is
+   *         if it was already lent.
+   */
+  @PostMapping("/{title}/lend")
+  public Mono<ResponseEntity<Movie>> lendMovie(@PathVariable String title,
+      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+    return lentStatusChange(reactiveMovieLibrary.lendMovie(title), title, accept);
+  }
+
+  /**
+   * Handles a POST request to mark a movie as returned, if it is lent.
+   *
+   * @param title Title of the movie to return.
+   * @param accept The {@code Accept} header, which decides the format of the ETag.
+   * @return The returned movie with its ETag, or {@code 409 Conflict} with the movie as it is
+   *         if it was not lent.
+   */
+  @PostMapping("/{title}/return")
+  public Mono<ResponseEntity<Movie>> returnMovie(@PathVariable String title,
+      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+    return lentStatusChange(reactiveMovieLibrary.returnMovie(title), title, accept);
+  }
+
+  /**
+   * Answers a lend or return with the movie as the change left it, or as it was when the change
+   * was refused, the same way as the {@link MovieLibraryController}.
+   *
+   * @param change The lend or return.
+   * @param title The title of the movie.
+   * @param accept The {@code Accept} header of the request.
+   * @return The movie with its ETag, with {@code 409 Conflict} if the change was refused.
+   */
+  private Mono<ResponseEntity<Movie>> lentStatusChange(Mono<MovieState> change, String title,
+                                                       String accept) {
+    return change.map(state -> movieResponse(HttpStatus.OK, state, accept))
+        .onErrorResume(MovieConflictException.class,
+            e -> Mono.just(movieResponse(HttpStatus.CONFLICT, e.getState(), accept)))
+        .onErrorMap(e -> e instanceof IllegalArgumentException
+            || e instanceof NoSuchElementException, e -> new MovieNotFoundException(title));
+  }
+
+  /**
+   * Builds the response from the movie and the version a lend or return produced, without
+   * reading either again.
+   *
+   * @param status The status of the answer.
+   * @param state The movie and its version.
+   * @param accept The {@code Accept} header of the request.
+   * @return The response with the movie.
+   */
+  private ResponseEntity<Movie> movieResponse(HttpStatus status, MovieState state,
+                                              String accept) {
+    return ResponseEntity.status(status)
+        .eTag(BinaryFormatConfiguration.etagFor(
+            reactiveMovieLibrary.getMovieEtag(state), accept))
+        .body(state.getMovie());
+  }
+
+  /**
+   * Handles a GET request to check whether a movie is currently lent.
+   *
+   * @param title The title of the movie to check.
+   * @return {@code true} if the movie is lent, {@code false} otherwise.
+   */
+  @GetMapping("/{title}/lentstatus")
+  public Mono<Boolean> getLentStatus(@PathVariable String title) {
+    return reactiveMovieLibrary.getLentStatus(title)
+        .onErrorMap(IllegalArgumentException.class, e -> new MovieNotFoundException(title));
+  }
+
+  /**
+   * Handles a PUT request to add a new movie to the library.
+   *
+   * @param newMovie The new {@link Movie} object to be added.
+   * @return A {@link Mono} that completes once the movie is added.
+   */
+  @PutMapping
+  @ResponseStatus(HttpStatus.CREATED)
+  public Mono<Void> addMovie(@RequestBody Movie newMovie) {
+    return reactiveMovieLibrary.addMovie(newMovie)
+        .onErrorMap(e -> !(e instanceof BadRequestException), e -> new BadRequestException(
+            e instanceof IllegalStateException ? e.getMessage() : "Could not add movie"));
+  }
+
+  /**
+   * Handles a DELETE request to remove a movie from the library by its title.
+   *
+   * @param title Title of the movie to delete.
+   * @return A {@link Mono} that completes once the movie is deleted.
+   */
+  @DeleteMapping("/{title}")
+  @ResponseStatus(HttpStatus.NO_CONTENT)
+  public Mono<Void> deleteMovie(@PathVariable String title) {
+    return reactiveMovieLibrary.deleteMovie(title)
+        .onErrorMap(IllegalArgumentException.class, e -> new MovieNotFoundException(title))
+        .onErrorMap(e -> !(e instanceof MovieNotFoundException),
+            e -> new BadRequestException("Could not delete movie with title: " + title));
+  }
+
+  /**
+   * Handles a PUT request to add many movies to the library with a single write.
+   *
+   * @param newMovies The new {@link Movie} objects to be added.
+   * @return One {@link BatchResult} per movie, in the same order as the request.
+   */
+  @PutMapping("/batch")
+  public Flux<BatchResult> addMovies(@RequestBody List<Movie> newMovies) {
+    return reactiveMovieLibrary.addMovies(newMovies);
+  }
+
+  /**
+   * Handles a POST request to lend many movies with a single write.
+   *
+   * @param titles Titles of the movies to lend.
+   * @return One {@link BatchResult} per title, in the same order as the request.
+   */
+  @PostMapping("/lend")
+  public Flux<BatchResult> lendMovies(@RequestBody List<String> titles) {
+    return reactiveMovieLibrary.lendMovies(titles);
+  }
+
+  /**
+   * Handles a POST request to return many movies with a single write.
+   *
+   * @param titles Titles of the movies to return.
+   * @return One {@link BatchResult} per title, in the same order as the request.
+   */
+  @PostMapping("/return")
+  public Flux<BatchResult> returnMovies(@RequestBody List<String> titles) {
+    return reactiveMovieLibrary.returnMovies(titles);
+  }
+
+  /**
+   * Answers {@code 304 Not Modified} if the client already has the current ETag of the
+   * negotiated format, and otherwise the body with that ETag.
+   *
+   * @param <T> The type of the body.
+   * @param etag The current ETag.
+   * @param ifNoneMatch The {@code If-None-Match} header of the request, or {@code null}.
+   * @param accept The {@code Accept} header of the request, or {@code null}.
+   * @param body Supplies the body, only subscribed to if it is needed.
+   * @return The response.
+   */
+  private static <T> Mono<ResponseEntity<T>> conditional(Mono<String> etag, String ifNoneMatch,
+                                                         String accept, Supplier<Mono<T>> body) {
+    Mono<String> negotiated = etag.map(tag -> BinaryFormatConfiguration.etagFor(tag, accept));
+    return negotiated.flatMap(tag -> {
+      if (matches(ifNoneMatch, tag)) {
+        return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(tag).<T>build());
+      }
+      return body.get().map(value -> ResponseEntity.ok().eTag(tag).body(value));
+    });
+  }
+
+  /**
+   * Checks whether an {@code If-None-Match} header matches the ETag.
+   *
+   * @param ifNoneMatch The header, or {@code null}.
+   * @param etag The quoted ETag.
+   * @return {@code true} if the client already has the ETag.
+   */
+  private static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      String tag = candidate.trim();
+      if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
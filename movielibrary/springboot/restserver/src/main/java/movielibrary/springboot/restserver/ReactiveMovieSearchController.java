@@ -0,0 +1,45 @@
+package movielibrary.springboot.restserver;
+
+import movielibrary.core.Movie;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+/**
+ * The {@code ReactiveMovieSearchController} class serves the same search at
+ * {@code movielibrary/search} as the {@link MovieSearchController}, without blocking the request
+ * thread. It replaces it when {@code movielibrary.controller=reactive}.
+ */
+@RestController
+@ConditionalOnProperty(name = "movielibrary.controller", havingValue = "reactive")
+@RequestMapping("movielibrary/search")
+public class ReactiveMovieSearchController {
+
+  private final ReactiveMovieLibrary reactiveMovieLibrary;
+
+  /**
+   * Creates a {@code ReactiveMovieSearchController} with a {@link ReactiveMovieLibrary}.
+   *
+   * @param reactiveMovieLibrary The non-blocking adapter around the catalog.
+   */
+  public ReactiveMovieSearchController(ReactiveMovieLibrary reactiveMovieLibrary) {
+    this.reactiveMovieLibrary = reactiveMovieLibrary;
+  }
+
+  /**
+   * Handles a GET request to search the titles and descriptions of the movies.
+   *
+   * @param query The words to search for.
+   * @param limit The largest number of movies to return.
+   * @return The best matching movies, best first.
+   */
+  @GetMapping
+  public Flux<Movie> searchMovies(@RequestParam("q") String query,
+                                  @RequestParam(defaultValue = "20") int limit) {
+    return reactiveMovieLibrary.searchMovies(query, limit)
+        .onErrorMap(IllegalArgumentException.class, e -> new BadRequestException(e.getMessage()));
+  }
+}
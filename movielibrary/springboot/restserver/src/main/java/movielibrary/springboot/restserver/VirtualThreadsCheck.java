@@ -0,0 +1,56 @@
+package movielibrary.springboot.restserver;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * The {@code VirtualThreadsCheck} class warns at startup when virtual threads were asked for
+ * with {@code spring.threads.virtual.enabled}, but the runtime cannot provide them and the server
+ * falls back to its platform thread pool. Spring Boot ignores the property silently in that case.
+ */
+@Component
+public class VirtualThreadsCheck implements ApplicationListener<ApplicationReadyEvent> {
+
+  private static final int FIRST_VIRTUAL_THREADS_VERSION = 21;
+
+  private final boolean enabled;
+
+  /**
+   * Creates a {@code VirtualThreadsCheck} for the configured threading mode.
+   *
+   * @param enabled Whether virtual threads are enabled in the configuration.
+   */
+  public VirtualThreadsCheck(@Value("${spring.threads.virtual.enabled:false}") boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Checks the threading mode once the application is ready.
+   *
+   * @param event The event published when the application is ready.
+   */
+  @Override
+  public void onApplicationEvent(ApplicationReadyEvent event) {
+    String warning = checkThreading(Runtime.version().feature());
+    if (warning != null) {
+      System.err.println(warning);
+    }
+  }
+
+  /**
+   * Returns a warning if virtual threads are enabled but the runtime cannot provide them.
+   *
+   * @param javaVersion The feature version of the running Java runtime.
+   * @return The warning, or {@code null} if the threading mode is as configured.
+   */
+  String checkThreading(int javaVersion) {
+    if (enabled && javaVersion < FIRST_VIRTUAL_THREADS_VERSION) {
+      return "spring.threads.virtual.enabled is set, but virtual threads need Java "
+          + FIRST_VIRTUAL_THREADS_VERSION + " or newer (running " + javaVersion
+          + "). Requests are handled on platform threads.";
+    }
+    return null;
+  }
+}
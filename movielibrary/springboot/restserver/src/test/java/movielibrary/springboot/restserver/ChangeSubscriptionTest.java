@@ -0,0 +1,84 @@
+package movielibrary.springboot.restserver;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import movielibrary.json.internal.MovieChange;
+
+/**
+ * The {@code ChangeSubscriptionTest} class tests that the {@link ChangeSubscription} class
+ * delivers changes in order and makes a subscriber that falls behind resync.
+ */
+public class ChangeSubscriptionTest {
+
+  private final Queue<Runnable> tasks = new ArrayDeque<>();
+  private List<MovieChange> sent;
+
+  // setUp method to create the list that collects the sent events
+  @BeforeEach
+  void setUp() {
+    sent = new ArrayList<>();
+  }
+
+  // Test method to test that changes are sent in order, and only by the executor
+  @Test
+  public void testDeliversInOrder() {
+    ChangeSubscription subscription = new ChangeSubscription(sent::add, 4, tasks::add, () -> { });
+    subscription.offer(change("Moana", 1));
+    subscription.offer(change("Frozen", 2));
+    Assertions.assertTrue(sent.isEmpty());
+
+    runTasks();
+    Assertions.assertEquals(List.of(1L, 2L), sent.stream().map(MovieChange::getVersion).toList());
+  }
+
+  // Test method to test that a full queue is replaced by a single resync event
+  @Test
+  public void testResyncWhenFull() {
+    ChangeSubscription subscription = new ChangeSubscription(sent::add, 2, tasks::add, () -> { });
+    for (int version = 1; version <= 5; version++) {
+      subscription.offer(change("Moana", version));
+    }
+    subscription.offer(change("Frozen", 6));
+
+    runTasks();
+    Assertions.assertEquals(2, sent.size());
+    Assertions.assertNull(sent.get(0));
+    Assertions.assertEquals("Frozen", sent.get(1).getTitle());
+  }
+
+  // Test method to test that a subscriber that cannot be reached is closed
+  @Test
+  public void testCloseOnFailure() {
+    List<String> failures = new ArrayList<>();
+    ChangeSubscription subscription = new ChangeSubscription(change -> {
+      throw new IOException("Broken pipe");
+    }, 2, tasks::add, () -> failures.add("failed"));
+    subscription.offer(change("Moana", 1));
+    subscription.offer(change("Frozen", 2));
+
+    runTasks();
+    Assertions.assertTrue(subscription.isClosed());
+    Assertions.assertEquals(List.of("failed"), failures);
+    subscription.offer(change("Moana", 3));
+    Assertions.assertTrue(tasks.isEmpty());
+  }
+
+  private void runTasks() {
+    Runnable task;
+    while ((task = tasks.poll()) != null) {
+      task.run();
+    }
+  }
+
+  private static MovieChange change(String title, long version) {
+    return new MovieChange(MovieChange.Type.LENT, title, version);
+  }
+}
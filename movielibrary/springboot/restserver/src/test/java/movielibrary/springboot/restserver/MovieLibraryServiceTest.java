@@ -1,9 +1,8 @@
 package movielibrary.springboot.restserver;
 
 import movielibrary.core.Movie;
-import movielibrary.json.internal.MovieDeserializer;
 import movielibrary.json.internal.MovieManager;
-import movielibrary.json.internal.MovieSerializer;
+import movielibrary.json.internal.MovieState;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -13,25 +12,21 @@ import org.mockito.MockitoAnnotations;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * The {@code MovieLibraryServiceTest} class tests the {@link MovieLibraryService} class
- * by mocking the logic from core: {@link movieManager}, {@link movieDeserializer} and {@link movieSerializer}.
+ * by mocking the store of the library from core: {@link movieManager}.
  */
 public class MovieLibraryServiceTest {
 
     @Mock
     private MovieManager movieManager;
 
-    @Mock
-    private MovieDeserializer movieDeserializer;
-
-    @Mock
-    private MovieSerializer movieSerializer;
-
     @InjectMocks
     private MovieLibraryService movieLibraryService;
 
@@ -44,8 +39,7 @@ public class MovieLibraryServiceTest {
     @Test
     public void testGetMovies() throws IOException {
         List<Movie> mockMovies = Arrays.asList(new Movie("Moana2", 120, "Under the sea boda boda"));
-        doNothing().when(movieDeserializer).reloadMovieData();
-        when(movieDeserializer.getMoviesInLibrary()).thenReturn(mockMovies);
+        when(movieManager.getMovies()).thenReturn(mockMovies);
 
         List<Movie> movies = movieLibraryService.getMovies();
         assertNotNull(movies);
@@ -53,22 +47,158 @@ public class MovieLibraryServiceTest {
         assertEquals("Moana2", movies.get(0).getTitle());
     }
 
+    // Tests the getMoviePage method, following the cursors through every page in title order
+    @Test
+    public void testGetMoviePage() throws IOException {
+        List<Movie> mockMovies = Arrays.asList(new Movie("Moana", 100, "Moana about a girl who saves her island"),
+                new Movie("Frozen", 100, "Movie about a girl with ice powers"),
+                new Movie("Moana2", 120, "Under the sea boda boda"));
+        when(movieManager.getMovies()).thenReturn(mockMovies);
+
+        MoviePage firstPage = movieLibraryService.getMoviePage(null, 2);
+        assertEquals(2, firstPage.getMovies().size());
+        assertEquals("Frozen", firstPage.getMovies().get(0).getTitle());
+        assertEquals("Moana", firstPage.getMovies().get(1).getTitle());
+        assertNotNull(firstPage.getNextCursor());
+
+        MoviePage lastPage = movieLibraryService.getMoviePage(firstPage.getNextCursor(), 2);
+        assertEquals(1, lastPage.getMovies().size());
+        assertEquals("Moana2", lastPage.getMovies().get(0).getTitle());
+        assertNull(lastPage.getNextCursor());
+
+        assertThrows(IllegalArgumentException.class, () -> movieLibraryService.getMoviePage("not-a-cursor", 2));
+        assertThrows(IllegalArgumentException.class, () -> movieLibraryService.getMoviePage(null, 0));
+    }
+
+    // Tests that a cursor resumes after the last title it saw, even if the library changed in between
+    @Test
+    public void testGetMoviePageAfterChanges() throws IOException {
+        Movie frozen = new Movie("Frozen", 100, "Movie about a girl with ice powers");
+        Movie moana = new Movie("Moana", 100, "Moana about a girl who saves her island");
+        Movie moana2 = new Movie("Moana2", 120, "Under the sea boda boda");
+        when(movieManager.getMovies()).thenReturn(Arrays.asList(moana, frozen, moana2));
+        MoviePage firstPage = movieLibraryService.getMoviePage(null, 1);
+        assertEquals("Frozen", firstPage.getMovies().get(0).getTitle());
+
+        // A movie added before the cursor and the deleted last title of the page do not move the next page
+        when(movieManager.getCatalogVersion()).thenReturn(1L);
+        when(movieManager.getMovies()).thenReturn(Arrays.asList(new Movie("Aladdin", 90, "A boy and a lamp"), moana, moana2));
+        MoviePage secondPage = movieLibraryService.getMoviePage(firstPage.getNextCursor(), 1);
+        assertEquals("Moana", secondPage.getMovies().get(0).getTitle());
+        MoviePage lastPage = movieLibraryService.getMoviePage(secondPage.getNextCursor(), 1);
+        assertEquals("Moana2", lastPage.getMovies().get(0).getTitle());
+        assertNull(lastPage.getNextCursor());
+    }
+
+    // Tests that the movies are only read and sorted again once the catalog version changes
+    @Test
+    public void testGetMoviePageSortsOncePerVersion() throws IOException {
+        Movie frozen = new Movie("Frozen", 100, "Movie about a girl with ice powers");
+        Movie moana = new Movie("Moana", 100, "Moana about a girl who saves her island");
+        when(movieManager.getCatalogVersion()).thenReturn(3L);
+        when(movieManager.getMovies()).thenReturn(Arrays.asList(moana, frozen));
+        movieLibraryService.getMoviePage(null, 1);
+        assertEquals("Moana", movieLibraryService.getMoviePage(null, 2).getMovies().get(1).getTitle());
+        verify(movieManager, times(1)).getMovies();
+
+        when(movieManager.getCatalogVersion()).thenReturn(4L);
+        when(movieManager.getMovies()).thenReturn(Arrays.asList(moana));
+        assertEquals(1, movieLibraryService.getMoviePage(null, 2).getMovies().size());
+        verify(movieManager, times(2)).getMovies();
+    }
+
+    // Tests that the ETags follow the catalog and movie versions
+    @Test
+    public void testEtags() throws IOException {
+        when(movieManager.getCatalogVersion()).thenReturn(4L);
+        when(movieManager.getMovieVersion("Moana2")).thenReturn(2L);
+        String catalogEtag = movieLibraryService.getCatalogEtag();
+        String movieEtag = movieLibraryService.getMovieEtag("Moana2");
+        assertTrue(catalogEtag.startsWith("\"") && catalogEtag.endsWith("4\""));
+        assertTrue(movieEtag.endsWith("2\""));
+
+        when(movieManager.getCatalogVersion()).thenReturn(5L);
+        assertNotEquals(catalogEtag, movieLibraryService.getCatalogEtag());
+    }
+
+    // Tests that bulk lends report the outcome of every title
+    @Test
+    public void testLendMovies() {
+        List<String> titles = List.of("Moana", "Frozen", "Missing");
+        when(movieManager.lendAll(titles)).thenReturn(List.of(
+                CompletableFuture.completedFuture(null),
+                CompletableFuture.failedFuture(new IllegalStateException("The movie is already lent.")),
+                CompletableFuture.failedFuture(new NoSuchElementException())));
+
+        List<BatchResult> results = movieLibraryService.lendMovies(titles);
+        assertEquals(200, results.get(0).getStatus());
+        assertNull(results.get(0).getMessage());
+        assertEquals(409, results.get(1).getStatus());
+        assertEquals("The movie is already lent.", results.get(1).getMessage());
+        assertEquals(404, results.get(2).getStatus());
+        assertEquals("Missing", results.get(2).getTitle());
+    }
+
+    // Tests that a bulk return of a movie that is not lent is a conflict, while a movie that
+    // cannot be added is a bad request
+    @Test
+    public void testBulkConflicts() {
+        List<String> titles = List.of("Moana");
+        when(movieManager.returnAll(titles)).thenReturn(List.of(
+                CompletableFuture.failedFuture(new IllegalStateException("The movie is not lent."))));
+        assertEquals(409, movieLibraryService.returnMovies(titles).get(0).getStatus());
+
+        List<Movie> movies = List.of(new Movie("Moana", 100, "A movie that is already there"));
+        when(movieManager.addMovies(movies)).thenReturn(List.of(
+                CompletableFuture.failedFuture(new IllegalStateException("The title is taken."))));
+        assertEquals(400, movieLibraryService.addMovies(movies).get(0).getStatus());
+    }
+
+    // Tests that a null entry in a bulk add only fails that entry, with 400 Bad Request
+    @Test
+    public void testBulkAddWithNullMovie() {
+        List<Movie> movies = Arrays.asList(null, new Movie("Moana", 100, "A movie that is new"));
+        when(movieManager.addMovies(movies)).thenReturn(List.of(
+                CompletableFuture.failedFuture(new IllegalArgumentException("The movie can't be null.")),
+                CompletableFuture.completedFuture(null)));
+        List<BatchResult> results = movieLibraryService.addMovies(movies);
+        assertNull(results.get(0).getTitle());
+        assertEquals(400, results.get(0).getStatus());
+        assertEquals(201, results.get(1).getStatus());
+    }
+
+    // Tests that searches go to the store and reject limits out of range
+    @Test
+    public void testSearchMovies() throws IOException {
+        Movie mockMovie = new Movie("Moana", 100, "Moana about a girl who saves her island");
+        when(movieManager.searchMovies("island", 5)).thenReturn(List.of(mockMovie));
+
+        assertEquals(List.of(mockMovie), movieLibraryService.searchMovies("island", 5));
+        assertThrows(IllegalArgumentException.class, () -> movieLibraryService.searchMovies("island", 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> movieLibraryService.searchMovies("island", MovieLibraryService.MAX_SEARCH_RESULTS + 1));
+    }
+
     // Tests the findMovie method
     @Test
     public void testFindMovie() throws IOException {
         Movie mockMovie = new Movie("Moana2", 120, "Under the sea boda boda");
-        when(movieDeserializer.findMovie("Moana2")).thenReturn(mockMovie);
+        when(movieManager.findMovie("Moana2")).thenReturn(mockMovie);
 
         Movie movie = movieLibraryService.findMovie("Moana2");
         assertNotNull(movie);
         assertEquals("Moana2", movie.getTitle());
     }
 
-    // Tests the lendMovie method
+    // Tests the lendMovie method, which returns the lent movie with an ETag like the one read by title
     @Test
     public void testLendMovie() throws IOException {
-        movieLibraryService.lendMovie("Moana2");
+        MovieState lent = new MovieState(new Movie("Moana2", 100, "A movie about the sea"), 7);
+        when(movieManager.lend("Moana2")).thenReturn(lent);
+        when(movieManager.getMovieVersion("Moana2")).thenReturn(7L);
 
+        assertSame(lent, movieLibraryService.lendMovie("Moana2"));
+        assertEquals(movieLibraryService.getMovieEtag("Moana2"), movieLibraryService.getMovieEtag(lent));
         verify(movieManager, times(1)).lend("Moana2");
     }
 
@@ -83,7 +213,7 @@ public class MovieLibraryServiceTest {
     // Tests the getLentStatus method
     @Test
     public void testGetLentStatus() throws IOException {
-        when(movieSerializer.getLentStatus("Moana2")).thenReturn(true);
+        when(movieManager.getLentStatus("Moana2")).thenReturn(true);
 
         boolean lentStatus = movieLibraryService.getLentStatus("Moana2");
         assertTrue(lentStatus);
@@ -1,12 +1,19 @@
 package movielibrary.springboot.restserver;
 
+import static org.hamcrest.Matchers.hasItem;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,10 +22,16 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
 import movielibrary.core.Movie;
+import movielibrary.json.internal.MovieChange;
+import movielibrary.json.internal.MovieCodec;
+import movielibrary.json.internal.MovieConflictException;
+import movielibrary.json.internal.MovieFormat;
+import movielibrary.json.internal.MovieState;
 
 
 // Testclass to test the logic in MovieLibraryService, MovieLibraryController and MovieLibraryApplication
@@ -32,6 +45,9 @@ public class MovielibraryApplicationTest {
   @MockBean
   private MovieLibraryService movieLibraryService;
 
+  @Autowired
+  private MovieChangeFeed movieChangeFeed;
+
   private Movie testMovie;
   private Movie testMovie2;
 
@@ -59,6 +75,236 @@ public class MovielibraryApplicationTest {
                 .andExpect(MockMvcResultMatchers.jsonPath("$[1].description").value(testMovie2.getDescription()));
   }
 
+  // Test method to test that the movies are sent with an ETag, and that sending it back gives 304 Not Modified
+  @Test
+  public void testGetMoviesNotModified() throws Exception {
+    when(movieLibraryService.getCatalogEtag()).thenReturn("\"v1\"");
+    when(movieLibraryService.getMovies()).thenReturn(List.of(testMovie, testMovie2));
+
+    mockMvc.perform(MockMvcRequestBuilders.get("/movielibrary/movies"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"v1\""));
+    mockMvc.perform(MockMvcRequestBuilders.get("/movielibrary/movies").header("If-None-Match", "\"v1\""))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.content().string(""));
+    verify(movieLibraryService, times(1)).getMovies();
+
+    // A changed catalog gives a new ETag and the movies again
+    when(movieLibraryService.getCatalogEtag()).thenReturn("\"v2\"");
+    mockMvc.perform(MockMvcRequestBuilders.get("/movielibrary/movies").header("If-None-Match", "\"v1\""))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"v2\""));
+  }
+
+  // Test method to test that a single movie is not sent again while its ETag is unchanged
+  @Test
+  public void testFindMovieNotModified() throws Exception {
+    when(movieLibraryService.getMovieEtag("Moana")).thenReturn("\"m3\"");
+    when(movieLibraryService.findMovie("Moana")).thenReturn(testMovie);
+
+    mockMvc.perform(MockMvcRequestBuilders.get("/movielibrary/movies/Moana").header("If-None-Match", "\"m3\""))
+                .andExpect(MockMvcResultMatchers.status().isNotModified());
+    verify(movieLibraryService, never()).findMovie("Moana");
+  }
+
+  // Test method to test that asking for virtual threads on a runtime without them gives a warning
+  @Test
+  public void testVirtualThreadsCheck() {
+    Assertions.assertNull(new VirtualThreadsCheck(false).checkThreading(17));
+    Assertions.assertNull(new VirtualThreadsCheck(true).checkThreading(21));
+    Assertions.assertNotNull(new VirtualThreadsCheck(true).checkThreading(17));
+  }
+
+  // Test method to test the search endpoint, that an empty search gives a bad request,
+  // and that a movie titled "search" is still found by its title
+  @Test
+  public void testSearchMovies() throws Exception {
+    when(movieLibraryService.searchMovies("girl", 20)).thenReturn(List.of(testMovie, testMovie2));
+    when(movieLibraryService.searchMovies("", 20)).thenThrow(new IllegalArgumentException("The search must contain at least one word."));
+
+    mockMvc.perform(MockMvcRequestBuilders.get("/movielibrary/search").param("q", "girl"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].title").value(testMovie.getTitle()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].title").value(testMovie2.getTitle()));
+    mockMvc.perform(MockMvcRequestBuilders.get("/movielibrary/search").param("q", ""))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+
+    when(movieLibraryService.findMovie("search")).thenReturn(new Movie("search", 90, "A movie whose title is a word of the API"));
+    mockMvc.perform(MockMvcRequestBuilders.get("/movielibrary/movies/search"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.title").value("search"));
+  }
+
+  // Test method to test that requests are timed per endpoint and exposed as metrics
+  @Test
+  public void testMetrics() throws Exception {
+    when(movieLibraryService.getLentStatus("Moana")).thenReturn(false);
+    mockMvc.perform(MockMvcRequestBuilders.get("/movielibrary/movies/Moana/lentstatus"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+    mockMvc.perform(MockMvcRequestBuilders.get("/movielibrary/metrics"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.timers['http.GET /movielibrary/movies/{title}/lentstatus'].count").isNumber())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.timers['http.GET /movielibrary/movies/{title}/lentstatus'].p99Micros").isNumber())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.counters").isMap());
+  }
+
+  // Test method to test that the movies are sent as CBOR or Smile when the client asks for it
+  @Test
+  public void testBinaryFormats() throws Exception {
+    when(movieLibraryService.getMovies()).thenReturn(List.of(testMovie, testMovie2));
+
+    for (MovieFormat format : List.of(MovieFormat.CBOR, MovieFormat.SMILE)) {
+      MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/movielibrary/movies")
+                  .accept(format.getMediaType()))
+                  .andExpect(MockMvcResultMatchers.status().isOk())
+                  .andExpect(MockMvcResultMatchers.content().contentType(format.getMediaType()))
+                  .andReturn();
+      List<Movie> movies = MovieCodec.getInstance(format).getMovieListReader()
+          .readValue(result.getResponse().getContentAsByteArray());
+      Assertions.assertEquals(testMovie2.getTitle(), movies.get(1).getTitle());
+    }
+    mockMvc.perform(MockMvcRequestBuilders.get("/movielibrary/movies"))
+                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_JSON));
+  }
+
+  // Test method to test that each format has its own ETag, so the ETag of the JSON movies never
+  // gives 304 to a client asking for CBOR, and that the answers vary by Accept
+  @Test
+  public void testEtagPerFormat() throws Exception {
+    when(movieLibraryService.getCatalogEtag()).thenReturn("\"v1\"");
+    when(movieLibraryService.getMovies()).thenReturn(List.of(testMovie, testMovie2));
+
+    String jsonEtag = mockMvc.perform(MockMvcRequestBuilders.get("/movielibrary/movies")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().stringValues("Vary", hasItem("Accept")))
+                .andReturn().getResponse().getHeader("ETag");
+    String cborEtag = mockMvc.perform(MockMvcRequestBuilders.get("/movielibrary/movies")
+                .accept(MovieFormat.CBOR.getMediaType()).header("If-None-Match", jsonEtag))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(MovieFormat.CBOR.getMediaType()))
+                .andReturn().getResponse().getHeader("ETag");
+    Assertions.assertNotEquals(jsonEtag, cborEtag);
+
+    mockMvc.perform(MockMvcRequestBuilders.get("/movielibrary/movies")
+                .accept(MovieFormat.CBOR.getMediaType()).header("If-None-Match", cborEtag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.header().stringValues("Vary", hasItem("Accept")));
+    mockMvc.perform(MockMvcRequestBuilders.get("/movielibrary/movies")
+                .accept(MediaType.APPLICATION_JSON).header("If-None-Match", cborEtag))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", jsonEtag));
+    verify(movieLibraryService, times(3)).getMovies();
+
+    Assertions.assertEquals(MovieFormat.SMILE, BinaryFormatConfiguration.negotiate("application/json;q=0.5, application/x-jackson-smile"));
+    Assertions.assertEquals(MovieFormat.JSON, BinaryFormatConfiguration.negotiate("*/*"));
+    Assertions.assertEquals(MovieFormat.JSON, BinaryFormatConfiguration.negotiate(null));
+  }
+
+  // Test method to test that a change is pushed to the subscribers of the change feed
+  @Test
+  public void testChangeFeed() throws Exception {
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/movielibrary/changes")
+                .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+    movieChangeFeed.publish(new MovieChange(MovieChange.Type.LENT, "Moana", 7));
+    String events = result.getResponse().getContentAsString();
+    for (int i = 0; i < 100 && !events.contains("Moana"); i++) {
+      Thread.sleep(20);
+      events = result.getResponse().getContentAsString();
+    }
+    Assertions.assertTrue(events.contains("id:7"));
+    Assertions.assertTrue(events.contains("event:lent"));
+    Assertions.assertTrue(events.contains("\"title\":\"Moana\""));
+
+    // Reading the movies from disk again makes every subscriber resync
+    movieChangeFeed.publish(new MovieChange(MovieChange.Type.RESYNC, null, 8));
+    for (int i = 0; i < 100 && !events.contains("event:resync"); i++) {
+      Thread.sleep(20);
+      events = result.getResponse().getContentAsString();
+    }
+    Assertions.assertTrue(events.contains("event:resync"));
+  }
+
+  // Test method to test that the change feed only listens to the service once a client subscribes
+  @Test
+  public void testChangeFeedListensOnSubscribe() {
+    MovieLibraryService service = mock(MovieLibraryService.class);
+    MovieChangeFeed feed = new MovieChangeFeed(service);
+    verify(service, never()).addChangeListener(any());
+
+    feed.subscribe();
+    feed.subscribe();
+    verify(service, times(1)).addChangeListener(any());
+    feed.destroy();
+  }
+
+  // Test method to test that a bulk lend returns the outcome of every title
+  @Test
+  public void testLendMovies() throws Exception {
+    List<String> titles = List.of("Moana", "Missing");
+    when(movieLibraryService.lendMovies(titles)).thenReturn(List.of(
+        new BatchResult("Moana", 200, null),
+        new BatchResult("Missing", 404, "Could not find movie with title: Missing")));
+
+    mockMvc.perform(MockMvcRequestBuilders.post("/movielibrary/movies/lend")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[\"Moana\",\"Missing\"]"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].status").value(200))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].title").value("Missing"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].status").value(404));
+  }
+
+  // Test method to test that a GET request with a limit returns one page and the cursor of the next
+  @Test
+  public void testGetMoviePage() throws Exception {
+    when(movieLibraryService.getMoviePage(null, 1)).thenReturn(new MoviePage(List.of(testMovie), "next"));
+    when(movieLibraryService.getMoviePage("next", 1)).thenReturn(new MoviePage(List.of(testMovie2), null));
+
+    mockMvc.perform(MockMvcRequestBuilders.get("/movielibrary/movies").param("limit", "1"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.movies[0].title").value(testMovie.getTitle()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.nextCursor").value("next"));
+    mockMvc.perform(MockMvcRequestBuilders.get("/movielibrary/movies").param("limit", "1").param("cursor", "next"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.movies[0].title").value(testMovie2.getTitle()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.nextCursor").doesNotExist());
+  }
+
+  // Test method to test that an invalid limit or cursor gives a bad request
+  @Test
+  public void testGetMoviePageThrowsException() throws Exception {
+    when(movieLibraryService.getMoviePage("bad", 1)).thenThrow(new IllegalArgumentException("Invalid cursor: bad"));
+
+    mockMvc.perform(MockMvcRequestBuilders.get("/movielibrary/movies").param("limit", "1").param("cursor", "bad"))
+            .andExpect(MockMvcResultMatchers.status().isBadRequest())
+            .andExpect(MockMvcResultMatchers.jsonPath("$.message").value("Invalid cursor: bad"));
+  }
+
+  // Test method to test that the movies are streamed one per line when newline-delimited JSON is asked for
+  @Test
+  public void testStreamMovies() throws Exception {
+    when(movieLibraryService.getMovies()).thenReturn(List.of(testMovie, testMovie2));
+
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/movielibrary/movies")
+                .accept(MovieLibraryController.APPLICATION_NDJSON_VALUE))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+    String body = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(MovieLibraryController.APPLICATION_NDJSON_VALUE))
+                .andReturn().getResponse().getContentAsString();
+
+    List<String> lines = body.lines().collect(Collectors.toList());
+    Assertions.assertEquals(2, lines.size());
+    Assertions.assertTrue(lines.get(0).contains("\"title\":\"Moana\""));
+    Assertions.assertTrue(lines.get(1).contains("\"title\":\"Frozen\""));
+  }
+
   // Test method to test that exception is thrown when no movies are found
   @Test
   public void testGetMoviesThrowsException() throws Exception {
@@ -91,15 +337,38 @@ public class MovielibraryApplicationTest {
             .andExpect(MockMvcResultMatchers.jsonPath("$.message").value("Could not find movie with title: testMovie"));
   }
 
-  // Test method to test the lendMovie method in MovieLibraryController
+  // Test method to test the lendMovie method in MovieLibraryController, which answers with the movie
+  // and the version the lend produced, without reading them again
   @Test
   public void testLendMovie() throws Exception {
-    doNothing().when(movieLibraryService).lendMovie("Moana");
+    testMovie.setLent(true);
+    MovieState lent = new MovieState(testMovie, 2);
+    when(movieLibraryService.lendMovie("Moana")).thenReturn(lent);
+    when(movieLibraryService.getMovieEtag(lent)).thenReturn("\"m2\"");
 
     mockMvc.perform(MockMvcRequestBuilders.post("/movielibrary/movies/Moana/lend"))
-                .andExpect(MockMvcResultMatchers.status().isOk());
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"m2\""))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.isLent").value(true));
 
     verify(movieLibraryService).lendMovie("Moana");
+    verify(movieLibraryService, never()).findMovie("Moana");
+    verify(movieLibraryService, never()).getMovieEtag("Moana");
+  }
+
+  // Test method to test that lending a movie that is already lent gives 409 Conflict with the movie as it is
+  @Test
+  public void testLendMovieConflict() throws Exception {
+    testMovie.setLent(true);
+    MovieState current = new MovieState(testMovie, 2);
+    doThrow(new MovieConflictException("The movie is already lent.", current)).when(movieLibraryService).lendMovie("Moana");
+    when(movieLibraryService.getMovieEtag(current)).thenReturn("\"m2\"");
+
+    mockMvc.perform(MockMvcRequestBuilders.post("/movielibrary/movies/Moana/lend"))
+                .andExpect(MockMvcResultMatchers.status().isConflict())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"m2\""))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.title").value("Moana"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.isLent").value(true));
   }
 
   // Test method to test that exception is thrown when the movie is not found when trying to lend it
@@ -111,13 +380,17 @@ public class MovielibraryApplicationTest {
             .andExpect(MockMvcResultMatchers.jsonPath("$.message").value("Could not find movie with title: testMovie"));
   }
 
-  // Test method to test the returnMovie method in MovieLibraryController
+  // Test method to test the returnMovie method in MovieLibraryController, which answers with the returned movie
   @Test
   public void testReturnMovie() throws Exception {
-    doNothing().when(movieLibraryService).returnMovie("Moana");
+    MovieState returned = new MovieState(testMovie, 3);
+    when(movieLibraryService.returnMovie("Moana")).thenReturn(returned);
+    when(movieLibraryService.getMovieEtag(returned)).thenReturn("\"m3\"");
 
     mockMvc.perform(MockMvcRequestBuilders.post("/movielibrary/movies/Moana/return"))
-                .andExpect(MockMvcResultMatchers.status().isOk());
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"m3\""))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.isLent").value(false));
 
     verify(movieLibraryService).returnMovie("Moana");
   }
@@ -0,0 +1,201 @@
+package movielibrary.springboot.restserver;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import movielibrary.core.Movie;
+import movielibrary.json.internal.MovieConflictException;
+import movielibrary.json.internal.MovieState;
+
+// Testclass to test that the reactive controller answers like MovieLibraryController
+@SpringBootTest(properties = "movielibrary.controller=reactive")
+@AutoConfigureMockMvc
+public class ReactiveMovieLibraryControllerTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @MockBean
+  private MovieLibraryService movieLibraryService;
+
+  @Autowired(required = false)
+  private MovieLibraryController blockingController;
+
+  private Movie testMovie;
+  private Movie testMovie2;
+
+  // setUp method to create the default movie objects used in the tests
+  @BeforeEach
+  void setUp() throws Exception {
+    testMovie = new Movie("Moana", 100, "Moana about a girl who saves her island");
+    testMovie2 = new Movie("Frozen", 100, "Movie about a girl with ice powers");
+    when(movieLibraryService.getCatalogEtag()).thenReturn("\"c1\"");
+    when(movieLibraryService.getMovieEtag("Moana")).thenReturn("\"m1\"");
+  }
+
+  // Performs the request, waits for the reactive result and dispatches it
+  private ResultActions performAsync(RequestBuilder request) throws Exception {
+    MvcResult result = mockMvc.perform(request)
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+    return mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result));
+  }
+
+  // Test method to test that only the reactive controller is active
+  @Test
+  public void testOnlyReactiveController() {
+    Assertions.assertNull(blockingController);
+  }
+
+  // Test method to test that all movies are returned with the ETag, and 304 once the client has it
+  @Test
+  public void testGetMovies() throws Exception {
+    when(movieLibraryService.getMovies()).thenReturn(List.of(testMovie, testMovie2));
+
+    performAsync(MockMvcRequestBuilders.get("/movielibrary/movies"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"c1\""))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].title").value("Frozen"));
+
+    performAsync(MockMvcRequestBuilders.get("/movielibrary/movies").header("If-None-Match", "\"c1\""))
+                .andExpect(MockMvcResultMatchers.status().isNotModified());
+  }
+
+  // Test method to test that the movies can be streamed as newline-delimited JSON
+  @Test
+  public void testStreamMovies() throws Exception {
+    when(movieLibraryService.getMovies()).thenReturn(List.of(testMovie, testMovie2));
+
+    String body = performAsync(MockMvcRequestBuilders.get("/movielibrary/movies")
+                .accept(MovieLibraryController.APPLICATION_NDJSON_VALUE))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn().getResponse().getContentAsString();
+    List<String> lines = body.lines().filter(line -> !line.isBlank()).toList();
+    Assertions.assertEquals(2, lines.size());
+    Assertions.assertTrue(lines.get(0).contains("\"title\":\"Moana\""));
+  }
+
+  // Test method to test finding a movie, and that a missing movie gives 404
+  @Test
+  public void testFindMovie() throws Exception {
+    when(movieLibraryService.findMovie("Moana")).thenReturn(testMovie);
+    performAsync(MockMvcRequestBuilders.get("/movielibrary/movies/Moana"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.title").value("Moana"));
+
+    performAsync(MockMvcRequestBuilders.get("/movielibrary/movies/Moana").header("If-None-Match", "\"m1\""))
+                .andExpect(MockMvcResultMatchers.status().isNotModified());
+
+    when(movieLibraryService.getMovieEtag("Missing")).thenReturn("\"m0\"");
+    when(movieLibraryService.findMovie("Missing")).thenThrow(new IllegalArgumentException());
+    performAsync(MockMvcRequestBuilders.get("/movielibrary/movies/Missing"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+  }
+
+  // Test method to test the search endpoint, and that an empty search gives a bad request
+  @Test
+  public void testSearchMovies() throws Exception {
+    when(movieLibraryService.searchMovies("girl", 20)).thenReturn(List.of(testMovie, testMovie2));
+    when(movieLibraryService.searchMovies("", 20)).thenThrow(new IllegalArgumentException("The search must contain at least one word."));
+
+    performAsync(MockMvcRequestBuilders.get("/movielibrary/search").param("q", "girl"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].title").value("Frozen"));
+    performAsync(MockMvcRequestBuilders.get("/movielibrary/search").param("q", ""))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+  }
+
+  // Test method to test adding and deleting a movie
+  @Test
+  public void testAddAndDeleteMovie() throws Exception {
+    performAsync(MockMvcRequestBuilders.put("/movielibrary/movies")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"title\":\"Moana\",\"movieLength\":100,\"description\":\"Moana about a girl who saves her island\"}"))
+                .andExpect(MockMvcResultMatchers.status().isCreated());
+    verify(movieLibraryService).addMovie("Moana", 100, "Moana about a girl who saves her island");
+
+    performAsync(MockMvcRequestBuilders.delete("/movielibrary/movies/Moana"))
+                .andExpect(MockMvcResultMatchers.status().isNoContent());
+
+    doThrow(new IllegalArgumentException()).when(movieLibraryService).deleteMovie("Missing");
+    performAsync(MockMvcRequestBuilders.delete("/movielibrary/movies/Missing"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+  }
+
+  // Test method to test that a duplicate movie gives a bad request
+  @Test
+  public void testAddMovieThrowsException() throws Exception {
+    doThrow(new IllegalStateException("The movie title already exists in the movielibrary!"))
+                .when(movieLibraryService).addMovie("Moana", 100, "Moana about a girl who saves her island");
+    performAsync(MockMvcRequestBuilders.put("/movielibrary/movies")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"title\":\"Moana\",\"movieLength\":100,\"description\":\"Moana about a girl who saves her island\"}"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+  }
+
+  // Test method to test lending a movie and the lent status
+  @Test
+  public void testLendMovie() throws Exception {
+    testMovie.setLent(true);
+    MovieState lent = new MovieState(testMovie, 1);
+    when(movieLibraryService.lendMovie("Moana")).thenReturn(lent);
+    when(movieLibraryService.getMovieEtag(lent)).thenReturn("\"m1\"");
+    performAsync(MockMvcRequestBuilders.post("/movielibrary/movies/Moana/lend"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"m1\""))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.isLent").value(true));
+    verify(movieLibraryService).lendMovie("Moana");
+    verify(movieLibraryService, never()).returnMovie("Moana");
+    verify(movieLibraryService, never()).findMovie("Moana");
+
+    when(movieLibraryService.getLentStatus("Moana")).thenReturn(true);
+    performAsync(MockMvcRequestBuilders.get("/movielibrary/movies/Moana/lentstatus"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().string("true"));
+  }
+
+  // Test method to test that returning a movie that is not lent gives 409 Conflict with the movie as it is
+  @Test
+  public void testReturnMovieConflict() throws Exception {
+    MovieState current = new MovieState(testMovie, 1);
+    doThrow(new MovieConflictException("The movie is not lent.", current)).when(movieLibraryService).returnMovie("Moana");
+    when(movieLibraryService.getMovieEtag(current)).thenReturn("\"m1\"");
+    performAsync(MockMvcRequestBuilders.post("/movielibrary/movies/Moana/return"))
+                .andExpect(MockMvcResultMatchers.status().isConflict())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"m1\""))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.isLent").value(false));
+  }
+
+  // Test method to test that the ETag of a lend names the format the movie is sent in
+  @Test
+  public void testLendMovieEtagPerFormat() throws Exception {
+    testMovie.setLent(true);
+    MovieState lent = new MovieState(testMovie, 1);
+    when(movieLibraryService.lendMovie("Moana")).thenReturn(lent);
+    when(movieLibraryService.getMovieEtag(lent)).thenReturn("\"m1\"");
+    performAsync(MockMvcRequestBuilders.post("/movielibrary/movies/Moana/lend").accept("application/cbor"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"m1-cbor\""))
+                .andExpect(MockMvcResultMatchers.header().string("Vary", "Accept"))
+                .andExpect(MockMvcResultMatchers.content().contentType("application/cbor"));
+  }
+}